@@ -44,13 +44,17 @@
 
 package com.sudoplay.juple;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Reader;
 import java.io.StringReader;
-import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.reflect.Type;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -60,12 +64,14 @@ import java.util.Map;
 
 import com.sudoplay.juple.classparser.TMLConstructorConstructor;
 import com.sudoplay.juple.classparser.TMLExcluder;
+import com.sudoplay.juple.classparser.TMLFieldSelection;
 import com.sudoplay.juple.classparser.TMLInstanceCreator;
 import com.sudoplay.juple.classparser.TMLPrimitives;
 import com.sudoplay.juple.classparser.TMLTypeToken;
 import com.sudoplay.juple.classparser.adapters.TMLArrayTypeAdapter;
 import com.sudoplay.juple.classparser.adapters.TMLCollectionTypeAdapterFactory;
 import com.sudoplay.juple.classparser.adapters.TMLDateTypeAdapter;
+import com.sudoplay.juple.classparser.adapters.TMLJavaTimeTypeAdapters;
 import com.sudoplay.juple.classparser.adapters.TMLMapTypeAdapterFactory;
 import com.sudoplay.juple.classparser.adapters.TMLObjectTypeAdapter;
 import com.sudoplay.juple.classparser.adapters.TMLReflectiveTypeAdapterFactory;
@@ -78,10 +84,17 @@ import com.sudoplay.juple.error.TMLContract;
 import com.sudoplay.juple.error.TMLIOException;
 import com.sudoplay.juple.error.TMLSyntaxException;
 import com.sudoplay.juple.stream.SpaceEscapePolicy;
+import com.sudoplay.juple.stream.TMLBinaryReader;
+import com.sudoplay.juple.stream.TMLBinaryWriter;
+import com.sudoplay.juple.stream.TMLBufferPool;
+import com.sudoplay.juple.stream.TMLPooledOutputStream;
 import com.sudoplay.juple.stream.TMLReader;
+import com.sudoplay.juple.stream.TMLUtf8Writer;
 import com.sudoplay.juple.stream.TMLWriter;
 import com.sudoplay.juple.tree.TMLNode;
+import com.sudoplay.juple.tree.TMLNodeReader;
 import com.sudoplay.juple.tree.TMLNodeTreeParser;
+import com.sudoplay.juple.tree.TMLNodeWriter;
 
 /**
  * This is the main class for using Juple. Juple is typically used by first
@@ -109,6 +122,20 @@ public class Juple {
     }
   };
 
+  /**
+   * The buffer {@link #toTML(Object, Type)} writes into, reused by each thread
+   * to avoid allocating and growing a new buffer for every call. Buffers that
+   * have grown past {@link #MAX_RETAINED_CHARS} are not kept.
+   */
+  private static final ThreadLocal<StringBuilderWriter> stringWriter = new ThreadLocal<StringBuilderWriter>() {
+    @Override
+    protected StringBuilderWriter initialValue() {
+      return new StringBuilderWriter();
+    }
+  };
+
+  private static final int MAX_RETAINED_CHARS = 64 * 1024;
+
   private final Map<TMLTypeToken<?>, TMLTypeAdapter<?>> adapterCache = Collections
       .synchronizedMap(new HashMap<TMLTypeToken<?>, TMLTypeAdapter<?>>());
 
@@ -143,6 +170,26 @@ public class Juple {
       List<TMLTypeAdapterFactory> typeAdapterFactories,
       SpaceEscapePolicy overrideSpaceEscapePolicy,
       boolean enforceFiniteFloatingPointValues) {
+    this(excluder, instanceCreators, prettyPrinting, groupStrings,
+        typeAdapterFactories, overrideSpaceEscapePolicy,
+        enforceFiniteFloatingPointValues, false);
+  }
+
+  /**
+   * Constructs a new Juple instance and registers the default
+   * {@link TMLTypeAdapterFactory}s and user supplied factories.
+   * 
+   * @param tabularCollections
+   *          true to write collections of reflected objects as tables of
+   *          field values
+   * @see JupleBuilder#setTabularCollections()
+   */
+  public Juple(final TMLExcluder excluder,
+      final Map<Type, TMLInstanceCreator<?>> instanceCreators,
+      boolean prettyPrinting, boolean groupStrings,
+      List<TMLTypeAdapterFactory> typeAdapterFactories,
+      SpaceEscapePolicy overrideSpaceEscapePolicy,
+      boolean enforceFiniteFloatingPointValues, boolean tabularCollections) {
 
     this.enforceFiniteFloatingPointValues = enforceFiniteFloatingPointValues;
     this.overrideSpaceEscapePolicy = overrideSpaceEscapePolicy;
@@ -189,11 +236,16 @@ public class Juple {
     factories.add(TMLTypeAdapters.newFactory(java.sql.Date.class,
         new TMLSqlDateTypeAdapter()));
     factories.add(TMLTypeAdapters.TIMESTAMP_FACTORY);
+    factories.add(TMLJavaTimeTypeAdapters.INSTANT_FACTORY);
+    factories.add(TMLJavaTimeTypeAdapters.LOCAL_DATE_FACTORY);
+    factories.add(TMLJavaTimeTypeAdapters.LOCAL_DATE_TIME_FACTORY);
+    factories.add(TMLJavaTimeTypeAdapters.OFFSET_DATE_TIME_FACTORY);
     factories.add(TMLArrayTypeAdapter.FACTORY);
     factories.add(TMLTypeAdapters.ENUM_FACTORY);
     factories.add(TMLTypeAdapters.CLASS_FACTORY);
 
-    factories.add(new TMLCollectionTypeAdapterFactory(constructorConstructor));
+    factories.add(new TMLCollectionTypeAdapterFactory(constructorConstructor,
+        tabularCollections));
     factories.add(new TMLMapTypeAdapterFactory(constructorConstructor));
     factories.add(new TMLReflectiveTypeAdapterFactory(constructorConstructor,
         excluder));
@@ -321,6 +373,60 @@ public class Juple {
     return object;
   }
 
+  /**
+   * This method deserializes the TML read from the specified reader into an
+   * object of the specified class, binding only the selected fields. Fields
+   * outside of the selection are skipped without being converted and keep the
+   * values given to them by the class's constructor. If the specified class is
+   * a generic type, use {@link #fromTML(Reader, Type, TMLFieldSelection)}
+   * instead.
+   *
+   * @param <T>
+   *          the type of the desired object
+   * @param reader
+   *          the reader producing the TML from which the object is to be
+   *          deserialized
+   * @param classOfT
+   *          the class of T
+   * @param selection
+   *          the fields to bind, or null to bind all fields
+   * @return an object of type T from the TML
+   * @see TMLFieldSelection
+   */
+  public <T> T fromTML(Reader reader, Class<T> classOfT,
+      TMLFieldSelection selection) {
+    Object object = fromTML(reader, (Type) classOfT, selection);
+    return TMLPrimitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes the TML read from the specified reader into an
+   * object of the specified type, binding only the selected fields. Fields
+   * outside of the selection are skipped without being converted and keep the
+   * values given to them by the type's constructor.
+   *
+   * @param <T>
+   *          the type of the desired object
+   * @param reader
+   *          the reader producing the TML from which the object is to be
+   *          deserialized
+   * @param type
+   *          The specific genericized type of src
+   * @param selection
+   *          the fields to bind, or null to bind all fields
+   * @return an object of type T from the TML
+   * @see TMLFieldSelection
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fromTML(Reader reader, Type type, TMLFieldSelection selection)
+      throws TMLSyntaxException, TMLIOException {
+    TMLReader tmlReader = new TMLReader(reader);
+    tmlReader.setFieldSelection(selection);
+    T object = (T) fromTML(tmlReader, type);
+    TMLContract.assertFullConsumption(object, tmlReader);
+    return object;
+  }
+
   /**
    * Reads the next TML value from {@code reader} and converts it to an object
    * of type {@code typeOfT}.
@@ -387,6 +493,235 @@ public class Juple {
     return nodeTreeParser.parse(string);
   }
 
+  /**
+   * This method serializes the specified object into a {@link TMLNode} tree
+   * without producing any text. The tree is the same tree that
+   * {@link #toTMLNode(String)} would parse from {@link #toTML(Object)}. This
+   * method uses {@link Class#getClass()} to get the type for the specified
+   * object; if the object is of generic type, use
+   * {@link #toTMLNode(Object, Type)} instead.
+   * 
+   * <p>
+   * Note that a {@link String} or {@link Reader} argument selects
+   * {@link #toTMLNode(String)} or {@link #toTMLNode(Reader)}, which parse it as
+   * TML; use {@link #toTMLNode(Object, Type)} to serialize one as a value.
+   * 
+   * @param obj
+   *          the object for which the tree is to be created
+   * @return the tree representation of {@code obj}
+   */
+  public TMLNode toTMLNode(Object obj) {
+    if (obj == null) {
+      throw new NullPointerException(
+          "Use toTMLNode(Object, Type) to ensure correct null value serialization");
+    }
+    return toTMLNode(obj, obj.getClass());
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into a {@link TMLNode} tree without producing any text.
+   * 
+   * @param obj
+   *          the object for which the tree is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @return the tree representation of {@code obj}
+   * @see #toTMLNode(Object)
+   */
+  public TMLNode toTMLNode(Object obj, Type typeOfObj) {
+    TMLNodeWriter writer = new TMLNodeWriter();
+    toTML(obj, typeOfObj, writer);
+    return writer.get();
+  }
+
+  /**
+   * This method deserializes a {@link TMLNode} tree into an object of the
+   * specified class, reading the tree directly instead of converting it to
+   * text first. The tree is expected in the format produced by
+   * {@link #toTMLNode(String)} and {@link #toTMLNode(Object)}. Empty strings
+   * survive {@link #toTMLNode(Object)}, but a tree parsed from text has
+   * dropped them, so there they read as null. If the specified class is a
+   * generic type, use {@link #fromTMLNode(TMLNode, Type)} instead.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param node
+   *          the root of the tree
+   * @param classOfT
+   *          the class of T
+   * @return an object of type T from the tree
+   */
+  public <T> T fromTMLNode(TMLNode node, Class<T> classOfT)
+      throws TMLSyntaxException {
+    Object object = fromTMLNode(node, (Type) classOfT);
+    return TMLPrimitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes a {@link TMLNode} tree into an object of the
+   * specified type, reading the tree directly instead of converting it to text
+   * first.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param node
+   *          the root of the tree
+   * @param typeOfT
+   *          the specific genericized type of the object
+   * @return an object of type T from the tree
+   * @see #fromTMLNode(TMLNode, Class)
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fromTMLNode(TMLNode node, Type typeOfT)
+      throws TMLSyntaxException {
+    TMLNodeReader reader = new TMLNodeReader(node);
+    T object = (T) fromTML(reader, typeOfT);
+    TMLContract.assertFullConsumption(object, reader);
+    return object;
+  }
+
+  /**
+   * This method serializes the specified object into the binary TML encoding
+   * written by {@link TMLBinaryWriter}. Numbers and booleans are written as
+   * typed values and repeated field names as dictionary references, so the
+   * result is smaller and faster to read than the text from
+   * {@link #toTML(Object)}. If the object is of generic type, use
+   * {@link #toTMLBinary(Object, Type)} instead.
+   * 
+   * @param obj
+   *          the object for which the binary representation is to be created
+   * @return the binary TML representation of {@code obj}
+   */
+  public byte[] toTMLBinary(Object obj) {
+    if (obj == null) {
+      throw new NullPointerException("Use toTMLBinary(Object, Type) to ensure "
+          + "correct null value serialization");
+    }
+    return toTMLBinary(obj, obj.getClass());
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into the binary TML encoding.
+   * 
+   * @param obj
+   *          the object for which the binary representation is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @return the binary TML representation of {@code obj}
+   * @see #toTMLBinary(Object)
+   */
+  public byte[] toTMLBinary(Object obj, Type typeOfObj) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    toTMLBinary(obj, typeOfObj, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into the binary TML encoding and writes it to {@code out}.
+   * 
+   * @param obj
+   *          the object for which the binary representation is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @param out
+   *          stream to which the binary representation of obj is written. It
+   *          is flushed but not closed.
+   * @throws TMLIOException
+   *           if there was a problem writing to the stream
+   */
+  public void toTMLBinary(Object obj, Type typeOfObj, OutputStream out) {
+    toTML(obj, typeOfObj, new TMLBinaryWriter(out));
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new TMLIOException(e);
+    }
+  }
+
+  /**
+   * This method deserializes binary TML, as produced by
+   * {@link #toTMLBinary(Object)}, into an object of the specified class. If the
+   * specified class is a generic type, use {@link #fromTMLBinary(byte[], Type)}
+   * instead.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param bytes
+   *          the binary TML
+   * @param classOfT
+   *          the class of T
+   * @return an object of type T from the bytes
+   */
+  public <T> T fromTMLBinary(byte[] bytes, Class<T> classOfT)
+      throws TMLSyntaxException {
+    Object object = fromTMLBinary(bytes, (Type) classOfT);
+    return TMLPrimitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes binary TML into an object of the specified type.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param bytes
+   *          the binary TML
+   * @param typeOfT
+   *          the specific genericized type of the object
+   * @return an object of type T from the bytes
+   * @see #fromTMLBinary(byte[], Class)
+   */
+  public <T> T fromTMLBinary(byte[] bytes, Type typeOfT)
+      throws TMLSyntaxException {
+    if (bytes == null) return null;
+    return fromTMLBinary(new ByteArrayInputStream(bytes), typeOfT);
+  }
+
+  /**
+   * This method deserializes binary TML read from the specified stream into an
+   * object of the specified class. If the specified class is a generic type,
+   * use {@link #fromTMLBinary(InputStream, Type)} instead.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param in
+   *          the stream producing the binary TML. It is read to the end of
+   *          the document but not closed.
+   * @param classOfT
+   *          the class of T
+   * @return an object of type T from the stream
+   */
+  public <T> T fromTMLBinary(InputStream in, Class<T> classOfT)
+      throws TMLSyntaxException, TMLIOException {
+    Object object = fromTMLBinary(in, (Type) classOfT);
+    return TMLPrimitives.wrap(classOfT).cast(object);
+  }
+
+  /**
+   * This method deserializes binary TML read from the specified stream into an
+   * object of the specified type.
+   * 
+   * @param <T>
+   *          the type of the desired object
+   * @param in
+   *          the stream producing the binary TML. It is read to the end of
+   *          the document but not closed.
+   * @param typeOfT
+   *          the specific genericized type of the object
+   * @return an object of type T from the stream
+   * @see #fromTMLBinary(InputStream, Class)
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T fromTMLBinary(InputStream in, Type typeOfT)
+      throws TMLSyntaxException, TMLIOException {
+    TMLBinaryReader reader = new TMLBinaryReader(in);
+    T object = (T) fromTML(reader, typeOfT);
+    TMLContract.assertFullConsumption(object, reader);
+    return object;
+  }
+
   /**
    * This method serializes the specified object into its equivalent TML
    * representation. This method should be used when the specified object is not
@@ -436,13 +771,25 @@ public class Juple {
    * @return TML representation of {@code obj}
    */
   public String toTML(Object obj, Type typeOfObj) {
+    StringBuilderWriter writer = stringWriter.get();
+    boolean reused = !writer.inUse;
+    if (!reused) {
+      // an adapter is calling back into toTML on this thread
+      writer = new StringBuilderWriter();
+    }
+    writer.inUse = true;
     try {
-      StringWriter writer = new StringWriter();
       toTML(obj, typeOfObj, writer);
-      writer.close();
-      return writer.toString();
-    } catch (IOException e) {
-      throw new TMLIOException(e);
+      return writer.builder.toString();
+    } finally {
+      writer.inUse = false;
+      if (reused) {
+        if (writer.builder.capacity() > MAX_RETAINED_CHARS) {
+          stringWriter.remove();
+        } else {
+          writer.builder.setLength(0);
+        }
+      }
     }
   }
 
@@ -505,6 +852,146 @@ public class Juple {
     toTML(obj, typeOfObj, tmlWriter);
   }
 
+  /**
+   * This method serializes the specified object into its equivalent TML
+   * representation, encoded as UTF-8 and written to {@code out}. This method
+   * should be used when the specified object is not a generic type. If the
+   * object is of generic type, use {@link #toTML(Object, Type, OutputStream)}
+   * instead.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @param out
+   *          stream to which the TML representation of obj is written. It is
+   *          flushed but not closed.
+   * @throws TMLIOException
+   *           if there was a problem writing to the stream
+   */
+  public void toTML(Object obj, OutputStream out) {
+    if (obj == null) {
+      throw new NullPointerException(
+          "Use toTML(Object, Type) to ensure correct null value serialization");
+    }
+    toTML(obj, obj.getClass(), out);
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into its equivalent TML representation, encoded as UTF-8 and
+   * written to {@code out}. The bytes are encoded directly by a
+   * {@link TMLUtf8Writer}, so {@code out} doesn't need to be wrapped in a
+   * {@link java.io.OutputStreamWriter} or buffered.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @param out
+   *          stream to which the TML representation of obj is written. It is
+   *          flushed but not closed.
+   * @throws TMLIOException
+   *           if there was a problem writing to the stream
+   */
+  public void toTML(Object obj, Type typeOfObj, OutputStream out) {
+    TMLUtf8Writer tmlWriter = new TMLUtf8Writer(out);
+    toTML(obj, typeOfObj, tmlWriter);
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new TMLIOException(e);
+    }
+  }
+
+  /**
+   * This method serializes the specified object into its equivalent TML
+   * representation as UTF-8 bytes. This method should be used when the
+   * specified object is not a generic type; otherwise use
+   * {@link #toTMLBytes(Object, Type)}.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @return UTF-8 encoded TML representation of {@code obj}
+   */
+  public byte[] toTMLBytes(Object obj) {
+    if (obj == null) {
+      throw new NullPointerException("Use toTMLBytes(Object, Type) to ensure "
+          + "correct null value serialization");
+    }
+    return toTMLBytes(obj, obj.getClass());
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into its equivalent TML representation as UTF-8 bytes.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @return UTF-8 encoded TML representation of {@code obj}
+   */
+  public byte[] toTMLBytes(Object obj, Type typeOfObj) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    toTML(obj, typeOfObj, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * This method serializes the specified object into its equivalent TML
+   * representation, encoded as UTF-8, and writes it to {@code channel}. This
+   * method should be used when the specified object is not a generic type;
+   * otherwise use
+   * {@link #toTML(Object, Type, WritableByteChannel, TMLBufferPool)}.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @param channel
+   *          a blocking channel to write to. It is not closed.
+   * @param pool
+   *          the pool to take the output segments from
+   * @throws TMLIOException
+   *           if there was a problem writing to the channel
+   */
+  public void toTML(Object obj, WritableByteChannel channel,
+      TMLBufferPool pool) {
+    if (obj == null) {
+      throw new NullPointerException(
+          "Use toTML(Object, Type) to ensure correct null value serialization");
+    }
+    toTML(obj, obj.getClass(), channel, pool);
+  }
+
+  /**
+   * This method serializes the specified object, including those of generic
+   * types, into its equivalent TML representation, encoded as UTF-8, and
+   * writes it to {@code channel}. The output is collected in direct segments
+   * taken from {@code pool} and handed to the channel with a single gathering
+   * write, and the segments are returned to the pool afterwards.
+   * 
+   * @param obj
+   *          the object for which TML representation is to be created
+   * @param typeOfObj
+   *          the specific generic type of obj
+   * @param channel
+   *          a blocking channel to write to. It is not closed.
+   * @param pool
+   *          the pool to take the output segments from
+   * @throws TMLIOException
+   *           if there was a problem writing to the channel
+   */
+  public void toTML(Object obj, Type typeOfObj, WritableByteChannel channel,
+      TMLBufferPool pool) {
+    TMLPooledOutputStream out = new TMLPooledOutputStream(pool);
+    try {
+      toTML(obj, typeOfObj, out);
+      out.writeTo(channel);
+    } catch (IOException e) {
+      throw new TMLIOException(e);
+    } finally {
+      out.close();
+    }
+  }
+
   @SuppressWarnings("unchecked")
   private void toTML(Object obj, Type typeOfObj, TMLWriter writer) {
     writer.setOverrideSpaceEscapePolicy(overrideSpaceEscapePolicy);
@@ -601,6 +1088,30 @@ public class Juple {
     throw new IllegalArgumentException("Cannot serialize " + type);
   }
 
+  /**
+   * A {@link Writer} over an unsynchronized {@link StringBuilder}.
+   */
+  private static final class StringBuilderWriter extends Writer {
+    final StringBuilder builder = new StringBuilder();
+    boolean inUse;
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+      builder.append(buffer, offset, length);
+    }
+
+    @Override
+    public void write(String string, int offset, int length) {
+      builder.append(string, offset, offset + length);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
   static class FutureTypeAdapter<T> extends TMLTypeAdapter<T> {
     private TMLTypeAdapter<T> delegate;
 
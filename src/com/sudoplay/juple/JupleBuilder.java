@@ -114,6 +114,7 @@ public final class JupleBuilder {
 
   private SpaceEscapePolicy overrideSpaceEscapePolicy = null;
   private boolean enforceFiniteFloatingPointValues;
+  private boolean tabularCollections;
 
   public JupleBuilder setTimeFormat(String timeFormat) {
     this.timePattern = timeFormat;
@@ -221,6 +222,25 @@ public final class JupleBuilder {
     return this;
   }
 
+  /**
+   * Writes collections of objects that are serialized by reflection as
+   * tables: the field names are written once, in a header, followed by the
+   * field values of each object in header order. For example, a list of two
+   * points is written as {@code [[|x y][[1][2]][[3][4]]]} instead of
+   * {@code [[[x|1][y|2]][[x|3][y|4]]]}. Collections holding objects of
+   * a subtype of the element type are written as usual.
+   * 
+   * <p>
+   * Tables are always recognized when reading, so TML written with and
+   * without this option can be read by any {@code Juple} instance.
+   * 
+   * @return a reference to this {@code JupleBuilder} object for chaining
+   */
+  public JupleBuilder setTabularCollections() {
+    this.tabularCollections = true;
+    return this;
+  }
+
   /**
    * Formats the output TML in a more human readable manner.
    * 
@@ -391,7 +411,8 @@ public final class JupleBuilder {
     addTypeAdaptersForTime(timePattern, factories);
 
     return new Juple(excluder, instanceCreators, prettyPrinting, groupStrings,
-        factories, overrideSpaceEscapePolicy, enforceFiniteFloatingPointValues);
+        factories, overrideSpaceEscapePolicy, enforceFiniteFloatingPointValues,
+        tabularCollections);
 
   }
 
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.classparser;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * Selects which fields are bound when TML is deserialized. Fields outside of
+ * the selection are skipped without being read by their type adapters, and
+ * keep the value given to them by the object's constructor.
+ * 
+ * <p>
+ * A selection is built from field paths, the serialized field names of each
+ * level separated by a dot. Selecting a field selects all of its content, and
+ * selecting a path below a field prunes the object held by the field to the
+ * selected paths. The nested selection applies to every object the field
+ * holds, so it also prunes the elements of collections and arrays and the
+ * values of maps.
+ * 
+ * <pre>
+ * TMLFieldSelection selection = TMLFieldSelection.of(&quot;id&quot;,
+ *     &quot;owner.name&quot;, &quot;items.price&quot;);
+ * Order order = juple.fromTML(reader, Order.class, selection);
+ * </pre>
+ * 
+ * <p>
+ * Selections are immutable.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLFieldSelection {
+
+  /**
+   * Selected field names, mapped to the selection of their content or to null
+   * if all of the content is selected.
+   */
+  private final Map<String, TMLFieldSelection> fields;
+
+  private TMLFieldSelection(Map<String, TMLFieldSelection> fields) {
+    this.fields = fields;
+  }
+
+  /**
+   * Returns a selection of the given field paths. Each path is a sequence of
+   * serialized field names separated by a dot, such as
+   * {@code "owner.address.city"}. Use {@link #with(String, TMLFieldSelection)}
+   * for names that contain a dot.
+   * 
+   * @param paths
+   *          the field paths to select
+   * @return the selection
+   * @throws IllegalArgumentException
+   *           if a path contains an empty name
+   */
+  public static TMLFieldSelection of(String... paths) {
+    TMLContract.checkNotNull(paths);
+    Map<String, TMLFieldSelection> fields = new LinkedHashMap<String, TMLFieldSelection>();
+    for (String path : paths) {
+      add(fields, TMLContract.checkNotNull(path).split("\\.", -1));
+    }
+    return new TMLFieldSelection(fields);
+  }
+
+  private static void add(Map<String, TMLFieldSelection> fields, String[] names) {
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i];
+      TMLContract.checkArgument(name.length() > 0);
+      if (i == names.length - 1) {
+        fields.put(name, null);
+        return;
+      }
+      if (fields.containsKey(name)) {
+        TMLFieldSelection nested = fields.get(name);
+        if (nested == null) {
+          return; // all of the content is already selected
+        }
+        fields = nested.fields;
+      } else {
+        TMLFieldSelection nested = new TMLFieldSelection(
+            new LinkedHashMap<String, TMLFieldSelection>());
+        fields.put(name, nested);
+        fields = nested.fields;
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of this selection that also selects the field with the
+   * given name, pruned to {@code nested}. The name is used as is, without
+   * splitting it into a path. If the field is already selected, its selection
+   * is replaced.
+   * 
+   * @param name
+   *          the serialized field name
+   * @param nested
+   *          the selection of the field's content, or null to select all of it
+   * @return the new selection
+   */
+  public TMLFieldSelection with(String name, TMLFieldSelection nested) {
+    TMLContract.checkNotNull(name);
+    Map<String, TMLFieldSelection> copy = new LinkedHashMap<String, TMLFieldSelection>(
+        fields);
+    copy.put(name, nested);
+    return new TMLFieldSelection(copy);
+  }
+
+  /**
+   * @param name
+   *          the serialized field name
+   * @return true if the field is selected
+   */
+  public boolean contains(String name) {
+    return fields.containsKey(name);
+  }
+
+  /**
+   * Returns the selection of a selected field's content.
+   * 
+   * @param name
+   *          the serialized field name
+   * @return the selection of the field's content, or null if the field is not
+   *         selected or all of its content is selected
+   */
+  public TMLFieldSelection get(String name) {
+    return fields.get(name);
+  }
+
+  /**
+   * @return the names of the selected fields, in the order they were selected
+   */
+  public Set<String> getNames() {
+    return Collections.unmodifiableSet(fields.keySet());
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    append(sb, "", this);
+    return sb.toString();
+  }
+
+  private static void append(StringBuilder sb, String prefix,
+      TMLFieldSelection selection) {
+    for (Map.Entry<String, TMLFieldSelection> entry : selection.fields
+        .entrySet()) {
+      String path = prefix + entry.getKey();
+      if (entry.getValue() == null || entry.getValue().fields.isEmpty()) {
+        if (sb.length() > 0) sb.append(", ");
+        sb.append(path);
+      } else {
+        append(sb, path + ".", entry.getValue());
+      }
+    }
+  }
+
+}
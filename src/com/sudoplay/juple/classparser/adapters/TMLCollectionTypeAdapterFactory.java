@@ -59,14 +59,33 @@ import com.sudoplay.juple.stream.TMLWriter;
 
 /**
  * Adapt a homogeneous collection of objects.
+ * 
+ * <p>
+ * When tables are enabled, a collection of objects written by the reflective
+ * adapter, all of exactly the element type, is written as a table: a header
+ * list holding a divider and the field names, followed by one list per
+ * element holding only the field values, in header order. Tables are
+ * recognized when reading whether or not they are enabled for writing.
  */
 public final class TMLCollectionTypeAdapterFactory implements
     TMLTypeAdapterFactory {
   private final TMLConstructorConstructor constructorConstructor;
+  private final boolean writeTables;
 
   public TMLCollectionTypeAdapterFactory(
       TMLConstructorConstructor constructorConstructor) {
+    this(constructorConstructor, false);
+  }
+
+  /**
+   * @param constructorConstructor
+   * @param writeTables
+   *          true to write collections of reflected objects as tables
+   */
+  public TMLCollectionTypeAdapterFactory(
+      TMLConstructorConstructor constructorConstructor, boolean writeTables) {
     this.constructorConstructor = constructorConstructor;
+    this.writeTables = writeTables;
   }
 
   public <T> TMLTypeAdapter<T> create(Juple parser, TMLTypeToken<T> typeToken) {
@@ -90,15 +109,45 @@ public final class TMLCollectionTypeAdapterFactory implements
   }
 
   private final class Adapter<E> extends TMLTypeAdapter<Collection<E>> {
+    private final Juple parser;
+    private final TMLTypeToken<?> elementTypeToken;
     private final TMLTypeAdapter<E> elementTypeAdapter;
     private final TMLObjectConstructor<? extends Collection<E>> constructor;
 
+    /**
+     * The element adapter if it reflects over the element type, for reading
+     * and writing tables; otherwise null. Resolved on first use, because the
+     * element adapter of a recursive type is still unfinished when this
+     * adapter is created.
+     */
+    private TMLReflectiveTypeAdapterFactory.Adapter<E> tableAdapter;
+    private volatile boolean tableAdapterResolved = false;
+    private final Class<?> rawElementType;
+
     public Adapter(Juple parser, Type elementType,
         TMLTypeAdapter<E> elementTypeAdapter,
         TMLObjectConstructor<? extends Collection<E>> constructor) {
+      this.parser = parser;
+      this.elementTypeToken = TMLTypeToken.get(elementType);
       this.elementTypeAdapter = new TMLTypeAdapterRuntimeTypeWrapper<E>(parser,
           elementTypeAdapter, elementType);
       this.constructor = constructor;
+      this.rawElementType = TMLType.getRawType(elementType);
+    }
+
+    @SuppressWarnings("unchecked")
+    // the reflective adapter was created for the element type
+    private TMLReflectiveTypeAdapterFactory.Adapter<E> getTableAdapter() {
+      if (!tableAdapterResolved) {
+        // by now the cache holds the finished element adapter rather than
+        // the future that stood in for it during creation
+        TMLTypeAdapter<?> adapter = parser.getAdapter(elementTypeToken);
+        if (adapter instanceof TMLReflectiveTypeAdapterFactory.Adapter) {
+          tableAdapter = (TMLReflectiveTypeAdapterFactory.Adapter<E>) adapter;
+        }
+        tableAdapterResolved = true;
+      }
+      return tableAdapter;
     }
 
     public Collection<E> read(TMLReader in) throws IOException {
@@ -121,6 +170,22 @@ public final class TMLCollectionTypeAdapterFactory implements
       }
 
       int scope = in.getScope();
+      TMLReflectiveTypeAdapterFactory.Adapter<E> tableAdapter = getTableAdapter();
+      if (tableAdapter != null && token == TMLToken.BEGIN_LIST) {
+        // a table starts with a header list that starts with a divider
+        in.beginList();
+        if (in.peek() == TMLToken.DIVIDER) {
+          TMLReflectiveTypeAdapterFactory.BoundField[] columns = tableAdapter
+              .readHeader(in);
+          while (in.hasNextInScope(scope)) {
+            collection.add(tableAdapter.readRow(in, columns));
+          }
+          if (encapsulate) in.endList();
+          return collection;
+        }
+        collection.add(tableAdapter.readFields(in));
+        in.endList();
+      }
       while (in.hasNextInScope(scope)) {
         if (elementTypeAdapter.isArrayEncapsulate()) in.beginList();
         collection.add(elementTypeAdapter.read(in));
@@ -147,6 +212,16 @@ public final class TMLCollectionTypeAdapterFactory implements
         return;
       }
 
+      if (writeTables && isTable(collection)) {
+        TMLReflectiveTypeAdapterFactory.Adapter<E> tableAdapter = getTableAdapter();
+        tableAdapter.writeHeader(out);
+        for (E element : collection) {
+          tableAdapter.writeRow(out, element);
+        }
+        if (encapsulate) out.endList();
+        return;
+      }
+
       for (E element : collection) {
         if (((TMLTypeAdapterRuntimeTypeWrapper<E>) elementTypeAdapter)
             .isArrayEncapsulate(element)) out.beginList();
@@ -158,6 +233,23 @@ public final class TMLCollectionTypeAdapterFactory implements
       if (encapsulate) out.endList();
     }
 
+    /**
+     * Returns true if the collection can be written as a table: every element
+     * is null or exactly of the element type, so none would be written by the
+     * adapter of a subtype.
+     */
+    private boolean isTable(Collection<E> collection) {
+      if (getTableAdapter() == null) {
+        return false;
+      }
+      for (E element : collection) {
+        if (element != null && element.getClass() != rawElementType) {
+          return false;
+        }
+      }
+      return true;
+    }
+
     @Override
     public boolean isRootEncapsulate() {
       return false;
@@ -46,7 +46,6 @@ package com.sudoplay.juple.classparser.adapters;
 
 import java.io.IOException;
 import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -60,8 +59,8 @@ import com.sudoplay.juple.stream.TMLWriter;
 /**
  * Adapter for Date. Although this class appears stateless, it is not.
  * DateFormat captures its time zone and locale when it is created, which gives
- * this class state. DateFormat isn't thread safe either, so this class has to
- * synchronize its read and write methods.
+ * this class state. DateFormat isn't thread safe either, so each thread formats
+ * and parses with its own copy of the formats.
  * 
  * @author Inderjeet Singh (original for gson)
  * @author Joel Leitch (origianl for gson)
@@ -69,9 +68,9 @@ import com.sudoplay.juple.stream.TMLWriter;
  */
 public final class TMLDateTypeAdapter extends TMLTypeAdapter<Date> {
 
-  private final DateFormat enUsFormat;
-  private final DateFormat localFormat;
-  private final DateFormat iso8601Format;
+  private final TMLThreadLocalDateFormat enUsFormat;
+  private final TMLThreadLocalDateFormat localFormat;
+  private final TMLThreadLocalDateFormat iso8601Format;
 
   public TMLDateTypeAdapter() {
     this(DateFormat.getDateTimeInstance(DateFormat.DEFAULT, DateFormat.DEFAULT,
@@ -95,11 +94,12 @@ public final class TMLDateTypeAdapter extends TMLTypeAdapter<Date> {
   }
 
   public TMLDateTypeAdapter(DateFormat enUsFormat, DateFormat localFormat) {
-    this.enUsFormat = enUsFormat;
-    this.localFormat = localFormat;
-    this.iso8601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'",
+    this.enUsFormat = new TMLThreadLocalDateFormat(enUsFormat);
+    this.localFormat = new TMLThreadLocalDateFormat(localFormat);
+    DateFormat iso8601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'",
         Locale.US);
-    this.iso8601Format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    iso8601Format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    this.iso8601Format = new TMLThreadLocalDateFormat(iso8601Format);
   }
 
   @Override
@@ -112,22 +112,22 @@ public final class TMLDateTypeAdapter extends TMLTypeAdapter<Date> {
     return date;
   }
 
-  private synchronized Date deserializeToDate(String tml) {
-    try {
-      return localFormat.parse(tml);
-    } catch (ParseException ignored) {}
-    try {
-      return enUsFormat.parse(tml);
-    } catch (ParseException ignored) {}
-    try {
-      return iso8601Format.parse(tml);
-    } catch (ParseException e) {
-      throw new TMLSyntaxException(tml, e);
+  private Date deserializeToDate(String tml) {
+    Date date = localFormat.parse(tml);
+    if (date == null) {
+      date = enUsFormat.parse(tml);
     }
+    if (date == null) {
+      date = iso8601Format.parse(tml);
+    }
+    if (date == null) {
+      throw new TMLSyntaxException(tml);
+    }
+    return date;
   }
 
   @Override
-  public synchronized void write(TMLWriter out, Date value) throws IOException {
+  public void write(TMLWriter out, Date value) throws IOException {
     if (value == null) {
       out.nullValue();
       return;
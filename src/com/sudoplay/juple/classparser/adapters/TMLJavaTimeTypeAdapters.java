@@ -0,0 +1,325 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.classparser.adapters;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+
+import com.sudoplay.juple.error.TMLSyntaxException;
+import com.sudoplay.juple.stream.TMLReader;
+import com.sudoplay.juple.stream.TMLToken;
+import com.sudoplay.juple.stream.TMLWriter;
+
+/**
+ * Type adapters for the {@code java.time} types {@link Instant},
+ * {@link LocalDate}, {@link LocalDateTime} and {@link OffsetDateTime}.
+ * 
+ * <p>
+ * Values are written in their ISO-8601 form by {@code toString()}, which holds
+ * no shared state. Reading parses the common ISO-8601 shapes directly into the
+ * date and time fields, such as {@code 2013-06-21T18:30:05.125Z}, and only
+ * falls back to the type's {@code parse} method, and its
+ * {@link java.time.format.DateTimeFormatter}, for the rest.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLJavaTimeTypeAdapters {
+
+  private TMLJavaTimeTypeAdapters() {}
+
+  // ==========================================================================
+  // = Instant
+  // ==========================================================================
+
+  public static final TMLTypeAdapter<Instant> INSTANT = new TMLTypeAdapter<Instant>() {
+    @Override
+    public Instant read(TMLReader in) throws IOException {
+      if (in.peek() == TMLToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String tml = in.nextString();
+      try {
+        int length = tml.length();
+        if (length > 0 && tml.charAt(length - 1) == 'Z') {
+          LocalDateTime dateTime = parseLocalDateTime(tml, length - 1);
+          if (dateTime != null) {
+            return dateTime.toInstant(ZoneOffset.UTC);
+          }
+        }
+        return Instant.parse(tml);
+      } catch (DateTimeException e) {
+        throw new TMLSyntaxException(tml, e);
+      }
+    }
+
+    @Override
+    public void write(TMLWriter out, Instant value) throws IOException {
+      out.value(value == null ? null : value.toString());
+    }
+  };
+
+  public static final TMLTypeAdapterFactory INSTANT_FACTORY = TMLTypeAdapters
+      .newFactory(Instant.class, INSTANT);
+
+  // ==========================================================================
+  // = LocalDate
+  // ==========================================================================
+
+  public static final TMLTypeAdapter<LocalDate> LOCAL_DATE = new TMLTypeAdapter<LocalDate>() {
+    @Override
+    public LocalDate read(TMLReader in) throws IOException {
+      if (in.peek() == TMLToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String tml = in.nextString();
+      try {
+        LocalDate date = parseLocalDate(tml, tml.length());
+        return date != null ? date : LocalDate.parse(tml);
+      } catch (DateTimeException e) {
+        throw new TMLSyntaxException(tml, e);
+      }
+    }
+
+    @Override
+    public void write(TMLWriter out, LocalDate value) throws IOException {
+      out.value(value == null ? null : value.toString());
+    }
+  };
+
+  public static final TMLTypeAdapterFactory LOCAL_DATE_FACTORY = TMLTypeAdapters
+      .newFactory(LocalDate.class, LOCAL_DATE);
+
+  // ==========================================================================
+  // = LocalDateTime
+  // ==========================================================================
+
+  public static final TMLTypeAdapter<LocalDateTime> LOCAL_DATE_TIME = new TMLTypeAdapter<LocalDateTime>() {
+    @Override
+    public LocalDateTime read(TMLReader in) throws IOException {
+      if (in.peek() == TMLToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String tml = in.nextString();
+      try {
+        LocalDateTime dateTime = parseLocalDateTime(tml, tml.length());
+        return dateTime != null ? dateTime : LocalDateTime.parse(tml);
+      } catch (DateTimeException e) {
+        throw new TMLSyntaxException(tml, e);
+      }
+    }
+
+    @Override
+    public void write(TMLWriter out, LocalDateTime value) throws IOException {
+      out.value(value == null ? null : value.toString());
+    }
+  };
+
+  public static final TMLTypeAdapterFactory LOCAL_DATE_TIME_FACTORY = TMLTypeAdapters
+      .newFactory(LocalDateTime.class, LOCAL_DATE_TIME);
+
+  // ==========================================================================
+  // = OffsetDateTime
+  // ==========================================================================
+
+  public static final TMLTypeAdapter<OffsetDateTime> OFFSET_DATE_TIME = new TMLTypeAdapter<OffsetDateTime>() {
+    @Override
+    public OffsetDateTime read(TMLReader in) throws IOException {
+      if (in.peek() == TMLToken.NULL) {
+        in.nextNull();
+        return null;
+      }
+      String tml = in.nextString();
+      try {
+        OffsetDateTime dateTime = parseOffsetDateTime(tml);
+        return dateTime != null ? dateTime : OffsetDateTime.parse(tml);
+      } catch (DateTimeException e) {
+        throw new TMLSyntaxException(tml, e);
+      }
+    }
+
+    @Override
+    public void write(TMLWriter out, OffsetDateTime value) throws IOException {
+      out.value(value == null ? null : value.toString());
+    }
+  };
+
+  public static final TMLTypeAdapterFactory OFFSET_DATE_TIME_FACTORY = TMLTypeAdapters
+      .newFactory(OffsetDateTime.class, OFFSET_DATE_TIME);
+
+  // ==========================================================================
+  // = ISO-8601 parsing
+  // ==========================================================================
+
+  /**
+   * Parses {@code yyyy-MM-dd} from the first {@code end} chars of
+   * {@code text}.
+   * 
+   * @return the date, or null if the text has another shape
+   * @throws DateTimeException
+   *           if a field is out of range
+   */
+  private static LocalDate parseLocalDate(String text, int end) {
+    if (end != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+      return null;
+    }
+    int year = parseDigits(text, 0, 4);
+    int month = parseDigits(text, 5, 2);
+    int day = parseDigits(text, 8, 2);
+    if (year < 0 || month < 0 || day < 0) {
+      return null;
+    }
+    return LocalDate.of(year, month, day);
+  }
+
+  /**
+   * Parses {@code yyyy-MM-ddTHH:mm}, optionally followed by {@code :ss} and a
+   * fraction of one to nine digits, from the first {@code end} chars of
+   * {@code text}.
+   * 
+   * @return the date and time, or null if the text has another shape
+   * @throws DateTimeException
+   *           if a field is out of range
+   */
+  private static LocalDateTime parseLocalDateTime(String text, int end) {
+    if (end < 16 || text.charAt(4) != '-' || text.charAt(7) != '-'
+        || text.charAt(10) != 'T' || text.charAt(13) != ':') {
+      return null;
+    }
+    int year = parseDigits(text, 0, 4);
+    int month = parseDigits(text, 5, 2);
+    int day = parseDigits(text, 8, 2);
+    int hour = parseDigits(text, 11, 2);
+    int minute = parseDigits(text, 14, 2);
+    if (year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0) {
+      return null;
+    }
+
+    int second = 0;
+    int nano = 0;
+    if (end > 16) {
+      if (end < 19 || text.charAt(16) != ':') {
+        return null;
+      }
+      second = parseDigits(text, 17, 2);
+      if (second < 0) {
+        return null;
+      }
+      if (end > 19) {
+        int digits = end - 20;
+        if (text.charAt(19) != '.' || digits < 1 || digits > 9) {
+          return null;
+        }
+        nano = parseDigits(text, 20, digits);
+        if (nano < 0) {
+          return null;
+        }
+        for (int i = digits; i < 9; i++) {
+          nano *= 10;
+        }
+      }
+    }
+    return LocalDateTime.of(year, month, day, hour, minute, second, nano);
+  }
+
+  /**
+   * Parses a local date and time as {@link #parseLocalDateTime(String, int)}
+   * does, followed by {@code Z} or an offset of the form {@code +HH:mm}.
+   * 
+   * @return the date and time, or null if the text has another shape
+   * @throws DateTimeException
+   *           if a field is out of range
+   */
+  private static OffsetDateTime parseOffsetDateTime(String text) {
+    int length = text.length();
+    if (length > 0 && text.charAt(length - 1) == 'Z') {
+      LocalDateTime dateTime = parseLocalDateTime(text, length - 1);
+      return dateTime == null ? null : OffsetDateTime.of(dateTime,
+          ZoneOffset.UTC);
+    }
+
+    int start = length - 6;
+    if (start < 0 || text.charAt(start + 3) != ':') {
+      return null;
+    }
+    char sign = text.charAt(start);
+    int hours = parseDigits(text, start + 1, 2);
+    int minutes = parseDigits(text, start + 4, 2);
+    if ((sign != '+' && sign != '-') || hours < 0 || minutes < 0) {
+      return null;
+    }
+    LocalDateTime dateTime = parseLocalDateTime(text, start);
+    if (dateTime == null) {
+      return null;
+    }
+    ZoneOffset offset = sign == '+' ? ZoneOffset.ofHoursMinutes(hours, minutes)
+        : ZoneOffset.ofHoursMinutes(-hours, -minutes);
+    return OffsetDateTime.of(dateTime, offset);
+  }
+
+  /**
+   * @return the value of {@code count} decimal digits starting at
+   *         {@code start}, or -1 if one of the chars is not a digit
+   */
+  private static int parseDigits(String text, int start, int count) {
+    int value = 0;
+    for (int i = start, end = start + count; i < end; i++) {
+      int digit = text.charAt(i) - '0';
+      if (digit < 0 || digit > 9) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+}
@@ -47,18 +47,22 @@ package com.sudoplay.juple.classparser.adapters;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.sudoplay.juple.Juple;
 import com.sudoplay.juple.classparser.TMLConstructorConstructor;
 import com.sudoplay.juple.classparser.TMLExcluder;
+import com.sudoplay.juple.classparser.TMLFieldSelection;
 import com.sudoplay.juple.classparser.TMLObjectConstructor;
 import com.sudoplay.juple.classparser.TMLPrimitives;
 import com.sudoplay.juple.classparser.TMLType;
 import com.sudoplay.juple.classparser.TMLTypeToken;
 import com.sudoplay.juple.classparser.annotations.SerializedName;
 import com.sudoplay.juple.error.TMLSyntaxException;
+import com.sudoplay.juple.stream.TMLEncodedName;
 import com.sudoplay.juple.stream.TMLReader;
 import com.sudoplay.juple.stream.TMLToken;
 import com.sudoplay.juple.stream.TMLWriter;
@@ -180,11 +184,19 @@ public final class TMLReflectiveTypeAdapterFactory implements
 
   static abstract class BoundField {
     final String name;
+    final TMLEncodedName encodedName;
     final boolean serialized;
     final boolean deserialized;
 
+    /**
+     * The position of this field in its adapter's write order, or -1 if it is
+     * not serialized.
+     */
+    int writeIndex = -1;
+
     protected BoundField(String name, boolean serialized, boolean deserialized) {
       this.name = name;
+      this.encodedName = new TMLEncodedName(name);
       this.serialized = serialized;
       this.deserialized = deserialized;
     }
@@ -200,10 +212,24 @@ public final class TMLReflectiveTypeAdapterFactory implements
     private final TMLObjectConstructor<T> constructor;
     private final Map<String, BoundField> boundFields;
 
+    /**
+     * The serialized fields in the order {@link #write(TMLWriter, Object)}
+     * writes them, used to predict the next field name while reading.
+     */
+    private final BoundField[] writeOrder;
+
     private Adapter(TMLObjectConstructor<T> constructor,
         Map<String, BoundField> boundFields) {
       this.constructor = constructor;
       this.boundFields = boundFields;
+      List<BoundField> writeOrder = new ArrayList<BoundField>();
+      for (BoundField boundField : boundFields.values()) {
+        if (boundField.serialized) {
+          boundField.writeIndex = writeOrder.size();
+          writeOrder.add(boundField);
+        }
+      }
+      this.writeOrder = writeOrder.toArray(new BoundField[writeOrder.size()]);
     }
 
     @Override
@@ -211,36 +237,129 @@ public final class TMLReflectiveTypeAdapterFactory implements
 
       boolean encapsulate = !in.getAndClearImmediateFieldChild();
       if (encapsulate) in.beginList();
+      T instance = readFields(in);
+      if (encapsulate) in.endList();
+      return instance;
+    }
 
+    /**
+     * Reads the fields of an object from the list the reader is in, leaving
+     * the reader before the list's close delimiter.
+     */
+    T readFields(TMLReader in) throws IOException {
       TMLToken p = in.peek();
       if (p == TMLToken.NULL) {
         in.nextNull();
-        if (encapsulate) in.endList();
         return null;
       }
 
       T instance = constructor.construct();
 
       if (in.peek() == TMLToken.END_LIST) {
-        if (encapsulate) in.endList();
         return instance;
       }
 
+      TMLFieldSelection selection = in.getFieldSelection();
+      BoundField[] writeOrder = this.writeOrder;
+      int expected = 0;
       try {
         int scope = in.getScope();
         while (in.hasNextInScope(scope)) {
           in.beginList();
-          String name = in.nextName();
-          BoundField field = boundFields.get(name);
+          // documents are usually written by Juple, so try the field that
+          // follows the previous one before looking the name up
+          String name;
+          BoundField field;
+          if (expected < writeOrder.length
+              && in.nextNameIfEquals(writeOrder[expected].name)) {
+            field = writeOrder[expected++];
+            name = field.name;
+          } else {
+            name = in.nextName();
+            field = boundFields.get(name);
+            if (field != null) {
+              expected = field.writeIndex + 1;
+            }
+          }
           if (field == null || !field.deserialized) {
             in.skipRemaining();
             continue;
+          } else if (selection == null) {
+            field.read(in, instance);
+          } else if (selection.contains(name)) {
+            in.setFieldSelection(selection.get(name));
+            field.read(in, instance);
+            in.setFieldSelection(selection);
           } else {
+            in.skipRemaining();
+            continue;
+          }
+          in.endList();
+        }
+      } catch (IllegalStateException e) {
+        throw new TMLSyntaxException(e);
+      } catch (IllegalAccessException e) {
+        throw new AssertionError(e);
+      }
+      return instance;
+    }
+
+    /**
+     * Reads the header of a table written by {@link #writeHeader(TMLWriter)}
+     * from the list the reader is in, which must be at the header's divider,
+     * and consumes the header's close delimiter.
+     * 
+     * @return the field of each column, or null for columns naming fields that
+     *         are unknown or not deserialized
+     */
+    BoundField[] readHeader(TMLReader in) throws IOException {
+      in.consumeDivider();
+      List<BoundField> columns = new ArrayList<BoundField>();
+      int scope = in.getScope();
+      while (in.hasNextInScope(scope)) {
+        BoundField field = boundFields.get(in.nextString());
+        columns.add(field != null && field.deserialized ? field : null);
+      }
+      in.endList();
+      return columns.toArray(new BoundField[columns.size()]);
+    }
+
+    /**
+     * Reads one row of a table, written by
+     * {@link #writeRow(TMLWriter, Object)}, whose header has been read into
+     * {@code columns}.
+     */
+    T readRow(TMLReader in, BoundField[] columns) throws IOException {
+      in.beginList();
+      if (in.peek() == TMLToken.NULL) {
+        in.nextNull();
+        in.endList();
+        return null;
+      }
+
+      T instance = constructor.construct();
+
+      TMLFieldSelection selection = in.getFieldSelection();
+      try {
+        int scope = in.getScope();
+        for (int i = 0; in.hasNextInScope(scope); i++) {
+          BoundField field = i < columns.length ? columns[i] : null;
+          if (field == null
+              || (selection != null && !selection.contains(field.name))) {
+            in.skipNext();
+            continue;
+          }
+          in.beginList();
+          if (selection == null) {
             field.read(in, instance);
+          } else {
+            in.setFieldSelection(selection.get(field.name));
+            field.read(in, instance);
+            in.setFieldSelection(selection);
           }
           in.endList();
         }
-        if (encapsulate) in.endList();
+        in.endList();
       } catch (IllegalStateException e) {
         throw new TMLSyntaxException(e);
       } catch (IllegalAccessException e) {
@@ -264,8 +383,7 @@ public final class TMLReflectiveTypeAdapterFactory implements
       try {
         for (BoundField boundField : boundFields.values()) {
           if (boundField.serialized) {
-            out.beginList();
-            out.name(boundField.name);
+            out.beginField(boundField.encodedName);
             boundField.write(out, value);
             out.endList();
           }
@@ -276,6 +394,44 @@ public final class TMLReflectiveTypeAdapterFactory implements
       }
     }
 
+    /**
+     * Writes the header of a table of objects: a list that starts with a
+     * divider, followed by the names of the serialized fields in the order
+     * {@link #writeRow(TMLWriter, Object)} writes their values.
+     */
+    void writeHeader(TMLWriter out) throws IOException {
+      out.beginList();
+      out.divider();
+      for (BoundField boundField : writeOrder) {
+        out.value(boundField.name);
+      }
+      out.endList();
+    }
+
+    /**
+     * Writes one row of a table: a list holding the value of each serialized
+     * field in its own list, without the field names. A null object is
+     * written as a list holding a null.
+     */
+    void writeRow(TMLWriter out, T value) throws IOException {
+      out.beginList();
+      if (value == null) {
+        out.nullValue();
+        out.endList();
+        return;
+      }
+      try {
+        for (BoundField boundField : writeOrder) {
+          out.beginList();
+          boundField.write(out, value);
+          out.endList();
+        }
+      } catch (IllegalAccessException e) {
+        throw new AssertionError();
+      }
+      out.endList();
+    }
+
     @Override
     public boolean isRootEncapsulate() {
       return false;
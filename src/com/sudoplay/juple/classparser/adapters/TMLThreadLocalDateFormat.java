@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.classparser.adapters;
+
+import java.text.DateFormat;
+import java.text.ParsePosition;
+import java.util.Date;
+
+/**
+ * Gives each thread its own copy of a {@link DateFormat}. DateFormat isn't
+ * thread safe, so the date adapters used to synchronize on every read and
+ * write; with a copy per thread they need no lock at all.
+ * 
+ * <p>
+ * Each copy is cloned from the prototype on first use, so it keeps the
+ * prototype's pattern, locale and time zone.
+ * 
+ * @author Jason Taylor
+ */
+final class TMLThreadLocalDateFormat extends ThreadLocal<DateFormat> {
+
+  private final DateFormat prototype;
+
+  TMLThreadLocalDateFormat(DateFormat prototype) {
+    this.prototype = (DateFormat) prototype.clone();
+  }
+
+  @Override
+  protected DateFormat initialValue() {
+    return (DateFormat) prototype.clone();
+  }
+
+  /**
+   * Parses a date the way {@link DateFormat#parse(String)} does, but returns
+   * null instead of throwing when the text can't be parsed, so trying several
+   * formats in turn costs no exceptions.
+   * 
+   * @param text
+   * @return the parsed date, or null
+   */
+  Date parse(String text) {
+    return get().parse(text, new ParsePosition(0));
+  }
+
+  String format(Date date) {
+    return get().format(date);
+  }
+
+}
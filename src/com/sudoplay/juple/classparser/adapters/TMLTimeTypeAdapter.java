@@ -46,8 +46,6 @@ package com.sudoplay.juple.classparser.adapters;
 
 import java.io.IOException;
 import java.sql.Time;
-import java.text.DateFormat;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 
@@ -61,8 +59,8 @@ import com.sudoplay.juple.stream.TMLWriter;
 /**
  * Adapter for Time. Although this class appears stateless, it is not.
  * DateFormat captures its time zone and locale when it is created, which gives
- * this class state. DateFormat isn't thread safe either, so this class has to
- * synchronize its read and write methods.
+ * this class state. DateFormat isn't thread safe either, so each thread formats
+ * and parses with its own copy of the format.
  * 
  * @author unknown (original for gson)
  * @author Jason Taylor (modified for Juple)
@@ -77,32 +75,33 @@ public final class TMLTimeTypeAdapter extends TMLTypeAdapter<Time> {
     }
   };
 
-  private final DateFormat format;
+  private final TMLThreadLocalDateFormat format;
 
   public TMLTimeTypeAdapter() {
     this("hh:mm:ss a");
   }
 
   public TMLTimeTypeAdapter(String timePattern) {
-    this.format = new SimpleDateFormat(timePattern);
+    this.format = new TMLThreadLocalDateFormat(new SimpleDateFormat(
+        timePattern));
   }
 
   @Override
-  public synchronized Time read(TMLReader in) throws IOException {
+  public Time read(TMLReader in) throws IOException {
     if (in.peek() == TMLToken.NULL) {
       in.nextNull();
       return null;
     }
-    try {
-      Date date = format.parse(getAllStringsInScope(in));
-      return new Time(date.getTime());
-    } catch (ParseException e) {
-      throw new TMLSyntaxException(e);
+    String tml = getAllStringsInScope(in);
+    Date date = format.parse(tml);
+    if (date == null) {
+      throw new TMLSyntaxException(tml);
     }
+    return new Time(date.getTime());
   }
 
   @Override
-  public synchronized void write(TMLWriter out, Time value) throws IOException {
+  public void write(TMLWriter out, Time value) throws IOException {
     out.value(value == null ? null : format.format(value));
   }
 
@@ -661,7 +661,7 @@ public class TMLTypeAdapters {
       }
 
       try {
-        return Integer.parseInt(in.nextString());
+        return in.nextInt();
       } catch (NumberFormatException e) {
         throw new TMLSyntaxException(e);
       }
@@ -696,7 +696,7 @@ public class TMLTypeAdapters {
         return null;
       }
       try {
-        return (byte) Integer.parseInt(in.nextString());
+        return (byte) in.nextInt();
       } catch (NumberFormatException e) {
         throw new TMLSyntaxException(e);
       }
@@ -767,7 +767,7 @@ public class TMLTypeAdapters {
         return null;
       }
       try {
-        return (short) Integer.parseInt(in.nextString());
+        return (short) in.nextInt();
       } catch (NumberFormatException e) {
         throw new TMLSyntaxException(e);
       }
@@ -802,7 +802,7 @@ public class TMLTypeAdapters {
         return null;
       }
       try {
-        return Long.parseLong(in.nextString());
+        return in.nextLong();
       } catch (NumberFormatException e) {
         throw new TMLSyntaxException(e);
       }
@@ -872,7 +872,7 @@ public class TMLTypeAdapters {
         return null;
       }
       try {
-        return Double.parseDouble(in.nextString());
+        return in.nextDouble();
       } catch (NumberFormatException e) {
         throw new TMLSyntaxException(e);
       }
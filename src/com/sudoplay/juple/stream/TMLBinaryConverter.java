@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * Converts TML documents between the text and binary encodings. Data that a
+ * {@link TMLWriter} would have written for a long, double or boolean is
+ * converted to the typed binary value, and a data token that starts a list and
+ * is followed by a divider is written to the dictionary as a name, so text
+ * written by Juple converts to the same bytes that serializing the object with
+ * a {@link TMLBinaryWriter} produces. Every token reads back as the same text,
+ * so the conversion loses nothing; only the whitespace of the text is not
+ * kept.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLBinaryConverter {
+
+  private TMLBinaryConverter() {}
+
+  /**
+   * Converts one text TML document to the binary encoding. The streams are
+   * left open; the output is flushed.
+   * 
+   * @param in
+   *          the text to convert
+   * @param out
+   *          the stream to write the binary document to
+   * @throws IOException
+   *           if the text is not a valid document or an I/O error occurs
+   */
+  public static void textToBinary(Reader in, OutputStream out)
+      throws IOException {
+    copy(new TMLReader(in), new TMLBinaryWriter(out));
+    out.flush();
+  }
+
+  /**
+   * Converts one binary TML document to compact text. The streams are left
+   * open; the output is flushed.
+   * 
+   * @param in
+   *          the binary document to convert
+   * @param out
+   *          the writer to write the text to
+   * @throws IOException
+   *           if the input is not a valid document or an I/O error occurs
+   */
+  public static void binaryToText(InputStream in, Writer out)
+      throws IOException {
+    copy(new TMLBinaryReader(in), new TMLWriter(out));
+    out.flush();
+  }
+
+  /**
+   * Copies one document from a reader to a writer, token by token.
+   * 
+   * @param in
+   *          the reader, positioned before the document's outer list
+   * @param out
+   *          the writer, which must not have been written to
+   * @throws IOException
+   *           if the input is not a valid document or an I/O error occurs
+   */
+  public static void copy(TMLReader in, TMLWriter out) throws IOException {
+    int depth = 0;
+    boolean listStart = false;
+    do {
+      switch (in.peek()) {
+      case BEGIN_LIST:
+        in.beginList();
+        out.beginList();
+        depth++;
+        listStart = true;
+        continue;
+      case END_LIST:
+        in.endList();
+        out.endList();
+        depth--;
+        break;
+      case DIVIDER:
+        in.consumeDivider();
+        out.divider();
+        break;
+      case NULL:
+        in.nextNull();
+        out.nullValue();
+        break;
+      case NULL_ARRAY:
+        in.nextNullArray();
+        out.nullArrayValue();
+        break;
+      case DATA:
+        String data = in.nextString();
+        if (listStart && data.length() > 0 && data.indexOf(' ') == -1
+            && in.peek() == TMLToken.DIVIDER) {
+          in.consumeDivider();
+          out.name(data);
+        } else {
+          data(out, data);
+        }
+        break;
+      case EOF:
+        if (depth == 0) {
+          return; // an empty document
+        }
+        throw new IOException("End of input");
+      default:
+        throw new AssertionError();
+      }
+      listStart = false;
+    } while (depth > 0);
+  }
+
+  /**
+   * Writes the data as the typed value that writes the same text, if there is
+   * one.
+   */
+  private static void data(TMLWriter out, String data) throws IOException {
+    if (data.equals("true")) {
+      out.value(true);
+      return;
+    } else if (data.equals("false")) {
+      out.value(false);
+      return;
+    } else if (isNumeric(data)) {
+      char[] text = new char[TMLNumberFormat.MAX_CHARS];
+      try {
+        if (data.indexOf('.') == -1 && data.indexOf('E') == -1) {
+          long value = Long.parseLong(data);
+          if (data.equals(new String(text, 0, TMLNumberFormat.formatLong(
+              value, text, 0)))) {
+            out.value(value);
+            return;
+          }
+        } else {
+          double value = Double.parseDouble(data);
+          if (data.equals(new String(text, 0, TMLNumberFormat.formatDouble(
+              value, text, 0)))) {
+            out.value(value);
+            return;
+          }
+        }
+      } catch (NumberFormatException e) {
+        // not a number after all
+      }
+    }
+    out.value(data, SpaceEscapePolicy.FORCE_ESCAPE);
+  }
+
+  /**
+   * Returns true if the data is short enough and made of the characters of a
+   * written number.
+   */
+  private static boolean isNumeric(String data) {
+    int length = data.length();
+    if (length == 0 || length > TMLNumberFormat.MAX_CHARS) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      char c = data.charAt(i);
+      if ((c < '0' || c > '9') && c != '-' && c != '.' && c != 'E') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
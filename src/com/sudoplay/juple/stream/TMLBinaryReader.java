@@ -0,0 +1,667 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A {@link TMLReader} that reads the binary encoding described by
+ * {@link TMLBinaryTag} from an {@link InputStream}. Typed values read as
+ * {@link TMLToken#DATA} with the text a {@link TMLWriter} writes for them, so
+ * type adapters read from it exactly as they read from a text reader; the
+ * {@link #nextLong()}, {@link #nextInt()} and {@link #nextDouble()} methods
+ * return numbers written as numbers without going through text.
+ * 
+ * <p>
+ * Portions of this code have been derived from the google-gson source <a
+ * href="https://code.google.com/p/google-gson/"
+ * >https://code.google.com/p/google-gson/</a>.
+ * 
+ * @author Jesse Wilson (original for gson)
+ * @author Jason Taylor (modified for Juple)
+ */
+public class TMLBinaryReader extends TMLReader {
+
+  private static final Reader UNREADABLE_READER = new Reader() {
+    @Override
+    public int read(char[] buffer, int offset, int count) throws IOException {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void close() throws IOException {
+      throw new AssertionError();
+    }
+  };
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  /*
+   * The peeked tag, or one of these when there is no tag to report.
+   */
+  private static final int PEEKED_NONE = -1;
+  private static final int PEEKED_EOF = 0;
+
+  private final InputStream in;
+
+  private final byte[] buffer = new byte[8192];
+  private int pos = 0;
+  private int limit = 0;
+
+  /**
+   * The stream offset of the first byte in the buffer.
+   */
+  private int bufferStart = 0;
+
+  private boolean headerRead = false;
+
+  private int peeked = PEEKED_NONE;
+  private String peekedString;
+  private long peekedLong;
+  private double peekedDouble;
+  private float peekedFloat;
+
+  /**
+   * The names read so far, by dictionary index.
+   */
+  private final List<String> names = new ArrayList<String>();
+
+  private final char[] numberBuffer = new char[TMLNumberFormat.MAX_CHARS];
+
+  private int stackSize = 0;
+
+  private TMLToken lastToken = null;
+  private boolean immediateFieldChild = false;
+
+  public TMLBinaryReader(InputStream in) {
+    super(UNREADABLE_READER);
+    this.in = TMLContract.checkNotNull(in);
+  }
+
+  @Override
+  public void beginList() throws IOException {
+    expect(TMLToken.BEGIN_LIST);
+    stackSize++;
+    lastToken = TMLToken.BEGIN_LIST;
+  }
+
+  @Override
+  public void endList() throws IOException {
+    if (stackSize < 1) {
+      throw new IllegalStateException("END_LIST scope out of range at byte "
+          + getPosition());
+    }
+    expect(TMLToken.END_LIST);
+    stackSize--;
+    lastToken = TMLToken.END_LIST;
+    immediateFieldChild = false;
+    if (stackSize == 0 && peekTag() != PEEKED_EOF) {
+      peeked = PEEKED_EOF;
+      throw new IOException("Data remaining after document close at byte "
+          + getPosition());
+    }
+  }
+
+  @Override
+  public void consumeDivider() throws IOException {
+    expect(TMLToken.DIVIDER);
+    lastToken = TMLToken.DIVIDER;
+  }
+
+  @Override
+  public void nextNull() throws IOException {
+    expect(TMLToken.NULL);
+    lastToken = TMLToken.NULL;
+  }
+
+  @Override
+  public void nextNullArray() throws IOException {
+    expect(TMLToken.NULL_ARRAY);
+    lastToken = TMLToken.NULL_ARRAY;
+  }
+
+  @Override
+  public String nextName() throws IOException {
+    String name = nextString();
+    consumeDivider();
+    immediateFieldChild = true;
+    return name;
+  }
+
+  @Override
+  public boolean nextNameIfEquals(String name) throws IOException {
+    int p = peekTag();
+    if ((p != TMLBinaryTag.NAME && p != TMLBinaryTag.NAME_REF
+        && p != TMLBinaryTag.STRING) || !peekedString.equals(name)) {
+      return false;
+    }
+    nextName();
+    return true;
+  }
+
+  @Override
+  public String nextString() throws IOException {
+    int p = peekTag();
+    String result;
+    switch (p) {
+    case TMLBinaryTag.STRING:
+    case TMLBinaryTag.NAME:
+    case TMLBinaryTag.NAME_REF:
+      result = peekedString;
+      peekedString = null;
+      break;
+    case TMLBinaryTag.LONG:
+      result = new String(numberBuffer, 0, TMLNumberFormat.formatLong(
+          peekedLong, numberBuffer, 0));
+      break;
+    case TMLBinaryTag.DOUBLE:
+      result = new String(numberBuffer, 0, TMLNumberFormat.formatDouble(
+          peekedDouble, numberBuffer, 0));
+      break;
+    case TMLBinaryTag.FLOAT:
+      result = new String(numberBuffer, 0, TMLNumberFormat.formatFloat(
+          peekedFloat, numberBuffer, 0));
+      break;
+    case TMLBinaryTag.TRUE:
+      result = "true";
+      break;
+    case TMLBinaryTag.FALSE:
+      result = "false";
+      break;
+    default:
+      throw new IllegalStateException("Expected DATA but was " + peek()
+          + " at byte " + getPosition());
+    }
+    peeked = PEEKED_NONE;
+    lastToken = TMLToken.DATA;
+    return result;
+  }
+
+  /**
+   * Consumes the next data token and returns it as a long, without converting
+   * it to text if it was written as an integral number.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not a long
+   */
+  @Override
+  public long nextLong() throws IOException {
+    if (peekTag() == TMLBinaryTag.LONG) {
+      peeked = PEEKED_NONE;
+      lastToken = TMLToken.DATA;
+      return peekedLong;
+    }
+    return super.nextLong();
+  }
+
+  /**
+   * Consumes the next data token and returns it as an int, without converting
+   * it to text if it was written as an integral number in range.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not an int
+   */
+  @Override
+  public int nextInt() throws IOException {
+    if (peekTag() == TMLBinaryTag.LONG && (int) peekedLong == peekedLong) {
+      peeked = PEEKED_NONE;
+      lastToken = TMLToken.DATA;
+      return (int) peekedLong;
+    }
+    return super.nextInt();
+  }
+
+  /**
+   * Consumes the next data token and returns it as a double, without
+   * converting it to text if it was written as a double or an integral number.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not a number
+   */
+  @Override
+  public double nextDouble() throws IOException {
+    int p = peekTag();
+    if (p == TMLBinaryTag.DOUBLE) {
+      peeked = PEEKED_NONE;
+      lastToken = TMLToken.DATA;
+      return peekedDouble;
+    } else if (p == TMLBinaryTag.LONG) {
+      peeked = PEEKED_NONE;
+      lastToken = TMLToken.DATA;
+      return (double) peekedLong;
+    }
+    return super.nextDouble();
+  }
+
+  /**
+   * Returns the number of bytes consumed from the stream, including those of
+   * a peeked token.
+   */
+  @Override
+  public int getPosition() {
+    return bufferStart + pos;
+  }
+
+  @Override
+  public int getScope() {
+    return stackSize;
+  }
+
+  @Override
+  public boolean hasNextInScope(int scope) throws IOException {
+    if (scope < 1) {
+      throw new IllegalArgumentException("Expected scope > 0 but was scope="
+          + scope);
+    }
+    int p = peekTag();
+    return stackSize == scope && p != TMLBinaryTag.END_LIST
+        && p != PEEKED_EOF;
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    return peekTag() != PEEKED_EOF;
+  }
+
+  @Override
+  public void skipRemaining() throws IOException {
+    if (stackSize == 0) {
+      throw new IllegalStateException("Expected scope > 0");
+    }
+    // a peeked tag has already been read from the stream
+    int depth = 1;
+    int p = peeked;
+    peeked = PEEKED_NONE;
+    if (p == TMLBinaryTag.END_LIST) {
+      depth = 0;
+    } else if (p == TMLBinaryTag.BEGIN_LIST) {
+      depth = 2;
+    } else if (p == PEEKED_EOF) {
+      throw new EOFException("End of input at byte " + getPosition());
+    }
+    skipLists(depth);
+    stackSize--;
+    lastToken = TMLToken.END_LIST;
+  }
+
+  @Override
+  public void skipNext() throws IOException {
+    switch (peek()) {
+    case BEGIN_LIST:
+      peeked = PEEKED_NONE;
+      skipLists(1);
+      lastToken = TMLToken.END_LIST;
+      break;
+    case END_LIST:
+      endList();
+      break;
+    case NULL:
+      nextNull();
+      break;
+    case NULL_ARRAY:
+      nextNullArray();
+      break;
+    case DATA:
+      peeked = PEEKED_NONE;
+      peekedString = null;
+      lastToken = TMLToken.DATA;
+      break;
+    case DIVIDER:
+      consumeDivider();
+      break;
+    case EOF:
+      throw new IOException("End of input at byte " + getPosition());
+    default:
+      throw new AssertionError();
+    }
+  }
+
+  @Override
+  public TMLToken getLastToken() {
+    return lastToken;
+  }
+
+  @Override
+  public TMLToken peek() throws IOException {
+    switch (peekTag()) {
+    case PEEKED_EOF:
+      return TMLToken.EOF;
+    case TMLBinaryTag.BEGIN_LIST:
+      return TMLToken.BEGIN_LIST;
+    case TMLBinaryTag.END_LIST:
+      return TMLToken.END_LIST;
+    case TMLBinaryTag.DIVIDER:
+      return TMLToken.DIVIDER;
+    case TMLBinaryTag.NULL:
+      return TMLToken.NULL;
+    case TMLBinaryTag.NULL_ARRAY:
+      return TMLToken.NULL_ARRAY;
+    default:
+      return TMLToken.DATA;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    peeked = PEEKED_EOF;
+    peekedString = null;
+    stackSize = 0;
+    lastToken = TMLToken.EOF;
+    immediateFieldChild = false;
+    in.close();
+  }
+
+  @Override
+  public void assertFullConsumption() throws IOException {
+    if (stackSize > 0) {
+      throw new IOException("TML stream closed while still inside scope: "
+          + stackSize);
+    }
+    if (peekTag() != PEEKED_EOF) {
+      throw new IOException("Expected EOF but was " + peek()
+          + " on assertFullConsumption()");
+    }
+  }
+
+  @Override
+  public boolean isImmediateFieldChild() {
+    return immediateFieldChild;
+  }
+
+  @Override
+  public void clearImmediateFieldChild() {
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public boolean getAndClearImmediateFieldChild() {
+    boolean is = immediateFieldChild;
+    immediateFieldChild = false;
+    return is;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + " at byte " + getPosition();
+  }
+
+  private void expect(TMLToken expected) throws IOException {
+    TMLToken token = peek();
+    if (token != expected) {
+      throw new IllegalStateException("Expected " + expected + " but was "
+          + token + " at byte " + getPosition());
+    }
+    peeked = PEEKED_NONE;
+  }
+
+  /**
+   * Returns the next tag without consuming it, decoding its payload.
+   */
+  private int peekTag() throws IOException {
+    int p = peeked;
+    if (p == PEEKED_NONE) {
+      if (!headerRead) {
+        readHeader();
+      }
+      p = peeked = readTag();
+    }
+    return p;
+  }
+
+  private void readHeader() throws IOException {
+    headerRead = true;
+    if (!fill(1)) {
+      return; // an empty stream is an empty document
+    }
+    if (!fill(TMLBinaryTag.MAGIC.length + 1)) {
+      throw new EOFException("End of input at byte " + getPosition());
+    }
+    for (int i = 0; i < TMLBinaryTag.MAGIC.length; i++) {
+      if (buffer[pos++] != TMLBinaryTag.MAGIC[i]) {
+        throw new IOException("Not a binary TML document");
+      }
+    }
+    int version = buffer[pos++] & 0xFF;
+    if (version != TMLBinaryTag.VERSION) {
+      throw new IOException("Unsupported binary TML version " + version);
+    }
+  }
+
+  /**
+   * Reads the next tag and its payload, or returns {@link #PEEKED_EOF} at the
+   * end of the stream.
+   */
+  private int readTag() throws IOException {
+    if (pos == limit && !fill(1)) {
+      return PEEKED_EOF;
+    }
+    int tag = buffer[pos++] & 0xFF;
+    switch (tag) {
+    case TMLBinaryTag.BEGIN_LIST:
+    case TMLBinaryTag.END_LIST:
+    case TMLBinaryTag.DIVIDER:
+    case TMLBinaryTag.NULL:
+    case TMLBinaryTag.NULL_ARRAY:
+    case TMLBinaryTag.TRUE:
+    case TMLBinaryTag.FALSE:
+      break;
+    case TMLBinaryTag.STRING:
+      peekedString = readUtf8(readLength());
+      break;
+    case TMLBinaryTag.NAME:
+      peekedString = readUtf8(readLength());
+      names.add(peekedString);
+      break;
+    case TMLBinaryTag.NAME_REF:
+      int index = readLength();
+      if (index >= names.size()) {
+        throw new IOException("Unknown name reference " + index + " at byte "
+            + getPosition());
+      }
+      peekedString = names.get(index);
+      break;
+    case TMLBinaryTag.LONG:
+      long zigzag = readVarint();
+      peekedLong = (zigzag >>> 1) ^ -(zigzag & 1);
+      break;
+    case TMLBinaryTag.DOUBLE:
+      require(8);
+      long bits = 0;
+      for (int i = 0; i < 8; i++) {
+        bits = bits << 8 | (buffer[pos++] & 0xFF);
+      }
+      peekedDouble = Double.longBitsToDouble(bits);
+      break;
+    case TMLBinaryTag.FLOAT:
+      require(4);
+      int floatBits = 0;
+      for (int i = 0; i < 4; i++) {
+        floatBits = floatBits << 8 | (buffer[pos++] & 0xFF);
+      }
+      peekedFloat = Float.intBitsToFloat(floatBits);
+      break;
+    default:
+      throw new IOException("Unknown tag " + tag + " at byte "
+          + (getPosition() - 1));
+    }
+    return tag;
+  }
+
+  /**
+   * Consumes tags up to and including the end of the given number of open
+   * lists. Names are still added to the dictionary; other payloads are not
+   * decoded.
+   */
+  private void skipLists(int depth) throws IOException {
+    while (depth > 0) {
+      if (pos == limit && !fill(1)) {
+        throw new EOFException("End of input at byte " + getPosition());
+      }
+      int tag = buffer[pos++] & 0xFF;
+      switch (tag) {
+      case TMLBinaryTag.BEGIN_LIST:
+        depth++;
+        break;
+      case TMLBinaryTag.END_LIST:
+        depth--;
+        break;
+      case TMLBinaryTag.STRING:
+        skip(readLength());
+        break;
+      case TMLBinaryTag.LONG:
+        readVarint();
+        break;
+      case TMLBinaryTag.DOUBLE:
+        skip(8);
+        break;
+      case TMLBinaryTag.FLOAT:
+        skip(4);
+        break;
+      default:
+        pos--;
+        readTag();
+      }
+    }
+    peekedString = null;
+  }
+
+  private int readLength() throws IOException {
+    long value = readVarint();
+    if (value < 0 || value > Integer.MAX_VALUE) {
+      throw new IOException("Length out of range at byte " + getPosition());
+    }
+    return (int) value;
+  }
+
+  private long readVarint() throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (pos == limit && !fill(1)) {
+        throw new EOFException("End of input at byte " + getPosition());
+      }
+      byte b = buffer[pos++];
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint at byte " + getPosition());
+  }
+
+  private String readUtf8(int length) throws IOException {
+    if (length <= buffer.length) {
+      require(length);
+      String result = new String(buffer, pos, length, UTF_8);
+      pos += length;
+      return result;
+    }
+    // the length has not been checked against the input, so grow the array
+    // only as bytes arrive instead of allocating all of it up front
+    byte[] bytes = new byte[buffer.length];
+    int count = 0;
+    while (count < length) {
+      if (pos == limit && !fill(1)) {
+        throw new EOFException("End of input at byte " + getPosition());
+      }
+      int n = Math.min(limit - pos, length - count);
+      if (count + n > bytes.length) {
+        bytes = Arrays.copyOf(bytes,
+            (int) Math.min(length, Math.max(count + n, 2L * bytes.length)));
+      }
+      System.arraycopy(buffer, pos, bytes, count, n);
+      pos += n;
+      count += n;
+    }
+    return new String(bytes, 0, length, UTF_8);
+  }
+
+  private void skip(int length) throws IOException {
+    while (length > limit - pos) {
+      length -= limit - pos;
+      pos = limit;
+      if (!fill(1)) {
+        throw new EOFException("End of input at byte " + getPosition());
+      }
+    }
+    pos += length;
+  }
+
+  private void require(int length) throws IOException {
+    if (limit - pos < length && !fill(length)) {
+      throw new EOFException("End of input at byte " + getPosition());
+    }
+  }
+
+  /**
+   * Reads until at least {@code minimum} bytes are buffered, returning false
+   * if the stream ends first.
+   */
+  private boolean fill(int minimum) throws IOException {
+    if (pos > 0) {
+      bufferStart += pos;
+      limit -= pos;
+      System.arraycopy(buffer, pos, buffer, 0, limit);
+      pos = 0;
+    }
+    while (limit < minimum) {
+      int read = in.read(buffer, limit, buffer.length - limit);
+      if (read == -1) {
+        return false;
+      }
+      limit += read;
+    }
+    return true;
+  }
+
+}
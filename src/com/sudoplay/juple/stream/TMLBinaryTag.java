@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+/**
+ * The binary TML encoding written by {@link TMLBinaryWriter} and read by
+ * {@link TMLBinaryReader}. A document starts with the {@link #MAGIC} bytes and
+ * the {@link #VERSION}, followed by one tag byte per token. Tags are
+ * followed by:
+ * 
+ * <ul>
+ * <li>{@link #STRING}, {@link #NAME}: the length of the UTF-8 bytes as an
+ * unsigned varint, then the bytes. A name is added to the document's name
+ * dictionary.</li>
+ * <li>{@link #NAME_REF}: the dictionary index of a name written earlier, as an
+ * unsigned varint.</li>
+ * <li>{@link #LONG}: the zig-zag encoded value as a varint.</li>
+ * <li>{@link #DOUBLE}, {@link #FLOAT}: the IEEE 754 bits, big-endian.</li>
+ * </ul>
+ * 
+ * All the value tags read as {@link TMLToken#DATA}, with the same text the
+ * {@link TMLWriter} writes for them.
+ * 
+ * @author Jason Taylor
+ */
+final class TMLBinaryTag {
+
+  static final byte[] MAGIC = { 'T', 'M', 'L', 'B' };
+  static final int VERSION = 1;
+
+  static final int BEGIN_LIST = 1;
+  static final int END_LIST = 2;
+  static final int DIVIDER = 3;
+  static final int NULL = 4;
+  static final int NULL_ARRAY = 5;
+  static final int STRING = 6;
+  static final int NAME = 7;
+  static final int NAME_REF = 8;
+  static final int LONG = 9;
+  static final int DOUBLE = 10;
+  static final int FLOAT = 11;
+  static final int TRUE = 12;
+  static final int FALSE = 13;
+
+  private TMLBinaryTag() {}
+
+}
@@ -0,0 +1,529 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A {@link TMLWriter} that writes the binary encoding described by
+ * {@link TMLBinaryTag} to an {@link OutputStream}. Type adapters write to it
+ * exactly as they write to a text writer; numbers and booleans are written as
+ * typed values instead of text, and names after their first use are written as
+ * references into the document's name dictionary. The tokens written read back
+ * from a {@link TMLBinaryReader} as the same tokens a {@link TMLReader} reads
+ * from the text the same calls would have written.
+ * 
+ * <p>
+ * Output is buffered and passed to the stream when the outer list is closed,
+ * or when the writer is flushed.
+ * 
+ * @author Jason Taylor
+ */
+public class TMLBinaryWriter extends TMLWriter {
+
+  private static final Writer UNWRITABLE_WRITER = new Writer() {
+    @Override
+    public void write(char[] buffer, int offset, int counter) {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void close() throws IOException {
+      throw new AssertionError();
+    }
+  };
+
+  private final OutputStream out;
+
+  private final byte[] bytes = new byte[8192];
+  private int position = 0;
+
+  /**
+   * The names written so far, by dictionary index.
+   */
+  private final Map<String, Integer> names = new HashMap<String, Integer>();
+
+  private boolean started = false;
+  private int depth = 0;
+
+  private TMLToken lastToken = null;
+  private String deferredName;
+  private boolean immediateFieldChild = false;
+
+  private SpaceEscapePolicy overrideSpaceEscapePolicy = null;
+  private boolean enforceFiniteFloatingPointValues = false;
+
+  public TMLBinaryWriter(OutputStream out) {
+    super(UNWRITABLE_WRITER);
+    this.out = TMLContract.checkNotNull(out);
+  }
+
+  @Override
+  public TMLWriter beginList() throws IOException {
+    assertNotClosed();
+    writeDeferredName();
+    if (!started) {
+      ensure(TMLBinaryTag.MAGIC.length + 1);
+      System.arraycopy(TMLBinaryTag.MAGIC, 0, bytes, position,
+          TMLBinaryTag.MAGIC.length);
+      position += TMLBinaryTag.MAGIC.length;
+      bytes[position++] = TMLBinaryTag.VERSION;
+      started = true;
+    }
+    tag(TMLBinaryTag.BEGIN_LIST);
+    depth++;
+    lastToken = TMLToken.BEGIN_LIST;
+    return this;
+  }
+
+  @Override
+  public TMLWriter endList() throws IOException {
+    assertNotClosed();
+    writeDeferredName();
+    if (depth == 0) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    tag(TMLBinaryTag.END_LIST);
+    depth--;
+    immediateFieldChild = false;
+    if (depth == 0) {
+      drain();
+      lastToken = TMLToken.EOF;
+    } else {
+      lastToken = TMLToken.END_LIST;
+    }
+    return this;
+  }
+
+  @Override
+  public TMLWriter divider() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    if (deferredName != null) {
+      throw new IllegalStateException(
+          "Expected value, open delimiter or close delimiter");
+    }
+    tag(TMLBinaryTag.DIVIDER);
+    lastToken = TMLToken.DIVIDER;
+    return this;
+  }
+
+  @Override
+  public TMLWriter name(String name) throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    TMLContract.checkNotNull(name);
+    if (name.indexOf(' ') > -1) {
+      throw new IllegalArgumentException("Expected no spaces in string: "
+          + name);
+    }
+    // the last token is only BEGIN_LIST while the current list is empty
+    if (lastToken != TMLToken.BEGIN_LIST || deferredName != null) {
+      throw new IllegalStateException(
+          "Expected open delimiter before name, was " + lastToken);
+    }
+    deferredName = name;
+    immediateFieldChild = true;
+    return this;
+  }
+
+  @Override
+  public TMLWriter beginField(TMLEncodedName name) throws IOException {
+    beginList();
+    deferredName = name.getName();
+    immediateFieldChild = true;
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(String value) throws IOException {
+    return value(value, SpaceEscapePolicy.AUTO);
+  }
+
+  @Override
+  public TMLWriter value(String value, SpaceEscapePolicy escapeSpaces)
+      throws IOException {
+    if (overrideSpaceEscapePolicy != null)
+      escapeSpaces = overrideSpaceEscapePolicy;
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    if (value == null) {
+      return nullValue();
+    }
+    writeDeferredName();
+    boolean encodeSpaces = escapeSpaces == SpaceEscapePolicy.FORCE_ESCAPE
+        || (value.contains("  ") && escapeSpaces == SpaceEscapePolicy.AUTO);
+    if (encodeSpaces || value.indexOf(' ') == -1) {
+      string(TMLBinaryTag.STRING, value);
+    } else {
+      // unescaped spaces separate data elements in the written text
+      int start = 0;
+      int length = value.length();
+      for (int i = 0; i <= length; i++) {
+        if (i == length || value.charAt(i) == ' ') {
+          if (start < i) {
+            string(TMLBinaryTag.STRING, value.substring(start, i));
+          }
+          start = i + 1;
+        }
+      }
+    }
+    lastToken = TMLToken.DATA;
+    return this;
+  }
+
+  @Override
+  public TMLWriter nullValue() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    tag(TMLBinaryTag.NULL);
+    lastToken = TMLToken.NULL;
+    return this;
+  }
+
+  @Override
+  public TMLWriter nullArrayValue() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    tag(TMLBinaryTag.NULL_ARRAY);
+    lastToken = TMLToken.NULL_ARRAY;
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(boolean value) throws IOException {
+    beforeData();
+    tag(value ? TMLBinaryTag.TRUE : TMLBinaryTag.FALSE);
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(double value) throws IOException {
+    if (enforceFiniteFloatingPointValues) {
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    beforeData();
+    ensure(9);
+    bytes[position++] = TMLBinaryTag.DOUBLE;
+    long bits = Double.doubleToRawLongBits(value);
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      bytes[position++] = (byte) (bits >>> shift);
+    }
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(float value) throws IOException {
+    if (enforceFiniteFloatingPointValues) {
+      if (Float.isNaN(value) || Float.isInfinite(value)) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    beforeData();
+    ensure(5);
+    bytes[position++] = TMLBinaryTag.FLOAT;
+    int bits = Float.floatToRawIntBits(value);
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      bytes[position++] = (byte) (bits >>> shift);
+    }
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(long value) throws IOException {
+    beforeData();
+    ensure(11);
+    bytes[position++] = TMLBinaryTag.LONG;
+    varint((value << 1) ^ (value >> 63));
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      return value(value.longValue());
+    } else if (value instanceof Double) {
+      return value(value.doubleValue());
+    } else if (value instanceof Float) {
+      return value(value.floatValue());
+    }
+    String string = value.toString();
+    if (enforceFiniteFloatingPointValues) {
+      if ((string.equals("-Infinity") || string.equals("Infinity") || string
+          .equals("NaN"))) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    beforeData();
+    string(TMLBinaryTag.STRING, string);
+    return this;
+  }
+
+  /**
+   * Passes all buffered bytes to the underlying {@link OutputStream} and
+   * flushes that stream.
+   */
+  @Override
+  public void flush() throws IOException {
+    assertNotClosed();
+    drain();
+    out.flush();
+  }
+
+  /**
+   * Flushes and closes this writer and the underlying {@link OutputStream}.
+   * 
+   * @throws IOException
+   *           if the document is incomplete
+   */
+  @Override
+  public void close() throws IOException {
+    drain();
+    out.close();
+    if (depth > 0) {
+      throw new IllegalStateException("Document scope not resolved, scope="
+          + depth);
+    }
+    if (!started) {
+      throw new IllegalStateException("Document empty");
+    }
+    lastToken = TMLToken.EOF;
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public int getScope() {
+    return depth;
+  }
+
+  @Override
+  public TMLToken getLastToken() {
+    return lastToken;
+  }
+
+  @Override
+  public boolean hasUnresolvedName() {
+    return deferredName != null;
+  }
+
+  @Override
+  public boolean isImmediateFieldChild() {
+    return immediateFieldChild;
+  }
+
+  @Override
+  public void clearImmediateFieldChild() {
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public boolean getAndClearImmediateFieldChild() {
+    boolean is = immediateFieldChild;
+    immediateFieldChild = false;
+    return is;
+  }
+
+  @Override
+  public void setOverrideSpaceEscapePolicy(SpaceEscapePolicy policy) {
+    overrideSpaceEscapePolicy = policy;
+  }
+
+  @Override
+  public void clearOverrideSpaceEscapePolicy() {
+    overrideSpaceEscapePolicy = null;
+  }
+
+  @Override
+  public void setEnforceFiniteFloatingPointValues(boolean flag) {
+    enforceFiniteFloatingPointValues = flag;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  private void beforeData() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    lastToken = TMLToken.DATA;
+  }
+
+  private void writeDeferredName() throws IOException {
+    if (deferredName != null) {
+      Integer index = names.get(deferredName);
+      if (index == null) {
+        names.put(deferredName, names.size());
+        string(TMLBinaryTag.NAME, deferredName);
+      } else {
+        ensure(6);
+        bytes[position++] = TMLBinaryTag.NAME_REF;
+        varint(index);
+      }
+      tag(TMLBinaryTag.DIVIDER);
+      deferredName = null;
+    }
+  }
+
+  private void tag(int tag) throws IOException {
+    if (position == bytes.length) {
+      drain();
+    }
+    bytes[position++] = (byte) tag;
+  }
+
+  /**
+   * Writes the tag, the length of the string's UTF-8 encoding and the encoding.
+   * Unpaired surrogates are written as '?'.
+   */
+  private void string(int tag, String value) throws IOException {
+    int length = value.length();
+    int utf8Length = length;
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c >= 0x80) {
+        if (c < 0x800) {
+          utf8Length++;
+        } else if (Character.isHighSurrogate(c) && i + 1 < length
+            && Character.isLowSurrogate(value.charAt(i + 1))) {
+          // four bytes for the pair
+          utf8Length += 2;
+          i++;
+        } else if (!Character.isSurrogate(c)) {
+          utf8Length += 2;
+        }
+      }
+    }
+    ensure(6);
+    bytes[position++] = (byte) tag;
+    varint(utf8Length);
+    for (int i = 0; i < length; i++) {
+      if (bytes.length - position < 4) {
+        drain();
+      }
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        bytes[position++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xC0 | c >> 6);
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        bytes[position++] = (byte) (0xF0 | codePoint >> 18);
+        bytes[position++] = (byte) (0x80 | (codePoint >> 12 & 0x3F));
+        bytes[position++] = (byte) (0x80 | (codePoint >> 6 & 0x3F));
+        bytes[position++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        bytes[position++] = '?';
+      } else {
+        bytes[position++] = (byte) (0xE0 | c >> 12);
+        bytes[position++] = (byte) (0x80 | (c >> 6 & 0x3F));
+        bytes[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /**
+   * Writes the value as an unsigned varint, seven bits at a time, low bits
+   * first. The caller must ensure room for ten bytes.
+   */
+  private void varint(long value) {
+    while ((value & ~0x7FL) != 0) {
+      bytes[position++] = (byte) (value & 0x7F | 0x80);
+      value >>>= 7;
+    }
+    bytes[position++] = (byte) value;
+  }
+
+  private void ensure(int room) throws IOException {
+    if (bytes.length - position < room) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    if (position > 0) {
+      out.write(bytes, 0, position);
+      position = 0;
+    }
+  }
+
+  private void assertScopeGreaterThanZero() {
+    if (depth > 0) return;
+    throw new IllegalStateException(
+        "Invalid top level token, expected BEGIN_LIST");
+  }
+
+  private void assertNotClosed() {
+    if (started && depth == 0) {
+      throw new IllegalStateException("Document is closed");
+    }
+  }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A thread-safe pool of equally sized direct {@link ByteBuffer} segments, used
+ * by {@link TMLPooledOutputStream} to collect output without growing large
+ * contiguous buffers or allocating native memory per document. At most
+ * {@code maxPooled} idle segments are kept; segments released beyond that are
+ * left to the garbage collector.
+ * 
+ * @author Jason Taylor
+ */
+public class TMLBufferPool {
+
+  private final int segmentSize;
+  private final int maxPooled;
+  private final ArrayDeque<ByteBuffer> pooled;
+
+  private int inUse = 0;
+  private int peakInUse = 0;
+  private long acquireCount = 0;
+  private long allocationCount = 0;
+
+  /**
+   * @param segmentSize
+   *          capacity in bytes of each segment. Must be positive.
+   * @param maxPooled
+   *          the most idle segments to keep for reuse. May be zero.
+   */
+  public TMLBufferPool(int segmentSize, int maxPooled) {
+    TMLContract.checkArgument(segmentSize > 0);
+    TMLContract.checkArgument(maxPooled >= 0);
+    this.segmentSize = segmentSize;
+    this.maxPooled = maxPooled;
+    this.pooled = new ArrayDeque<ByteBuffer>(Math.min(maxPooled, 64));
+  }
+
+  /**
+   * Takes an idle segment from the pool, or allocates a new one if there is
+   * none.
+   * 
+   * @return an empty segment, positioned at zero with its limit at its
+   *         capacity
+   */
+  public synchronized ByteBuffer acquire() {
+    acquireCount++;
+    if (++inUse > peakInUse) {
+      peakInUse = inUse;
+    }
+    ByteBuffer segment = pooled.pollLast();
+    if (segment == null) {
+      allocationCount++;
+      return ByteBuffer.allocateDirect(segmentSize);
+    }
+    segment.clear();
+    return segment;
+  }
+
+  /**
+   * Returns a segment taken with {@link #acquire()} to the pool. The segment
+   * must not be used afterwards.
+   */
+  public synchronized void release(ByteBuffer segment) {
+    TMLContract.checkArgument(segment.capacity() == segmentSize
+        && segment.isDirect());
+    TMLContract.checkState(inUse > 0);
+    inUse--;
+    if (pooled.size() < maxPooled) {
+      pooled.addLast(segment);
+    }
+  }
+
+  public int getSegmentSize() {
+    return segmentSize;
+  }
+
+  public int getMaxPooled() {
+    return maxPooled;
+  }
+
+  /**
+   * @return the number of idle segments held by the pool
+   */
+  public synchronized int getPooledCount() {
+    return pooled.size();
+  }
+
+  /**
+   * @return the number of segments acquired and not yet released
+   */
+  public synchronized int getInUseCount() {
+    return inUse;
+  }
+
+  /**
+   * @return the most segments that have been in use at once
+   */
+  public synchronized int getPeakInUseCount() {
+    return peakInUse;
+  }
+
+  /**
+   * @return the number of calls to {@link #acquire()}
+   */
+  public synchronized long getAcquireCount() {
+    return acquireCount;
+  }
+
+  /**
+   * @return the number of segments allocated because the pool was empty
+   */
+  public synchronized long getAllocationCount() {
+    return allocationCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + "[segmentSize=" + segmentSize
+        + ", pooled=" + pooled.size() + "/" + maxPooled + ", inUse=" + inUse
+        + ", peakInUse=" + peakInUse + ", acquired=" + acquireCount
+        + ", allocated=" + allocationCount + "]";
+  }
+
+}
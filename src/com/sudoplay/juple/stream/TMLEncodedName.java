@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A field name encoded once for repeated use with
+ * {@link TMLWriter#beginField(TMLEncodedName)}. The open delimiter, the
+ * escaped name and the divider are rendered ahead of time for both compact
+ * and indented output, so writing a field costs a single write.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLEncodedName {
+
+  private final String name;
+  private final char[] compact;
+  private final char[] indented;
+
+  /**
+   * @param name
+   *          the field name. May not be null or contain spaces.
+   * @throws IllegalArgumentException
+   *           if the name contains a space
+   */
+  public TMLEncodedName(String name) {
+    TMLContract.checkNotNull(name);
+    if (name.indexOf(' ') > -1) {
+      throw new IllegalArgumentException("Expected no spaces in string: "
+          + name);
+    }
+    this.name = name;
+    String encoded = TMLWriter.encodeName(name);
+    this.compact = ("[" + encoded + "|").toCharArray();
+    this.indented = ("[" + encoded + " | ").toCharArray();
+  }
+
+  /**
+   * @return the unencoded name
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @param indent
+   *          true if the writer is indenting its output
+   * @return the open delimiter, name and divider as written by a
+   *         {@link TMLWriter}. Callers must not modify the returned array.
+   */
+  char[] getEncoded(boolean indent) {
+    return indent ? indented : compact;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+
+}
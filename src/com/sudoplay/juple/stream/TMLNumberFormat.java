@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.math.BigInteger;
+
+/**
+ * Formats numbers directly into a char array without creating intermediate
+ * strings. Integral values are written digit by digit. Floating point values
+ * are written with the shortest decimal that parses back to the same value,
+ * found with Raffaello Giulietti's Schubfach algorithm, and laid out the way
+ * {@link Double#toString(double)} lays out its digits.
+ * 
+ * @author Jason Taylor
+ */
+final class TMLNumberFormat {
+
+  /**
+   * The most chars any of the format methods writes.
+   */
+  static final int MAX_CHARS = 32;
+
+  private static final long[] POW10 = new long[19];
+  static {
+    POW10[0] = 1;
+    for (int i = 1; i < POW10.length; i++) {
+      POW10[i] = POW10[i - 1] * 10;
+    }
+  }
+
+  private static final char[] LONG_MIN_VALUE = Long.toString(Long.MIN_VALUE)
+      .toCharArray();
+
+  // double: precision, smallest exponent, smallest normal significand
+  private static final int D_P = 53;
+  private static final int D_Q_MIN = -1074;
+  private static final long D_C_MIN = 1L << (D_P - 1);
+  private static final long D_C_TINY = 3;
+
+  // float: precision, smallest exponent, smallest normal significand
+  private static final int F_P = 24;
+  private static final int F_Q_MIN = -149;
+  private static final int F_C_MIN = 1 << (F_P - 1);
+  private static final int F_C_TINY = 8;
+
+  private static final long MASK_63 = (1L << 63) - 1;
+  private static final long MASK_32 = (1L << 32) - 1;
+
+  /*
+   * For each k in [K_MIN, K_MAX], 10^-k scaled by a power of two into
+   * [2^125, 2^126), rounded up and split into its high and low 63 bits.
+   */
+  private static final int K_MIN = -324;
+  private static final int K_MAX = 292;
+  private static final long[] G1 = new long[K_MAX - K_MIN + 1];
+  private static final long[] G0 = new long[K_MAX - K_MIN + 1];
+  static {
+    BigInteger mask63 = BigInteger.valueOf(MASK_63);
+    for (int k = K_MIN; k <= K_MAX; k++) {
+      int e = -k;
+      int r = flog2pow10(e) - 125;
+      BigInteger g;
+      if (e >= 0) {
+        g = BigInteger.TEN.pow(e);
+        g = r >= 0 ? g.shiftRight(r) : g.shiftLeft(-r);
+      } else {
+        g = BigInteger.ONE.shiftLeft(-r).divide(BigInteger.TEN.pow(-e));
+      }
+      g = g.add(BigInteger.ONE);
+      G1[k - K_MIN] = g.shiftRight(63).longValue();
+      G0[k - K_MIN] = g.and(mask63).longValue();
+    }
+  }
+
+  private TMLNumberFormat() {}
+
+  /**
+   * Writes {@code value} in decimal.
+   * 
+   * @return the index after the last char written
+   */
+  static int formatLong(long value, char[] buffer, int offset) {
+    if (value == Long.MIN_VALUE) {
+      System.arraycopy(LONG_MIN_VALUE, 0, buffer, offset,
+          LONG_MIN_VALUE.length);
+      return offset + LONG_MIN_VALUE.length;
+    }
+    if (value < 0) {
+      buffer[offset++] = '-';
+      value = -value;
+    }
+    int end = offset + digitCount(value);
+    writeDigits(value, buffer, offset, end);
+    return end;
+  }
+
+  /**
+   * Writes the shortest decimal that parses back to {@code value}, using the
+   * same notation as {@link Double#toString(double)}.
+   * 
+   * @return the index after the last char written
+   */
+  static int formatDouble(double value, char[] buffer, int offset) {
+    long bits = Double.doubleToRawLongBits(value);
+    long t = bits & (D_C_MIN - 1);
+    int bq = (int) (bits >>> (D_P - 1)) & 0x7ff;
+    if (bq == 0x7ff) {
+      return special(t != 0, bits < 0, buffer, offset);
+    }
+    if (bits < 0) {
+      buffer[offset++] = '-';
+    }
+    if (bq != 0) {
+      int mq = -D_Q_MIN + 1 - bq;
+      long c = D_C_MIN | t;
+      if (0 < mq && mq < D_P) {
+        // integral values below 2^53 are their own shortest decimal
+        long f = c >> mq;
+        if (f << mq == c) {
+          return decimal(f, 0, buffer, offset);
+        }
+      }
+      return toDecimal(-mq, c, 0, buffer, offset);
+    }
+    if (t != 0) {
+      return t < D_C_TINY ? toDecimal(D_Q_MIN, 10 * t, -1, buffer, offset)
+          : toDecimal(D_Q_MIN, t, 0, buffer, offset);
+    }
+    return zero(buffer, offset);
+  }
+
+  /**
+   * Writes the shortest decimal that parses back to {@code value}, using the
+   * same notation as {@link Float#toString(float)}.
+   * 
+   * @return the index after the last char written
+   */
+  static int formatFloat(float value, char[] buffer, int offset) {
+    int bits = Float.floatToRawIntBits(value);
+    int t = bits & (F_C_MIN - 1);
+    int bq = (bits >>> (F_P - 1)) & 0xff;
+    if (bq == 0xff) {
+      return special(t != 0, bits < 0, buffer, offset);
+    }
+    if (bits < 0) {
+      buffer[offset++] = '-';
+    }
+    if (bq != 0) {
+      int mq = -F_Q_MIN + 1 - bq;
+      int c = F_C_MIN | t;
+      if (0 < mq && mq < F_P) {
+        int f = c >> mq;
+        if (f << mq == c) {
+          return decimal(f, 0, buffer, offset);
+        }
+      }
+      return toDecimal(-mq, c, 0, buffer, offset);
+    }
+    if (t != 0) {
+      return t < F_C_TINY ? toDecimal(F_Q_MIN, 10 * t, -1, buffer, offset)
+          : toDecimal(F_Q_MIN, t, 0, buffer, offset);
+    }
+    return zero(buffer, offset);
+  }
+
+  /**
+   * Finds the shortest decimal in the rounding interval of the double
+   * {@code c * 2^q} and writes it. {@code dk} corrects the exponent when
+   * {@code c} was scaled by ten.
+   */
+  private static int toDecimal(int q, long c, int dk, char[] buffer,
+      int offset) {
+    int out = (int) c & 1;
+    long cb = c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != D_C_MIN || q == D_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      // the interval below a power of two is half as wide
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 2;
+    long g1 = G1[k - K_MIN];
+    long g0 = G0[k - K_MIN];
+    long vb = rop(g1, g0, cb << h);
+    long vbl = rop(g1, g0, cbl << h);
+    long vbr = rop(g1, g0, cbr << h);
+    long s = vb >> 2;
+    if (s >= 100) {
+      long sp10 = s / 10 * 10;
+      long tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return decimal(upin ? sp10 : tp10, k + dk, buffer, offset);
+      }
+    }
+    long t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return decimal(uin ? s : t, k + dk, buffer, offset);
+    }
+    long cmp = vb - ((s + t) << 1);
+    return decimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk,
+        buffer, offset);
+  }
+
+  /**
+   * Finds the shortest decimal in the rounding interval of the float
+   * {@code c * 2^q} and writes it.
+   */
+  private static int toDecimal(int q, int c, int dk, char[] buffer,
+      int offset) {
+    int out = c & 1;
+    long cb = (long) c << 2;
+    long cbr = cb + 2;
+    long cbl;
+    int k;
+    if (c != F_C_MIN || q == F_Q_MIN) {
+      cbl = cb - 2;
+      k = flog10pow2(q);
+    } else {
+      cbl = cb - 1;
+      k = flog10threeQuartersPow2(q);
+    }
+    int h = q + flog2pow10(-k) + 33;
+    long g = G1[k - K_MIN] + 1;
+    int vb = rop(g, cb << h);
+    int vbl = rop(g, cbl << h);
+    int vbr = rop(g, cbr << h);
+    int s = vb >> 2;
+    if (s >= 100) {
+      int sp10 = s / 10 * 10;
+      int tp10 = sp10 + 10;
+      boolean upin = vbl + out <= sp10 << 2;
+      boolean wpin = (tp10 << 2) + out <= vbr;
+      if (upin != wpin) {
+        return decimal(upin ? sp10 : tp10, k + dk, buffer, offset);
+      }
+    }
+    int t = s + 1;
+    boolean uin = vbl + out <= s << 2;
+    boolean win = (t << 2) + out <= vbr;
+    if (uin != win) {
+      return decimal(uin ? s : t, k + dk, buffer, offset);
+    }
+    int cmp = vb - ((s + t) << 1);
+    return decimal(cmp < 0 || cmp == 0 && (s & 1) == 0 ? s : t, k + dk,
+        buffer, offset);
+  }
+
+  /**
+   * Rounds {@code g * cp / 2^127} to odd, where g is the 126 bit value
+   * {@code g1 * 2^63 + g0}.
+   */
+  private static long rop(long g1, long g0, long cp) {
+    long x1 = multiplyHigh(g0, cp);
+    long y0 = g1 * cp;
+    long y1 = multiplyHigh(g1, cp);
+    long z = (y0 >>> 1) + x1;
+    long vbp = y1 + (z >>> 63);
+    return vbp | ((z & MASK_63) + MASK_63) >>> 63;
+  }
+
+  /**
+   * Rounds {@code g * cp / 2^95} to odd.
+   */
+  private static int rop(long g, long cp) {
+    long x1 = multiplyHigh(g, cp);
+    long vbp = x1 >>> 31;
+    return (int) (vbp | ((x1 & MASK_32) + MASK_32) >>> 32);
+  }
+
+  /**
+   * Writes {@code f * 10^e}. Values in [10^-3, 10^7) are written in plain
+   * notation, others in computerized scientific notation.
+   */
+  private static int decimal(long f, int e, char[] buffer, int offset) {
+    while (f % 10 == 0) {
+      f /= 10;
+      e++;
+    }
+    int len = digitCount(f);
+    // the value is now 0.d1d2...dlen * 10^e
+    e += len;
+    if (0 < e && e <= 7) {
+      if (len <= e) {
+        writeDigits(f, buffer, offset, offset + len);
+        offset += len;
+        for (int i = len; i < e; i++) {
+          buffer[offset++] = '0';
+        }
+        buffer[offset++] = '.';
+        buffer[offset++] = '0';
+        return offset;
+      }
+      long pow = POW10[len - e];
+      writeDigits(f / pow, buffer, offset, offset + e);
+      offset += e;
+      buffer[offset++] = '.';
+      writeDigits(f % pow, buffer, offset, offset + len - e);
+      return offset + len - e;
+    }
+    if (-3 < e && e <= 0) {
+      buffer[offset++] = '0';
+      buffer[offset++] = '.';
+      for (int i = e; i < 0; i++) {
+        buffer[offset++] = '0';
+      }
+      writeDigits(f, buffer, offset, offset + len);
+      return offset + len;
+    }
+    long pow = POW10[len - 1];
+    buffer[offset++] = (char) ('0' + f / pow);
+    buffer[offset++] = '.';
+    if (len == 1) {
+      buffer[offset++] = '0';
+    } else {
+      writeDigits(f % pow, buffer, offset, offset + len - 1);
+      offset += len - 1;
+    }
+    buffer[offset++] = 'E';
+    return formatLong(e - 1, buffer, offset);
+  }
+
+  private static int zero(char[] buffer, int offset) {
+    buffer[offset++] = '0';
+    buffer[offset++] = '.';
+    buffer[offset++] = '0';
+    return offset;
+  }
+
+  private static int special(boolean nan, boolean negative, char[] buffer,
+      int offset) {
+    String s = nan ? "NaN" : negative ? "-Infinity" : "Infinity";
+    s.getChars(0, s.length(), buffer, offset);
+    return offset + s.length();
+  }
+
+  /**
+   * Returns the number of decimal digits in {@code value}, which may not be
+   * negative.
+   */
+  private static int digitCount(long value) {
+    int len = 1;
+    while (len < POW10.length && value >= POW10[len]) {
+      len++;
+    }
+    return len;
+  }
+
+  /**
+   * Writes the low {@code end - start} decimal digits of {@code value},
+   * zero-padded, into {@code buffer[start..end)}.
+   */
+  private static void writeDigits(long value, char[] buffer, int start,
+      int end) {
+    while (end > start) {
+      long q = value / 10;
+      buffer[--end] = (char) ('0' + (value - q * 10));
+      value = q;
+    }
+  }
+
+  /**
+   * Returns floor(e * log10(2)).
+   */
+  private static int flog10pow2(int e) {
+    return (int) (e * 661971961083L >> 41);
+  }
+
+  /**
+   * Returns floor(log10(3/4 * 2^e)).
+   */
+  private static int flog10threeQuartersPow2(int e) {
+    return (int) (e * 661971961083L + -274743187321L >> 41);
+  }
+
+  /**
+   * Returns floor(e * log2(10)).
+   */
+  private static int flog2pow10(int e) {
+    return (int) (e * 913124641741L >> 38);
+  }
+
+  /**
+   * Returns the high 64 bits of the 128 bit product of two signed longs.
+   */
+  private static long multiplyHigh(long x, long y) {
+    long x1 = x >> 32;
+    long x2 = x & 0xFFFFFFFFL;
+    long y1 = y >> 32;
+    long y2 = y & 0xFFFFFFFFL;
+    long z2 = x2 * y2;
+    long t = x1 * y2 + (z2 >>> 32);
+    long z1 = t & 0xFFFFFFFFL;
+    long z0 = t >> 32;
+    z1 += x2 * y1;
+    return x1 * y1 + z0 + (z1 >> 32);
+  }
+
+}
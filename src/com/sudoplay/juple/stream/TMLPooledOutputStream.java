@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * An {@link OutputStream} that collects its bytes in a chain of direct
+ * segments taken from a {@link TMLBufferPool}, and writes them to a channel
+ * with a gathering write. Use it with a {@link TMLUtf8Writer} to serialize
+ * into native memory without one large contiguous buffer.
+ * 
+ * <p>
+ * Closing the stream returns its segments to the pool, so it must be closed
+ * once its contents have been written. Instances are not thread-safe.
+ * 
+ * @author Jason Taylor
+ */
+public class TMLPooledOutputStream extends OutputStream {
+
+  private final TMLBufferPool pool;
+
+  private ByteBuffer[] segments = new ByteBuffer[8];
+  private int segmentCount = 0;
+  private ByteBuffer current = null;
+  private long size = 0;
+  private boolean closed = false;
+
+  public TMLPooledOutputStream(TMLBufferPool pool) {
+    this.pool = TMLContract.checkNotNull(pool);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    assertNotClosed();
+    if (current == null || !current.hasRemaining()) {
+      nextSegment();
+    }
+    current.put((byte) b);
+    size++;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    assertNotClosed();
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    size += len;
+    while (len > 0) {
+      if (current == null || !current.hasRemaining()) {
+        nextSegment();
+      }
+      int n = Math.min(len, current.remaining());
+      current.put(b, off, n);
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Writes everything written to this stream so far to {@code channel}. A
+   * {@link GatheringByteChannel} receives all segments in a single gathering
+   * write, repeated only if the channel accepts part of them. The channel
+   * should be in blocking mode.
+   * 
+   * @return the number of bytes written
+   */
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    assertNotClosed();
+    ByteBuffer[] buffers = new ByteBuffer[segmentCount];
+    for (int i = 0; i < segmentCount; i++) {
+      buffers[i] = segments[i].duplicate();
+      buffers[i].flip();
+    }
+    if (channel instanceof GatheringByteChannel) {
+      GatheringByteChannel gathering = (GatheringByteChannel) channel;
+      int first = 0;
+      long written = 0;
+      while (written < size) {
+        written += gathering.write(buffers, first, segmentCount - first);
+        while (first < segmentCount && !buffers[first].hasRemaining()) {
+          first++;
+        }
+      }
+    } else {
+      for (ByteBuffer buffer : buffers) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return the number of bytes written to this stream
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the number of pooled segments holding this stream's bytes
+   */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * Returns this stream's segments to the pool. Further writes throw an
+   * {@link IOException}; closing again has no effect.
+   */
+  @Override
+  public void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    for (int i = 0; i < segmentCount; i++) {
+      pool.release(segments[i]);
+      segments[i] = null;
+    }
+    segmentCount = 0;
+    current = null;
+  }
+
+  private void nextSegment() {
+    if (segmentCount == segments.length) {
+      ByteBuffer[] newSegments = new ByteBuffer[segmentCount * 2];
+      System.arraycopy(segments, 0, newSegments, 0, segmentCount);
+      segments = newSegments;
+    }
+    current = pool.acquire();
+    segments[segmentCount++] = current;
+  }
+
+  private void assertNotClosed() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+}
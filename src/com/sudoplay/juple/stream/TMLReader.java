@@ -48,6 +48,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.Reader;
 
+import com.sudoplay.juple.classparser.TMLFieldSelection;
 import com.sudoplay.juple.classparser.adapters.TMLReflectiveTypeAdapterFactory;
 import com.sudoplay.juple.error.TMLContract;
 
@@ -74,10 +75,36 @@ public class TMLReader implements Closeable {
   private static final int PEEKED_NULL = 6;
   private static final int PEEKED_NULL_ARRAY = 7;
 
+  /*
+   * Character classes for the scanning loops, indexed by char. Characters
+   * outside of the table are always literal.
+   */
+  private static final byte CLASS_LITERAL = 0;
+  private static final byte CLASS_WHITESPACE = 1;
+  private static final byte CLASS_NEWLINE = 2;
+  private static final byte CLASS_DELIMITER = 3;
+  private static final byte CLASS_ESCAPE = 4;
+  private static final byte[] CHAR_CLASS = new byte[128];
+  static {
+    CHAR_CLASS[' '] = CLASS_WHITESPACE;
+    CHAR_CLASS['\t'] = CLASS_WHITESPACE;
+    CHAR_CLASS['\r'] = CLASS_WHITESPACE;
+    CHAR_CLASS['\n'] = CLASS_NEWLINE;
+    CHAR_CLASS['['] = CLASS_DELIMITER;
+    CHAR_CLASS[']'] = CLASS_DELIMITER;
+    CHAR_CLASS['|'] = CLASS_DELIMITER;
+    CHAR_CLASS['\\'] = CLASS_ESCAPE;
+  }
+
   private final char[] buffer = new char[1024];
   private int pos = 0;
   private int lim = 0;
 
+  /**
+   * The number of characters read and discarded from the front of the buffer.
+   */
+  private int bufferStart = 0;
+
   private int lineNumber = 0;
   private int lineStart = 0;
 
@@ -96,6 +123,8 @@ public class TMLReader implements Closeable {
 
   private boolean immediateFieldChild = false;
 
+  private TMLFieldSelection fieldSelection;
+
   public TMLReader(Reader in) {
     TMLContract.checkNotNull(in);
     this.in = in;
@@ -237,6 +266,59 @@ public class TMLReader implements Closeable {
     return name;
   }
 
+  /**
+   * Consumes the next name if it is equal to {@code name}, as
+   * {@link #nextName()} would, and returns true. Otherwise nothing is consumed
+   * and false is returned, so the name can still be read with
+   * {@link #nextName()}.
+   *
+   * <p>
+   * The name is compared against the characters in the buffer without creating
+   * a string. A name written with escape sequences or broken by whitespace is
+   * never matched by this method, even if it decodes to {@code name}.
+   *
+   * @param name
+   *          the expected field name
+   * @return true if the name was consumed
+   * @throws IOException
+   */
+  public boolean nextNameIfEquals(String name) throws IOException {
+    int p = peeked;
+    if (p == PEEKED_NONE) {
+      p = doPeek();
+    }
+    if (p != PEEKED_DATA) {
+      return false;
+    }
+
+    int length = name.length();
+    if (lim - pos <= length
+        && (length >= buffer.length || !fillBuffer(length + 1))) {
+      return false;
+    }
+
+    char[] buffer = this.buffer;
+    for (int i = 0, b = pos; i < length; i++, b++) {
+      char c = buffer[b];
+      if (c != name.charAt(i)
+          || (c < CHAR_CLASS.length && CHAR_CLASS[c] != CLASS_LITERAL)) {
+        return false;
+      }
+    }
+    char end = buffer[pos + length];
+    if (end != ' ' && (end >= CHAR_CLASS.length
+        || CHAR_CLASS[end] != CLASS_DELIMITER)) {
+      return false;
+    }
+
+    pos += length;
+    peeked = PEEKED_NONE;
+    lastToken = PEEKED_DATA;
+    consumeDivider();
+    immediateFieldChild = true;
+    return true;
+  }
+
   /**
    * Consumes and returns the next string.
    * 
@@ -259,6 +341,36 @@ public class TMLReader implements Closeable {
     return _nextString();
   }
 
+  /**
+   * Consumes the next data token and returns it as a long.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not a long
+   */
+  public long nextLong() throws IOException {
+    return Long.parseLong(nextString());
+  }
+
+  /**
+   * Consumes the next data token and returns it as an int.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not an int
+   */
+  public int nextInt() throws IOException {
+    return Integer.parseInt(nextString());
+  }
+
+  /**
+   * Consumes the next data token and returns it as a double.
+   * 
+   * @throws NumberFormatException
+   *           if the data is not a number
+   */
+  public double nextDouble() throws IOException {
+    return Double.parseDouble(nextString());
+  }
+
   /**
    * Skips the next data token.
    * 
@@ -299,6 +411,10 @@ public class TMLReader implements Closeable {
       int start = p;
       while (p < l) {
         int c = buffer[p++];
+        if (c >= CHAR_CLASS.length || CHAR_CLASS[c] == CLASS_LITERAL) {
+          hashCode = (hashCode * 31) + c;
+          continue;
+        }
 
         switch (c) {
         case '\\':
@@ -338,8 +454,6 @@ public class TMLReader implements Closeable {
           l = lim;
           start = p;
           break;
-        default:
-          hashCode = (hashCode * 31) + c;
         }
       }
 
@@ -363,47 +477,70 @@ public class TMLReader implements Closeable {
   private void _skipString() throws IOException {
 
     char[] buffer = this.buffer;
-    int hashCode = 0;
     while (true) {
-      int p = pos;
-      int l = lim;
-      while (p < l) {
-        int c = buffer[p++];
+      int p = scanLiteral(buffer, pos, lim);
+      if (p == lim) {
+        pos = p;
+        if (!fillBuffer(1)) {
+          throw new IOException("End of input" + " at line " + getLineNumber()
+              + " column " + getColumnNumber());
+        }
+        continue;
+      }
 
-        switch (c) {
-        case '\\':
+      char c = buffer[p];
+      switch (CHAR_CLASS[c]) {
+      case CLASS_ESCAPE:
+        pos = p + 1;
+        skipEscapeCharacter();
+        break;
+      case CLASS_NEWLINE:
+        pos = p + 1;
+        lineNumber++;
+        lineStart = pos;
+        break;
+      case CLASS_WHITESPACE:
+        if (c == ' ') {
           pos = p;
-          skipEscapeCharacter();
-          p = pos;
-          l = lim;
-          break;
-        case ' ':
-        case '[':
-        case ']':
-        case '|':
-          pos = p - 1;
           return;
-        case '\n':
-          hashCode = (hashCode * 31) + c;
-          lineNumber++;
-          lineStart = p;
-        case '\r':
-        case '\t':
-          pos = p;
-          p = pos;
-          l = lim;
-          break;
-        default:
-          hashCode = (hashCode * 31) + c;
         }
+        pos = p + 1;
+        break;
+      default:
+        pos = p;
+        return;
       }
+    }
+  }
 
-      pos = p;
-      if (!fillBuffer(1)) {
-        throw new IOException("End of input" + " at line " + getLineNumber()
-            + " column " + getColumnNumber());
+  /**
+   * Returns the index of the first character in {@code buffer[p..l)} that is
+   * not literal, or {@code l} if the run of literal characters reaches the end
+   * of the buffered input.
+   */
+  private static int scanLiteral(char[] buffer, int p, int l) {
+    byte[] classes = CHAR_CLASS;
+    while (p < l) {
+      char c = buffer[p];
+      if (c < classes.length && classes[c] != CLASS_LITERAL) {
+        return p;
       }
+      p++;
     }
+    return l;
+  }
+
+  /**
+   * Returns the offset of the next character to be read, counted in characters
+   * from the beginning of the underlying reader. Peeking a delimiter consumes
+   * it, so after {@link #peek()} returns {@link TMLToken#BEGIN_LIST} the
+   * position is just past the open delimiter, while after it returns
+   * {@link TMLToken#DATA} the position is at the first character of the data.
+   * 
+   * @return the current position
+   */
+  public int getPosition() {
+    return bufferStart + pos;
   }
 
   /**
@@ -665,17 +802,22 @@ public class TMLReader implements Closeable {
       }
 
       int c = buffer[p++];
-      switch (c) {
-      case '\n':
+      if (c >= CHAR_CLASS.length) {
+        pos = p;
+        return c;
+      }
+      switch (CHAR_CLASS[c]) {
+      case CLASS_NEWLINE:
         lineNumber++;
         lineStart = p;
         continue;
-      case ' ':
-      case '\r':
-      case '\t':
+      case CLASS_WHITESPACE:
         continue;
-      case '|':
+      case CLASS_DELIMITER:
         pos = p;
+        if (c != '|') {
+          return c;
+        }
         if (p == l) {
           pos--;
           boolean charsLoaded = fillBuffer(2);
@@ -828,6 +970,7 @@ public class TMLReader implements Closeable {
   private boolean fillBuffer(int minimum) throws IOException {
     char[] buffer = this.buffer;
     lineStart -= pos;
+    bufferStart += pos;
     if (lim != pos) {
       lim -= pos;
       System.arraycopy(buffer, pos, buffer, 0, lim);
@@ -925,42 +1068,101 @@ public class TMLReader implements Closeable {
    */
   private void skipList(boolean atBeginList) throws IOException {
 
-    int count = atBeginList ? 0 : 1;
+    int p = peeked;
+    if (p == PEEKED_NONE) {
+      p = doPeek();
+    }
+    peeked = PEEKED_NONE;
 
-    do {
+    // the peeked token has already been consumed, unless it is data
+    int depth = 1;
+    if (p == PEEKED_BEGIN_LIST && !atBeginList) {
+      depth++;
+    } else if (p == PEEKED_END_LIST) {
+      depth--;
+    } else if (p == PEEKED_EOF) {
+      throw new IOException("End of input" + " at line " + getLineNumber()
+          + " column " + getColumnNumber());
+    }
 
-      int p = peeked;
-      if (p == PEEKED_NONE) {
-        p = doPeek();
-      }
+    if (depth > 0) {
+      skipToListEnd(depth);
+    }
+    if (!atBeginList) {
+      stackSize--;
+    }
+    lastToken = PEEKED_END_LIST;
+  }
 
-      if (p == PEEKED_BEGIN_LIST) {
-        push(TMLScope.EMPTY_LIST);
-        lastToken = PEEKED_BEGIN_LIST;
-        count++;
-      } else if (p == PEEKED_END_LIST) {
-        stackSize--;
-        lastToken = PEEKED_END_LIST;
-        count--;
-      } else {
-        findNonLiteralCharacter: do {
-          int i = 0;
-          for (; pos + i < lim; i++) {
-            switch (buffer[pos + i]) {
-            case '[':
-            case ']':
-              if (buffer[pos + i - 1] == '\\') {
-                continue; // ignore escaped control char
-              }
-              pos += i;
-              break findNonLiteralCharacter;
+  /**
+   * Advances the position past the close delimiter that ends the given number
+   * of open lists. Only the bracket depth is tracked; data is not tokenized,
+   * but escape sequences, line comments and line numbers are still honored.
+   * 
+   * @param depth
+   *          the number of lists to close
+   * @throws IOException
+   */
+  private void skipToListEnd(int depth) throws IOException {
+    char[] buffer = this.buffer;
+    while (pos < lim || fillBuffer(1)) {
+      int p = pos;
+      int l = lim;
+      while (p < l) {
+        char c = buffer[p++];
+        if (c >= CHAR_CLASS.length) {
+          continue;
+        }
+
+        switch (CHAR_CLASS[c]) {
+        case CLASS_LITERAL:
+        case CLASS_WHITESPACE:
+          continue;
+        case CLASS_NEWLINE:
+          lineNumber++;
+          lineStart = p;
+          continue;
+        case CLASS_ESCAPE:
+          if (p < l) {
+            p++; // ignore escaped char
+            continue;
+          }
+          break;
+        default:
+          if (c == '[') {
+            depth++;
+            continue;
+          } else if (c == ']') {
+            if (--depth == 0) {
+              pos = p;
+              return;
             }
+            continue;
+          } else if (p < l) {
+            if (buffer[p] == '|') {
+              // skip a || line comment
+              pos = p + 1;
+              skipToEndOfLine();
+              p = pos;
+              l = lim;
+            }
+            continue;
           }
-          pos += i;
-        } while (fillBuffer(1));
+          break;
+        }
+
+        // the escaped char or the second char of a comment is not buffered
+        pos = p - 1;
+        if (!fillBuffer(2)) {
+          pos = lim;
+        }
+        p = pos;
+        l = lim;
       }
-      peeked = PEEKED_NONE;
-    } while (count > 0);
+      pos = p;
+    }
+    throw new IOException("End of input" + " at line " + getLineNumber()
+        + " column " + getColumnNumber());
   }
 
   /**
@@ -991,4 +1193,26 @@ public class TMLReader implements Closeable {
     return is;
   }
 
+  /**
+   * Returns the selection of fields that the reflective type adapter binds
+   * for the object being read. Fields outside of the selection are skipped.
+   * 
+   * @return the field selection, or null if all fields are bound
+   */
+  public TMLFieldSelection getFieldSelection() {
+    return fieldSelection;
+  }
+
+  /**
+   * Sets the selection of fields to bind for the next object read. The
+   * reflective type adapter narrows the selection to each field's nested
+   * selection while the field is read, and restores it afterwards.
+   * 
+   * @param fieldSelection
+   *          the field selection, or null to bind all fields
+   */
+  public void setFieldSelection(TMLFieldSelection fieldSelection) {
+    this.fieldSelection = fieldSelection;
+  }
+
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A {@link TMLWriter} that encodes its output as UTF-8 bytes itself, instead
+ * of relying on an {@link java.io.OutputStreamWriter}. Runs of ASCII are
+ * copied a byte per char, other chars are encoded by hand and surrogate pairs
+ * are combined even when they are split between writes. Unpaired surrogates
+ * are written as {@code '?'}.
+ * 
+ * <p>
+ * Everything else, including indentation and {@link SpaceEscapePolicy}, works
+ * as it does for {@link TMLWriter}. Encoded bytes are buffered and passed to
+ * the stream when the buffer fills, when the document is complete, and on
+ * {@link #flush()} and {@link #close()}.
+ * 
+ * @author Jason Taylor
+ */
+public class TMLUtf8Writer extends TMLWriter {
+
+  private final Utf8Encoder encoder;
+
+  /**
+   * Creates a new instance that writes a UTF-8 encoded TML stream to
+   * {@code out}.
+   */
+  public TMLUtf8Writer(OutputStream out) {
+    this(new Utf8Encoder(TMLContract.checkNotNull(out)));
+  }
+
+  /**
+   * Creates a new instance that writes a UTF-8 encoded TML stream into
+   * {@code out}, starting at its position.
+   * 
+   * @throws java.nio.BufferOverflowException
+   *           when the output doesn't fit in the remaining space
+   */
+  public TMLUtf8Writer(ByteBuffer out) {
+    this(asOutputStream(TMLContract.checkNotNull(out)));
+  }
+
+  private TMLUtf8Writer(Utf8Encoder encoder) {
+    super(encoder);
+    this.encoder = encoder;
+  }
+
+  /**
+   * Passes the encoded document to the stream.
+   */
+  @Override
+  void documentComplete() throws IOException {
+    encoder.drain();
+  }
+
+  private static OutputStream asOutputStream(final ByteBuffer buffer) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) {
+        buffer.put((byte) b);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        buffer.put(b, off, len);
+      }
+    };
+  }
+
+  /**
+   * An unsynchronized {@link Writer} that encodes chars into a byte buffer
+   * and passes full buffers to an {@link OutputStream}.
+   */
+  private static final class Utf8Encoder extends Writer {
+
+    private final OutputStream out;
+    private final byte[] bytes = new byte[8192];
+    private int position = 0;
+    private final char[] chars = new char[1024];
+
+    /*
+     * A high surrogate whose low surrogate hasn't been written yet, or 0.
+     */
+    private char highSurrogate = 0;
+
+    Utf8Encoder(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length)
+        throws IOException {
+      int end = offset + length;
+      byte[] bytes = this.bytes;
+      while (offset < end) {
+        if (highSurrogate == 0) {
+          int p = position;
+          int stop = offset + Math.min(end - offset, bytes.length - p);
+          while (offset < stop) {
+            char c = chars[offset];
+            if (c >= 0x80) {
+              break;
+            }
+            bytes[p++] = (byte) c;
+            offset++;
+          }
+          position = p;
+          if (offset == end) {
+            break;
+          }
+          if (p == bytes.length) {
+            drain();
+            continue;
+          }
+        }
+        encode(chars[offset++]);
+      }
+    }
+
+    @Override
+    public void write(String string, int offset, int length)
+        throws IOException {
+      while (length > 0) {
+        int n = Math.min(length, chars.length);
+        string.getChars(offset, offset + n, chars, 0);
+        write(chars, 0, n);
+        offset += n;
+        length -= n;
+      }
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+      encode((char) c);
+    }
+
+    /**
+     * Encodes a single char, pairing it with a pending high surrogate.
+     */
+    private void encode(char c) throws IOException {
+      if (bytes.length - position < 4) {
+        drain();
+      }
+      if (highSurrogate != 0) {
+        char high = highSurrogate;
+        highSurrogate = 0;
+        if (Character.isLowSurrogate(c)) {
+          int codePoint = Character.toCodePoint(high, c);
+          bytes[position++] = (byte) (0xf0 | codePoint >> 18);
+          bytes[position++] = (byte) (0x80 | (codePoint >> 12 & 0x3f));
+          bytes[position++] = (byte) (0x80 | (codePoint >> 6 & 0x3f));
+          bytes[position++] = (byte) (0x80 | (codePoint & 0x3f));
+          return;
+        }
+        bytes[position++] = '?';
+      }
+      if (c < 0x80) {
+        bytes[position++] = (byte) c;
+      } else if (c < 0x800) {
+        bytes[position++] = (byte) (0xc0 | c >> 6);
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      } else if (Character.isHighSurrogate(c)) {
+        highSurrogate = c;
+      } else if (Character.isLowSurrogate(c)) {
+        bytes[position++] = '?';
+      } else {
+        bytes[position++] = (byte) (0xe0 | c >> 12);
+        bytes[position++] = (byte) (0x80 | (c >> 6 & 0x3f));
+        bytes[position++] = (byte) (0x80 | (c & 0x3f));
+      }
+    }
+
+    void drain() throws IOException {
+      if (position > 0) {
+        out.write(bytes, 0, position);
+        position = 0;
+      }
+    }
+
+    /**
+     * Passes the encoded bytes to the stream and flushes it. A trailing high
+     * surrogate stays pending until its low surrogate is written.
+     */
+    @Override
+    public void flush() throws IOException {
+      drain();
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (highSurrogate != 0) {
+        highSurrogate = 0;
+        encode('?');
+      }
+      drain();
+      out.close();
+    }
+  }
+
+}
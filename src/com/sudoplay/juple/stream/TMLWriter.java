@@ -68,6 +68,27 @@ public class TMLWriter implements Closeable, Flushable {
     REPLACEMENT_CHARS['\\'] = "\\\\";
   }
 
+  /*
+   * Bits returned by classify(String): the value has a character that must be
+   * escaped, has a space, or has two spaces in succession.
+   */
+  private static final int HAS_ESCAPE = 1;
+  private static final int HAS_SPACE = 2;
+  private static final int HAS_DOUBLE_SPACE = 4;
+
+  /*
+   * The classify(String) bit for each ASCII character.
+   */
+  private static final byte[] CHAR_FLAGS = new byte[128];
+  static {
+    for (int i = 0; i < 128; i++) {
+      if (REPLACEMENT_CHARS[i] != null) {
+        CHAR_FLAGS[i] = HAS_ESCAPE;
+      }
+    }
+    CHAR_FLAGS[' '] = HAS_SPACE;
+  }
+
   private TMLToken lastToken = null;
 
   private String indent;
@@ -76,6 +97,12 @@ public class TMLWriter implements Closeable, Flushable {
 
   private final Writer out;
 
+  /**
+   * Output is collected here and passed to {@link #out} in bulk.
+   */
+  private final char[] buffer = new char[1024];
+  private int count = 0;
+
   private int[] stack = new int[32];
   private int stackSize = 0;
   {
@@ -88,9 +115,10 @@ public class TMLWriter implements Closeable, Flushable {
   private boolean enforceFiniteFloatingPointValues = false;
 
   /**
-   * Creates a new instance that writes a TML-encoded stream to {@code out}. For
-   * best performance, ensure {@link Writer} is buffered; wrapping in
-   * {@link java.io.BufferedWriter BufferedWriter} if necessary.
+   * Creates a new instance that writes a TML-encoded stream to {@code out}.
+   * Output is buffered internally and passed to {@code out} in bulk when the
+   * buffer fills, when the document is complete, and on {@link #flush()} and
+   * {@link #close()}, so {@code out} doesn't need to be buffered.
    */
   public TMLWriter(Writer out) {
     TMLContract.checkNotNull(out);
@@ -150,7 +178,11 @@ public class TMLWriter implements Closeable, Flushable {
     if (peek() == TMLScope.EMPTY_DOCUMENT) {
       throw new IllegalStateException("Expected initial open delimiter");
     }
-    out.write(divider);
+    if (lastToken == TMLToken.DIVIDER && indent == null) {
+      // two adjacent dividers would start a comment
+      write(' ');
+    }
+    write(divider);
     lastToken = TMLToken.DIVIDER;
     return this;
   }
@@ -184,6 +216,29 @@ public class TMLWriter implements Closeable, Flushable {
     return this;
   }
 
+  /**
+   * Begins a new list and writes a pre-encoded field name followed by a
+   * divider. This is equivalent to calling {@link #beginList()} and
+   * {@link #name(String)}, but the name was validated and escaped when the
+   * {@link TMLEncodedName} was created, so it is written in one piece without
+   * checking the writer's state again. It is meant for type adapters that
+   * write many objects with the same fields.
+   * 
+   * @param name
+   *          the encoded name of the forthcoming value
+   * @return this writer
+   */
+  public TMLWriter beginField(TMLEncodedName name) throws IOException {
+    assertNotClosed();
+    writeDeferredName();
+    beforeValue(true);
+    push(TMLScope.EMPTY_LIST);
+    write(name.getEncoded(indent != null));
+    lastToken = TMLToken.DIVIDER;
+    immediateFieldChild = true;
+    return this;
+  }
+
   /**
    * Convenience method that calls {@link #value(String, SpaceEscapePolicy)}
    * with the AUTO option. Strings written with this method will only have their
@@ -229,7 +284,7 @@ public class TMLWriter implements Closeable, Flushable {
     assertScopeGreaterThanZero();
     writeDeferredName();
     beforeValue(false);
-    out.write("\\0");
+    write("\\0");
     lastToken = TMLToken.NULL;
     return this;
   }
@@ -244,7 +299,7 @@ public class TMLWriter implements Closeable, Flushable {
     assertScopeGreaterThanZero();
     writeDeferredName();
     beforeValue(false);
-    out.write("\\2");
+    write("\\2");
     lastToken = TMLToken.NULL_ARRAY;
     return this;
   }
@@ -259,7 +314,7 @@ public class TMLWriter implements Closeable, Flushable {
     assertScopeGreaterThanZero();
     writeDeferredName();
     beforeValue(false);
-    out.write(value ? "true" : "false");
+    write(value ? "true" : "false");
     lastToken = TMLToken.DATA;
     return this;
   }
@@ -283,7 +338,7 @@ public class TMLWriter implements Closeable, Flushable {
     }
     writeDeferredName();
     beforeValue(false);
-    out.write(Double.toString(value));
+    count = TMLNumberFormat.formatDouble(value, reserve(), count);
     lastToken = TMLToken.DATA;
     return this;
   }
@@ -306,7 +361,7 @@ public class TMLWriter implements Closeable, Flushable {
     }
     writeDeferredName();
     beforeValue(false);
-    out.write(Float.toString(value));
+    count = TMLNumberFormat.formatFloat(value, reserve(), count);
     lastToken = TMLToken.DATA;
     return this;
   }
@@ -321,7 +376,7 @@ public class TMLWriter implements Closeable, Flushable {
     assertScopeGreaterThanZero();
     writeDeferredName();
     beforeValue(false);
-    out.write(Long.toString(value));
+    count = TMLNumberFormat.formatLong(value, reserve(), count);
     lastToken = TMLToken.DATA;
     return this;
   }
@@ -341,6 +396,15 @@ public class TMLWriter implements Closeable, Flushable {
       return nullValue();
     }
 
+    if (value instanceof Integer || value instanceof Long
+        || value instanceof Short || value instanceof Byte) {
+      return value(value.longValue());
+    } else if (value instanceof Double) {
+      return value(value.doubleValue());
+    } else if (value instanceof Float) {
+      return value(value.floatValue());
+    }
+
     writeDeferredName();
     String string = value.toString();
     if (enforceFiniteFloatingPointValues) {
@@ -351,7 +415,7 @@ public class TMLWriter implements Closeable, Flushable {
       }
     }
     beforeValue(false);
-    out.append(string);
+    write(string);
     lastToken = TMLToken.DATA;
     return this;
   }
@@ -363,6 +427,7 @@ public class TMLWriter implements Closeable, Flushable {
   @Override
   public void flush() throws IOException {
     assertNotClosed();
+    flushBuffer();
     out.flush();
   }
 
@@ -374,6 +439,7 @@ public class TMLWriter implements Closeable, Flushable {
    */
   @Override
   public void close() throws IOException {
+    flushBuffer();
     out.close();
     int size = stackSize;
     if (size > 1) {
@@ -398,7 +464,7 @@ public class TMLWriter implements Closeable, Flushable {
     writeDeferredName();
     beforeValue(true);
     push(scope);
-    out.write(openDelimiter);
+    write(openDelimiter);
     lastToken = TMLToken.BEGIN_LIST;
     return this;
   }
@@ -420,9 +486,11 @@ public class TMLWriter implements Closeable, Flushable {
     if (context == nonempty && lastToken == TMLToken.END_LIST) {
       newline();
     }
-    out.write(closeBracket);
+    write(closeBracket);
     immediateFieldChild = false;
     if (stackSize == 1) {
+      flushBuffer();
+      documentComplete();
       stack[0] = TMLScope.CLOSED_DOCUMENT;
       stackSize = 1;
       lastToken = TMLToken.EOF;
@@ -482,7 +550,7 @@ public class TMLWriter implements Closeable, Flushable {
 
     case TMLScope.NONEMPTY_LIST: // another in list
       if ((lastToken == TMLToken.DATA || lastToken == TMLToken.NULL || lastToken == TMLToken.NULL_ARRAY)
-          && !newList) out.append(' ');
+          && !newList) write(' ');
       if (newList) newline();
       break;
 
@@ -494,12 +562,20 @@ public class TMLWriter implements Closeable, Flushable {
   private void string(String value, SpaceEscapePolicy escapeSpaces)
       throws IOException {
     if (value.length() == 0) {
-      out.write("\\1");
+      write("\\1");
+      lastToken = TMLToken.DATA;
+      return;
+    }
+    int flags = classify(value);
+    boolean encodeSpaces = (escapeSpaces == SpaceEscapePolicy.FORCE_ESCAPE
+        && (flags & HAS_SPACE) != 0)
+        || (escapeSpaces == SpaceEscapePolicy.AUTO
+        && (flags & HAS_DOUBLE_SPACE) != 0);
+    if ((flags & HAS_ESCAPE) == 0 && !encodeSpaces) {
+      write(value, 0, value.length());
       lastToken = TMLToken.DATA;
       return;
     }
-    boolean encodeSpaces = escapeSpaces == SpaceEscapePolicy.FORCE_ESCAPE
-        || (value.contains("  ") && escapeSpaces == SpaceEscapePolicy.AUTO);
     String[] replacements = REPLACEMENT_CHARS;
     int last = 0;
     int length = value.length();
@@ -521,22 +597,143 @@ public class TMLWriter implements Closeable, Flushable {
         continue;
       }
       if (last < i) {
-        out.write(value, last, i - last);
+        write(value, last, i - last);
       }
-      out.write(replacement);
+      write(replacement);
       last = i + 1;
     }
     if (last < length) {
-      out.write(value, last, length - last);
+      write(value, last, length - last);
     }
     lastToken = TMLToken.DATA;
   }
 
+  /**
+   * Scans a value once and returns its {@link #HAS_ESCAPE},
+   * {@link #HAS_SPACE} and {@link #HAS_DOUBLE_SPACE} bits.
+   */
+  static int classify(String value) {
+    byte[] charFlags = CHAR_FLAGS;
+    int flags = 0;
+    int previous = 0;
+    for (int i = 0, length = value.length(); i < length; i++) {
+      char c = value.charAt(i);
+      int f;
+      if (c < 128) {
+        f = charFlags[c];
+      } else if (c == '\u2028' || c == '\u2029') {
+        f = HAS_ESCAPE;
+      } else {
+        f = 0;
+      }
+      if ((f & previous & HAS_SPACE) != 0) {
+        flags |= HAS_DOUBLE_SPACE;
+      }
+      flags |= f;
+      previous = f;
+    }
+    return flags;
+  }
+
+  /**
+   * Escapes a name the way {@link #writeDeferredName()} writes it.
+   */
+  static String encodeName(String name) {
+    if (name.length() == 0) {
+      return "\\1";
+    }
+    if ((classify(name) & HAS_ESCAPE) == 0) {
+      return name;
+    }
+    StringBuilder sb = new StringBuilder(name.length());
+    for (int i = 0, length = name.length(); i < length; i++) {
+      char c = name.charAt(i);
+      String replacement = null;
+      if (c < 128) {
+        replacement = REPLACEMENT_CHARS[c];
+      } else if (c == '\u2028') {
+        replacement = "\\u2028";
+      } else if (c == '\u2029') {
+        replacement = "\\u2029";
+      }
+      if (replacement == null) {
+        sb.append(c);
+      } else {
+        sb.append(replacement);
+      }
+    }
+    return sb.toString();
+  }
+
+  private void write(char c) throws IOException {
+    if (count == buffer.length) {
+      flushBuffer();
+    }
+    buffer[count++] = c;
+  }
+
+  private void write(String string) throws IOException {
+    write(string, 0, string.length());
+  }
+
+  private void write(String string, int offset, int length)
+      throws IOException {
+    if (length > buffer.length - count) {
+      flushBuffer();
+      if (length > buffer.length) {
+        out.write(string, offset, length);
+        return;
+      }
+    }
+    string.getChars(offset, offset + length, buffer, count);
+    count += length;
+  }
+
+  private void write(char[] chars) throws IOException {
+    int length = chars.length;
+    if (length > buffer.length - count) {
+      flushBuffer();
+      if (length > buffer.length) {
+        out.write(chars);
+        return;
+      }
+    }
+    System.arraycopy(chars, 0, buffer, count, length);
+    count += length;
+  }
+
+  /**
+   * Makes room for {@link TMLNumberFormat#MAX_CHARS} chars at {@code count}
+   * and returns the buffer to format into.
+   */
+  private char[] reserve() throws IOException {
+    if (buffer.length - count < TMLNumberFormat.MAX_CHARS) {
+      flushBuffer();
+    }
+    return buffer;
+  }
+
+  /**
+   * Passes the buffered output to the underlying {@link Writer}.
+   */
+  private void flushBuffer() throws IOException {
+    if (count > 0) {
+      out.write(buffer, 0, count);
+      count = 0;
+    }
+  }
+
+  /**
+   * Called when the outer list has been closed and its output passed to the
+   * underlying {@link Writer}.
+   */
+  void documentComplete() throws IOException {}
+
   private void newline() throws IOException {
     if (indent == null) return;
-    out.write("\n");
+    write("\n");
     for (int i = 1, size = stackSize; i < size; i++) {
-      out.write(indent);
+      write(indent);
     }
   }
 
@@ -556,7 +753,7 @@ public class TMLWriter implements Closeable, Flushable {
   private void beforeName() throws IOException {
     int context = peek();
     if (context == TMLScope.NONEMPTY_LIST) { // not first in list
-      out.write(' ');
+      write(' ');
     } else if (context != TMLScope.EMPTY_LIST) { // not in a list!
       throw new IllegalStateException("Nesting problem.");
     }
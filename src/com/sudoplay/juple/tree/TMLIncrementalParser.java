@@ -0,0 +1,548 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.error.TMLIOException;
+
+/**
+ * Keeps a {@link TMLNode} tree in sync with a TML document that is edited in
+ * small steps, as in an editor, without parsing the whole document after
+ * every edit.
+ * 
+ * <p>
+ * The parser remembers the source span of every list in the tree. When the
+ * text is edited with {@link #edit(int, int, String)}, only the innermost
+ * list enclosing the edit is parsed again, and the new list replaces the old
+ * one in its parent. Lists inside it that lie outside the edited range are
+ * not parsed at all: the nodes built for them before are reused, so unchanged
+ * subtrees stay identical by reference. If the edit changes where the
+ * enclosing list ends, for example by adding or removing a delimiter, the
+ * next enclosing list is parsed instead, up to the whole document. An edit
+ * that adds or removes a newline or a comment delimiter can change how far a
+ * comment reaches, so the whole document is parsed again.
+ * 
+ * <p>
+ * The tree is updated in place and is built exactly as
+ * {@link TMLNodeTreeParser#parse(String)} would build it. It must not be
+ * frozen or modified by other means while the parser is in use.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLIncrementalParser {
+
+  private final TMLNodeTreeParser parser;
+  private final StringBuilder text;
+  private final Map<TMLNode, Span> spans = new IdentityHashMap<TMLNode, Span>();
+  private Span root;
+
+  /**
+   * Parses the supplied document.
+   * 
+   * @param text
+   * @see TMLNodeTreeParser#TMLNodeTreeParser()
+   * @throws TMLIOException
+   *           if the document can not be parsed
+   */
+  public TMLIncrementalParser(String text) {
+    this(text, false);
+  }
+
+  /**
+   * Parses the supplied document.
+   * 
+   * @param text
+   * @param ignoreDividers
+   * @see TMLNodeTreeParser#TMLNodeTreeParser(boolean)
+   * @throws TMLIOException
+   *           if the document can not be parsed
+   */
+  public TMLIncrementalParser(String text, boolean ignoreDividers) {
+    this.parser = new TMLNodeTreeParser(ignoreDividers);
+    this.text = new StringBuilder(TMLContract.checkNotNull(text));
+    parseDocument(null, -1, -1, 0);
+  }
+
+  /**
+   * @return the root of the tree
+   * @throws IllegalStateException
+   *           if the last edit left the document unparseable
+   */
+  public TMLNode getRoot() {
+    if (root == null) {
+      throw new IllegalStateException("Document is not valid");
+    }
+    return root.node;
+  }
+
+  /**
+   * @return the current text of the document
+   */
+  public String getText() {
+    return text.toString();
+  }
+
+  /**
+   * Returns the position of the open delimiter of the supplied list.
+   * 
+   * @param node
+   *          a list of the current tree
+   * @return the position, or -1 if the node was not parsed from a delimited
+   *         list of the current tree
+   */
+  public int getStart(TMLNode node) {
+    Span span = spans.get(node);
+    return span == null ? -1 : span.absoluteStart();
+  }
+
+  /**
+   * Returns the position just past the close delimiter of the supplied list.
+   * 
+   * @param node
+   *          a list of the current tree
+   * @return the position, or -1 if the node was not parsed from a delimited
+   *         list of the current tree
+   */
+  public int getEnd(TMLNode node) {
+    Span span = spans.get(node);
+    return span == null ? -1 : span.absoluteStart() + span.length;
+  }
+
+  /**
+   * Replaces {@code length} characters of the document beginning at
+   * {@code offset} with the supplied string and updates the tree.
+   * 
+   * <p>
+   * If the edited document can not be parsed, the exception is thrown and
+   * the tree is discarded; the next edit parses the whole document again.
+   * 
+   * @param offset
+   * @param length
+   * @param replacement
+   * @return the root of the updated tree
+   * @throws IndexOutOfBoundsException
+   *           if the range is not within the document
+   * @throws TMLIOException
+   *           if the edited document can not be parsed
+   */
+  public TMLNode edit(int offset, int length, String replacement) {
+    TMLContract.checkNotNull(replacement);
+    if (offset < 0 || length < 0 || offset + length > text.length()) {
+      throw new IndexOutOfBoundsException("Range [" + offset + ", "
+          + (offset + length) + ") of document with length " + text.length());
+    }
+    // an edit that starts or ends a comment can change how far it reaches,
+    // past the end of any list enclosing the edit
+    boolean comments = affectsComments(text, offset, offset + length);
+    text.replace(offset, offset + length, replacement);
+    comments |= affectsComments(text, offset, offset + replacement.length());
+    int delta = replacement.length() - length;
+    if (root == null || comments) {
+      parseDocument(null, -1, -1, 0);
+      return root.node;
+    }
+
+    // the lists enclosing the edit, innermost last, and their positions
+    List<Span> path = new ArrayList<Span>();
+    List<Integer> starts = new ArrayList<Integer>();
+    Span span = root;
+    int start = root.start;
+    if (start < offset && offset + length < start + span.length) {
+      while (span != null) {
+        path.add(span);
+        starts.add(start);
+        span = span.childContaining(offset - start, length);
+        if (span != null) {
+          start += span.start;
+        }
+      }
+    }
+
+    for (int i = path.size() - 1; i > 0; i--) {
+      Span child = reparse(path.get(i), starts.get(i), offset, length, delta);
+      if (child != null) {
+        // the enclosing lists grow or shrink, and later siblings move
+        for (int j = i - 1; j >= 0; j--) {
+          path.get(j).resize(child, delta);
+          child = path.get(j);
+        }
+        return root.node;
+      }
+    }
+    parseDocument(path.isEmpty() ? null : root, offset, length, delta);
+    return root.node;
+  }
+
+  /**
+   * Returns true if the range holds a newline, or if the text in and around it
+   * holds a comment delimiter, taking the backslashes that may escape it into
+   * account.
+   */
+  private static boolean affectsComments(CharSequence text, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = text.charAt(i);
+      if (c == '\n' || c == '\r') {
+        return true;
+      }
+    }
+    int start = Math.max(0, from - 1);
+    int end = to;
+    while (end < text.length() && text.charAt(end) == '\\') {
+      end++;
+    }
+    end = Math.min(text.length(), end + 2);
+    for (int i = start; i + 1 < end; i++) {
+      if (text.charAt(i) == '|' && text.charAt(i + 1) == '|') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses the list of the supplied span again after an edit inside it, and
+   * replaces it in its container.
+   * 
+   * @return the new span, or null if the edited text is not a single list
+   */
+  private Span reparse(Span old, int start, int offset, int length, int delta) {
+    String source = text.substring(start, start + old.length + delta);
+    Result result = parse(source, start, old, offset, length, delta);
+    if (result == null) {
+      return null;
+    }
+    Span span = result.root;
+    span.start = old.start;
+    span.parent = old.parent;
+    span.container = old.container;
+    for (int i = 0, len = old.container.getListSize(); i < len; i++) {
+      if (old.container.getNode(i) == old.node) {
+        old.container.set(i, span.node);
+        break;
+      }
+    }
+    List<Span> siblings = old.parent.children;
+    siblings.set(siblings.indexOf(old), span);
+    commit(old, result);
+    return span;
+  }
+
+  /**
+   * Parses the whole document, reusing the lists of the supplied root span
+   * that lie outside the edited range, if any.
+   */
+  private void parseDocument(Span old, int offset, int length, int delta) {
+    String source = text.toString();
+    Result result = null;
+    try {
+      if (old != null) {
+        result = parse(source, 0, old, offset, length, delta);
+      }
+      if (result == null) {
+        old = null;
+        result = parse(source, 0, null, -1, -1, 0);
+      }
+    } finally {
+      if (result == null) {
+        spans.clear();
+        root = null;
+      }
+    }
+    if (old == null) {
+      spans.clear();
+    }
+    commit(old, result);
+    root = result.root;
+  }
+
+  /**
+   * Parses a list that begins at {@code base}, or the whole document if
+   * {@code base} is 0. The child lists of the old span that lie outside the
+   * edited range are replaced by empty placeholder lists in the text that is
+   * parsed, and the old nodes are put in their place.
+   * 
+   * @return the result, or null if the list could not be parsed this way
+   * @throws RuntimeException
+   *           if the document can not be parsed without an old span
+   */
+  private Result parse(String source, int base, Span old, int offset,
+      int length, int delta) {
+    List<Span> reused = new ArrayList<Span>();
+    String input = source;
+    if (old != null) {
+      StringBuilder sb = new StringBuilder(source.length());
+      int oldStart = old == root ? root.start : base;
+      int from = 0;
+      for (int i = 0, len = old.children.size(); i < len; i++) {
+        Span child = old.children.get(i);
+        int childStart = oldStart + child.start;
+        if (childStart >= offset + length) {
+          childStart += delta;
+        } else if (childStart + child.length > offset) {
+          // overlaps the edit
+          continue;
+        }
+        child.pendingStart = childStart;
+        sb.append(source, from, childStart - base).append("[]");
+        from = childStart - base + child.length;
+        reused.add(child);
+      }
+      sb.append(source, from, source.length());
+      input = sb.toString();
+    }
+
+    Listener listener = new Listener(base, reused);
+    TMLNode node;
+    try {
+      node = parser.parse(new StringReader(input), listener);
+    } catch (RuntimeException e) {
+      // any failure means the text is not a single list
+      if (old == null) {
+        throw e;
+      }
+      return null;
+    }
+    if (listener.failed || listener.next != reused.size()
+        || listener.root == null || listener.root.node != node) {
+      return null;
+    }
+    if (old != null && old != root && listener.root.length != source.length()) {
+      // the list ended early, for example inside a comment that runs on
+      return null;
+    }
+    Result result = new Result();
+    result.root = listener.root;
+    result.created = listener.created;
+    result.reused = reused;
+    return result;
+  }
+
+  /**
+   * Updates the span index after the old span was replaced by a new one.
+   */
+  private void commit(Span old, Result result) {
+    // forget the lists that were replaced, except the reused ones
+    if (old != null) {
+      Map<Span, Boolean> kept = new IdentityHashMap<Span, Boolean>();
+      for (Span span : result.reused) {
+        kept.put(span, Boolean.TRUE);
+      }
+      List<Span> stack = new ArrayList<Span>();
+      stack.add(old);
+      while (!stack.isEmpty()) {
+        Span span = stack.remove(stack.size() - 1);
+        if (!kept.containsKey(span)) {
+          spans.remove(span.node);
+          stack.addAll(span.children);
+        }
+      }
+    }
+    for (Span span : result.created) {
+      spans.put(span.node, span);
+    }
+    for (Span span : result.reused) {
+      span.commit();
+    }
+  }
+
+  /**
+   * Builds the spans of a parse, relative to their parents, and swaps the
+   * placeholders for the reused lists.
+   */
+  private static final class Listener implements
+      TMLNodeTreeParser.ListListener {
+
+    private final int base;
+    private final List<Span> reused;
+    private final List<Span> stack = new ArrayList<Span>();
+    private final List<Integer> starts = new ArrayList<Integer>();
+    private final List<Span> created = new ArrayList<Span>();
+    private Span root;
+    private int next;
+    private int shift;
+    private boolean placeholder;
+    private boolean failed;
+
+    Listener(int base, List<Span> reused) {
+      this.base = base;
+      this.reused = reused;
+    }
+
+    @Override
+    public void beginList(int start) {
+      int absolute = base + start + shift;
+      if (next < reused.size()) {
+        int expected = reused.get(next).pendingStart;
+        if (absolute == expected) {
+          placeholder = true;
+        } else if (absolute > expected) {
+          // the placeholder was not read as a list
+          failed = true;
+        }
+      }
+      Span span = placeholder ? reused.get(next) : new Span();
+      stack.add(span);
+      starts.add(absolute);
+    }
+
+    @Override
+    public TMLNode endList(TMLNode node, TMLNode container, int end) {
+      int top = stack.size() - 1;
+      Span span = stack.remove(top);
+      int start = starts.remove(top);
+      Span parent = top == 0 ? null : stack.get(top - 1);
+      int parentStart = top == 0 ? 0 : starts.get(top - 1);
+      if (placeholder) {
+        placeholder = false;
+        next += 1;
+        shift += span.length - 2;
+        span.pendingParent = parent;
+        span.pendingContainer = container;
+        span.pendingRelativeStart = start - parentStart;
+        node = span.node;
+      } else {
+        span.node = node;
+        span.length = base + end + shift - start;
+        span.start = top == 0 ? start : start - parentStart;
+        span.parent = parent;
+        span.container = container;
+        created.add(span);
+      }
+      if (parent == null) {
+        root = span;
+      } else {
+        parent.children.add(span);
+      }
+      return node;
+    }
+  }
+
+  /**
+   * The lists built and reused by a parse.
+   */
+  private static final class Result {
+    Span root;
+    List<Span> created;
+    List<Span> reused;
+  }
+
+  /**
+   * The source span of a delimited list. Positions are relative to the parent
+   * span, so that spans of unchanged lists stay valid when text before them
+   * is edited; the root span's position is absolute.
+   */
+  private static final class Span {
+    TMLNode node;
+    TMLNode container;
+    Span parent;
+    int start;
+    int length;
+    final List<Span> children = new ArrayList<Span>(2);
+
+    // the new position of a reused span, applied once the parse succeeds
+    int pendingStart;
+    int pendingRelativeStart;
+    Span pendingParent;
+    TMLNode pendingContainer;
+
+    int absoluteStart() {
+      int result = 0;
+      for (Span span = this; span != null; span = span.parent) {
+        result += span.start;
+      }
+      return result;
+    }
+
+    /**
+     * Returns the child that encloses the range, excluding its delimiters, or
+     * null.
+     */
+    Span childContaining(int offset, int length) {
+      int lo = 0;
+      int hi = children.size() - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        Span child = children.get(mid);
+        if (child.start + child.length <= offset) {
+          lo = mid + 1;
+        } else if (child.start >= offset) {
+          hi = mid - 1;
+        } else {
+          return offset + length < child.start + child.length ? child : null;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Adjusts this span after the text of one of its children changed length.
+     */
+    void resize(Span child, int delta) {
+      length += delta;
+      boolean after = false;
+      for (int i = 0, len = children.size(); i < len; i++) {
+        Span span = children.get(i);
+        if (after) {
+          span.start += delta;
+        } else if (span == child) {
+          after = true;
+        }
+      }
+    }
+
+    void commit() {
+      start = pendingRelativeStart;
+      parent = pendingParent;
+      container = pendingContainer;
+    }
+  }
+
+}
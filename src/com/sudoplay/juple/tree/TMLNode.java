@@ -44,14 +44,21 @@
 
 package com.sudoplay.juple.tree;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import com.sudoplay.juple.classparser.TMLLazilyParsedNumber;
 import com.sudoplay.juple.classparser.TMLNumberUtil;
 import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.error.TMLIOException;
+import com.sudoplay.juple.stream.SpaceEscapePolicy;
+import com.sudoplay.juple.stream.TMLWriter;
 
 public class TMLNode implements Cloneable {
 
@@ -62,11 +69,25 @@ public class TMLNode implements Cloneable {
   public static final String MATCH_ONE = "\\?";
   public static final String MATCH_ANY = "\\*";
 
+  static final String NULL = "\\0";
+  static final String NULL_ARRAY = "\\2";
+
+  private static final int MISMATCH = 0;
+  private static final int MATCH = 1;
+  private static final int DESCEND = 2;
+
   private String data = "";
   private List<TMLNode> list;
   private Type type = null;
   private TMLLazilyParsedNumber number = null;
   private boolean ignoreDividers = false;
+  private boolean frozen = false;
+  private int hash;
+
+  /**
+   * The indexes this node belongs to, if any; see {@link TMLNodeIndex}.
+   */
+  private TMLNodeIndex[] indexes;
 
   /**
    * Initialize a new node as an empty list.
@@ -82,12 +103,26 @@ public class TMLNode implements Cloneable {
    */
   public TMLNode(String data) {
     if (data == null) {
-      this.data = "\\0";
+      this.data = NULL;
     } else {
       this.data = data;
+      if (data.length() == 0) {
+        // an empty string, not an empty list
+        this.type = Type.STRING;
+      }
     }
   }
 
+  /**
+   * Returns a new data node that is a string even if its data would otherwise
+   * make it a divider, for data such as an escaped divider.
+   */
+  static TMLNode newString(String data) {
+    TMLNode node = new TMLNode(TMLContract.checkNotNull(data));
+    node.type = Type.STRING;
+    return node;
+  }
+
   /**
    * Initialize a new node as a data node.
    * 
@@ -238,6 +273,9 @@ public class TMLNode implements Cloneable {
   }
 
   public Iterator<TMLNode> iterator() {
+    if (frozen) {
+      return Collections.unmodifiableList(list).iterator();
+    }
     return list.iterator();
   }
 
@@ -253,7 +291,7 @@ public class TMLNode implements Cloneable {
 
     if ("".equals(data)) {
       return Type.LIST;
-    } else if ("\\0".equals(data)) {
+    } else if (NULL.equals(data)) {
       return Type.NULL;
     } else if (data.toLowerCase().equals("true")
         || data.toLowerCase().equals("false")) {
@@ -293,11 +331,79 @@ public class TMLNode implements Cloneable {
    */
   public void add(TMLNode node) {
     TMLContract.checkNotNull(node);
+    checkNotFrozen();
     if (list == null) {
       this.data = "";
+      this.type = Type.LIST;
       list = new ArrayList<TMLNode>(2);
     }
     list.add(node);
+    invalidateIndexes();
+  }
+
+  /**
+   * Inserts the supplied node into this node's child list at {@code index},
+   * shifting any subsequent children to the right. If the supplied node is
+   * null, an exception is thrown.
+   * 
+   * @param index
+   * @param node
+   * @throws IndexOutOfBoundsException
+   *           if the index is less than 0 or greater than the list size
+   */
+  public void add(int index, TMLNode node) {
+    TMLContract.checkNotNull(node);
+    checkNotFrozen();
+    if (index < 0 || index > getListSize()) {
+      throw outOfBounds(index);
+    }
+    if (list == null) {
+      this.data = "";
+      this.type = Type.LIST;
+      list = new ArrayList<TMLNode>(2);
+    }
+    list.add(index, node);
+    invalidateIndexes();
+  }
+
+  /**
+   * Replaces the child at {@code index} with the supplied node. If the
+   * supplied node is null, an exception is thrown.
+   * 
+   * @param index
+   * @param node
+   * @return the node previously at index
+   * @throws IndexOutOfBoundsException
+   *           if there is no child at index
+   */
+  public TMLNode set(int index, TMLNode node) {
+    TMLContract.checkNotNull(node);
+    checkNotFrozen();
+    if (index < 0 || index >= getListSize()) {
+      throw outOfBounds(index);
+    }
+    TMLNode previous = list.set(index, node);
+    invalidateIndexes();
+    return previous;
+  }
+
+  /**
+   * Removes the child at {@code index}, shifting any subsequent children to
+   * the left.
+   * 
+   * @param index
+   * @return the removed node
+   * @throws IndexOutOfBoundsException
+   *           if there is no child at index
+   */
+  public TMLNode remove(int index) {
+    checkNotFrozen();
+    if (index < 0 || index >= getListSize()) {
+      throw outOfBounds(index);
+    }
+    TMLNode removed = list.remove(index);
+    invalidateIndexes();
+    return removed;
   }
 
   /**
@@ -353,9 +459,7 @@ public class TMLNode implements Cloneable {
    * @see #find(TMLNode, int)
    */
   public TMLNode find(String pattern, int depth) {
-    TMLNodeTreeParser parser = new TMLNodeTreeParser(ignoreDividers);
-    StringReader reader = new StringReader(pattern);
-    return find(parser.parse(reader), depth);
+    return TMLPattern.compile(pattern, ignoreDividers).find(this, depth);
   }
 
   /**
@@ -385,27 +489,37 @@ public class TMLNode implements Cloneable {
    * @return first {@link TMLNode} found that matches pattern
    */
   public TMLNode find(TMLNode pattern, int depth) {
+    return TMLPattern.compile(pattern).find(this, depth);
+  }
 
-    if (equals(pattern)) {
-      return this;
-    }
-
-    if (depth > 0) {
-      depth -= 1;
-    } else if (depth == 0) {
-      return null;
-    }
-
-    TMLNode node;
-    int len = getListSize();
-    for (int i = 0; i < len; i++) {
-      node = getNode(i).find(pattern, depth);
-      if (node != null) {
-        return node;
-      }
-    }
+  /**
+   * Convenience method that simply calls {@link #find(TMLPattern, int)} with a
+   * depth of -1, indicating that the entire tree should be searched beginning
+   * with this node.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @return first {@link TMLNode} found that matches pattern
+   * @see #find(TMLPattern, int)
+   */
+  public TMLNode findGreedy(TMLPattern pattern) {
+    return find(pattern, -1);
+  }
 
-    return null;
+  /**
+   * Returns the first {@link TMLNode} found that matches the supplied compiled
+   * pattern. The supplied depth controls how many recursions to perform while
+   * searching.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return first {@link TMLNode} found that matches pattern
+   * @see #find(TMLNode, int)
+   */
+  public TMLNode find(TMLPattern pattern, int depth) {
+    return pattern.find(this, depth);
   }
 
   /**
@@ -432,9 +546,7 @@ public class TMLNode implements Cloneable {
    * @see #findAll(TMLNode, int)
    */
   public List<TMLNode> findAll(String pattern, int depth) {
-    TMLNodeTreeParser parser = new TMLNodeTreeParser(ignoreDividers);
-    StringReader reader = new StringReader(pattern);
-    return findAll(parser.parse(reader), depth);
+    return TMLPattern.compile(pattern, ignoreDividers).findAll(this, depth);
   }
 
   /**
@@ -459,70 +571,143 @@ public class TMLNode implements Cloneable {
    * @return all {@link TMLNode}s found that matches pattern
    */
   public List<TMLNode> findAll(TMLNode pattern, int depth) {
+    return TMLPattern.compile(pattern).findAll(this, depth);
+  }
 
-    List<TMLNode> results = new ArrayList<TMLNode>();
+  /**
+   * Convenience method that simply calls {@link #findAll(TMLPattern, int)} with
+   * a depth of -1, indicating that the entire tree should be searched beginning
+   * with this node.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @return all {@link TMLNode}s found that matches pattern
+   * @see #findAll(TMLPattern, int)
+   */
+  public List<TMLNode> findAllGreedy(TMLPattern pattern) {
+    return findAll(pattern, -1);
+  }
 
-    if (equals(pattern)) {
-      results.add(this);
-    }
+  /**
+   * Returns a {@link List} of all nodes that match the supplied compiled
+   * pattern.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all {@link TMLNode}s found that matches pattern
+   */
+  public List<TMLNode> findAll(TMLPattern pattern, int depth) {
+    return pattern.findAll(this, depth);
+  }
 
-    if (depth > 0) {
-      depth -= 1;
-    } else if (depth == 0) {
-      return results;
-    }
+  /**
+   * Adds all nodes that match the supplied compiled pattern to the supplied
+   * collection, in document order, and returns the collection.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @param results
+   *          the collection to add the matches to
+   * @return the supplied collection
+   * @see TMLPattern#findAll(TMLNode, int, Collection)
+   */
+  public <C extends Collection<? super TMLNode>> C findAll(
+      TMLPattern pattern, int depth, C results) {
+    return pattern.findAll(this, depth, results);
+  }
 
-    int len = getListSize();
-    for (int i = 0; i < len; i++) {
-      results.addAll(getNode(i).findAll(pattern, depth));
-    }
+  /**
+   * Convenience method that compiles the pattern and calls
+   * {@link #findAllParallel(TMLPattern, int)}.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all {@link TMLNode}s found that matches pattern
+   */
+  public List<TMLNode> findAllParallel(String pattern, int depth) {
+    return findAllParallel(TMLPattern.compile(pattern, ignoreDividers), depth);
+  }
 
-    return results;
+  /**
+   * Returns the same nodes as {@link #findAll(TMLPattern, int)}, in the same
+   * order, searching the subtrees of large lists in parallel.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all {@link TMLNode}s found that matches pattern
+   * @see TMLPattern#findAllParallel(TMLNode, int)
+   */
+  public List<TMLNode> findAllParallel(TMLPattern pattern, int depth) {
+    return pattern.findAllParallel(this, depth);
   }
 
   @Override
   public boolean equals(Object obj) {
-    if (obj == null) {
-      return false;
-    }
     if (!(obj instanceof TMLNode)) {
       return false;
     }
     TMLNode o = (TMLNode) obj;
-    if (o.data.equals(MATCH_ONE)) {
-      return true;
+    int result = compareShallow(this, o);
+    if (result != DESCEND) {
+      return result == MATCH;
     }
-    if (getListSize() == 0 && o.getListSize() == 0) {
-      return data.equals(o.data);
-    }
-    if (o.getListSize() == 0) {
-      return false;
-    }
-
-    int clen = getListSize();
-    int plen = o.getListSize();
-    int i;
 
-    for (i = 0; i < clen; i++) {
-      if (i >= plen) {
-        return false;
-      }
-      if (o.getNode(i).data.equals(MATCH_ANY)) {
-        return true;
-      }
-      if (!getNode(i).equals(o.getNode(i))) {
+    List<Frame> stack = new ArrayList<Frame>();
+    stack.add(new Frame(this, o));
+    while (!stack.isEmpty()) {
+      Frame frame = stack.get(stack.size() - 1);
+      int clen = frame.node.getListSize();
+      int plen = frame.other.getListSize();
+      int i = frame.index;
+
+      if (i < clen) {
+        if (i >= plen) {
+          return false;
+        }
+        TMLNode pattern = frame.other.getNode(i);
+        if (!pattern.data.equals(MATCH_ANY)) {
+          TMLNode node = frame.node.getNode(i);
+          result = compareShallow(node, pattern);
+          if (result == MISMATCH) {
+            return false;
+          }
+          frame.index = i + 1;
+          if (result == DESCEND) {
+            stack.add(new Frame(node, pattern));
+          }
+          continue;
+        }
+      } else if (i < plen && !frame.other.getNode(i).data.equals(MATCH_ANY)) {
         return false;
       }
+      stack.remove(stack.size() - 1);
     }
+    return true;
+  }
 
-    if (i < plen) {
-      if (o.getNode(i).data.equals(MATCH_ANY)) {
-        return true;
-      }
-      return false;
+  /**
+   * Compares a node to a pattern as far as possible without looking at their
+   * children, returning DESCEND if the children must be compared.
+   */
+  private static int compareShallow(TMLNode node, TMLNode pattern) {
+    if (pattern.data.equals(MATCH_ONE)) {
+      return MATCH;
     }
-
-    return true;
+    if (node.getListSize() == 0 && pattern.getListSize() == 0) {
+      return node.data.equals(pattern.data) ? MATCH : MISMATCH;
+    }
+    if (pattern.getListSize() == 0) {
+      return MISMATCH;
+    }
+    return DESCEND;
   }
 
   @Override
@@ -537,49 +722,432 @@ public class TMLNode implements Cloneable {
    * Setting {@code encapsulate} to true will return the string with an extra
    * open delimiter at the beginning and an extra close delimiter at the end.
    * 
+   * <p>
+   * The data of each node is written as is, without escaping. Use
+   * {@link #writeTo(Writer)} to write TML that can be parsed again.
+   * 
    * @param encapsulate
    * @return
    */
   public String toString(boolean encapsulate) {
     StringBuilder sb = new StringBuilder();
     if (encapsulate) sb.append('[');
-    if (isList()) {
-      sb.append('[');
-      for (int i = 0; i < getListSize(); i++) {
-        sb.append(list.get(i).toString());
-        if (i < list.size() - 1) {
-          //if (!list.get(i + 1).isDivider() && !list.get(i).isDivider()) {
-            sb.append(' ');
-          //}
+    appendTo(sb);
+    if (encapsulate) sb.append(']');
+    return sb.toString();
+  }
+
+  private void appendTo(StringBuilder sb) {
+    if (!isList()) {
+      sb.append(data);
+      return;
+    }
+    List<Frame> stack = new ArrayList<Frame>();
+    stack.add(new Frame(this, null));
+    sb.append('[');
+    while (!stack.isEmpty()) {
+      Frame frame = stack.get(stack.size() - 1);
+      if (frame.index < frame.node.getListSize()) {
+        if (frame.index > 0) {
+          sb.append(' ');
         }
+        TMLNode child = frame.node.getNode(frame.index++);
+        if (child.isList()) {
+          sb.append('[');
+          stack.add(new Frame(child, null));
+        } else {
+          sb.append(child.data);
+        }
+      } else {
+        sb.append(']');
+        stack.remove(stack.size() - 1);
       }
-      sb.append(']');
+    }
+  }
+
+  /**
+   * Writes this tree to the supplied {@link Writer} as TML, in a single pass
+   * and with all data escaped, so that parsing the output with a
+   * {@link TMLNodeTreeParser} using the same divider setting results in a tree
+   * equal to this one. This node must be a list.
+   * 
+   * <p>
+   * NOTE: The caller is responsible for closing the writer.
+   * 
+   * @param out
+   * @throws TMLIOException
+   *           if the underlying writer is unable to write the data
+   * @see #writeTo(TMLWriter)
+   */
+  public void writeTo(Writer out) throws TMLIOException {
+    try {
+      writeTo(new TMLWriter(out));
+      out.flush();
+    } catch (IOException e) {
+      throw new TMLIOException(e);
+    }
+  }
+
+  /**
+   * Writes this tree to the supplied {@link TMLWriter}. Lists are written as
+   * lists, null nodes as null values and all other data as strings with
+   * spaces escaped. Divider nodes of a tree built with dividers ignored are
+   * written as dividers.
+   * 
+   * @param out
+   * @throws IOException
+   */
+  public void writeTo(TMLWriter out) throws IOException {
+    if (!isList()) {
+      writeData(out);
+      return;
+    }
+    List<Frame> stack = new ArrayList<Frame>();
+    stack.add(new Frame(this, null));
+    out.beginList();
+    while (!stack.isEmpty()) {
+      Frame frame = stack.get(stack.size() - 1);
+      if (frame.index < frame.node.getListSize()) {
+        TMLNode child = frame.node.getNode(frame.index++);
+        if (child.isList()) {
+          out.beginList();
+          stack.add(new Frame(child, null));
+        } else {
+          child.writeData(out);
+        }
+      } else {
+        out.endList();
+        stack.remove(stack.size() - 1);
+      }
+    }
+  }
+
+  private void writeData(TMLWriter out) throws IOException {
+    if (isNull()) {
+      out.nullValue();
+    } else if (isNullArray()) {
+      out.nullArrayValue();
+    } else if (ignoreDividers && isDivider()) {
+      out.divider();
     } else {
-      sb.append(data);
+      out.value(data, SpaceEscapePolicy.FORCE_ESCAPE);
     }
-    if (encapsulate) sb.append(']');
-    return sb.toString();
   }
 
   @Override
   public int hashCode() {
-    int result = data.hashCode();
-    result = 73 * result + list.hashCode();
+    int result = hash;
+    if (result != 0) {
+      return result;
+    }
+    if (list == null) {
+      return shallowHashCode(0);
+    }
+
+    // the same as 73 * data.hashCode() + list.hashCode(), without recursion
+    List<Frame> stack = new ArrayList<Frame>();
+    Frame frame = new Frame(this, null);
+    frame.value = 1;
+    stack.add(frame);
+    while (true) {
+      frame = stack.get(stack.size() - 1);
+      if (frame.index < frame.node.list.size()) {
+        TMLNode child = frame.node.list.get(frame.index++);
+        result = child.hash;
+        if (result == 0) {
+          if (child.list != null) {
+            Frame childFrame = new Frame(child, null);
+            childFrame.value = 1;
+            stack.add(childFrame);
+            continue;
+          }
+          result = child.shallowHashCode(0);
+        }
+        frame.value = 31 * frame.value + result;
+      } else {
+        stack.remove(stack.size() - 1);
+        result = frame.node.shallowHashCode(frame.value);
+        if (stack.isEmpty()) {
+          return result;
+        }
+        Frame parent = stack.get(stack.size() - 1);
+        parent.value = 31 * parent.value + result;
+      }
+    }
+  }
+
+  private int shallowHashCode(int listHashCode) {
+    int result = 73 * data.hashCode() + listHashCode;
+    if (frozen) {
+      hash = result;
+    }
     return result;
   }
 
+  /**
+   * Returns a deep copy of this node. Frozen nodes are never copied: a frozen
+   * node returns itself, and frozen subtrees are shared by the copy.
+   */
   @Override
   public TMLNode clone() {
-    TMLNode clone = new TMLNode();
-    clone.data = data;
-    if (list != null) {
-      for (TMLNode node : list) {
-        clone.add(node.clone());
+    if (frozen) {
+      return this;
+    }
+    TMLNode clone = shallowCopy();
+    if (list == null) {
+      return clone;
+    }
+    List<Frame> stack = new ArrayList<Frame>();
+    stack.add(new Frame(this, clone));
+    while (!stack.isEmpty()) {
+      Frame frame = stack.get(stack.size() - 1);
+      if (frame.index < frame.node.list.size()) {
+        TMLNode child = frame.node.list.get(frame.index++);
+        if (child.frozen) {
+          frame.other.list.add(child);
+        } else {
+          TMLNode copy = child.shallowCopy();
+          frame.other.list.add(copy);
+          if (child.list != null) {
+            stack.add(new Frame(child, copy));
+          }
+        }
+      } else {
+        stack.remove(stack.size() - 1);
       }
     }
     return clone;
   }
 
+  private TMLNode shallowCopy() {
+    TMLNode copy = new TMLNode();
+    copy.data = data;
+    copy.type = type;
+    copy.ignoreDividers = ignoreDividers;
+    if (list != null) {
+      copy.list = new ArrayList<TMLNode>(list.size());
+    }
+    return copy;
+  }
+
+  /**
+   * Makes this node and all of its descendants immutable and returns this
+   * node.
+   * 
+   * <p>
+   * Frozen nodes throw an {@link IllegalStateException} when modified, memoize
+   * their hash code and are shared instead of copied by {@link #clone()}. To
+   * change a frozen tree, use {@link #withNode(int, TMLNode)},
+   * {@link #withAdded(TMLNode)}, {@link #withAdded(int, TMLNode)},
+   * {@link #withRemoved(int)} or {@link #withNodeAt(int[], TMLNode)}, which
+   * return a new tree that shares every unchanged subtree with this one. A
+   * {@link TMLNodePatch} can also be applied to a frozen tree.
+   * 
+   * @return this node
+   */
+  public TMLNode freeze() {
+    if (!frozen) {
+      TMLNodeWalker walker = new TMLNodeWalker(this, -1);
+      TMLNode next;
+      while ((next = walker.next()) != null) {
+        if (next.frozen) {
+          // the descendants of a frozen node are frozen already
+          walker.skipChildren();
+        } else {
+          next.frozen = true;
+        }
+      }
+    }
+    return this;
+  }
+
+  /**
+   * @return true if this node has been frozen
+   * @see #freeze()
+   */
+  public boolean isFrozen() {
+    return frozen;
+  }
+
+  /**
+   * Returns a frozen copy of this frozen list with the child at
+   * {@code index} replaced by the supplied node, which is frozen as well.
+   * Only this node is copied; all other children are shared.
+   * 
+   * @param index
+   * @param node
+   * @return the new node
+   * @throws IllegalStateException
+   *           if this node is not a frozen list
+   */
+  public TMLNode withNode(int index, TMLNode node) {
+    TMLContract.checkNotNull(node);
+    TMLNode copy = copyFrozenList();
+    copy.list.set(index, node.freeze());
+    return copy;
+  }
+
+  /**
+   * Returns a frozen copy of this frozen list with the supplied node, which
+   * is frozen as well, added to the end. Only this node is copied; all other
+   * children are shared.
+   * 
+   * @param node
+   * @return the new node
+   * @throws IllegalStateException
+   *           if this node is not frozen
+   */
+  public TMLNode withAdded(TMLNode node) {
+    TMLContract.checkNotNull(node);
+    TMLNode copy = copyFrozenList();
+    copy.list.add(node.freeze());
+    return copy;
+  }
+
+  /**
+   * Returns a frozen copy of this frozen list with the supplied node, which is
+   * frozen as well, inserted at {@code index}. Only this node is copied; all
+   * other children are shared.
+   * 
+   * @param index
+   * @param node
+   * @return the new node
+   * @throws IllegalStateException
+   *           if this node is not frozen
+   */
+  public TMLNode withAdded(int index, TMLNode node) {
+    TMLContract.checkNotNull(node);
+    TMLNode copy = copyFrozenList();
+    if (index < 0 || index > getListSize()) {
+      throw outOfBounds(index);
+    }
+    copy.list.add(index, node.freeze());
+    return copy;
+  }
+
+  /**
+   * Returns a frozen copy of this frozen list with the child at {@code index}
+   * removed. Only this node is copied; all other children are shared.
+   * 
+   * @param index
+   * @return the new node
+   * @throws IllegalStateException
+   *           if this node is not frozen
+   */
+  public TMLNode withRemoved(int index) {
+    TMLNode copy = copyFrozenList();
+    if (index < 0 || index >= getListSize()) {
+      throw outOfBounds(index);
+    }
+    copy.list.remove(index);
+    return copy;
+  }
+
+  /**
+   * Returns a frozen copy of this frozen tree with the descendant at the
+   * supplied path replaced by the supplied node, which is frozen as well.
+   * Each element of the path is a child index, starting at this node. Only
+   * the nodes along the path are copied; all other subtrees are shared.
+   * 
+   * @param path
+   *          child indices leading from this node to the node to replace
+   * @param node
+   * @return the new root, or the supplied node if the path is empty
+   * @throws IllegalStateException
+   *           if this node is not frozen
+   */
+  public TMLNode withNodeAt(int[] path, TMLNode node) {
+    TMLContract.checkNotNull(node);
+    checkFrozen();
+    return withNodeAt(path, 0, node);
+  }
+
+  private TMLNode withNodeAt(int[] path, int offset, TMLNode node) {
+    if (offset == path.length) {
+      return node.freeze();
+    }
+    int i = path[offset];
+    TMLNode child = getNode(i);
+    if (child == null) {
+      throw outOfBounds(i);
+    }
+    return withNode(i, child.withNodeAt(path, offset + 1, node));
+  }
+
+  private TMLNode copyFrozenList() {
+    checkFrozen();
+    TMLNode copy = new TMLNode();
+    copy.ignoreDividers = ignoreDividers;
+    copy.list = new ArrayList<TMLNode>(getListSize() + 1);
+    if (list != null) {
+      copy.list.addAll(list);
+    }
+    copy.frozen = true;
+    return copy;
+  }
+
+  /**
+   * Adds an index to the indexes this node belongs to. Stale indexes are
+   * dropped; they add themselves again when they are rebuilt.
+   */
+  void addIndex(TMLNodeIndex index) {
+    TMLNodeIndex[] indexes = this.indexes;
+    if (indexes == null) {
+      this.indexes = new TMLNodeIndex[] { index };
+      return;
+    }
+    TMLNodeIndex[] result = new TMLNodeIndex[indexes.length + 1];
+    int count = 0;
+    for (TMLNodeIndex other : indexes) {
+      if (other == index) {
+        return;
+      }
+      if (!other.isStale()) {
+        result[count++] = other;
+      }
+    }
+    result[count++] = index;
+    this.indexes = count == result.length ? result : Arrays.copyOf(result,
+        count);
+  }
+
+  /**
+   * Invalidates and forgets the indexes this node belongs to.
+   */
+  private void invalidateIndexes() {
+    TMLNodeIndex[] indexes = this.indexes;
+    if (indexes != null) {
+      this.indexes = null;
+      for (TMLNodeIndex index : indexes) {
+        index.invalidate();
+      }
+    }
+  }
+
+  private IndexOutOfBoundsException outOfBounds(int index) {
+    return new IndexOutOfBoundsException("Index: " + index + ", Size: "
+        + getListSize());
+  }
+
+  private void checkFrozen() {
+    if (!frozen) {
+      throw new IllegalStateException("Node is not frozen");
+    }
+  }
+
+  private void checkNotFrozen() {
+    if (frozen) {
+      throw new IllegalStateException("Node is frozen");
+    }
+  }
+
+  /**
+   * Exposed internally.
+   */
+  boolean isNullArray() {
+    return list == null && NULL_ARRAY.equals(data);
+  }
+
   /**
    * Exposed internally.
    */
@@ -587,4 +1155,27 @@ public class TMLNode implements Cloneable {
     this.ignoreDividers = ignore;
   }
 
+  /**
+   * Exposed internally.
+   */
+  boolean isIgnoreDividers() {
+    return ignoreDividers;
+  }
+
+  /**
+   * A node, a second node it is paired with, and the index of the next child
+   * to visit; used to walk trees without recursion.
+   */
+  private static final class Frame {
+    final TMLNode node;
+    final TMLNode other;
+    int index;
+    int value;
+
+    Frame(TMLNode node, TMLNode other) {
+      this.node = node;
+      this.other = other;
+    }
+  }
+
 }
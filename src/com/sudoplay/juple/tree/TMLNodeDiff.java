@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * Computes a {@link TMLNodePatch} that turns one {@link TMLNode} tree into
+ * another, so that work done on a changed tree, like rebinding a reloaded
+ * configuration, can be limited to the parts that actually changed.
+ * 
+ * <p>
+ * The children of two lists are matched in one of two ways:
+ * <ul>
+ * <li>If every child of both lists is a keyed tuple and the keys are unique
+ * within each list, children are matched by key. A keyed tuple is a list of
+ * at least two elements that begins with a data element, the key, like
+ * {@code [port | 8080]}, or with a list holding only the key, like
+ * {@code [[port] [8080]]} when dividers are not ignored. Tuples whose key moved
+ * relative to the other keys are removed and inserted again.</li>
+ * <li>Otherwise, after skipping the children the lists begin and end with,
+ * the remaining children are aligned by their longest common subsequence.
+ * Children between two aligned pairs are paired by position, and any excess
+ * is removed or inserted.</li>
+ * </ul>
+ * Matched children that differ are compared in turn if both are lists, and
+ * replaced otherwise. Nodes are compared by value; the wildcards recognized
+ * by {@link TMLNode#equals(Object)} have no special meaning here.
+ * 
+ * <p>
+ * For each list, the patch first removes children in descending order, then
+ * inserts children in ascending order, and then edits the matched children,
+ * so the paths of every operation are valid when it is applied.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLNodeDiff {
+
+  /**
+   * The largest number of cells of the table used to align the children of
+   * two unkeyed lists; larger lists are paired by position.
+   */
+  private static final int MAX_ALIGNMENT_CELLS = 1 << 22;
+
+  private TMLNodeDiff() {}
+
+  /**
+   * Returns the patch that turns the {@code from} tree into the {@code to}
+   * tree. The patch refers to copies of the nodes of the {@code to} tree, or
+   * to the nodes themselves if they are frozen, so later changes to that tree
+   * do not affect it.
+   * 
+   * @param from
+   *          the original tree
+   * @param to
+   *          the changed tree
+   * @return the patch, empty if the trees are equal
+   */
+  public static TMLNodePatch diff(TMLNode from, TMLNode to) {
+    TMLContract.checkNotNull(from);
+    TMLContract.checkNotNull(to);
+    List<TMLNodePatch.Operation> operations = new ArrayList<TMLNodePatch.Operation>();
+    if (from.isList() && to.isList()) {
+      List<Task> stack = new ArrayList<Task>();
+      stack.add(new Task(from, to, new int[0]));
+      while (!stack.isEmpty()) {
+        diffList(stack.remove(stack.size() - 1), stack, operations);
+      }
+    } else if (!same(from, to)) {
+      operations.add(new TMLNodePatch.Operation(TMLNodePatch.Type.REPLACE,
+          new int[0], to.clone()));
+    }
+    return new TMLNodePatch(operations);
+  }
+
+  private static void diffList(Task task, List<Task> stack,
+      List<TMLNodePatch.Operation> operations) {
+    TMLNode from = task.from;
+    TMLNode to = task.to;
+    int fromLen = from.getListSize();
+    int toLen = to.getListSize();
+
+    // pairs[i] is the index of the child of 'to' matched with child i of
+    // 'from', or -1; aligned[i] is true if the pair is known to be equal
+    int[] pairs = new int[fromLen];
+    boolean[] aligned = new boolean[fromLen];
+    Arrays.fill(pairs, -1);
+    boolean keyed = matchKeys(from, to, pairs);
+    if (!keyed) {
+      matchPositions(from, to, pairs, aligned);
+    }
+
+    // removals in descending order keep the lower indices valid
+    boolean[] kept = new boolean[toLen];
+    for (int i = fromLen - 1; i >= 0; i--) {
+      if (pairs[i] < 0) {
+        operations.add(new TMLNodePatch.Operation(TMLNodePatch.Type.REMOVE,
+            path(task.path, i), null));
+      } else {
+        kept[pairs[i]] = true;
+      }
+    }
+
+    // insertions in ascending order place each child at its final index
+    for (int j = 0; j < toLen; j++) {
+      if (!kept[j]) {
+        operations.add(new TMLNodePatch.Operation(TMLNodePatch.Type.INSERT,
+            path(task.path, j), to.getNode(j).clone()));
+      }
+    }
+
+    // the list now has the shape of 'to', edit the matched children
+    for (int i = 0; i < fromLen; i++) {
+      int j = pairs[i];
+      if (j < 0 || aligned[i]) {
+        continue;
+      }
+      TMLNode a = from.getNode(i);
+      TMLNode b = to.getNode(j);
+      if (same(a, b)) {
+        continue;
+      }
+      if (a.isList() && b.isList()) {
+        stack.add(new Task(a, b, path(task.path, j)));
+      } else {
+        operations.add(new TMLNodePatch.Operation(TMLNodePatch.Type.REPLACE,
+            path(task.path, j), b.clone()));
+      }
+    }
+  }
+
+  /**
+   * Matches the children of two lists of uniquely keyed tuples by key. Only
+   * the pairs that keep their relative order, the longest increasing
+   * subsequence of the matched indices, are kept.
+   * 
+   * @return false if the lists are not both lists of uniquely keyed tuples
+   */
+  private static boolean matchKeys(TMLNode from, TMLNode to, int[] pairs) {
+    int fromLen = from.getListSize();
+    int toLen = to.getListSize();
+    if (fromLen == 0 || toLen == 0) {
+      return false;
+    }
+    Map<String, Integer> toKeys = new HashMap<String, Integer>(toLen * 2);
+    for (int j = 0; j < toLen; j++) {
+      String key = key(to.getNode(j));
+      if (key == null || toKeys.put(key, j) != null) {
+        return false;
+      }
+    }
+    Map<String, Integer> fromKeys = new HashMap<String, Integer>(fromLen * 2);
+    int[] matched = new int[fromLen];
+    for (int i = 0; i < fromLen; i++) {
+      String key = key(from.getNode(i));
+      if (key == null || fromKeys.put(key, i) != null) {
+        return false;
+      }
+      Integer j = toKeys.get(key);
+      matched[i] = j == null ? -1 : j;
+    }
+
+    // patience sorting: tails[k] is the index in 'from' of the smallest
+    // match ending an increasing run of length k + 1
+    int[] tails = new int[fromLen];
+    int[] previous = new int[fromLen];
+    int length = 0;
+    for (int i = 0; i < fromLen; i++) {
+      int j = matched[i];
+      if (j < 0) {
+        continue;
+      }
+      int lo = 0;
+      int hi = length;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (matched[tails[mid]] < j) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        }
+      }
+      previous[i] = lo > 0 ? tails[lo - 1] : -1;
+      tails[lo] = i;
+      if (lo == length) {
+        length += 1;
+      }
+    }
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      pairs[i] = matched[i];
+    }
+    return true;
+  }
+
+  /**
+   * Aligns the children of two lists by their longest common subsequence
+   * after skipping the common prefix and suffix, then pairs the children
+   * between aligned pairs by position.
+   */
+  private static void matchPositions(TMLNode from, TMLNode to, int[] pairs,
+      boolean[] aligned) {
+    int fromLen = from.getListSize();
+    int toLen = to.getListSize();
+    int start = 0;
+    while (start < fromLen && start < toLen
+        && same(from.getNode(start), to.getNode(start))) {
+      pairs[start] = start;
+      aligned[start] = true;
+      start += 1;
+    }
+    int fromEnd = fromLen;
+    int toEnd = toLen;
+    while (fromEnd > start && toEnd > start
+        && same(from.getNode(fromEnd - 1), to.getNode(toEnd - 1))) {
+      fromEnd -= 1;
+      toEnd -= 1;
+      pairs[fromEnd] = toEnd;
+      aligned[fromEnd] = true;
+    }
+
+    int rows = fromEnd - start;
+    int cols = toEnd - start;
+    if (rows > 0 && cols > 0 && (long) rows * cols <= MAX_ALIGNMENT_CELLS) {
+      align(from, to, start, rows, cols, pairs, aligned);
+    }
+
+    // pair the children between aligned pairs by position
+    int i = start;
+    int j = start;
+    while (i < fromEnd) {
+      if (aligned[i]) {
+        j = pairs[i] + 1;
+        i += 1;
+        continue;
+      }
+      int next = i;
+      while (next < fromEnd && !aligned[next]) {
+        next += 1;
+      }
+      int limit = next < fromEnd ? pairs[next] : toEnd;
+      for (; i < next && j < limit; i++, j++) {
+        pairs[i] = j;
+      }
+      i = next;
+    }
+  }
+
+  private static void align(TMLNode from, TMLNode to, int start, int rows,
+      int cols, int[] pairs, boolean[] aligned) {
+    int[] fromHashes = new int[rows];
+    int[] toHashes = new int[cols];
+    for (int i = 0; i < rows; i++) {
+      fromHashes[i] = from.getNode(start + i).hashCode();
+    }
+    for (int j = 0; j < cols; j++) {
+      toHashes[j] = to.getNode(start + j).hashCode();
+    }
+
+    // lengths[i * (cols + 1) + j] is the length of the longest common
+    // subsequence of the children from (start + i) and (start + j) onward
+    int width = cols + 1;
+    int[] lengths = new int[(rows + 1) * width];
+    for (int i = rows - 1; i >= 0; i--) {
+      TMLNode a = from.getNode(start + i);
+      for (int j = cols - 1; j >= 0; j--) {
+        int cell = i * width + j;
+        if (fromHashes[i] == toHashes[j] && same(a, to.getNode(start + j))) {
+          lengths[cell] = lengths[cell + width + 1] + 1;
+        } else {
+          lengths[cell] = Math.max(lengths[cell + width], lengths[cell + 1]);
+        }
+      }
+    }
+
+    int i = 0;
+    int j = 0;
+    while (i < rows && j < cols) {
+      int cell = i * width + j;
+      if (lengths[cell] == lengths[cell + width + 1] + 1
+          && fromHashes[i] == toHashes[j]
+          && same(from.getNode(start + i), to.getNode(start + j))) {
+        pairs[start + i] = start + j;
+        aligned[start + i] = true;
+        i += 1;
+        j += 1;
+      } else if (lengths[cell + width] >= lengths[cell + 1]) {
+        i += 1;
+      } else {
+        j += 1;
+      }
+    }
+  }
+
+  /**
+   * @return the key of a keyed tuple, or null if the node is not one
+   */
+  private static String key(TMLNode node) {
+    if (node.getListSize() < 2) {
+      return null;
+    }
+    TMLNode first = node.getNode(0);
+    if (!first.isList()) {
+      return first.getValue();
+    }
+    if (first.getListSize() == 1 && !first.getNode(0).isList()) {
+      return first.getNode(0).getValue();
+    }
+    return null;
+  }
+
+  /**
+   * Compares two trees by value, without recursion.
+   */
+  private static boolean same(TMLNode a, TMLNode b) {
+    List<TMLNode> stack = new ArrayList<TMLNode>();
+    stack.add(a);
+    stack.add(b);
+    while (!stack.isEmpty()) {
+      TMLNode y = stack.remove(stack.size() - 1);
+      TMLNode x = stack.remove(stack.size() - 1);
+      if (x == y) {
+        continue;
+      }
+      int len = x.getListSize();
+      if (x.isList() != y.isList() || len != y.getListSize()
+          || !x.getValue().equals(y.getValue())) {
+        return false;
+      }
+      if (x.isFrozen() && y.isFrozen() && x.hashCode() != y.hashCode()) {
+        return false;
+      }
+      for (int i = len - 1; i >= 0; i--) {
+        stack.add(x.getNode(i));
+        stack.add(y.getNode(i));
+      }
+    }
+    return true;
+  }
+
+  private static int[] path(int[] parent, int index) {
+    int[] path = Arrays.copyOf(parent, parent.length + 1);
+    path[parent.length] = index;
+    return path;
+  }
+
+  /**
+   * A pair of lists still to be compared and the path to them.
+   */
+  private static final class Task {
+    final TMLNode from;
+    final TMLNode to;
+    final int[] path;
+
+    Task(TMLNode from, TMLNode to, int[] path) {
+      this.from = from;
+      this.to = to;
+      this.path = path;
+    }
+  }
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A secondary index over a {@link TMLNode} tree for trees that are queried
+ * far more often than they are modified.
+ * 
+ * <p>
+ * Every list whose first element is a data element is indexed by the value of
+ * that element, its <i>key</i>; for example, the field tuple
+ * {@code [port | 8080]} has the key {@code port}. Optionally, keyed lists are
+ * also indexed by their <i>path</i>, the keys of all keyed lists from the root
+ * down to and including the list itself, and data elements are indexed by
+ * their value. Indexes are created with a {@link TMLNodeIndexBuilder}.
+ * 
+ * <p>
+ * Lookups by key and by value are hash lookups, lookups by path and path
+ * prefix are sorted map lookups. {@link #findAllGreedy(TMLPattern)} uses the
+ * index to pick the candidates for patterns that begin with a literal element,
+ * see {@link TMLPattern#getDiscriminator()}, and falls back to a full search
+ * otherwise. All results are returned in document order.
+ * 
+ * <p>
+ * The indexed nodes hold a reference to their index and invalidate it when
+ * any of their child lists is modified, for example with
+ * {@link TMLNode#add(TMLNode)} or by a {@link TMLNodePatch}. An invalid
+ * index is rebuilt the next time it is queried. A node can belong to several
+ * indexes, for example when one index covers a subtree of another, and
+ * modifying it invalidates all of them. Frozen trees, see
+ * {@link TMLNode#freeze()}, never invalidate their index.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLNodeIndex {
+
+  private static final char PATH_SEPARATOR = '\0';
+
+  private final TMLNode root;
+  private final boolean indexPaths;
+  private final boolean indexValues;
+  private volatile Snapshot snapshot;
+
+  TMLNodeIndex(TMLNode root, boolean indexPaths, boolean indexValues) {
+    this.root = TMLContract.checkNotNull(root);
+    this.indexPaths = indexPaths;
+    this.indexValues = indexValues;
+    this.snapshot = build();
+  }
+
+  /**
+   * @return the root node of the indexed tree
+   */
+  public TMLNode getRoot() {
+    return root;
+  }
+
+  /**
+   * @return true if the tree has been modified since the index was last built
+   */
+  public boolean isStale() {
+    return snapshot == null;
+  }
+
+  /**
+   * Marks this index as stale; it is rebuilt the next time it is queried.
+   */
+  void invalidate() {
+    snapshot = null;
+  }
+
+  /**
+   * Returns the first list in document order whose key is equal to the
+   * supplied key, or null if none exists.
+   * 
+   * @param key
+   * @return the first list with the key or null
+   */
+  public TMLNode findByKey(String key) {
+    return first(current().byKey.get(key));
+  }
+
+  /**
+   * Returns all lists whose key is equal to the supplied key, in document
+   * order.
+   * 
+   * @param key
+   * @return the lists with the key, never null
+   */
+  public List<TMLNode> findAllByKey(String key) {
+    return unmodifiable(current().byKey.get(key));
+  }
+
+  /**
+   * Returns all data elements whose value is equal to the supplied value, in
+   * document order. If values are not indexed, an exception is thrown.
+   * 
+   * @param value
+   * @return the data elements with the value, never null
+   */
+  public List<TMLNode> findAllByValue(String value) {
+    if (!indexValues) {
+      throw new IllegalStateException("Values are not indexed");
+    }
+    return unmodifiable(current().byValue.get(value));
+  }
+
+  /**
+   * Returns all lists with exactly the supplied path, in document order. If
+   * paths are not indexed, an exception is thrown.
+   * 
+   * @param keys
+   *          the keys from the outermost keyed list to the list to find
+   * @return the lists with the path, never null
+   */
+  public List<TMLNode> findAllByPath(String... keys) {
+    Snapshot current = currentWithPaths();
+    return nodes(current, current.byPath.get(encode(keys)));
+  }
+
+  /**
+   * Returns all lists whose path begins with the supplied keys, including the
+   * lists with exactly that path, in document order. If paths are not indexed,
+   * an exception is thrown.
+   * 
+   * @param keys
+   *          the leading keys of the paths to find
+   * @return the lists with the path prefix, never null
+   */
+  public List<TMLNode> findAllByPathPrefix(String... keys) {
+    Snapshot current = currentWithPaths();
+    String from = encode(keys);
+    SortedMap<String, List<Integer>> range;
+    if (from.isEmpty()) {
+      range = current.byPath;
+    } else {
+      // every path with the prefix lies between the prefix and the prefix with
+      // its trailing separator incremented
+      String to = from.substring(0, from.length() - 1)
+          + (char) (PATH_SEPARATOR + 1);
+      range = current.byPath.subMap(from, to);
+    }
+    List<Integer> all = new ArrayList<Integer>();
+    for (List<Integer> ordinals : range.values()) {
+      all.addAll(ordinals);
+    }
+    Collections.sort(all);
+    return nodes(current, all);
+  }
+
+  /**
+   * Returns the first node in document order that matches the supplied
+   * pattern, or null if none exists.
+   * 
+   * @param pattern
+   * @return the first matching node or null
+   */
+  public TMLNode findGreedy(TMLPattern pattern) {
+    List<TMLNode> candidates = candidates(pattern);
+    if (candidates == null) {
+      return pattern.find(root, -1);
+    }
+    for (TMLNode node : candidates) {
+      if (pattern.matches(node)) {
+        return node;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns all nodes that match the supplied pattern, in document order. The
+   * result is equal to {@code pattern.findAll(getRoot(), -1)}.
+   * 
+   * @param pattern
+   * @return the matching nodes, never null
+   */
+  public List<TMLNode> findAllGreedy(TMLPattern pattern) {
+    List<TMLNode> candidates = candidates(pattern);
+    if (candidates == null) {
+      return pattern.findAll(root, -1);
+    }
+    List<TMLNode> results = new ArrayList<TMLNode>();
+    for (TMLNode node : candidates) {
+      if (pattern.matches(node)) {
+        results.add(node);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Convenience method that compiles the pattern with
+   * {@link TMLPattern#compile(String, boolean)}, using the root's divider
+   * setting, and calls {@link #findAllGreedy(TMLPattern)}.
+   * 
+   * @param pattern
+   * @return the matching nodes, never null
+   */
+  public List<TMLNode> findAllGreedy(String pattern) {
+    return findAllGreedy(TMLPattern.compile(pattern, root.isIgnoreDividers()));
+  }
+
+  /**
+   * Returns the nodes that can match the pattern, or null if the index can't
+   * narrow them down.
+   */
+  private List<TMLNode> candidates(TMLPattern pattern) {
+    Snapshot current = current();
+    String discriminator = pattern.getDiscriminator();
+    if (discriminator != null) {
+      return unmodifiable(current.byKey.get(discriminator));
+    }
+    String literal = pattern.getLiteral();
+    if (literal != null && indexValues) {
+      return unmodifiable(current.byValue.get(literal));
+    }
+    return null;
+  }
+
+  private Snapshot current() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      current = rebuild();
+    }
+    return current;
+  }
+
+  private Snapshot currentWithPaths() {
+    if (!indexPaths) {
+      throw new IllegalStateException("Paths are not indexed");
+    }
+    return current();
+  }
+
+  private synchronized Snapshot rebuild() {
+    Snapshot current = snapshot;
+    if (current == null) {
+      current = build();
+      snapshot = current;
+    }
+    return current;
+  }
+
+  private Snapshot build() {
+    Snapshot result = new Snapshot();
+    // nodes still to index and the paths of their parents, with the next node
+    // in document order last
+    List<TMLNode> nodes = new ArrayList<TMLNode>();
+    List<String> paths = new ArrayList<String>();
+    nodes.add(root);
+    paths.add("");
+    while (!nodes.isEmpty()) {
+      int top = nodes.size() - 1;
+      TMLNode node = nodes.remove(top);
+      String path = index(node, paths.remove(top), result);
+      for (int i = node.getListSize() - 1; i >= 0; i--) {
+        nodes.add(node.getNode(i));
+        paths.add(path);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Indexes a single node and returns the path of its children.
+   */
+  private String index(TMLNode node, String parentPath, Snapshot result) {
+    // frozen nodes never change and may be shared between trees
+    if (!node.isFrozen()) {
+      node.addIndex(this);
+    }
+
+    int len = node.getListSize();
+    if (len == 0) {
+      if (indexValues) {
+        put(result.byValue, node.getValue(), node);
+      }
+      return parentPath;
+    }
+
+    String path = parentPath;
+    TMLNode first = node.getNode(0);
+    if (first.getListSize() == 0) {
+      String key = first.getValue();
+      put(result.byKey, key, node);
+      if (indexPaths) {
+        path = parentPath + key + PATH_SEPARATOR;
+        int ordinal = result.keyed.size();
+        result.keyed.add(node);
+        List<Integer> ordinals = result.byPath.get(path);
+        if (ordinals == null) {
+          ordinals = new ArrayList<Integer>(1);
+          result.byPath.put(path, ordinals);
+        }
+        ordinals.add(ordinal);
+      }
+    }
+
+    return path;
+  }
+
+  private static void put(Map<String, List<TMLNode>> map, String key,
+      TMLNode node) {
+    List<TMLNode> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<TMLNode>(1);
+      map.put(key, list);
+    }
+    list.add(node);
+  }
+
+  private static String encode(String... keys) {
+    StringBuilder sb = new StringBuilder();
+    for (String key : keys) {
+      sb.append(TMLContract.checkNotNull(key)).append(PATH_SEPARATOR);
+    }
+    return sb.toString();
+  }
+
+  private static List<TMLNode> nodes(Snapshot current, List<Integer> ordinals) {
+    if (ordinals == null) {
+      return Collections.emptyList();
+    }
+    List<TMLNode> result = new ArrayList<TMLNode>(ordinals.size());
+    for (int ordinal : ordinals) {
+      result.add(current.keyed.get(ordinal));
+    }
+    return result;
+  }
+
+  private static TMLNode first(List<TMLNode> list) {
+    return list == null ? null : list.get(0);
+  }
+
+  private static List<TMLNode> unmodifiable(List<TMLNode> list) {
+    if (list == null) {
+      return Collections.emptyList();
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  /**
+   * The index as of the last build; never modified once built.
+   */
+  private static class Snapshot {
+    final Map<String, List<TMLNode>> byKey = new HashMap<String, List<TMLNode>>();
+    final Map<String, List<TMLNode>> byValue = new HashMap<String, List<TMLNode>>();
+    final TreeMap<String, List<Integer>> byPath = new TreeMap<String, List<Integer>>();
+    final List<TMLNode> keyed = new ArrayList<TMLNode>();
+  }
+
+}
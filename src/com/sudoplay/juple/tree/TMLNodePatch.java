@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * An ordered list of edits that turns one {@link TMLNode} tree into another,
+ * as produced by {@link TMLNodeDiff#diff(TMLNode, TMLNode)}.
+ * 
+ * <p>
+ * Every {@link Operation} addresses a node by its <i>path</i>, the child
+ * indices leading from the root to the node. Operations are applied in order,
+ * and each path refers to the tree as left by the operations before it; an
+ * empty path addresses the root itself.
+ * 
+ * <p>
+ * {@link #apply(TMLNode)} modifies mutable trees in place. Frozen subtrees,
+ * see {@link TMLNode#freeze()}, are patched by copy-on-write instead: only
+ * the frozen nodes along the path of an operation are copied, every other
+ * subtree is shared with the original tree.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLNodePatch {
+
+  /**
+   * The kinds of edits a patch is made of.
+   */
+  public enum Type {
+    /** Replaces the node at the path */
+    REPLACE,
+    /** Inserts a node at the path, shifting later siblings to the right */
+    INSERT,
+    /** Removes the node at the path, shifting later siblings to the left */
+    REMOVE
+  }
+
+  /**
+   * A single edit of a patch.
+   */
+  public static final class Operation {
+
+    private final Type type;
+    private final int[] path;
+    private final TMLNode node;
+
+    Operation(Type type, int[] path, TMLNode node) {
+      this.type = type;
+      this.path = path;
+      this.node = node;
+    }
+
+    /**
+     * @return the kind of edit
+     */
+    public Type getType() {
+      return type;
+    }
+
+    /**
+     * @return the child indices leading from the root to the edited node
+     */
+    public int[] getPath() {
+      return path.clone();
+    }
+
+    /**
+     * @return the inserted or replacing node, or null for
+     *         {@link Type#REMOVE}
+     */
+    public TMLNode getNode() {
+      return node;
+    }
+
+    @Override
+    public String toString() {
+      String s = type + " " + Arrays.toString(path);
+      return node == null ? s : s + " " + node.toString(true);
+    }
+  }
+
+  private final List<Operation> operations;
+
+  TMLNodePatch(List<Operation> operations) {
+    this.operations = Collections.unmodifiableList(operations);
+  }
+
+  /**
+   * @return the operations of this patch, in the order they are applied
+   */
+  public List<Operation> getOperations() {
+    return operations;
+  }
+
+  /**
+   * @return the number of operations in this patch
+   */
+  public int size() {
+    return operations.size();
+  }
+
+  /**
+   * @return true if this patch does not change anything
+   */
+  public boolean isEmpty() {
+    return operations.isEmpty();
+  }
+
+  /**
+   * Applies this patch to the supplied tree and returns the patched tree.
+   * 
+   * <p>
+   * Mutable nodes are modified in place, so for a mutable root the returned
+   * tree is the root itself, unless the patch replaces the root. Frozen nodes
+   * are copied, so for a frozen root the returned tree is a new frozen tree
+   * and the supplied tree is left unchanged. The patch itself is not
+   * modified and may be applied more than once.
+   * 
+   * @param root
+   *          the tree the patch was computed from, or an equal tree
+   * @return the patched tree
+   * @throws IndexOutOfBoundsException
+   *           if a path does not exist in the tree
+   */
+  public TMLNode apply(TMLNode root) {
+    TMLContract.checkNotNull(root);
+    for (int i = 0, len = operations.size(); i < len; i++) {
+      root = apply(root, operations.get(i));
+    }
+    return root;
+  }
+
+  private static TMLNode apply(TMLNode root, Operation operation) {
+    int[] path = operation.path;
+    if (path.length == 0) {
+      // only a replacement can address the root
+      TMLNode node = operation.node.clone();
+      return root.isFrozen() ? node.freeze() : node;
+    }
+
+    // walk down to the parent of the edited node, stopping at the first
+    // frozen node, below which the tree has to be copied
+    int last = path.length - 1;
+    List<TMLNode> frozen = null;
+    TMLNode mutableParent = null;
+    TMLNode node = root;
+    for (int i = 0; i < last; i++) {
+      if (node.isFrozen()) {
+        if (frozen == null) {
+          frozen = new ArrayList<TMLNode>(last - i + 1);
+        }
+        frozen.add(node);
+      } else {
+        mutableParent = node;
+      }
+      node = child(node, path[i]);
+    }
+
+    if (!node.isFrozen()) {
+      edit(node, path[last], operation);
+      return root;
+    }
+
+    // copy the frozen nodes from the parent back up to the first frozen node
+    TMLNode copy = copyEdit(node, path[last], operation);
+    int depth = last;
+    if (frozen != null) {
+      for (int i = frozen.size() - 1; i >= 0; i--) {
+        depth -= 1;
+        copy = frozen.get(i).withNode(path[depth], copy);
+      }
+    }
+    if (depth == 0) {
+      return copy;
+    }
+    mutableParent.set(path[depth - 1], copy);
+    return root;
+  }
+
+  private static TMLNode child(TMLNode node, int index) {
+    if (index < 0 || index >= node.getListSize()) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: "
+          + node.getListSize());
+    }
+    return node.getNode(index);
+  }
+
+  private static void edit(TMLNode parent, int index, Operation operation) {
+    switch (operation.type) {
+    case REPLACE:
+      parent.set(index, operation.node.clone());
+      break;
+    case INSERT:
+      parent.add(index, operation.node.clone());
+      break;
+    case REMOVE:
+      parent.remove(index);
+      break;
+    }
+  }
+
+  private static TMLNode copyEdit(TMLNode parent, int index,
+      Operation operation) {
+    switch (operation.type) {
+    case REPLACE:
+      child(parent, index);
+      return parent.withNode(index, operation.node.clone());
+    case INSERT:
+      return parent.withAdded(index, operation.node.clone());
+    default:
+      return parent.withRemoved(index);
+    }
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0, len = operations.size(); i < len; i++) {
+      sb.append(operations.get(i)).append('\n');
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.stream.TMLReader;
+import com.sudoplay.juple.stream.TMLToken;
+
+/**
+ * A {@link TMLReader} that reads from a {@link TMLNode} tree instead of text.
+ * The root node is read as the document's outer list, lists as lists, null
+ * nodes as nulls, divider nodes as dividers and all other nodes as data, so a
+ * tree built by a {@link TMLNodeTreeParser} with dividers ignored, or by a
+ * {@link TMLNodeWriter}, reads the same as the text it represents. The one
+ * exception is the empty string: {@link TMLNodeTreeParser} drops empty data, so
+ * an empty string in parsed text is not in the tree and reads as absent, while
+ * a {@link TMLNodeWriter} keeps it as an empty data node.
+ * 
+ * <p>
+ * Portions of this code have been derived from the google-gson source <a
+ * href="https://code.google.com/p/google-gson/"
+ * >https://code.google.com/p/google-gson/</a>.
+ * 
+ * @author Jesse Wilson (original for gson)
+ * @author Jason Taylor (modified for Juple)
+ */
+public class TMLNodeReader extends TMLReader {
+
+  private static final Reader UNREADABLE_READER = new Reader() {
+    @Override
+    public int read(char[] buffer, int offset, int count) throws IOException {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void close() throws IOException {
+      throw new AssertionError();
+    }
+  };
+
+  private final TMLNode root;
+
+  /*
+   * The lists being read and the index of the next child to read in each. The
+   * bottom of the stack is the document, which contains only the root.
+   */
+  private TMLNode[] nodes = new TMLNode[32];
+  private int[] indices = new int[32];
+  private int stackSize = 1;
+
+  private TMLToken lastToken = null;
+  private boolean immediateFieldChild = false;
+
+  public TMLNodeReader(TMLNode root) {
+    super(UNREADABLE_READER);
+    this.root = TMLContract.checkNotNull(root);
+  }
+
+  @Override
+  public void beginList() throws IOException {
+    TMLNode node = expect(TMLToken.BEGIN_LIST);
+    push(node);
+    lastToken = TMLToken.BEGIN_LIST;
+  }
+
+  @Override
+  public void endList() throws IOException {
+    if (stackSize < 2) {
+      throw new IllegalStateException("END_LIST scope out of range");
+    }
+    if (next() != null) {
+      throw new IllegalStateException("Expected END_LIST but was " + peek());
+    }
+    nodes[--stackSize] = null;
+    lastToken = TMLToken.END_LIST;
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public void consumeDivider() throws IOException {
+    expect(TMLToken.DIVIDER);
+    lastToken = TMLToken.DIVIDER;
+  }
+
+  @Override
+  public void nextNull() throws IOException {
+    expect(TMLToken.NULL);
+    lastToken = TMLToken.NULL;
+  }
+
+  @Override
+  public void nextNullArray() throws IOException {
+    expect(TMLToken.NULL_ARRAY);
+    lastToken = TMLToken.NULL_ARRAY;
+  }
+
+  @Override
+  public String nextName() throws IOException {
+    String name = nextString();
+    consumeDivider();
+    immediateFieldChild = true;
+    return name;
+  }
+
+  @Override
+  public boolean nextNameIfEquals(String name) throws IOException {
+    TMLNode node = next();
+    if (node == null || peek() != TMLToken.DATA
+        || !node.getValue().equals(name)) {
+      return false;
+    }
+    nextName();
+    return true;
+  }
+
+  @Override
+  public String nextString() throws IOException {
+    TMLNode node = expect(TMLToken.DATA);
+    lastToken = TMLToken.DATA;
+    return node.getValue();
+  }
+
+  /**
+   * Trees have no character offsets.
+   * 
+   * @return -1
+   */
+  @Override
+  public int getPosition() {
+    return -1;
+  }
+
+  @Override
+  public int getScope() {
+    return stackSize - 1;
+  }
+
+  @Override
+  public boolean hasNextInScope(int scope) throws IOException {
+    if (scope < 1) {
+      throw new IllegalArgumentException("Expected scope > 0 but was scope="
+          + scope);
+    }
+    return stackSize - 1 == scope && next() != null;
+  }
+
+  @Override
+  public boolean hasNext() throws IOException {
+    return peek() != TMLToken.EOF;
+  }
+
+  @Override
+  public void skipRemaining() throws IOException {
+    if (getScope() == 0) {
+      throw new IllegalStateException("Expected scope > 0");
+    }
+    nodes[--stackSize] = null;
+    lastToken = TMLToken.END_LIST;
+  }
+
+  @Override
+  public void skipNext() throws IOException {
+    switch (peek()) {
+    case BEGIN_LIST:
+      indices[stackSize - 1]++;
+      lastToken = TMLToken.END_LIST;
+      break;
+    case END_LIST:
+      endList();
+      break;
+    case NULL:
+      nextNull();
+      break;
+    case NULL_ARRAY:
+      nextNullArray();
+      break;
+    case DATA:
+      nextString();
+      break;
+    case DIVIDER:
+      consumeDivider();
+      break;
+    case EOF:
+      throw new IOException("End of input");
+    default:
+      throw new AssertionError();
+    }
+  }
+
+  @Override
+  public TMLToken getLastToken() {
+    return lastToken;
+  }
+
+  @Override
+  public TMLToken peek() throws IOException {
+    TMLNode node = next();
+    if (node == null) {
+      return stackSize == 1 ? TMLToken.EOF : TMLToken.END_LIST;
+    }
+    if (node.isList()) {
+      return TMLToken.BEGIN_LIST;
+    } else if (node.isNull()) {
+      return TMLToken.NULL;
+    } else if (node.isNullArray()) {
+      return TMLToken.NULL_ARRAY;
+    } else if (node.isDivider()) {
+      return TMLToken.DIVIDER;
+    }
+    return TMLToken.DATA;
+  }
+
+  @Override
+  public void close() throws IOException {
+    while (stackSize > 1) {
+      nodes[--stackSize] = null;
+    }
+    indices[0] = 1;
+    lastToken = TMLToken.EOF;
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public void assertFullConsumption() throws IOException {
+    if (stackSize > 1) {
+      throw new IOException("TML stream closed while still inside scope: "
+          + stackSize);
+    }
+    if (next() != null) {
+      throw new IOException("Expected EOF but was " + peek()
+          + " on assertFullConsumption()");
+    }
+  }
+
+  @Override
+  public boolean isImmediateFieldChild() {
+    return immediateFieldChild;
+  }
+
+  @Override
+  public void clearImmediateFieldChild() {
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public boolean getAndClearImmediateFieldChild() {
+    boolean is = immediateFieldChild;
+    immediateFieldChild = false;
+    return is;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName();
+  }
+
+  /**
+   * Returns the next node in the current list without consuming it, or null if
+   * the current list has no more nodes.
+   */
+  private TMLNode next() {
+    int i = indices[stackSize - 1];
+    if (stackSize == 1) {
+      return i == 0 ? root : null;
+    }
+    TMLNode list = nodes[stackSize - 1];
+    return i < list.getListSize() ? list.getNode(i) : null;
+  }
+
+  /**
+   * Consumes and returns the next node, asserting that it is of the expected
+   * kind.
+   */
+  private TMLNode expect(TMLToken expected) throws IOException {
+    TMLToken token = peek();
+    if (token != expected) {
+      throw new IllegalStateException("Expected " + expected + " but was "
+          + token);
+    }
+    TMLNode node = next();
+    indices[stackSize - 1]++;
+    return node;
+  }
+
+  private void push(TMLNode node) {
+    if (stackSize == nodes.length) {
+      TMLNode[] newNodes = new TMLNode[stackSize * 2];
+      int[] newIndices = new int[stackSize * 2];
+      System.arraycopy(nodes, 0, newNodes, 0, stackSize);
+      System.arraycopy(indices, 0, newIndices, 0, stackSize);
+      nodes = newNodes;
+      indices = newIndices;
+    }
+    nodes[stackSize] = node;
+    indices[stackSize] = 0;
+    stackSize++;
+  }
+
+}
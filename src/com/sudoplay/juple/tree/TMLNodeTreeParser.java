@@ -47,10 +47,13 @@ package com.sudoplay.juple.tree;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.sudoplay.juple.Juple;
 import com.sudoplay.juple.error.TMLContract;
 import com.sudoplay.juple.error.TMLIOException;
+import com.sudoplay.juple.error.TMLSyntaxException;
 import com.sudoplay.juple.stream.TMLReader;
 import com.sudoplay.juple.stream.TMLToken;
 
@@ -63,7 +66,17 @@ import com.sudoplay.juple.stream.TMLToken;
  */
 public class TMLNodeTreeParser {
 
+  /**
+   * Frame kinds: a list that ends at its close delimiter, a divider section
+   * that ends at a divider or at the close delimiter of its list, and the
+   * wrapper list that collects the sections of a divided list.
+   */
+  private static final int LIST = 0;
+  private static final int SECTION = 1;
+  private static final int WRAPPER = 2;
+
   private final boolean ignoreDividers;
+  private final int maxDepth;
 
   /**
    * Creates a {@link TMLNodeTreeParser} with default settings.
@@ -71,7 +84,7 @@ public class TMLNodeTreeParser {
    * @see TMLNodeTreeParser#TMLNodeTreeParser(boolean)
    */
   public TMLNodeTreeParser() {
-    this.ignoreDividers = false;
+    this(false);
   }
 
   /**
@@ -91,7 +104,22 @@ public class TMLNodeTreeParser {
    * @param ignoreDividers
    */
   public TMLNodeTreeParser(boolean ignoreDividers) {
+    this(ignoreDividers, -1);
+  }
+
+  /**
+   * Creates a {@link TMLNodeTreeParser} that rejects documents with lists
+   * nested more than {@code maxDepth} levels deep, counting the document's
+   * outer list as the first level. A negative {@code maxDepth} allows any
+   * depth.
+   * 
+   * @param ignoreDividers
+   * @param maxDepth
+   * @see TMLNodeTreeParser#TMLNodeTreeParser(boolean)
+   */
+  public TMLNodeTreeParser(boolean ignoreDividers, int maxDepth) {
     this.ignoreDividers = ignoreDividers;
+    this.maxDepth = maxDepth;
   }
 
   /**
@@ -120,13 +148,26 @@ public class TMLNodeTreeParser {
    * @return
    * @throws TMLIOException
    *           if the underlying reader is unable to read the data
+   * @throws TMLSyntaxException
+   *           if the document is nested deeper than the maximum depth
    * @see TMLReader.Property
    */
   public TMLNode parse(Reader reader) throws TMLIOException {
+    return parse(reader, null);
+  }
+
+  /**
+   * Parses a tree from a reader, reporting the position of each list to the
+   * supplied listener, if any.
+   */
+  TMLNode parse(Reader reader, ListListener listener) throws TMLIOException {
     try {
       TMLReader tmlReader = new TMLReader(reader);
-      tmlReader.beginList();
-      TMLNode node = parse(tmlReader, false);
+      beginList(tmlReader);
+      if (listener != null) {
+        listener.beginList(tmlReader.getPosition() - 1);
+      }
+      TMLNode node = parse(tmlReader, newList(), listener);
       TMLContract.assertFullConsumption(node, tmlReader);
       return node;
     } catch (IOException e) {
@@ -135,59 +176,189 @@ public class TMLNodeTreeParser {
   }
 
   /**
-   * Parses a stream of TML data into a hierarchy of {@link TMLNode}s.
+   * Parses the remainder of a list whose open delimiter has already been read
+   * from the supplied reader, consuming its close delimiter.
+   * 
+   * @param reader
+   * @param first
+   *          the first element of the list, if it has been read as well, or
+   *          null
+   * @return the list
+   * @throws IOException
+   */
+  TMLNode parseRemaining(TMLReader reader, TMLNode first) throws IOException {
+    TMLNode list = newList();
+    if (first != null) {
+      first.setIgnoreDividers(ignoreDividers);
+      list.add(first);
+    }
+    return parse(reader, list, null);
+  }
+
+  /**
+   * Parses a stream of TML data into a hierarchy of {@link TMLNode}s. The
+   * document's outer list must already have been opened.
+   * 
+   * <p>
+   * The tree is built with an explicit stack instead of recursion, so the
+   * nesting depth of the document is only limited by {@code maxDepth}.
    * 
    * <p>
    * NOTE: The caller is responsible for closing the reader.
    * 
    * @param reader
    *          the reader to parse data from
-   * @param endAtBar
-   *          if true, will stop parsing at a divider
+   * @param list
+   *          the node to add the elements of the opened list to
+   * @param listener
+   *          receives the position of each list, may be null
    * @return
    * @throws IOException
    */
-  private TMLNode parse(TMLReader reader, boolean endAtBar) throws IOException {
-    TMLToken token;
-    TMLNode node = new TMLNode();
-    node.setIgnoreDividers(ignoreDividers);
-    parse: while (true) {
-      token = reader.peek();
+  private TMLNode parse(TMLReader reader, TMLNode list, ListListener listener)
+      throws IOException {
+    List<TMLNode> nodes = new ArrayList<TMLNode>();
+    List<Integer> kinds = new ArrayList<Integer>();
+    nodes.add(list);
+    kinds.add(LIST);
+
+    while (true) {
+      int top = nodes.size() - 1;
+      TMLNode node = nodes.get(top);
+      int kind = kinds.get(top);
+
+      if (kind == WRAPPER) {
+        // a divided list continues with another section
+        nodes.add(newList());
+        kinds.add(SECTION);
+        continue;
+      }
+
+      TMLToken token = reader.peek();
       if (token == TMLToken.BEGIN_LIST) {
-        reader.beginList();
-        node.add(parse(reader, false));
+        if (listener != null) {
+          listener.beginList(reader.getPosition() - 1);
+        }
+        beginList(reader);
+        nodes.add(newList());
+        kinds.add(LIST);
+        continue;
       } else if (token == TMLToken.DIVIDER) {
         reader.consumeDivider();
         if (ignoreDividers) {
-          TMLNode newNode = new TMLNode("|");
-          newNode.setIgnoreDividers(ignoreDividers);
-          node.add(newNode);
+          node.add(newData("|"));
+        } else if (kind == SECTION) {
+          nodes.remove(top);
+          kinds.remove(top);
+          nodes.get(top - 1).add(node);
         } else {
-          if (endAtBar) break;
-          node = new TMLNode(node);
-          while (true) {
-            node.add(parse(reader, true));
-            if (reader.getLastToken() == TMLToken.END_LIST) {
-              break parse;
-            }
-          }
+          // the content so far becomes the first section
+          nodes.set(top, new TMLNode(node));
+          kinds.set(top, WRAPPER);
         }
-      } else if (token == TMLToken.END_LIST) {
-        reader.endList();
-        break;
+        continue;
       } else if (token == TMLToken.DATA) {
         String data = reader.nextString();
-        if (!data.equals("")) {
-          TMLNode newNode = new TMLNode(data);
-          newNode.setIgnoreDividers(ignoreDividers);
-          node.add(newNode);
+        if (data.equals("|")) {
+          // an escaped divider
+          node.add(newString(data));
+        } else if (!data.equals("")) {
+          node.add(newData(data));
         }
+        continue;
+      } else if (token == TMLToken.NULL) {
+        reader.nextNull();
+        node.add(newData(null));
+        continue;
+      } else if (token == TMLToken.NULL_ARRAY) {
+        reader.nextNullArray();
+        node.add(newData(TMLNode.NULL_ARRAY));
+        continue;
       } else if (token == TMLToken.EOF) {
-        break;
-      } else {
+        // incomplete document, reported by the caller
+        return nodes.get(0);
+      } else if (token != TMLToken.END_LIST) {
         throw new IllegalStateException();
       }
+
+      // the list ends, and with a section the divided list around it
+      int end = reader.getPosition();
+      reader.endList();
+      nodes.remove(top);
+      kinds.remove(top);
+      if (kind == SECTION) {
+        top--;
+        TMLNode wrapper = nodes.remove(top);
+        kinds.remove(top);
+        wrapper.add(node);
+        node = wrapper;
+      }
+      TMLNode container = top == 0 ? null : nodes.get(top - 1);
+      if (listener != null) {
+        node = listener.endList(node, container, end);
+      }
+      if (container == null) {
+        return node;
+      }
+      container.add(node);
     }
+  }
+
+  private void beginList(TMLReader reader) throws IOException {
+    reader.beginList();
+    if (maxDepth >= 0 && reader.getScope() > maxDepth) {
+      throw new TMLSyntaxException("Maximum depth of " + maxDepth
+          + " exceeded");
+    }
+  }
+
+  /**
+   * Receives the source positions of the lists a parser builds, in document
+   * order; see {@link TMLIncrementalParser}.
+   */
+  interface ListListener {
+
+    /**
+     * Called when a list begins.
+     * 
+     * @param start
+     *          the position of the open delimiter
+     */
+    void beginList(int start);
+
+    /**
+     * Called when the list begun last ends, before it is added to its
+     * container.
+     * 
+     * @param node
+     *          the node built for the list
+     * @param container
+     *          the node the list is added to, or null for the root
+     * @param end
+     *          the position just past the close delimiter
+     * @return the node to add in place of the list's node
+     */
+    TMLNode endList(TMLNode node, TMLNode container, int end);
+  }
+
+  private TMLNode newList() {
+    TMLNode node = new TMLNode();
+    node.setIgnoreDividers(ignoreDividers);
+    return node;
+  }
+
+  private TMLNode newData(String data) {
+    TMLNode node = new TMLNode(data);
+    node.setIgnoreDividers(ignoreDividers);
+    return node;
+  }
+
+  /**
+   * Returns a node for data read from a data token, which is never a divider.
+   */
+  private TMLNode newString(String data) {
+    TMLNode node = TMLNode.newString(data);
+    node.setIgnoreDividers(ignoreDividers);
     return node;
   }
 
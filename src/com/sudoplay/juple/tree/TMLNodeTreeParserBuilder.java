@@ -47,14 +47,20 @@ package com.sudoplay.juple.tree;
 public class TMLNodeTreeParserBuilder {
 
   private boolean ignoreDividers;
+  private int maxDepth = -1;
   
   public TMLNodeTreeParserBuilder setIgnoreDividers() {
     this.ignoreDividers = true;
     return this;
   }
   
+  public TMLNodeTreeParserBuilder setMaxDepth(int maxDepth) {
+    this.maxDepth = maxDepth;
+    return this;
+  }
+  
   public TMLNodeTreeParser create() {
-    return new TMLNodeTreeParser(ignoreDividers);
+    return new TMLNodeTreeParser(ignoreDividers, maxDepth);
   }
   
 }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+/**
+ * Visits the nodes of a tree in document order using an explicit stack, so
+ * that arbitrarily deep trees can be searched without recursion.
+ * 
+ * <p>
+ * The {@code depth} has the same meaning as in
+ * {@link TMLNode#findAll(TMLNode, int)}: the children of nodes at most
+ * {@code depth} levels below the first node are visited, or all nodes if
+ * {@code depth} is negative.
+ * 
+ * @author Jason Taylor
+ */
+final class TMLNodeWalker {
+
+  private TMLNode[] nodes = new TMLNode[16];
+  private int[] indices = new int[16];
+  private int[] depths = new int[16];
+  private int stackSize = 0;
+
+  private TMLNode first;
+  private final int depth;
+  private boolean entered;
+
+  TMLNodeWalker(TMLNode node, int depth) {
+    this.first = node;
+    this.depth = depth;
+  }
+
+  /**
+   * @return the next node in document order, or null if all nodes have been
+   *         visited
+   */
+  TMLNode next() {
+    if (first != null) {
+      TMLNode node = first;
+      first = null;
+      enter(node, depth);
+      return node;
+    }
+    while (stackSize > 0) {
+      int top = stackSize - 1;
+      TMLNode node = nodes[top];
+      int i = indices[top];
+      if (i < node.getListSize()) {
+        indices[top] = i + 1;
+        TMLNode child = node.getNode(i);
+        int d = depths[top];
+        enter(child, d > 0 ? d - 1 : d);
+        return child;
+      }
+      nodes[--stackSize] = null;
+    }
+    return null;
+  }
+
+  /**
+   * Skips the descendants of the node last returned by {@link #next()}.
+   */
+  void skipChildren() {
+    if (entered) {
+      nodes[--stackSize] = null;
+      entered = false;
+    }
+  }
+
+  private void enter(TMLNode node, int depth) {
+    entered = depth != 0 && node.getListSize() > 0;
+    if (!entered) {
+      return;
+    }
+    if (stackSize == nodes.length) {
+      int length = stackSize * 2;
+      TMLNode[] newNodes = new TMLNode[length];
+      int[] newIndices = new int[length];
+      int[] newDepths = new int[length];
+      System.arraycopy(nodes, 0, newNodes, 0, stackSize);
+      System.arraycopy(indices, 0, newIndices, 0, stackSize);
+      System.arraycopy(depths, 0, newDepths, 0, stackSize);
+      nodes = newNodes;
+      indices = newIndices;
+      depths = newDepths;
+    }
+    nodes[stackSize] = node;
+    indices[stackSize] = 0;
+    depths[stackSize] = depth;
+    stackSize++;
+  }
+
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.stream.SpaceEscapePolicy;
+import com.sudoplay.juple.stream.TMLEncodedName;
+import com.sudoplay.juple.stream.TMLToken;
+import com.sudoplay.juple.stream.TMLWriter;
+
+/**
+ * A {@link TMLWriter} that builds a {@link TMLNode} tree instead of writing
+ * text. Type adapters write to it exactly as they write to a text writer, and
+ * the resulting tree, returned by {@link #get()}, is the same tree that
+ * {@link TMLNodeTreeParser} would build, with dividers ignored, from the text
+ * the same calls would have written. The only exception is the empty string,
+ * which is kept as an empty data node.
+ * 
+ * <p>
+ * Portions of this code have been derived from the google-gson source <a
+ * href="https://code.google.com/p/google-gson/"
+ * >https://code.google.com/p/google-gson/</a>.
+ * 
+ * @author Jesse Wilson (original for gson)
+ * @author Jason Taylor (modified for Juple)
+ */
+public class TMLNodeWriter extends TMLWriter {
+
+  private static final Writer UNWRITABLE_WRITER = new Writer() {
+    @Override
+    public void write(char[] buffer, int offset, int counter) {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void flush() throws IOException {
+      throw new AssertionError();
+    }
+
+    @Override
+    public void close() throws IOException {
+      throw new AssertionError();
+    }
+  };
+
+  /**
+   * The lists currently being written, innermost last.
+   */
+  private final List<TMLNode> stack = new ArrayList<TMLNode>();
+
+  /**
+   * The document's outer list, once it has been started.
+   */
+  private TMLNode root;
+
+  private TMLToken lastToken = null;
+  private String deferredName;
+  private boolean immediateFieldChild = false;
+
+  private SpaceEscapePolicy overrideSpaceEscapePolicy = null;
+  private boolean enforceFiniteFloatingPointValues = false;
+
+  public TMLNodeWriter() {
+    super(UNWRITABLE_WRITER);
+  }
+
+  /**
+   * Returns the tree that has been written.
+   * 
+   * @return the document's outer list
+   * @throws IllegalStateException
+   *           if the document is empty or incomplete
+   */
+  public TMLNode get() {
+    if (root == null) {
+      throw new IllegalStateException("Document empty");
+    }
+    if (!stack.isEmpty()) {
+      throw new IllegalStateException("Document scope not resolved, scope="
+          + getScope());
+    }
+    return root;
+  }
+
+  @Override
+  public TMLWriter beginList() throws IOException {
+    assertNotClosed();
+    writeDeferredName();
+    TMLNode node = new TMLNode();
+    node.setIgnoreDividers(true);
+    if (stack.isEmpty()) {
+      root = node;
+    } else {
+      peek().add(node);
+    }
+    stack.add(node);
+    lastToken = TMLToken.BEGIN_LIST;
+    return this;
+  }
+
+  @Override
+  public TMLWriter endList() throws IOException {
+    assertNotClosed();
+    writeDeferredName();
+    if (stack.isEmpty()) {
+      throw new IllegalStateException("Nesting problem.");
+    }
+    stack.remove(stack.size() - 1);
+    immediateFieldChild = false;
+    lastToken = stack.isEmpty() ? TMLToken.EOF : TMLToken.END_LIST;
+    return this;
+  }
+
+  @Override
+  public TMLWriter divider() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    if (deferredName != null) {
+      throw new IllegalStateException(
+          "Expected value, open delimiter or close delimiter");
+    }
+    add("|");
+    lastToken = TMLToken.DIVIDER;
+    return this;
+  }
+
+  @Override
+  public TMLWriter name(String name) throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    TMLContract.checkNotNull(name);
+    if (name.indexOf(' ') > -1) {
+      throw new IllegalArgumentException("Expected no spaces in string: "
+          + name);
+    }
+    if (lastToken != TMLToken.BEGIN_LIST || peek().getListSize() != 0
+        || deferredName != null) {
+      throw new IllegalStateException(
+          "Expected open delimiter before name, was " + lastToken);
+    }
+    deferredName = name;
+    immediateFieldChild = true;
+    return this;
+  }
+
+  @Override
+  public TMLWriter beginField(TMLEncodedName name) throws IOException {
+    beginList();
+    deferredName = name.getName();
+    immediateFieldChild = true;
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(String value) throws IOException {
+    return value(value, SpaceEscapePolicy.AUTO);
+  }
+
+  @Override
+  public TMLWriter value(String value, SpaceEscapePolicy escapeSpaces)
+      throws IOException {
+    if (overrideSpaceEscapePolicy != null)
+      escapeSpaces = overrideSpaceEscapePolicy;
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    if (value == null) {
+      return nullValue();
+    }
+    writeDeferredName();
+    boolean encodeSpaces = escapeSpaces == SpaceEscapePolicy.FORCE_ESCAPE
+        || (value.contains("  ") && escapeSpaces == SpaceEscapePolicy.AUTO);
+    if (encodeSpaces || value.indexOf(' ') == -1) {
+      addString(value);
+    } else {
+      // unescaped spaces separate data elements in the written text
+      int start = 0;
+      int length = value.length();
+      for (int i = 0; i <= length; i++) {
+        if (i == length || value.charAt(i) == ' ') {
+          if (start < i) {
+            addString(value.substring(start, i));
+          }
+          start = i + 1;
+        }
+      }
+    }
+    lastToken = TMLToken.DATA;
+    return this;
+  }
+
+  @Override
+  public TMLWriter nullValue() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    add(null);
+    lastToken = TMLToken.NULL;
+    return this;
+  }
+
+  @Override
+  public TMLWriter nullArrayValue() throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    add(TMLNode.NULL_ARRAY);
+    lastToken = TMLToken.NULL_ARRAY;
+    return this;
+  }
+
+  @Override
+  public TMLWriter value(boolean value) throws IOException {
+    return data(value ? "true" : "false");
+  }
+
+  @Override
+  public TMLWriter value(double value) throws IOException {
+    if (enforceFiniteFloatingPointValues) {
+      if (Double.isNaN(value) || Double.isInfinite(value)) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    return data(Double.toString(value));
+  }
+
+  @Override
+  public TMLWriter value(float value) throws IOException {
+    if (enforceFiniteFloatingPointValues) {
+      if (Float.isNaN(value) || Float.isInfinite(value)) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    return data(Float.toString(value));
+  }
+
+  @Override
+  public TMLWriter value(long value) throws IOException {
+    return data(Long.toString(value));
+  }
+
+  @Override
+  public TMLWriter value(Number value) throws IOException {
+    if (value == null) {
+      return nullValue();
+    }
+    String string = value.toString();
+    if (enforceFiniteFloatingPointValues) {
+      if ((string.equals("-Infinity") || string.equals("Infinity") || string
+          .equals("NaN"))) {
+        throw new IllegalArgumentException(
+            "Numeric values must be finite, but was " + value);
+      }
+    }
+    return data(string);
+  }
+
+  @Override
+  public void flush() throws IOException {}
+
+  @Override
+  public void close() throws IOException {
+    if (!stack.isEmpty()) {
+      throw new IllegalStateException("Document scope not resolved, scope="
+          + getScope());
+    }
+    if (root == null) {
+      throw new IllegalStateException("Document empty");
+    }
+    lastToken = TMLToken.EOF;
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public int getScope() {
+    return stack.size();
+  }
+
+  @Override
+  public TMLToken getLastToken() {
+    return lastToken;
+  }
+
+  @Override
+  public boolean hasUnresolvedName() {
+    return deferredName != null;
+  }
+
+  @Override
+  public boolean isImmediateFieldChild() {
+    return immediateFieldChild;
+  }
+
+  @Override
+  public void clearImmediateFieldChild() {
+    immediateFieldChild = false;
+  }
+
+  @Override
+  public boolean getAndClearImmediateFieldChild() {
+    boolean is = immediateFieldChild;
+    immediateFieldChild = false;
+    return is;
+  }
+
+  @Override
+  public void setOverrideSpaceEscapePolicy(SpaceEscapePolicy policy) {
+    overrideSpaceEscapePolicy = policy;
+  }
+
+  @Override
+  public void clearOverrideSpaceEscapePolicy() {
+    overrideSpaceEscapePolicy = null;
+  }
+
+  @Override
+  public void setEnforceFiniteFloatingPointValues(boolean flag) {
+    enforceFiniteFloatingPointValues = flag;
+  }
+
+  private TMLWriter data(String value) throws IOException {
+    assertNotClosed();
+    assertScopeGreaterThanZero();
+    writeDeferredName();
+    add(value);
+    lastToken = TMLToken.DATA;
+    return this;
+  }
+
+  private void add(String data) {
+    TMLNode node = new TMLNode(data);
+    node.setIgnoreDividers(true);
+    peek().add(node);
+  }
+
+  /**
+   * Adds string data, which is written escaped and so is never a divider.
+   */
+  private void addString(String data) {
+    TMLNode node = data.equals("|") ? TMLNode.newString(data) : new TMLNode(
+        data);
+    node.setIgnoreDividers(true);
+    peek().add(node);
+  }
+
+  private TMLNode peek() {
+    return stack.get(stack.size() - 1);
+  }
+
+  private void writeDeferredName() {
+    if (deferredName != null) {
+      add(deferredName);
+      add("|");
+      deferredName = null;
+    }
+  }
+
+  private void assertScopeGreaterThanZero() {
+    if (!stack.isEmpty()) return;
+    throw new IllegalStateException(
+        "Invalid top level token, expected BEGIN_LIST");
+  }
+
+  private void assertNotClosed() {
+    if (root != null && stack.isEmpty()) {
+      throw new IllegalStateException("Document is closed");
+    }
+  }
+
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.io.Closeable;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.error.TMLIOException;
+
+/**
+ * Holds a TML node tree in native memory, outside of the Java heap.
+ * 
+ * <p>
+ * The tree is stored in a direct {@link ByteBuffer} using a compact binary
+ * layout: a table of fixed size node records in breadth-first order, so that
+ * the children of every list are contiguous, followed by a region holding the
+ * de-duplicated string data of all data nodes. Only this document object and
+ * the {@link TMLOffHeapNode} handles returned while navigating it live on the
+ * heap, so large resident trees do not add to garbage collection work.
+ * 
+ * <p>
+ * The native memory is released when {@link #close()} is called, or as soon
+ * as the reads in progress on other threads have finished. Any access to the
+ * document or to one of its nodes after it has been closed throws an
+ * {@link IllegalStateException}. Reading a document from several threads is
+ * safe, also while it is being closed.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLOffHeapDocument implements Closeable {
+
+  /**
+   * Node record layout: type, first child index or string offset, child count
+   * or string length.
+   */
+  static final int NODE_SIZE = 12;
+  private static final int TYPE_OFFSET = 0;
+  private static final int A_OFFSET = 4;
+  private static final int B_OFFSET = 8;
+
+  private static final TMLNode.Type[] TYPES = TMLNode.Type.values();
+
+  /**
+   * Set in {@link #state} once the document has been closed; the remaining bits
+   * count the reads in progress.
+   */
+  private static final int CLOSED = Integer.MIN_VALUE;
+
+  private final ByteBuffer buffer;
+  private final AtomicInteger state = new AtomicInteger();
+  private final int nodeCount;
+  private final int stringBase;
+  private final boolean ignoreDividers;
+
+  private TMLOffHeapDocument(ByteBuffer buffer, int nodeCount,
+      int stringBase, boolean ignoreDividers) {
+    this.buffer = buffer;
+    this.nodeCount = nodeCount;
+    this.stringBase = stringBase;
+    this.ignoreDividers = ignoreDividers;
+  }
+
+  /**
+   * Parses a TML string into a new off-heap document.
+   * 
+   * @param string
+   * @return the new document
+   * @see #parse(Reader, boolean)
+   */
+  public static TMLOffHeapDocument parse(String string) {
+    StringReader reader = new StringReader(string);
+    TMLOffHeapDocument document = parse(reader, false);
+    reader.close();
+    return document;
+  }
+
+  /**
+   * Parses TML data from a reader into a new off-heap document.
+   * 
+   * <p>
+   * The data is first parsed into a short lived {@link TMLNode} tree which is
+   * then encoded into native memory and left for collection.
+   * 
+   * <p>
+   * NOTE: The caller is responsible for closing the reader.
+   * 
+   * @param reader
+   * @param ignoreDividers
+   *          see {@link TMLNodeTreeParser#TMLNodeTreeParser(boolean)}
+   * @return the new document
+   * @throws TMLIOException
+   *           if the underlying reader is unable to read the data
+   */
+  public static TMLOffHeapDocument parse(Reader reader, boolean ignoreDividers)
+      throws TMLIOException {
+    return create(new TMLNodeTreeParser(ignoreDividers).parse(reader),
+        ignoreDividers);
+  }
+
+  /**
+   * Copies an existing {@link TMLNode} tree into a new off-heap document.
+   * 
+   * @param root
+   * @param ignoreDividers
+   *          true if the tree was parsed with dividers ignored; used when
+   *          parsing string patterns passed to the find methods
+   * @return the new document
+   */
+  public static TMLOffHeapDocument create(TMLNode root, boolean ignoreDividers) {
+    TMLContract.checkNotNull(root);
+
+    // first pass: number the nodes breadth-first and collect unique strings
+    List<TMLNode> nodes = new ArrayList<TMLNode>();
+    Map<String, Integer> strings = new HashMap<String, Integer>();
+    int stringLength = 0;
+    LinkedList<TMLNode> queue = new LinkedList<TMLNode>();
+    queue.add(root);
+    while (!queue.isEmpty()) {
+      TMLNode node = queue.removeFirst();
+      nodes.add(node);
+      if (node.isList()) {
+        for (int i = 0, len = node.getListSize(); i < len; i++) {
+          queue.add(node.getNode(i));
+        }
+      } else if (!strings.containsKey(node.getValue())) {
+        strings.put(node.getValue(), stringLength);
+        stringLength += node.getValue().length();
+      }
+    }
+
+    long size = (long) nodes.size() * NODE_SIZE + (long) stringLength * 2;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Tree too large: " + size + " bytes");
+    }
+    int stringBase = nodes.size() * NODE_SIZE;
+    ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(
+        ByteOrder.nativeOrder());
+
+    // second pass: write the node records, children are numbered in the same
+    // breadth-first order so each list's children start at nextChild
+    int nextChild = 1;
+    for (int i = 0, len = nodes.size(); i < len; i++) {
+      TMLNode node = nodes.get(i);
+      int offset = i * NODE_SIZE;
+      buffer.putInt(offset + TYPE_OFFSET, typeOf(node).ordinal());
+      if (node.isList()) {
+        buffer.putInt(offset + A_OFFSET, nextChild);
+        buffer.putInt(offset + B_OFFSET, node.getListSize());
+        nextChild += node.getListSize();
+      } else {
+        buffer.putInt(offset + A_OFFSET, strings.get(node.getValue()));
+        buffer.putInt(offset + B_OFFSET, node.getValue().length());
+      }
+    }
+    for (Map.Entry<String, Integer> entry : strings.entrySet()) {
+      String string = entry.getKey();
+      int offset = stringBase + entry.getValue() * 2;
+      for (int i = 0, len = string.length(); i < len; i++) {
+        buffer.putChar(offset + i * 2, string.charAt(i));
+      }
+    }
+
+    return new TMLOffHeapDocument(buffer, nodes.size(), stringBase,
+        ignoreDividers);
+  }
+
+  private static TMLNode.Type typeOf(TMLNode node) {
+    if (node.isList()) {
+      return TMLNode.Type.LIST;
+    } else if (node.isNull()) {
+      return TMLNode.Type.NULL;
+    } else if (node.isBoolean()) {
+      return TMLNode.Type.BOOLEAN;
+    } else if (node.isNumber()) {
+      return TMLNode.Type.NUMBER;
+    } else if (node.isDivider()) {
+      return TMLNode.Type.DIVIDER;
+    }
+    return TMLNode.Type.STRING;
+  }
+
+  /**
+   * @return the root list of this document
+   */
+  public TMLOffHeapNode getRoot() {
+    acquire();
+    release();
+    return new TMLOffHeapNode(this, 0);
+  }
+
+  /**
+   * @return the number of nodes in this document
+   */
+  public int getNodeCount() {
+    return nodeCount;
+  }
+
+  /**
+   * @return the number of bytes of native memory held by this document, or 0
+   *         if it has been closed
+   */
+  public int getByteSize() {
+    return isClosed() ? 0 : buffer.capacity();
+  }
+
+  /**
+   * @return true if {@link #close()} has been called
+   */
+  public boolean isClosed() {
+    return (state.get() & CLOSED) != 0;
+  }
+
+  /**
+   * Releases the native memory held by this document, after the reads in
+   * progress on other threads have finished. Calling this method more than
+   * once has no effect.
+   * 
+   * @throws IllegalStateException
+   *           if the native memory could not be released
+   */
+  @Override
+  public void close() {
+    int s;
+    do {
+      s = state.get();
+      if ((s & CLOSED) != 0) return;
+    } while (!state.compareAndSet(s, s | CLOSED));
+    if (s == 0) {
+      BufferReleaser.INSTANCE.release(buffer);
+    }
+  }
+
+  boolean isIgnoreDividers() {
+    return ignoreDividers;
+  }
+
+  TMLNode.Type getType(int index) {
+    ByteBuffer b = acquire();
+    try {
+      return TYPES[b.getInt(index * NODE_SIZE + TYPE_OFFSET)];
+    } finally {
+      release();
+    }
+  }
+
+  int getListSize(int index) {
+    ByteBuffer b = acquire();
+    try {
+      int offset = index * NODE_SIZE;
+      if (b.getInt(offset + TYPE_OFFSET) != TMLNode.Type.LIST.ordinal()) {
+        return 0;
+      }
+      return b.getInt(offset + B_OFFSET);
+    } finally {
+      release();
+    }
+  }
+
+  int getChild(int index, int childIndex) {
+    ByteBuffer b = acquire();
+    try {
+      int offset = index * NODE_SIZE;
+      if (b.getInt(offset + TYPE_OFFSET) != TMLNode.Type.LIST.ordinal()
+          || childIndex < 0 || childIndex >= b.getInt(offset + B_OFFSET)) {
+        throw new IndexOutOfBoundsException("Index: " + childIndex
+            + ", Size: " + getListSize(index));
+      }
+      return b.getInt(offset + A_OFFSET) + childIndex;
+    } finally {
+      release();
+    }
+  }
+
+  String getString(int index) {
+    ByteBuffer b = acquire();
+    try {
+      int offset = index * NODE_SIZE;
+      if (b.getInt(offset + TYPE_OFFSET) == TMLNode.Type.LIST.ordinal()) {
+        return "";
+      }
+      int start = stringBase + b.getInt(offset + A_OFFSET) * 2;
+      char[] chars = new char[b.getInt(offset + B_OFFSET)];
+      for (int i = 0; i < chars.length; i++) {
+        chars[i] = b.getChar(start + i * 2);
+      }
+      return new String(chars);
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Compares the data of a node to a string without copying it to the heap.
+   */
+  boolean stringEquals(int index, String string) {
+    ByteBuffer b = acquire();
+    try {
+      int offset = index * NODE_SIZE;
+      if (b.getInt(offset + TYPE_OFFSET) == TMLNode.Type.LIST.ordinal()) {
+        return string.length() == 0;
+      }
+      int len = b.getInt(offset + B_OFFSET);
+      if (len != string.length()) {
+        return false;
+      }
+      int start = stringBase + b.getInt(offset + A_OFFSET) * 2;
+      for (int i = 0; i < len; i++) {
+        if (b.getChar(start + i * 2) != string.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * Registers a read of the buffer, which must be ended by {@link #release()}.
+   * The native memory is not released while reads are in progress.
+   * 
+   * @throws IllegalStateException
+   *           if the document is closed
+   */
+  private ByteBuffer acquire() {
+    int s;
+    do {
+      s = state.get();
+      if ((s & CLOSED) != 0) {
+        throw new IllegalStateException("Document is closed");
+      }
+    } while (!state.compareAndSet(s, s + 1));
+    return buffer;
+  }
+
+  /**
+   * Ends a read started by {@link #acquire()}, releasing the native memory if
+   * it was the last read of a closed document.
+   */
+  private void release() {
+    if (state.decrementAndGet() == CLOSED) {
+      BufferReleaser.INSTANCE.release(buffer);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "[nodes=" + nodeCount + ", bytes="
+        + getByteSize() + "]";
+  }
+
+  /**
+   * Frees the native memory of a direct buffer immediately instead of waiting
+   * for the buffer to be garbage collected.
+   */
+  private static abstract class BufferReleaser {
+
+    static final BufferReleaser INSTANCE = create();
+
+    abstract void release(ByteBuffer buffer);
+
+    /**
+     * @return an exception reporting that the native memory of a buffer could
+     *         not be released
+     */
+    static IllegalStateException releaseFailed(Exception e) {
+      Throwable cause = e instanceof InvocationTargetException ? e.getCause()
+          : e;
+      return new IllegalStateException("Unable to release native memory",
+          cause);
+    }
+
+    private static BufferReleaser create() {
+      // try Java 9+
+      // public class Unsafe {
+      // public void invokeCleaner(ByteBuffer directBuffer);
+      // }
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field f = unsafeClass.getDeclaredField("theUnsafe");
+        f.setAccessible(true);
+        final Object unsafe = f.get(null);
+        final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner",
+            ByteBuffer.class);
+        return new BufferReleaser() {
+          @Override
+          void release(ByteBuffer buffer) {
+            try {
+              invokeCleaner.invoke(unsafe, buffer);
+            } catch (Exception e) {
+              throw releaseFailed(e);
+            }
+          }
+        };
+      } catch (Exception ignored) {
+      }
+
+      // try Java 6-8
+      // class DirectByteBuffer {
+      // public Cleaner cleaner();
+      // }
+      try {
+        ByteBuffer probe = ByteBuffer.allocateDirect(1);
+        final Method cleaner = probe.getClass().getMethod("cleaner");
+        cleaner.setAccessible(true);
+        final Method clean = cleaner.getReturnType().getMethod("clean");
+        clean.setAccessible(true);
+        return new BufferReleaser() {
+          @Override
+          void release(ByteBuffer buffer) {
+            try {
+              clean.invoke(cleaner.invoke(buffer));
+            } catch (Exception e) {
+              throw releaseFailed(e);
+            }
+          }
+        };
+      } catch (Exception ignored) {
+      }
+
+      // give up, the memory is released when the buffer is collected
+      return new BufferReleaser() {
+        @Override
+        void release(ByteBuffer buffer) {
+          //
+        }
+      };
+    }
+  }
+
+}
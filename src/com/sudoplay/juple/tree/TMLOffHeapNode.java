@@ -0,0 +1,462 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sudoplay.juple.classparser.TMLLazilyParsedNumber;
+
+/**
+ * A lightweight handle to a node stored in a {@link TMLOffHeapDocument}. It
+ * offers the same navigation, typed accessors and pattern matching as
+ * {@link TMLNode}, reading all data directly from the document's native
+ * memory.
+ * 
+ * <p>
+ * Handles are only valid while their document is open.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLOffHeapNode {
+
+  private final TMLOffHeapDocument document;
+  private final int index;
+
+  TMLOffHeapNode(TMLOffHeapDocument document, int index) {
+    this.document = document;
+    this.index = index;
+  }
+
+  /**
+   * @return the document this node belongs to
+   */
+  public TMLOffHeapDocument getDocument() {
+    return document;
+  }
+
+  /**
+   * @return true if this node contains a string
+   * @see TMLNode#isString()
+   */
+  public boolean isString() {
+    return document.getType(index) == TMLNode.Type.STRING;
+  }
+
+  /**
+   * @return true if this node contains a number
+   */
+  public boolean isNumber() {
+    return document.getType(index) == TMLNode.Type.NUMBER;
+  }
+
+  /**
+   * @return true if this node contains a boolean
+   */
+  public boolean isBoolean() {
+    return document.getType(index) == TMLNode.Type.BOOLEAN;
+  }
+
+  /**
+   * @return true if this node contains a null value
+   */
+  public boolean isNull() {
+    return document.getType(index) == TMLNode.Type.NULL;
+  }
+
+  /**
+   * @return true if this node contains a list of nodes
+   */
+  public boolean isList() {
+    return document.getType(index) == TMLNode.Type.LIST;
+  }
+
+  /**
+   * @return true if this node contains a divider
+   */
+  public boolean isDivider() {
+    return document.getType(index) == TMLNode.Type.DIVIDER;
+  }
+
+  /**
+   * @return the data contained in this node as a string, copied to the heap
+   */
+  public String getAsString() {
+    return document.getString(index);
+  }
+
+  /**
+   * @return the value of this node
+   */
+  public String getValue() {
+    return document.getString(index);
+  }
+
+  /**
+   * @return the data contained in this node as a byte
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public byte getAsByte() {
+    return number().byteValue();
+  }
+
+  /**
+   * @return the data contained in this node as a short
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public short getAsShort() {
+    return number().shortValue();
+  }
+
+  /**
+   * @return the data contained in this node as an int
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public int getAsInt() {
+    return number().intValue();
+  }
+
+  /**
+   * @return the data contained in this node as a long
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public long getAsLong() {
+    return number().longValue();
+  }
+
+  /**
+   * @return the data contained in this node as a float
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public double getAsFloat() {
+    return number().floatValue();
+  }
+
+  /**
+   * @return the data contained in this node as a double
+   * @throws IllegalStateException
+   *           if this node's type is not NUMBER
+   */
+  public double getAsDouble() {
+    return number().doubleValue();
+  }
+
+  /**
+   * @return the data contained in this node as a boolean
+   * @throws IllegalStateException
+   *           if this node's type is not BOOLEAN
+   */
+  public boolean getAsBoolean() {
+    expectType(TMLNode.Type.BOOLEAN);
+    return Boolean.parseBoolean(document.getString(index));
+  }
+
+  private TMLLazilyParsedNumber number() {
+    expectType(TMLNode.Type.NUMBER);
+    return new TMLLazilyParsedNumber(document.getString(index));
+  }
+
+  private void expectType(TMLNode.Type expectedType) {
+    TMLNode.Type type = document.getType(index);
+    if (type != expectedType) {
+      throw new IllegalStateException("Expected " + expectedType
+          + " but was " + type);
+    }
+  }
+
+  /**
+   * @return the size of this node's child list
+   */
+  public int getListSize() {
+    return document.getListSize(index);
+  }
+
+  /**
+   * @param index
+   * @return the child node at index
+   */
+  public TMLOffHeapNode getNode(int index) {
+    return new TMLOffHeapNode(document, document.getChild(this.index, index));
+  }
+
+  /**
+   * Convenience method that simply calls {@link #find(String, int)} with a
+   * depth of -1.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @return first node found that matches pattern
+   */
+  public TMLOffHeapNode findGreedy(String pattern) {
+    return find(pattern, -1);
+  }
+
+  /**
+   * Convenience method that parses an input string into a TML tree and calls
+   * {@link #find(TMLNode, int)}.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return first node found that matches pattern
+   */
+  public TMLOffHeapNode find(String pattern, int depth) {
+    return find(TMLPattern.compile(pattern, document.isIgnoreDividers()),
+        depth);
+  }
+
+  /**
+   * Returns the first node found that matches the supplied pattern, following
+   * the same rules as {@link TMLNode#find(TMLNode, int)}.
+   * 
+   * @param pattern
+   *          {@link TMLNode} tree to use as matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return first node found that matches pattern
+   */
+  public TMLOffHeapNode find(TMLNode pattern, int depth) {
+    return find(TMLPattern.compile(pattern), depth);
+  }
+
+  /**
+   * Returns the first node found that matches the supplied compiled pattern.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return first node found that matches pattern
+   */
+  public TMLOffHeapNode find(TMLPattern pattern, int depth) {
+    int found = find(index, pattern, depth);
+    return found < 0 ? null : new TMLOffHeapNode(document, found);
+  }
+
+  private int find(int node, TMLPattern pattern, int depth) {
+    Stack stack = new Stack(node, depth);
+    while (stack.size > 0) {
+      int current = stack.pop();
+      if (pattern.matches(document, current)) {
+        return current;
+      }
+      stack.pushChildren(document, current);
+    }
+    return -1;
+  }
+
+  /**
+   * Convenience method that simply calls {@link #findAll(String, int)} with a
+   * depth of -1.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @return all nodes found that match pattern
+   */
+  public List<TMLOffHeapNode> findAllGreedy(String pattern) {
+    return findAll(pattern, -1);
+  }
+
+  /**
+   * Convenience method that parses an input string into a TML tree and calls
+   * {@link #findAll(TMLNode, int)}.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all nodes found that match pattern
+   */
+  public List<TMLOffHeapNode> findAll(String pattern, int depth) {
+    return findAll(TMLPattern.compile(pattern, document.isIgnoreDividers()),
+        depth);
+  }
+
+  /**
+   * Returns a {@link List} of all nodes that match the supplied pattern,
+   * following the same rules as {@link TMLNode#findAll(TMLNode, int)}.
+   * 
+   * @param pattern
+   *          {@link TMLNode} tree to use as matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all nodes found that match pattern
+   */
+  public List<TMLOffHeapNode> findAll(TMLNode pattern, int depth) {
+    return findAll(TMLPattern.compile(pattern), depth);
+  }
+
+  /**
+   * Returns a {@link List} of all nodes that match the supplied compiled
+   * pattern.
+   * 
+   * @param pattern
+   *          compiled matching pattern
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all nodes found that match pattern
+   */
+  public List<TMLOffHeapNode> findAll(TMLPattern pattern, int depth) {
+    List<TMLOffHeapNode> results = new ArrayList<TMLOffHeapNode>();
+    findAll(index, pattern, depth, results);
+    return results;
+  }
+
+  private void findAll(int node, TMLPattern pattern, int depth,
+      List<TMLOffHeapNode> results) {
+    Stack stack = new Stack(node, depth);
+    while (stack.size > 0) {
+      int current = stack.pop();
+      if (pattern.matches(document, current)) {
+        results.add(new TMLOffHeapNode(document, current));
+      }
+      stack.pushChildren(document, current);
+    }
+  }
+
+  /**
+   * Copies this node and its children back to the heap.
+   * 
+   * @return a new {@link TMLNode} tree equivalent to this node
+   */
+  public TMLNode toTMLNode() {
+    TMLNode root = copy(index);
+    List<TMLNode> parents = new ArrayList<TMLNode>();
+    Stack stack = new Stack(index, -1);
+    parents.add(null);
+    while (stack.size > 0) {
+      int current = stack.pop();
+      TMLNode parent = parents.remove(parents.size() - 1);
+      TMLNode node = parent == null ? root : copy(current);
+      if (parent != null) {
+        parent.add(node);
+      }
+      for (int i = document.getListSize(current); i-- > 0;) {
+        parents.add(node);
+      }
+      stack.pushChildren(document, current);
+    }
+    return root;
+  }
+
+  private TMLNode copy(int node) {
+    TMLNode copy = document.getType(node) == TMLNode.Type.LIST ? new TMLNode()
+        : new TMLNode(document.getString(node));
+    copy.setIgnoreDividers(document.isIgnoreDividers());
+    return copy;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof TMLOffHeapNode)) {
+      return false;
+    }
+    TMLOffHeapNode o = (TMLOffHeapNode) obj;
+    return document == o.document && index == o.index;
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * System.identityHashCode(document) + index;
+  }
+
+  @Override
+  public String toString() {
+    return toTMLNode().toString();
+  }
+
+  /**
+   * Explicit stack of node indices and their remaining search depths, used in
+   * place of recursion so that deeply nested documents can be walked.
+   */
+  private static final class Stack {
+    private int[] nodes = new int[16];
+    private int[] depths = new int[16];
+    private int size;
+    private int depth;
+
+    Stack(int node, int depth) {
+      push(node, depth);
+    }
+
+    int pop() {
+      size -= 1;
+      depth = depths[size];
+      return nodes[size];
+    }
+
+    /**
+     * Pushes the children of the node last popped, in reverse so that they are
+     * popped in document order, unless its depth is exhausted.
+     */
+    void pushChildren(TMLOffHeapDocument document, int node) {
+      if (depth == 0) {
+        return;
+      }
+      int childDepth = depth > 0 ? depth - 1 : depth;
+      for (int i = document.getListSize(node); i-- > 0;) {
+        push(document.getChild(node, i), childDepth);
+      }
+    }
+
+    private void push(int node, int depth) {
+      if (size == nodes.length) {
+        nodes = Arrays.copyOf(nodes, size * 2);
+        depths = Arrays.copyOf(depths, size * 2);
+      }
+      nodes[size] = node;
+      depths[size] = depth;
+      size += 1;
+    }
+  }
+
+}
@@ -0,0 +1,481 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * A compiled, immutable form of a {@link TMLNode} matching pattern.
+ * 
+ * <p>
+ * Compiling resolves the {@link TMLNode#MATCH_ONE} and
+ * {@link TMLNode#MATCH_ANY} wildcards and the expected child counts up front,
+ * so matching a node costs a size check and a walk of the literal parts of the
+ * pattern only. A {@link TMLPattern} matches exactly the same nodes as
+ * {@link TMLNode#equals(Object)} does for the pattern tree it was compiled
+ * from, and can be reused for any number of searches from any thread.
+ * 
+ * <p>
+ * Patterns compiled from strings are kept in a small least recently used
+ * cache, so repeated calls to {@link TMLNode#find(String, int)} and
+ * {@link TMLNode#findAll(String, int)} with the same pattern only parse it
+ * once.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLPattern {
+
+  static final int CACHE_CAPACITY = 256;
+
+  /**
+   * Subtrees whose root has fewer children than this are always searched
+   * sequentially by {@link #findAllParallel(TMLNode, int)}.
+   */
+  static final int FORK_THRESHOLD = 8;
+
+  /**
+   * Once a worker has this many unclaimed tasks queued, it stops forking and
+   * searches the rest of its subtree sequentially.
+   */
+  static final int MAX_SURPLUS_TASKS = 3;
+
+  private static final Map<String, TMLPattern> CACHE = newCache();
+  private static final Map<String, TMLPattern> CACHE_IGNORE_DIVIDERS = newCache();
+
+  private static Map<String, TMLPattern> newCache() {
+    return new LinkedHashMap<String, TMLPattern>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, TMLPattern> eldest) {
+        return size() > CACHE_CAPACITY;
+      }
+    };
+  }
+
+  private final String source;
+  private final Element root;
+
+  private TMLPattern(String source, Element root) {
+    this.source = source;
+    this.root = root;
+  }
+
+  /**
+   * Convenience method that simply calls {@link #compile(String, boolean)}
+   * with dividers not ignored.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @return the compiled pattern
+   */
+  public static TMLPattern compile(String pattern) {
+    return compile(pattern, false);
+  }
+
+  /**
+   * Parses and compiles a string pattern, or returns the cached result of a
+   * previous call with the same arguments.
+   * 
+   * @param pattern
+   *          string to parse and use as matching pattern
+   * @param ignoreDividers
+   *          see {@link TMLNodeTreeParser#TMLNodeTreeParser(boolean)}
+   * @return the compiled pattern
+   */
+  public static TMLPattern compile(String pattern, boolean ignoreDividers) {
+    TMLContract.checkNotNull(pattern);
+    Map<String, TMLPattern> cache = ignoreDividers ? CACHE_IGNORE_DIVIDERS
+        : CACHE;
+    TMLPattern compiled;
+    synchronized (cache) {
+      compiled = cache.get(pattern);
+    }
+    if (compiled != null) {
+      return compiled;
+    }
+    TMLNode node = new TMLNodeTreeParser(ignoreDividers).parse(pattern);
+    compiled = new TMLPattern(pattern, compileElement(node));
+    synchronized (cache) {
+      cache.put(pattern, compiled);
+    }
+    return compiled;
+  }
+
+  /**
+   * Compiles a {@link TMLNode} pattern tree. Later changes to the tree do not
+   * affect the compiled pattern.
+   * 
+   * @param pattern
+   *          {@link TMLNode} tree to use as matching pattern
+   * @return the compiled pattern
+   */
+  public static TMLPattern compile(TMLNode pattern) {
+    TMLContract.checkNotNull(pattern);
+    return new TMLPattern(null, compileElement(pattern));
+  }
+
+  private static Element compileElement(TMLNode pattern) {
+    String data = pattern.getValue();
+    if (data.equals(TMLNode.MATCH_ONE)) {
+      return Element.ANY;
+    }
+    int plen = pattern.getListSize();
+    if (plen == 0) {
+      return new Element(data, null, false);
+    }
+    List<Element> children = new ArrayList<Element>(plen);
+    for (int i = 0; i < plen; i++) {
+      TMLNode child = pattern.getNode(i);
+      if (child.getValue().equals(TMLNode.MATCH_ANY)) {
+        return new Element(null, children.toArray(new Element[i]), true);
+      }
+      children.add(compileElement(child));
+    }
+    return new Element(null, children.toArray(new Element[plen]), false);
+  }
+
+  /**
+   * @param node
+   * @return true if the node matches this pattern
+   */
+  public boolean matches(TMLNode node) {
+    return root.matches(node);
+  }
+
+  /**
+   * Returns the first {@link TMLNode} found that matches this pattern. See
+   * {@link TMLNode#find(TMLNode, int)} for the meaning of {@code depth}.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return first {@link TMLNode} found that matches this pattern or null
+   */
+  public TMLNode find(TMLNode node, int depth) {
+    TMLNodeWalker walker = new TMLNodeWalker(node, depth);
+    TMLNode next;
+    while ((next = walker.next()) != null) {
+      if (root.matches(next)) {
+        return next;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns a {@link List} of all nodes that match this pattern, in document
+   * order. See {@link TMLNode#findAll(TMLNode, int)} for the meaning of
+   * {@code depth}.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all {@link TMLNode}s found that match this pattern
+   */
+  public List<TMLNode> findAll(TMLNode node, int depth) {
+    List<TMLNode> results = new ArrayList<TMLNode>();
+    findAll(node, depth, results);
+    return results;
+  }
+
+  /**
+   * Adds all nodes that match this pattern to the supplied collection, in
+   * document order, and returns the collection. This avoids allocating a new
+   * result list for every search when collecting the matches of several
+   * searches.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @param results
+   *          the collection to add the matches to
+   * @return the supplied collection
+   */
+  public <C extends Collection<? super TMLNode>> C findAll(TMLNode node,
+      int depth, C results) {
+    TMLContract.checkNotNull(results);
+    TMLNodeWalker walker = new TMLNodeWalker(node, depth);
+    TMLNode next;
+    while ((next = walker.next()) != null) {
+      if (root.matches(next)) {
+        results.add(next);
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Convenience method that calls
+   * {@link #findAllParallel(TMLNode, int, ForkJoinPool)} with a shared pool
+   * sized to the number of available processors.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return all {@link TMLNode}s found that match this pattern
+   */
+  public List<TMLNode> findAllParallel(TMLNode node, int depth) {
+    return findAllParallel(node, depth, DefaultPool.INSTANCE);
+  }
+
+  /**
+   * Returns the same nodes as {@link #findAll(TMLNode, int)}, in the same
+   * order, but searches the child subtrees of large lists in parallel on the
+   * supplied pool. Subtrees of lists with fewer than {@value #FORK_THRESHOLD}
+   * children are searched sequentially. The tree must not be modified while it
+   * is being searched.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @param pool
+   *          the pool to search on
+   * @return all {@link TMLNode}s found that match this pattern
+   */
+  public List<TMLNode> findAllParallel(TMLNode node, int depth,
+      ForkJoinPool pool) {
+    TMLContract.checkNotNull(node);
+    if (node.getListSize() < FORK_THRESHOLD) {
+      return findAll(node, depth);
+    }
+    return pool.invoke(new FindAllTask(node, depth));
+  }
+
+  private static class DefaultPool {
+    static final ForkJoinPool INSTANCE = new ForkJoinPool();
+  }
+
+  /**
+   * Searches the subtree of one node. Children that are large lists are forked
+   * as tasks of their own; the rest are searched in place, and the results are
+   * joined in document order.
+   */
+  private class FindAllTask extends RecursiveTask<List<TMLNode>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TMLNode node;
+    private final int depth;
+
+    FindAllTask(TMLNode node, int depth) {
+      this.node = node;
+      this.depth = depth;
+    }
+
+    @Override
+    protected List<TMLNode> compute() {
+      List<TMLNode> results = new ArrayList<TMLNode>();
+      if (root.matches(node)) {
+        results.add(node);
+      }
+
+      int depth = this.depth;
+      if (depth > 0) {
+        depth -= 1;
+      } else if (depth == 0) {
+        return results;
+      }
+
+      int len = node.getListSize();
+      FindAllTask[] tasks = null;
+      for (int i = 0; i < len; i++) {
+        TMLNode child = node.getNode(i);
+        if (child.getListSize() >= FORK_THRESHOLD
+            && getSurplusQueuedTaskCount() < MAX_SURPLUS_TASKS) {
+          if (tasks == null) {
+            tasks = new FindAllTask[len];
+          }
+          tasks[i] = new FindAllTask(child, depth);
+          tasks[i].fork();
+        }
+      }
+      for (int i = 0; i < len; i++) {
+        if (tasks != null && tasks[i] != null) {
+          results.addAll(tasks[i].join());
+        } else {
+          findAll(node.getNode(i), depth, results);
+        }
+      }
+      return results;
+    }
+  }
+
+  /**
+   * Exposed internally.
+   */
+  boolean matches(TMLOffHeapDocument document, int index) {
+    return root.matches(document, index);
+  }
+
+  /**
+   * Returns the literal value a node's first child must have for the node to
+   * match this pattern, or null if there is no such requirement.
+   * 
+   * <p>
+   * Exposed internally.
+   */
+  String getDiscriminator() {
+    Element[] children = root.children;
+    if (children == null || children.length == 0
+        || children[0].children != null || children[0] == Element.ANY) {
+      return null;
+    }
+    return children[0].data;
+  }
+
+  /**
+   * Returns the value a node must have for it to match this pattern if the
+   * pattern is a single literal, or null otherwise.
+   * 
+   * <p>
+   * Exposed internally.
+   */
+  String getLiteral() {
+    return root.children == null ? root.data : null;
+  }
+
+  @Override
+  public String toString() {
+    return source != null ? source : root.toString();
+  }
+
+  /**
+   * A single compiled pattern node. Leaf elements have {@code data} set and
+   * {@code children} null. List elements hold the children up to, but not
+   * including, the first {@link TMLNode#MATCH_ANY}; {@code open} is true if
+   * such a wildcard was found.
+   */
+  private static final class Element {
+
+    static final Element ANY = new Element(null, null, false);
+
+    final String data;
+    final Element[] children;
+    final boolean open;
+
+    Element(String data, Element[] children, boolean open) {
+      this.data = data;
+      this.children = children;
+      this.open = open;
+    }
+
+    boolean matches(TMLNode node) {
+      if (this == ANY) {
+        return true;
+      }
+      int clen = node.getListSize();
+      if (children == null) {
+        return clen == 0 && data.equals(node.getValue());
+      }
+      int plen = children.length;
+      if (open ? clen < plen : clen != plen) {
+        return false;
+      }
+      for (int i = 0; i < plen; i++) {
+        if (!children[i].matches(node.getNode(i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    boolean matches(TMLOffHeapDocument document, int index) {
+      if (this == ANY) {
+        return true;
+      }
+      int clen = document.getListSize(index);
+      if (children == null) {
+        return clen == 0 && document.stringEquals(index, data);
+      }
+      int plen = children.length;
+      if (open ? clen < plen : clen != plen) {
+        return false;
+      }
+      for (int i = 0; i < plen; i++) {
+        if (!children[i].matches(document, document.getChild(index, i))) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      if (this == ANY) {
+        return TMLNode.MATCH_ONE;
+      }
+      if (children == null) {
+        return data;
+      }
+      StringBuilder sb = new StringBuilder();
+      sb.append('[');
+      for (int i = 0; i < children.length; i++) {
+        if (i > 0) sb.append(' ');
+        sb.append(children[i]);
+      }
+      if (open) {
+        if (children.length > 0) sb.append(' ');
+        sb.append(TMLNode.MATCH_ANY);
+      }
+      sb.append(']');
+      return sb.toString();
+    }
+  }
+
+}
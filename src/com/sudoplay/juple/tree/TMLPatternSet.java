@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sudoplay.juple.error.TMLContract;
+
+/**
+ * Matches many {@link TMLPattern}s against a tree in a single traversal.
+ * 
+ * <p>
+ * Instead of walking the tree once per pattern, every node is visited once and
+ * only tested against the patterns that can possibly match it. Patterns are
+ * indexed when the set is created: literal patterns by their value and list
+ * patterns by the literal value of their first element, see
+ * {@link TMLPattern#getDiscriminator()}. Patterns without such a literal are
+ * tested against every node.
+ * 
+ * <p>
+ * A {@link TMLPatternSet} is immutable and may be shared between threads.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLPatternSet {
+
+  private static final int[] NONE = new int[0];
+
+  private final TMLPattern[] patterns;
+  private final Map<String, int[]> byLiteral;
+  private final Map<String, int[]> byDiscriminator;
+  private final int[] unindexed;
+
+  /**
+   * Creates a set of the supplied patterns. Results are returned in the same
+   * order as the patterns are given here.
+   * 
+   * @param patterns
+   */
+  public TMLPatternSet(TMLPattern... patterns) {
+    this(Arrays.asList(patterns));
+  }
+
+  /**
+   * Creates a set of the supplied patterns. Results are returned in the same
+   * order as the patterns are given here.
+   * 
+   * @param patterns
+   */
+  public TMLPatternSet(List<TMLPattern> patterns) {
+    this.patterns = patterns.toArray(new TMLPattern[patterns.size()]);
+    Map<String, List<Integer>> byLiteral = new HashMap<String, List<Integer>>();
+    Map<String, List<Integer>> byDiscriminator = new HashMap<String, List<Integer>>();
+    List<Integer> unindexed = new ArrayList<Integer>();
+    for (int i = 0; i < this.patterns.length; i++) {
+      TMLPattern pattern = TMLContract.checkNotNull(this.patterns[i]);
+      String literal = pattern.getLiteral();
+      String discriminator = pattern.getDiscriminator();
+      if (literal != null) {
+        put(byLiteral, literal, i);
+      } else if (discriminator != null) {
+        put(byDiscriminator, discriminator, i);
+      } else {
+        unindexed.add(i);
+      }
+    }
+    this.byLiteral = toArrays(byLiteral);
+    this.byDiscriminator = toArrays(byDiscriminator);
+    this.unindexed = toArray(unindexed);
+  }
+
+  /**
+   * Convenience method that compiles each string with
+   * {@link TMLPattern#compile(String, boolean)} and creates a set of them.
+   * 
+   * @param ignoreDividers
+   * @param patterns
+   * @return the new set
+   */
+  public static TMLPatternSet compile(boolean ignoreDividers,
+      String... patterns) {
+    List<TMLPattern> compiled = new ArrayList<TMLPattern>(patterns.length);
+    for (String pattern : patterns) {
+      compiled.add(TMLPattern.compile(pattern, ignoreDividers));
+    }
+    return new TMLPatternSet(compiled);
+  }
+
+  private static void put(Map<String, List<Integer>> map, String key, int i) {
+    List<Integer> list = map.get(key);
+    if (list == null) {
+      list = new ArrayList<Integer>(1);
+      map.put(key, list);
+    }
+    list.add(i);
+  }
+
+  private static Map<String, int[]> toArrays(Map<String, List<Integer>> map) {
+    Map<String, int[]> result = new HashMap<String, int[]>();
+    for (Map.Entry<String, List<Integer>> entry : map.entrySet()) {
+      result.put(entry.getKey(), toArray(entry.getValue()));
+    }
+    return result;
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] result = new int[list.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = list.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * @return the number of patterns in this set
+   */
+  public int size() {
+    return patterns.length;
+  }
+
+  /**
+   * @param index
+   * @return the pattern at index
+   */
+  public TMLPattern getPattern(int index) {
+    return patterns[index];
+  }
+
+  /**
+   * Convenience method that simply calls {@link #findAll(TMLNode, int)} with a
+   * depth of -1, indicating that the entire tree should be searched beginning
+   * with the supplied node.
+   * 
+   * @param node
+   * @return a list of matches for each pattern
+   * @see #findAll(TMLNode, int)
+   */
+  public List<List<TMLNode>> findAllGreedy(TMLNode node) {
+    return findAll(node, -1);
+  }
+
+  /**
+   * Searches the tree once and returns, for each pattern in this set, the
+   * {@link List} of nodes that match it in document order. The result for the
+   * pattern at index {@code i} is at index {@code i} of the returned list and
+   * is identical to {@code getPattern(i).findAll(node, depth)}.
+   * 
+   * @param node
+   *          the node to start searching at
+   * @param depth
+   *          how many recursions to perform while searching the tree
+   * @return a list of matches for each pattern
+   */
+  public List<List<TMLNode>> findAll(TMLNode node, int depth) {
+    List<List<TMLNode>> results = new ArrayList<List<TMLNode>>(
+        patterns.length);
+    for (int i = 0; i < patterns.length; i++) {
+      results.add(new ArrayList<TMLNode>());
+    }
+    findAll(node, depth, results);
+    return Collections.unmodifiableList(results);
+  }
+
+  private void findAll(TMLNode node, int depth, List<List<TMLNode>> results) {
+    TMLNodeWalker walker = new TMLNodeWalker(node, depth);
+    TMLNode next;
+    while ((next = walker.next()) != null) {
+      match(next, results);
+    }
+  }
+
+  private void match(TMLNode node, List<List<TMLNode>> results) {
+    int[] candidates;
+    if (node.getListSize() == 0) {
+      candidates = get(byLiteral, node.getValue());
+    } else {
+      TMLNode first = node.getNode(0);
+      candidates = first.getListSize() == 0 ? get(byDiscriminator,
+          first.getValue()) : NONE;
+    }
+    for (int i : candidates) {
+      if (patterns[i].matches(node)) {
+        results.get(i).add(node);
+      }
+    }
+    for (int i : unindexed) {
+      if (patterns[i].matches(node)) {
+        results.get(i).add(node);
+      }
+    }
+  }
+
+  private static int[] get(Map<String, int[]> map, String key) {
+    int[] result = map.get(key);
+    return result == null ? NONE : result;
+  }
+
+}
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.sudoplay.juple.error.TMLContract;
+import com.sudoplay.juple.error.TMLIOException;
+import com.sudoplay.juple.stream.TMLReader;
+import com.sudoplay.juple.stream.TMLToken;
+
+/**
+ * Finds lists in a TML document by their path while reading it, without
+ * building a {@link TMLNode} tree of the whole document.
+ * 
+ * <p>
+ * Keys and paths are those a {@link TMLNodeIndex} finds in the tree that a
+ * {@link TMLNodeTreeParser} with the same divider setting builds: a list whose
+ * first element is not a list with elements is <i>keyed</i> by the value of
+ * that element, and the <i>path</i> of a keyed list is made of the keys of all
+ * keyed lists from the document's outer list down to and including the list
+ * itself; lists without a key do not contribute to paths. Unless dividers are
+ * ignored, the parser makes each divider section a list of its own, so the
+ * query {@code server port} finds {@code [port]} in
+ * {@code [[server [port | 80]]]}. A query is a path in which a step equal to
+ * {@link TMLNode#MATCH_ONE} matches any one key and a step equal to
+ * {@link TMLNode#MATCH_ANY} matches any number of keys, including none. For
+ * example, the query {@code server port} finds {@code [port 80]} in
+ * {@code [[server [host localhost] [port 80]]]}, and so do
+ * {@code \? port} and {@code \* port}.
+ * 
+ * <p>
+ * Only the lists that match are built into nodes, as a
+ * {@link TMLNodeTreeParser} would build them. Keyed lists whose path can not
+ * lead to a match are skipped as soon as their key has been read, without
+ * reading the data inside them; unless dividers are ignored, only up to the
+ * next divider, which starts a section keyed on its own. The lists inside a
+ * matching list are not searched.
+ * 
+ * @author Jason Taylor
+ */
+public final class TMLStreamQuery {
+
+  /**
+   * Receives the lists found by a query, in document order.
+   */
+  public interface Handler {
+
+    /**
+     * @param node
+     *          the list found
+     * @return true to continue the query, false to stop it
+     */
+    boolean onMatch(TMLNode node);
+  }
+
+  private static final int MAX_STEPS = 63;
+
+  /**
+   * What {@link #findAll(TMLReader, Handler)} reads next: an element, the
+   * beginning of a list or the beginning of a divider section.
+   */
+  private static final int NONE = 0;
+  private static final int LIST = 1;
+  private static final int SECTION = 2;
+
+  private final String[] steps;
+  private final boolean ignoreDividers;
+  private final TMLNodeTreeParser parser;
+
+  private TMLStreamQuery(String[] steps, boolean ignoreDividers) {
+    this.steps = steps;
+    this.ignoreDividers = ignoreDividers;
+    this.parser = new TMLNodeTreeParser(ignoreDividers);
+  }
+
+  /**
+   * Creates a query that builds the lists it finds as
+   * {@link TMLNodeTreeParser#TMLNodeTreeParser()} would.
+   * 
+   * @param path
+   *          the keys of the lists to find, from the outermost
+   * @return the query
+   * @throws IllegalArgumentException
+   *           if the path is empty or longer than 63 steps
+   */
+  public static TMLStreamQuery compile(String... path) {
+    return compile(false, path);
+  }
+
+  /**
+   * Creates a query.
+   * 
+   * @param ignoreDividers
+   *          see {@link TMLNodeTreeParser#TMLNodeTreeParser(boolean)}
+   * @param path
+   *          the keys of the lists to find, from the outermost
+   * @return the query
+   * @throws IllegalArgumentException
+   *           if the path is empty or longer than 63 steps
+   */
+  public static TMLStreamQuery compile(boolean ignoreDividers, String... path) {
+    TMLContract.checkArgument(path.length > 0 && path.length <= MAX_STEPS);
+    for (String step : path) {
+      TMLContract.checkNotNull(step);
+    }
+    return new TMLStreamQuery(path.clone(), ignoreDividers);
+  }
+
+  /**
+   * Returns the first list found in the document, reading no further than its
+   * end.
+   * 
+   * @param reader
+   * @return the first list found, or null
+   * @throws TMLIOException
+   *           if the underlying reader is unable to read the data
+   */
+  public TMLNode find(Reader reader) {
+    final TMLNode[] result = new TMLNode[1];
+    findAll(reader, new Handler() {
+      @Override
+      public boolean onMatch(TMLNode node) {
+        result[0] = node;
+        return false;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * Convenience method that reads the document from a string.
+   * 
+   * @param string
+   * @return all lists found
+   * @see #findAll(Reader)
+   */
+  public List<TMLNode> findAll(String string) {
+    return findAll(new StringReader(string));
+  }
+
+  /**
+   * Returns all lists found in the document.
+   * 
+   * @param reader
+   * @return all lists found
+   * @throws TMLIOException
+   *           if the underlying reader is unable to read the data
+   */
+  public List<TMLNode> findAll(Reader reader) {
+    final List<TMLNode> results = new ArrayList<TMLNode>();
+    findAll(reader, new Handler() {
+      @Override
+      public boolean onMatch(TMLNode node) {
+        results.add(node);
+        return true;
+      }
+    });
+    return results;
+  }
+
+  /**
+   * Passes each list found in the document to the supplied handler until the
+   * handler stops the query.
+   * 
+   * <p>
+   * NOTE: The caller is responsible for closing the reader.
+   * 
+   * @param reader
+   * @param handler
+   * @throws TMLIOException
+   *           if the underlying reader is unable to read the data
+   */
+  public void findAll(Reader reader, Handler handler) {
+    try {
+      findAll(new TMLReader(reader), handler);
+    } catch (IOException e) {
+      throw new TMLIOException(e);
+    }
+  }
+
+  /**
+   * Reads the next list from the supplied reader, passing each list found in
+   * it to the supplied handler. If the handler stops the query, the reader is
+   * left just past the list passed to the handler, or past the divided list
+   * around it; otherwise the whole list is consumed.
+   * 
+   * @param reader
+   * @param handler
+   * @throws IOException
+   * @throws IllegalStateException
+   *           if the next token is not the beginning of a list
+   */
+  public void findAll(TMLReader reader, Handler handler) throws IOException {
+    TMLContract.checkNotNull(handler);
+    // for each open list, the state for the lists inside its current section
+    // and the state its divider sections start from; a state of 0 skips the
+    // rest of the section
+    long[] states = new long[16];
+    long[] bases = new long[16];
+    int size = 0;
+    reader.beginList();
+    int start = LIST;
+    long base = 1L;
+    String leading = null;
+
+    while (true) {
+      if (start == LIST) {
+        if (size == states.length) {
+          states = Arrays.copyOf(states, size * 2);
+          bases = Arrays.copyOf(bases, size * 2);
+        }
+        states[size] = base;
+        bases[size] = base;
+        size++;
+      }
+
+      if (start != NONE) {
+        // read the key of the list or section, which is its first element
+        // in the tree the parser builds
+        boolean listStart = start == LIST;
+        start = NONE;
+        int top = size - 1;
+        long b = bases[top];
+        String data = leading != null ? leading : nextData(reader);
+        leading = null;
+        TMLNode first = null;
+        boolean divided = false;
+        TMLToken token = data != null ? TMLToken.DATA : reader.peek();
+        if (data != null) {
+          first = data.equals("|") ? TMLNode.newString(data) : new TMLNode(
+              data);
+        } else if (token == TMLToken.NULL) {
+          reader.nextNull();
+          first = new TMLNode((String) null);
+        } else if (token == TMLToken.NULL_ARRAY) {
+          reader.nextNullArray();
+          first = new TMLNode(TMLNode.NULL_ARRAY);
+        } else if (token == TMLToken.DIVIDER) {
+          if (ignoreDividers) {
+            reader.consumeDivider();
+            first = new TMLNode("|");
+          } else {
+            // an empty first section keys the divided list by ""
+            divided = listStart;
+          }
+        } else if (token == TMLToken.BEGIN_LIST) {
+          reader.beginList();
+          leading = nextData(reader);
+          if (leading == null && reader.peek() == TMLToken.END_LIST) {
+            reader.endList();
+            first = new TMLNode();
+          } else {
+            // the list is not keyed, continue with its first element
+            start = LIST;
+            base = b;
+            continue;
+          }
+        }
+        if (first == null && !divided) {
+          continue;
+        }
+
+        long state = advance(b, divided ? "" : first.getValue());
+        if (accepts(state)) {
+          TMLNode node = parser.parseRemaining(reader, first);
+          size--;
+          if (!onMatch(node, first, b, handler) || size == 0) {
+            return;
+          }
+          continue;
+        } else if (state == 0 && (ignoreDividers || divided)) {
+          reader.skipRemaining();
+          if (--size == 0) {
+            return;
+          }
+          continue;
+        }
+        states[top] = state;
+        if (divided) {
+          bases[top] = state;
+        }
+      }
+
+      int top = size - 1;
+      switch (reader.peek()) {
+      case BEGIN_LIST:
+        if (states[top] == 0) {
+          reader.skipNext();
+        } else {
+          reader.beginList();
+          start = LIST;
+          base = states[top];
+        }
+        break;
+      case END_LIST:
+        reader.endList();
+        if (--size == 0) {
+          return;
+        }
+        break;
+      case DATA:
+        reader.skipNext();
+        break;
+      case DIVIDER:
+        reader.consumeDivider();
+        if (!ignoreDividers) {
+          // the next section is keyed on its own
+          states[top] = bases[top];
+          start = SECTION;
+        }
+        break;
+      case NULL:
+        reader.nextNull();
+        break;
+      case NULL_ARRAY:
+        reader.nextNullArray();
+        break;
+      case EOF:
+        throw new IOException("End of input inside list");
+      }
+    }
+  }
+
+  /**
+   * Reads data until an element that is not empty, which the parser would
+   * drop, and returns it.
+   * 
+   * @return the data read, or null if the next element is not data
+   */
+  private static String nextData(TMLReader reader) throws IOException {
+    while (reader.peek() == TMLToken.DATA) {
+      String data = reader.nextString();
+      if (data.length() != 0) {
+        return data;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Passes a matching list to the handler. If the list was divided after the
+   * element it is keyed by, the match is its first section, and the sections
+   * that follow are searched for matches of their own.
+   * 
+   * @param node
+   *          the parsed list
+   * @param first
+   *          the element the list was keyed by, or null if the list was keyed
+   *          by its empty first section
+   * @param base
+   *          the state the sections of the list start from
+   * @return false if the handler stopped the query
+   */
+  private boolean onMatch(TMLNode node, TMLNode first, long base,
+      Handler handler) {
+    if (first == null || node.getNode(0) == first) {
+      return handler.onMatch(node);
+    }
+    if (!handler.onMatch(node.getNode(0))) {
+      return false;
+    }
+    for (int i = 1, len = node.getListSize(); i < len; i++) {
+      if (!search(node.getNode(i), base, handler)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Searches a list that has already been built, in document order.
+   * 
+   * @return false if the handler stopped the query
+   */
+  private boolean search(TMLNode list, long state, Handler handler) {
+    List<TMLNode> nodes = new ArrayList<TMLNode>();
+    List<Long> states = new ArrayList<Long>();
+    nodes.add(list);
+    states.add(state);
+    while (!nodes.isEmpty()) {
+      int top = nodes.size() - 1;
+      TMLNode node = nodes.remove(top);
+      long s = states.remove(top);
+      int len = node.getListSize();
+      if (len == 0) {
+        continue;
+      }
+      TMLNode first = node.getNode(0);
+      if (first.getListSize() == 0) {
+        s = advance(s, first.getValue());
+        if (accepts(s)) {
+          if (!handler.onMatch(node)) {
+            return false;
+          }
+          continue;
+        } else if (s == 0) {
+          continue;
+        }
+      }
+      for (int i = len - 1; i >= 0; i--) {
+        nodes.add(node.getNode(i));
+        states.add(s);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * States are bit sets: bit i is set if the next key may match step i, and
+   * bit {@code steps.length} is set once the whole path has matched.
+   */
+  private long advance(long state, String key) {
+    state = close(state);
+    long next = 0;
+    for (int i = 0; i < steps.length; i++) {
+      if ((state & (1L << i)) != 0) {
+        String step = steps[i];
+        if (step.equals(TMLNode.MATCH_ANY)) {
+          next |= 1L << i;
+        } else if (step.equals(TMLNode.MATCH_ONE) || step.equals(key)) {
+          next |= 1L << (i + 1);
+        }
+      }
+    }
+    return next;
+  }
+
+  private boolean accepts(long state) {
+    return (close(state) & (1L << steps.length)) != 0;
+  }
+
+  /**
+   * Adds the states reached by matching {@link TMLNode#MATCH_ANY} steps to no
+   * keys at all.
+   */
+  private long close(long state) {
+    for (int i = 0; i < steps.length; i++) {
+      if ((state & (1L << i)) != 0 && steps[i].equals(TMLNode.MATCH_ANY)) {
+        state |= 1L << (i + 1);
+      }
+    }
+    return state;
+  }
+
+}
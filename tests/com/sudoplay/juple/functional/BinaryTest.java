@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.functional;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.Juple;
+import com.sudoplay.juple.classparser.TMLTypeToken;
+import com.sudoplay.juple.common.TestTypes.BagOfPrimitives;
+import com.sudoplay.juple.common.TestTypes.ClassWithObjects;
+import com.sudoplay.juple.common.TestTypes.Nested;
+import com.sudoplay.juple.error.TMLSyntaxException;
+import com.sudoplay.juple.stream.TMLBinaryConverter;
+
+/**
+ * Functional tests for converting objects to and from binary TML.
+ * 
+ * @author Jason Taylor
+ */
+public class BinaryTest {
+
+  private Juple juple = new Juple();
+
+  /**
+   * Asserts that the binary written for {@code obj} reads back as an object
+   * with the same TML, and that it converts to that TML and back.
+   */
+  private void assertBinaryMatchesText(Object obj, Type type)
+      throws IOException {
+    String tml = juple.toTML(obj, type);
+    byte[] bytes = juple.toTMLBinary(obj, type);
+    assertEquals(tml, juple.toTML(juple.fromTMLBinary(bytes, type), type));
+    assertEquals(tml, binaryToText(bytes));
+    assertEquals(tml, binaryToText(textToBinary(tml)));
+  }
+
+  private static byte[] textToBinary(String tml) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TMLBinaryConverter.textToBinary(new StringReader(tml), out);
+    return out.toByteArray();
+  }
+
+  private static String binaryToText(byte[] bytes) throws IOException {
+    StringWriter out = new StringWriter();
+    TMLBinaryConverter.binaryToText(new ByteArrayInputStream(bytes), out);
+    return out.toString();
+  }
+
+  @Test
+  public void testBagOfPrimitives() throws IOException {
+    assertBinaryMatchesText(new BagOfPrimitives(10, 20, false, "a b  c"),
+        BagOfPrimitives.class);
+    assertBinaryMatchesText(new BagOfPrimitives(-1, 0, true, "[|]\\ \t\n"),
+        BagOfPrimitives.class);
+    assertBinaryMatchesText(new BagOfPrimitives(Long.MIN_VALUE,
+        Integer.MAX_VALUE, true, "é中😀"),
+        BagOfPrimitives.class);
+  }
+
+  @Test
+  public void testNested() throws IOException {
+    assertBinaryMatchesText(new Nested(new BagOfPrimitives(1, 2, true, "one"),
+        new BagOfPrimitives(3, 4, false, "two words")), Nested.class);
+    assertBinaryMatchesText(new Nested(), Nested.class);
+    assertBinaryMatchesText(new ClassWithObjects(new BagOfPrimitives(5, 6,
+        true, "x")), ClassWithObjects.class);
+  }
+
+  @Test
+  public void testNull() throws IOException {
+    assertBinaryMatchesText(null, BagOfPrimitives.class);
+    assertNull(juple.fromTMLBinary(juple.toTMLBinary(null, Nested.class),
+        Nested.class));
+  }
+
+  @Test
+  public void testCollections() throws IOException {
+    List<String> list = new ArrayList<String>(Arrays.asList("a", null,
+        "b c", "true", "1.5", ""));
+    assertBinaryMatchesText(list,
+        new TMLTypeToken<List<String>>() {}.getType());
+
+    Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+    map.put("one", 1);
+    map.put("two", null);
+    assertBinaryMatchesText(map,
+        new TMLTypeToken<Map<String, Integer>>() {}.getType());
+
+    assertBinaryMatchesText(new int[][] { { 1, 2 }, null, {} }, int[][].class);
+    assertBinaryMatchesText(new double[] { 0.1, -2.5E-8, 1.0E7, Double.NaN },
+        double[].class);
+    assertBinaryMatchesText(new float[] { 0.1f, 3.4028235E38f }, float[].class);
+    assertBinaryMatchesText(new String[] { "a", "b" }, String[].class);
+  }
+
+  @Test
+  public void testConvertedTextMatchesWritten() throws IOException {
+    // strings that read as numbers or booleans convert to typed values, so
+    // only objects without them convert to the same bytes
+    Nested nested = new Nested(new BagOfPrimitives(1, -2, true, "one"),
+        new BagOfPrimitives(3, 4, false, "two words"));
+    assertArrayEquals(juple.toTMLBinary(nested),
+        textToBinary(juple.toTML(nested)));
+    double[] doubles = { 0.5, -1.0E-9, 123456.0 };
+    assertArrayEquals(juple.toTMLBinary(doubles),
+        textToBinary(juple.toTML(doubles)));
+  }
+
+  @Test
+  public void testSmallerThanText() {
+    List<BagOfPrimitives> bags = new ArrayList<BagOfPrimitives>();
+    for (int i = 0; i < 100; i++) {
+      bags.add(new BagOfPrimitives(i * 1000000L, i, i % 2 == 0, "bag" + i));
+    }
+    Type type = new TMLTypeToken<List<BagOfPrimitives>>() {}.getType();
+    byte[] bytes = juple.toTMLBinary(bags, type);
+    assertTrue(bytes.length * 3 < juple.toTMLBytes(bags, type).length * 2);
+    List<BagOfPrimitives> read = juple.fromTMLBinary(bytes, type);
+    assertEquals(bags, read);
+  }
+
+  @Test
+  public void testStream() {
+    BagOfPrimitives bag = new BagOfPrimitives(1, 2, true, "three");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    juple.toTMLBinary(bag, BagOfPrimitives.class, out);
+    assertEquals(bag, juple.fromTMLBinary(
+        new ByteArrayInputStream(out.toByteArray()), BagOfPrimitives.class));
+  }
+
+  @Test
+  public void testTruncated() {
+    byte[] bytes = juple.toTMLBinary(new BagOfPrimitives(1, 2, true, "three"));
+    try {
+      juple.fromTMLBinary(Arrays.copyOf(bytes, bytes.length - 3),
+          BagOfPrimitives.class);
+      fail();
+    } catch (TMLSyntaxException expected) {}
+  }
+
+  @Test
+  public void testWrongType() {
+    byte[] bytes = juple.toTMLBinary(new String[] { "a" });
+    try {
+      juple.fromTMLBinary(bytes, int[].class);
+      fail();
+    } catch (TMLSyntaxException expected) {}
+  }
+
+}
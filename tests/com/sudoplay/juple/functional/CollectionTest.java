@@ -257,7 +257,7 @@ public class CollectionTest {
     Collection integers = juple.fromTML(tml, Collection.class);
 
     // everything is read raw as strings
-    MoreAsserts.assertContains(
+    MoreAsserts.<String> assertContains(
         Arrays.asList("0", "1", "2", "3", "4", "5", "6", "7", "8", "9"),
         integers);
 
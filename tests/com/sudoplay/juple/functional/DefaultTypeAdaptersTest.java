@@ -62,10 +62,16 @@ import java.net.URL;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.text.DateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
@@ -611,6 +617,119 @@ public class DefaultTypeAdaptersTest {
     }
   }
 
+  @Test
+  public void testDateConcurrentDeserialization() throws Exception {
+    final String tml = juple.toTML(new Date(1315806903000L));
+    final Date expected = juple.fromTML(tml, Date.class);
+    final List<Throwable> failures = new ArrayList<Throwable>();
+    Thread[] threads = new Thread[8];
+    for (int i = 0; i < threads.length; i++) {
+      threads[i] = new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int j = 0; j < 500; j++) {
+              assertEquals(expected, juple.fromTML(tml, Date.class));
+              assertEquals(tml, juple.toTML(expected));
+            }
+          } catch (Throwable t) {
+            synchronized (failures) {
+              failures.add(t);
+            }
+          }
+        }
+      };
+      threads[i].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(Collections.emptyList(), failures);
+  }
+
+  @Test(expected = TMLSyntaxException.class)
+  public void testDateDeserializationInvalid() {
+    juple.fromTML("[not a date]", Date.class);
+  }
+
+  // ==========================================================================
+  // = java.time.*
+  // ==========================================================================
+
+  @Test
+  public void testInstant() {
+    Instant instant = Instant.ofEpochSecond(1315806903L, 103000000);
+    assertEquals("[2011-09-12T05:55:03.103Z]", juple.toTML(instant));
+    assertEquals(instant, juple.fromTML("[2011-09-12T05:55:03.103Z]",
+        Instant.class));
+    assertEquals(Instant.ofEpochSecond(1315806903L), juple.fromTML(
+        "[2011-09-12T05:55:03Z]", Instant.class));
+    assertEquals(Instant.ofEpochSecond(1315806900L), juple.fromTML(
+        "[2011-09-12T05:55Z]", Instant.class));
+    assertEquals(Instant.ofEpochSecond(1315806903L, 1), juple.fromTML(
+        "[2011-09-12T05:55:03.000000001Z]", Instant.class));
+    Instant distant = Instant.parse("+12011-09-12T05:55:03Z");
+    assertEquals(distant, juple.fromTML(juple.toTML(distant), Instant.class));
+  }
+
+  @Test
+  public void testLocalDate() {
+    LocalDate date = LocalDate.of(2011, 9, 12);
+    assertEquals("[2011-09-12]", juple.toTML(date));
+    assertEquals(date, juple.fromTML("[2011-09-12]", LocalDate.class));
+    LocalDate distant = LocalDate.of(-42, 1, 2);
+    assertEquals(distant, juple.fromTML(juple.toTML(distant),
+        LocalDate.class));
+  }
+
+  @Test
+  public void testLocalDateTime() {
+    LocalDateTime dateTime = LocalDateTime.of(2011, 9, 12, 5, 55, 3, 120000000);
+    assertEquals("[2011-09-12T05:55:03.120]", juple.toTML(dateTime));
+    assertEquals(dateTime, juple.fromTML("[2011-09-12T05:55:03.12]",
+        LocalDateTime.class));
+    assertEquals(LocalDateTime.of(2011, 9, 12, 5, 55), juple.fromTML(
+        "[2011-09-12T05:55]", LocalDateTime.class));
+  }
+
+  @Test
+  public void testOffsetDateTime() {
+    OffsetDateTime dateTime = OffsetDateTime.of(2011, 9, 12, 5, 55, 3, 0,
+        ZoneOffset.ofHoursMinutes(-5, -30));
+    assertEquals("[2011-09-12T05:55:03-05:30]", juple.toTML(dateTime));
+    assertEquals(dateTime, juple.fromTML("[2011-09-12T05:55:03-05:30]",
+        OffsetDateTime.class));
+    assertEquals(dateTime.withOffsetSameLocal(ZoneOffset.UTC), juple.fromTML(
+        "[2011-09-12T05:55:03Z]", OffsetDateTime.class));
+    OffsetDateTime seconds = OffsetDateTime.of(2011, 9, 12, 5, 55, 3, 0,
+        ZoneOffset.ofHoursMinutesSeconds(1, 2, 3));
+    assertEquals(seconds, juple.fromTML(juple.toTML(seconds),
+        OffsetDateTime.class));
+  }
+
+  @Test
+  public void testJavaTimeNull() {
+    assertEquals("[\\0]", juple.toTML(null, Instant.class));
+    assertNull(juple.fromTML("[\\0]", LocalDate.class));
+  }
+
+  @Test
+  public void testJavaTimeInvalid() {
+    String[] invalid = { "[2011-02-30]", "[2011-9-12]", "[yesterday]" };
+    for (String tml : invalid) {
+      try {
+        juple.fromTML(tml, LocalDate.class);
+        fail(tml);
+      } catch (TMLSyntaxException expected) {
+      }
+    }
+    try {
+      juple.fromTML("[2011-09-12T25:00Z]", Instant.class);
+      fail();
+    } catch (TMLSyntaxException expected) {
+    }
+  }
+
   // ==========================================================================
   // = java.sql.*
   // ==========================================================================
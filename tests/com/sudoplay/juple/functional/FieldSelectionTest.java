@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.functional;
+
+import static org.junit.Assert.*;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.Juple;
+import com.sudoplay.juple.JupleBuilder;
+import com.sudoplay.juple.classparser.TMLFieldSelection;
+import com.sudoplay.juple.classparser.TMLTypeToken;
+import com.sudoplay.juple.error.TMLSyntaxException;
+
+public class FieldSelectionTest {
+
+  private Juple juple = new Juple();
+
+  @Test
+  public void testUnselectedFieldsKeepDefaults() {
+    String tml = juple.toTML(new Order(7, "alice", "ab"));
+    Order order = juple.fromTML(new StringReader(tml), Order.class,
+        TMLFieldSelection.of("id"));
+    assertEquals(7, order.id);
+    assertNull(order.owner);
+    assertNull(order.items);
+  }
+
+  @Test
+  public void testNestedSelectionPrunesObjects() {
+    String tml = juple.toTML(new Order(7, "alice", "ab"));
+    Order order = juple.fromTML(new StringReader(tml), Order.class,
+        TMLFieldSelection.of("owner.name", "items.price"));
+    assertEquals(0, order.id);
+    assertEquals("alice", order.owner.name);
+    assertEquals(0, order.owner.age);
+    assertEquals(2, order.items.size());
+    assertNull(order.items.get(0).label);
+    assertEquals(1, order.items.get(1).price);
+  }
+
+  @Test
+  public void testNestedSelectionInTable() {
+    Juple tables = new JupleBuilder().setTabularCollections().create();
+    String tml = tables.toTML(new Order(7, "alice", "ab"));
+    Order order = juple.fromTML(new StringReader(tml), Order.class,
+        TMLFieldSelection.of("items.price"));
+    assertEquals(2, order.items.size());
+    assertNull(order.items.get(0).label);
+    assertEquals(1, order.items.get(1).price);
+  }
+
+  @Test
+  public void testSelectedFieldIncludesAllContent() {
+    String tml = juple.toTML(new Order(7, "alice", "ab"));
+    Order order = juple.fromTML(new StringReader(tml), Order.class,
+        TMLFieldSelection.of("owner.name", "owner"));
+    assertEquals("alice", order.owner.name);
+    assertEquals(42, order.owner.age);
+  }
+
+  @Test
+  public void testNullSelectionBindsAllFields() {
+    String tml = juple.toTML(new Order(7, "alice", "ab"));
+    Order order = juple.fromTML(new StringReader(tml), Order.class, null);
+    assertEquals(7, order.id);
+    assertEquals(42, order.owner.age);
+    assertEquals("b", order.items.get(1).label);
+  }
+
+  @Test
+  public void testSelectionAppliesToCollectionElements() {
+    List<Item> items = new ArrayList<Item>();
+    items.add(new Item("x", 1));
+    items.add(new Item("y", 2));
+    Type type = new TMLTypeToken<List<Item>>() {}.getType();
+    String tml = juple.toTML(items, type);
+    List<Item> result = juple.fromTML(new StringReader(tml), type,
+        TMLFieldSelection.of("label"));
+    assertEquals("y", result.get(1).label);
+    assertEquals(0, result.get(1).price);
+  }
+
+  @Test
+  public void testSkippedFieldsAreNotValidated() {
+    String tml = "[[id|7][owner|[age|not a number]]]";
+    Order order = juple.fromTML(new StringReader(tml), Order.class,
+        TMLFieldSelection.of("id"));
+    assertEquals(7, order.id);
+    try {
+      juple.fromTML(new StringReader(tml), Order.class);
+      fail();
+    } catch (TMLSyntaxException expected) {
+    }
+  }
+
+  @Test
+  public void testWithTakesNameLiterally() {
+    TMLFieldSelection selection = TMLFieldSelection.of("a").with("b.c",
+        TMLFieldSelection.of("d"));
+    assertTrue(selection.contains("b.c"));
+    assertFalse(selection.contains("b"));
+    assertTrue(selection.get("b.c").contains("d"));
+    assertNull(selection.get("a"));
+    assertEquals("a, b.c.d", selection.toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyNameRejected() {
+    TMLFieldSelection.of("a..b");
+  }
+
+  private static class Order {
+    int id;
+    Owner owner;
+    List<Item> items;
+
+    Order() {}
+
+    Order(int id, String owner, String labels) {
+      this.id = id;
+      this.owner = new Owner(owner, 42);
+      this.items = new ArrayList<Item>();
+      for (int i = 0; i < labels.length(); i++) {
+        items.add(new Item(labels.substring(i, i + 1), i));
+      }
+    }
+  }
+
+  private static class Owner {
+    String name;
+    int age;
+
+    Owner() {}
+
+    Owner(String name, int age) {
+      this.name = name;
+      this.age = age;
+    }
+  }
+
+  private static class Item {
+    String label;
+    int price;
+
+    Item() {}
+
+    Item(String label, int price) {
+      this.label = label;
+      this.price = price;
+    }
+  }
+
+}
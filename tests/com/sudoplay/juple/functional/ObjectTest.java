@@ -118,6 +118,21 @@ public class ObjectTest {
     assertEquals(tml, target.getExpectedTML());
   }
 
+  @Test
+  public void testBagOfPrimitivesDeserializationOutOfOrder() throws Exception {
+    String tml = "[[stringValue|s][unknown|x][intValue|20][longValue|10]"
+        + "[booleanValue|true][int\\sValue|5][intValue|30]]";
+    BagOfPrimitives target = juple.fromTML(tml, BagOfPrimitives.class);
+    assertEquals(10, target.longValue);
+    assertEquals(30, target.intValue);
+    assertTrue(target.booleanValue);
+    assertEquals("s", target.stringValue);
+    target = juple.fromTMLNode(juple.toTMLNode(tml), BagOfPrimitives.class);
+    assertEquals(10, target.longValue);
+    assertEquals(30, target.intValue);
+    assertEquals("s", target.stringValue);
+  }
+
   @Test
   public void testBagOfPrimitiveWrappersSerialization() throws Exception {
     BagOfPrimitiveWrappers target = new BagOfPrimitiveWrappers(10L, 20, false);
@@ -44,13 +44,17 @@
 
 package com.sudoplay.juple.functional;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.io.Writer;
+import java.nio.channels.Channels;
 import java.util.Map;
 
 import org.junit.Test;
@@ -59,6 +63,7 @@ import com.sudoplay.juple.Juple;
 import com.sudoplay.juple.classparser.TMLTypeToken;
 import com.sudoplay.juple.common.TestTypes.BagOfPrimitives;
 import com.sudoplay.juple.error.TMLSyntaxException;
+import com.sudoplay.juple.stream.TMLBufferPool;
 import com.sudoplay.juple.stream.TMLReader;
 import com.sudoplay.juple.stream.TMLWriter;
 
@@ -81,6 +86,33 @@ public class ReadersWritersTest {
     assertEquals(src.getExpectedTML(), writer.toString());
   }
 
+  @Test
+  public void testOutputStreamForSerialization() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BagOfPrimitives src = new BagOfPrimitives();
+    src.stringValue = "caf\u00e9 \ud83d\ude00";
+    juple.toTML(src, out);
+    assertEquals(juple.toTML(src), new String(out.toByteArray(), "UTF-8"));
+    assertArrayEquals(out.toByteArray(), juple.toTMLBytes(src));
+  }
+
+  @Test
+  public void testChannelForSerialization() throws Exception {
+    TMLBufferPool pool = new TMLBufferPool(32, 4);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BagOfPrimitives src = new BagOfPrimitives();
+    juple.toTML(src, Channels.newChannel(out), pool);
+    assertEquals(src.getExpectedTML(), new String(out.toByteArray(), "UTF-8"));
+    assertEquals(0, pool.getInUseCount());
+    assertTrue(pool.getPooledCount() > 0);
+  }
+
+  @Test
+  public void testTopLevelNullObjectSerializationToBytes() throws Exception {
+    assertEquals("[\\0]",
+        new String(juple.toTMLBytes(null, String.class), "UTF-8"));
+  }
+
   @Test
   public void testReaderForDeserialization() throws Exception {
     BagOfPrimitives expected = new BagOfPrimitives();
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.Juple;
+import com.sudoplay.juple.JupleBuilder;
+import com.sudoplay.juple.classparser.TMLTypeToken;
+import com.sudoplay.juple.common.TestTypes.BagOfPrimitives;
+import com.sudoplay.juple.common.TestTypes.Base;
+import com.sudoplay.juple.common.TestTypes.Sub;
+
+/**
+ * Functional tests for writing collections of objects as tables with
+ * {@link JupleBuilder#setTabularCollections()}.
+ * 
+ * @author Jason Taylor
+ */
+public class TabularCollectionTest {
+
+  private Juple juple = new JupleBuilder().setTabularCollections().create();
+
+  private Type pointsType = new TMLTypeToken<List<Point>>() {}.getType();
+
+  @Test
+  public void testSerialization() {
+    List<Point> points = Arrays.asList(new Point(1, 2), new Point(3, 4));
+    assertEquals("[[|x y][[1][2]][[3][4]]]", juple.toTML(points, pointsType));
+    assertEquals("[[[x|1][y|2]][[x|3][y|4]]]",
+        new Juple().toTML(points, pointsType));
+  }
+
+  @Test
+  public void testDeserialization() {
+    List<Point> points = juple.fromTML("[[|x y][[1][2]][\\0][[3][4]]]",
+        pointsType);
+    assertEquals(Arrays.asList(new Point(1, 2), null, new Point(3, 4)),
+        points);
+  }
+
+  @Test
+  public void testTablesAreDetectedWithoutOption() {
+    List<Point> points = new ArrayList<Point>(Arrays.asList(new Point(1, 2),
+        null, new Point(-3, 4)));
+    String table = juple.toTML(points, pointsType);
+    assertEquals(points, new Juple().fromTML(table, pointsType));
+    // and ordinary collections still read with the option
+    String ordinary = new Juple().toTML(points, pointsType);
+    assertEquals(points, juple.fromTML(ordinary, pointsType));
+  }
+
+  @Test
+  public void testHeaderOrderAndUnknownColumns() {
+    List<Point> points = juple.fromTML("[[|y z x][[2][[a b]][1]][[4][][3]]]",
+        pointsType);
+    assertEquals(Arrays.asList(new Point(1, 2), new Point(3, 4)), points);
+  }
+
+  @Test
+  public void testMissingColumnsKeepDefaults() {
+    List<Point> points = juple.fromTML("[[|x][[1]][[3]]]", pointsType);
+    assertEquals(Arrays.asList(new Point(1, 0), new Point(3, 0)), points);
+  }
+
+  @Test
+  public void testRoundTrip() {
+    List<BagOfPrimitives> bags = new ArrayList<BagOfPrimitives>();
+    for (int i = 0; i < 10; i++) {
+      bags.add(new BagOfPrimitives(i, -i, i % 3 == 0, "bag  " + i + " [|]"));
+    }
+    Type type = new TMLTypeToken<List<BagOfPrimitives>>() {}.getType();
+    String tml = juple.toTML(bags, type);
+    assertTrue(tml.length() < new Juple().toTML(bags, type).length());
+    assertEquals(bags, juple.fromTML(tml, type));
+    assertEquals(bags, juple.fromTMLNode(juple.toTMLNode(bags, type), type));
+    assertEquals(bags, juple.fromTMLBinary(juple.toTMLBinary(bags, type), type));
+  }
+
+  @Test
+  public void testNestedCollections() {
+    Polygon polygon = new Polygon("square", Arrays.asList(new Point(0, 0),
+        new Point(0, 1), new Point(1, 1), new Point(1, 0)));
+    List<Polygon> polygons = Arrays.asList(polygon, new Polygon("empty",
+        new ArrayList<Point>()), new Polygon("none", null));
+    Type type = new TMLTypeToken<List<Polygon>>() {}.getType();
+    String tml = juple.toTML(polygons, type);
+    assertEquals(polygons, juple.fromTML(tml, type));
+    assertEquals(polygon, juple.fromTML(juple.toTML(polygon), Polygon.class));
+  }
+
+  @Test
+  public void testOtherCollections() {
+    Set<Point> points = new LinkedHashSet<Point>(Arrays.asList(
+        new Point(1, 2), new Point(3, 4)));
+    Type type = new TMLTypeToken<Set<Point>>() {}.getType();
+    String tml = juple.toTML(points, type);
+    assertEquals("[[|x y][[1][2]][[3][4]]]", tml);
+    assertEquals(points, juple.fromTML(tml, type));
+  }
+
+  @Test
+  public void testSubtypesAreNotTabulated() {
+    List<Base> list = new ArrayList<Base>();
+    list.add(new Base());
+    list.add(new Sub());
+    Type type = new TMLTypeToken<List<Base>>() {}.getType();
+    assertEquals(new Juple().toTML(list, type), juple.toTML(list, type));
+  }
+
+  @Test
+  public void testEmptyAndNull() {
+    assertEquals("[]", juple.toTML(new ArrayList<Point>(), pointsType));
+    assertEquals("[\\2]", juple.toTML(null, pointsType));
+    assertNull(juple.fromTML("[\\2]", pointsType));
+  }
+
+  @Test
+  public void testNonReflectiveElementsAreNotTabulated() {
+    Type type = new TMLTypeToken<List<String>>() {}.getType();
+    List<String> strings = Arrays.asList("a", "b");
+    assertEquals(new Juple().toTML(strings, type), juple.toTML(strings, type));
+  }
+
+  @Test
+  public void testRecursiveElements() {
+    Type nodesType = new TMLTypeToken<List<Node>>() {}.getType();
+    Node tree = new Node("root", new Node("a"), new Node("b", new Node("c")));
+    String table = "[[name|root][children|[|name children][[a][[]]]"
+        + "[[b][[[|name children][[c][[]]]]]]]]";
+
+    // the element adapter is unfinished when either adapter creates the other
+    Juple nodeFirst = new JupleBuilder().setTabularCollections().create();
+    nodeFirst.toTML(new Node("x"));
+    Juple listFirst = new JupleBuilder().setTabularCollections().create();
+    listFirst.toTML(new ArrayList<Node>(), nodesType);
+    assertEquals(table, nodeFirst.toTML(tree));
+    assertEquals(table, listFirst.toTML(tree));
+
+    Juple plain = new Juple();
+    plain.toTML(new Node("x"));
+    assertEquals(tree, plain.fromTML(table, Node.class));
+    assertEquals(Arrays.asList(new Node("a"), new Node("b")),
+        plain.fromTML("[[|name children][[a][[]]][[b][[]]]]", nodesType));
+  }
+
+  private static class Point {
+    int x;
+    int y;
+
+    Point() {}
+
+    Point(int x, int y) {
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Point && ((Point) obj).x == x
+          && ((Point) obj).y == y;
+    }
+
+    @Override
+    public int hashCode() {
+      return x * 31 + y;
+    }
+  }
+
+  private static class Node {
+    String name;
+    List<Node> children;
+
+    Node() {}
+
+    Node(String name, Node... children) {
+      this.name = name;
+      this.children = Arrays.asList(children);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Node && ((Node) obj).name.equals(name)
+          && ((Node) obj).children.equals(children);
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+  private static class Polygon {
+    String name;
+    List<Point> points;
+
+    Polygon() {}
+
+    Polygon(String name, List<Point> points) {
+      this.name = name;
+      this.points = points;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Polygon)) {
+        return false;
+      }
+      Polygon other = (Polygon) obj;
+      return name.equals(other.name)
+          && (points == null ? other.points == null : points
+              .equals(other.points));
+    }
+
+    @Override
+    public int hashCode() {
+      return name.hashCode();
+    }
+  }
+
+}
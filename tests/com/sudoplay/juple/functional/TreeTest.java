@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.functional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.Juple;
+import com.sudoplay.juple.classparser.TMLTypeToken;
+import com.sudoplay.juple.common.TestTypes.BagOfPrimitives;
+import com.sudoplay.juple.common.TestTypes.ClassWithObjects;
+import com.sudoplay.juple.common.TestTypes.Nested;
+import com.sudoplay.juple.tree.TMLNode;
+
+/**
+ * Functional tests for converting objects to and from {@link TMLNode} trees
+ * without a text round trip.
+ * 
+ * @author Jason Taylor
+ */
+public class TreeTest {
+
+  private Juple juple = new Juple();
+
+  /**
+   * Asserts that the tree written for {@code obj} is the tree parsed from its
+   * TML, and that reading either tree results in an object with the same TML.
+   */
+  private void assertTreeMatchesText(Object obj, Type type) {
+    String tml = juple.toTML(obj, type);
+    TMLNode tree = juple.toTMLNode(obj, type);
+    TMLNode parsed = juple.toTMLNode(tml);
+    assertEquals(parsed.toString(), tree.toString());
+    assertEquals(tml, juple.toTML(juple.fromTMLNode(tree, type), type));
+    assertEquals(tml, juple.toTML(juple.fromTMLNode(parsed, type), type));
+  }
+
+  @Test
+  public void testBagOfPrimitives() {
+    assertTreeMatchesText(new BagOfPrimitives(10, 20, false, "a b  c"),
+        BagOfPrimitives.class);
+    assertTreeMatchesText(new BagOfPrimitives(-1, 0, true, "[|]\\ \t\n"),
+        BagOfPrimitives.class);
+  }
+
+  @Test
+  public void testNested() {
+    assertTreeMatchesText(new Nested(new BagOfPrimitives(1, 2, true, "one"),
+        new BagOfPrimitives(3, 4, false, "two words")), Nested.class);
+    assertTreeMatchesText(new Nested(), Nested.class);
+    assertTreeMatchesText(
+        new ClassWithObjects(new BagOfPrimitives(5, 6, true, "x")),
+        ClassWithObjects.class);
+  }
+
+  @Test
+  public void testNull() {
+    assertTreeMatchesText(null, BagOfPrimitives.class);
+    assertNull(juple.fromTMLNode(juple.toTMLNode(null, Nested.class),
+        Nested.class));
+  }
+
+  @Test
+  public void testCollections() {
+    List<String> list = new ArrayList<String>(Arrays.asList("a", null,
+        "b c", "true", "1.5"));
+    assertTreeMatchesText(list, new TMLTypeToken<List<String>>() {}.getType());
+
+    Map<String, Integer> map = new LinkedHashMap<String, Integer>();
+    map.put("one", 1);
+    map.put("two", null);
+    assertTreeMatchesText(map,
+        new TMLTypeToken<Map<String, Integer>>() {}.getType());
+
+    assertTreeMatchesText(new int[][] { { 1, 2 }, null, {} }, int[][].class);
+    assertTreeMatchesText(new String[] { "a", "b" }, String[].class);
+  }
+
+  @Test
+  public void testEmptyString() {
+    BagOfPrimitives bag = new BagOfPrimitives();
+    TMLNode tree = juple.toTMLNode(bag);
+    TMLNode empty = tree.findGreedy("[stringValue | \\?]").getNode(2);
+    assertTrue(empty.isString());
+    assertEquals("", empty.getValue());
+    assertEquals(bag, juple.fromTMLNode(tree, BagOfPrimitives.class));
+  }
+
+  @Test
+  public void testStringRoundTrip() {
+    for (String value : new String[] { "|", "a | b", "", null }) {
+      BagOfPrimitives bag = new BagOfPrimitives(1, 2, true, value);
+      assertEquals(bag,
+          juple.fromTMLNode(juple.toTMLNode(bag), BagOfPrimitives.class));
+    }
+    assertTreeMatchesText(new BagOfPrimitives(1, 2, true, "|"),
+        BagOfPrimitives.class);
+    assertTreeMatchesText(new BagOfPrimitives(1, 2, true, "a | b"),
+        BagOfPrimitives.class);
+    assertTreeMatchesText(new BagOfPrimitives(1, 2, true, null),
+        BagOfPrimitives.class);
+  }
+
+  @Test
+  public void testParsedEmptyStringReadsAsNull() {
+    String tml = juple.toTML(new BagOfPrimitives(1, 2, true, ""));
+    BagOfPrimitives bag = juple.fromTMLNode(juple.toTMLNode(tml),
+        BagOfPrimitives.class);
+    assertNull(bag.stringValue);
+    assertEquals(1, bag.longValue);
+  }
+
+  @Test
+  public void testTransformTree() {
+    TMLNode tree = juple.toTMLNode(new BagOfPrimitives(10, 20, false, "a"));
+    TMLNode intValue = tree.findGreedy("[intValue | \\?]");
+    int i = 0;
+    while (tree.getNode(i) != intValue) {
+      i++;
+    }
+    TMLNode edited = tree.freeze().withNodeAt(new int[] { i, 2 },
+        new TMLNode(42));
+    assertEquals(20, juple.fromTMLNode(tree, BagOfPrimitives.class).intValue);
+    assertEquals(42, juple.fromTMLNode(edited, BagOfPrimitives.class).intValue);
+    assertEquals("[intValue | 20]", intValue.toString());
+  }
+
+  @Test
+  public void testPrimitives() {
+    assertTreeMatchesText(5, Integer.class);
+    assertTreeMatchesText("a string", String.class);
+    assertTreeMatchesText(1.25d, Double.class);
+    assertTreeMatchesText(Boolean.TRUE, Boolean.class);
+    assertEquals(Integer.valueOf(5),
+        juple.fromTMLNode(juple.toTMLNode(5), Integer.class));
+  }
+
+}
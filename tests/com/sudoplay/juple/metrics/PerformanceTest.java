@@ -53,12 +53,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Test;
 
 import com.sudoplay.juple.Juple;
+import com.sudoplay.juple.JupleBuilder;
 import com.sudoplay.juple.classparser.TMLTypeToken;
 import com.sudoplay.juple.classparser.annotations.Expose;
+import com.sudoplay.juple.tree.TMLIncrementalParser;
+import com.sudoplay.juple.tree.TMLNode;
+import com.sudoplay.juple.tree.TMLNodeTreeParser;
+import com.sudoplay.juple.tree.TMLStreamQuery;
 
 /**
  * Tests to measure performance for Juple. All tests in this file will be
@@ -286,6 +292,342 @@ public class PerformanceTest {
     System.out.printf("Deserialize large map avg time: %d ms\n", avg);
   }
 
+  /**
+   * Compares the explicit-stack {@link TMLNode} operations against plain
+   * recursive equivalents on a deep tree and a wide tree.
+   */
+  @Test
+  public void testTreeWalkIterativeVsRecursive() {
+    if (DISABLED) return;
+
+    // deep enough to measure, shallow enough for the recursive versions
+    TMLNode deep = new TMLNode();
+    TMLNode node = deep;
+    for (int i = 0; i < 2000; i++) {
+      TMLNode child = new TMLNode();
+      child.add(new TMLNode("a"));
+      node.add(child);
+      node = child;
+    }
+    TMLNode wide = new TMLNode();
+    for (int i = 0; i < COLLECTION_SIZE * 20; i++) {
+      TMLNode child = new TMLNode();
+      child.add(new TMLNode("a"));
+      child.add(new TMLNode(i));
+      wide.add(child);
+    }
+    TMLNode pattern = new TMLNodeTreeParser().parse("[a \\*]");
+
+    for (TMLNode root : new TMLNode[] { deep, wide }) {
+      String name = root == deep ? "deep" : "wide";
+      TMLNode copy = root.clone();
+
+      long t1 = System.currentTimeMillis();
+      for (int i = 0; i < NUM_ITERATIONS; ++i) {
+        root.toString();
+        root.clone();
+        root.equals(copy);
+        root.findAll(pattern, -1);
+      }
+      long t2 = System.currentTimeMillis();
+      long avg = (t2 - t1) / NUM_ITERATIONS;
+      System.out.printf("Iterative %s tree walk avg time: %d ms\n", name, avg);
+
+      t1 = System.currentTimeMillis();
+      for (int i = 0; i < NUM_ITERATIONS; ++i) {
+        recursiveToString(root, new StringBuilder());
+        recursiveClone(root);
+        recursiveEquals(root, copy);
+        recursiveFindAll(root, pattern, new ArrayList<TMLNode>());
+      }
+      t2 = System.currentTimeMillis();
+      avg = (t2 - t1) / NUM_ITERATIONS;
+      System.out.printf("Recursive %s tree walk avg time: %d ms\n", name, avg);
+    }
+  }
+
+  /**
+   * Compares re-parsing a document after each small edit in full with
+   * {@link TMLIncrementalParser}.
+   */
+  @Test
+  public void testIncrementalReparse() {
+    if (DISABLED) return;
+
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      sb.append("[field").append(i).append(" | [value ").append(i)
+          .append("]]\n");
+    }
+    String tml = sb.append("]").toString();
+    int offset = tml.indexOf("[value " + (COLLECTION_SIZE / 2)) + 1;
+
+    TMLNodeTreeParser parser = new TMLNodeTreeParser();
+    String text = tml;
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      text = text.substring(0, offset) + "x" + text.substring(offset);
+      parser.parse(text);
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Full reparse avg time: %d ms\n", avg);
+
+    TMLIncrementalParser incremental = new TMLIncrementalParser(tml);
+    t1 = System.nanoTime();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      incremental.edit(offset, 0, "x");
+    }
+    t2 = System.nanoTime();
+    avg = (t2 - t1) / NUM_ITERATIONS / 1000;
+    System.out.printf("Incremental reparse avg time: %d us\n", avg);
+  }
+
+  /**
+   * Compares building a tree to find a few lists with
+   * {@link TMLStreamQuery}.
+   */
+  @Test
+  public void testStreamQuery() {
+    if (DISABLED) return;
+
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      sb.append("[entry").append(i).append(" [name element-").append(i)
+          .append("] [values 1 2 3 4 5 6 7 8]]");
+    }
+    String tml = sb.append("[port 80]]").toString();
+
+    TMLNodeTreeParser parser = new TMLNodeTreeParser();
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      parser.parse(tml).findGreedy("[port \\?]");
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Parse and find avg time: %d ms\n", avg);
+
+    TMLStreamQuery query = TMLStreamQuery.compile("port");
+    t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      query.findAll(tml);
+    }
+    t2 = System.currentTimeMillis();
+    avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Stream query avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testSkipUnknownFields() {
+    if (DISABLED) return;
+
+    StringBuilder sb = new StringBuilder("[");
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      sb.append("[[field|value").append(i).append(']');
+      for (int j = 0; j < 20; ++j) {
+        sb.append("[unknown").append(j)
+            .append("|[some text] [1 2 3 4] [[nested\\s\\[data\\]] more]]");
+      }
+      sb.append(']');
+    }
+    String tml = sb.append(']').toString();
+    Type type = new TMLTypeToken<ArrayList<ClassWithField>>() {}.getType();
+
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      List<ClassWithField> list = juple.fromTML(tml, type);
+      assertEquals(COLLECTION_SIZE, list.size());
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Skip unknown fields avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testWideRecordDeserialization() {
+    if (DISABLED) return;
+
+    List<WideRecord> records = new ArrayList<WideRecord>(COLLECTION_SIZE);
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      records.add(new WideRecord(i));
+    }
+    Type type = new TMLTypeToken<ArrayList<WideRecord>>() {}.getType();
+    String tml = juple.toTML(records, type);
+
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      List<WideRecord> list = juple.fromTML(tml, type);
+      assertEquals(COLLECTION_SIZE, list.size());
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Wide record deserialization avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testSmallAndLargeSerialization() {
+    if (DISABLED) return;
+
+    WideRecord small = new WideRecord(42);
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS * 1000; ++i) {
+      juple.toTML(small);
+    }
+    long t2 = System.currentTimeMillis();
+    System.out.printf("Small object serialization time: %d ms\n", t2 - t1);
+
+    List<WideRecord> records = new ArrayList<WideRecord>(COLLECTION_SIZE);
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      records.add(new WideRecord(i));
+    }
+    t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      juple.toTML(records);
+    }
+    t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Large collection serialization avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testNumericSerialization() {
+    if (DISABLED) return;
+
+    Random random = new Random(1);
+    double[] doubles = new double[COLLECTION_SIZE * 10];
+    long[] longs = new long[COLLECTION_SIZE * 10];
+    for (int i = 0; i < doubles.length; ++i) {
+      doubles[i] = random.nextDouble() * 1000;
+      longs[i] = random.nextLong();
+    }
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      juple.toTML(doubles);
+      juple.toTML(longs);
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Numeric array serialization avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testBinaryRoundTrip() {
+    if (DISABLED) return;
+
+    List<WideRecord> records = new ArrayList<WideRecord>(COLLECTION_SIZE);
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      records.add(new WideRecord(i));
+    }
+    Type type = new TMLTypeToken<ArrayList<WideRecord>>() {}.getType();
+    // warm up both paths so neither is measured before compilation
+    juple.fromTML(juple.toTML(records, type), type);
+    juple.fromTMLBinary(juple.toTMLBinary(records, type), type);
+
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      String tml = juple.toTML(records, type);
+      List<WideRecord> list = juple.fromTML(tml, type);
+      assertEquals(COLLECTION_SIZE, list.size());
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Text round trip avg time: %d ms\n", avg);
+
+    t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      byte[] bytes = juple.toTMLBinary(records, type);
+      List<WideRecord> list = juple.fromTMLBinary(bytes, type);
+      assertEquals(COLLECTION_SIZE, list.size());
+    }
+    t2 = System.currentTimeMillis();
+    avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Binary round trip avg time: %d ms\n", avg);
+  }
+
+  @Test
+  public void testTabularCollections() {
+    if (DISABLED) return;
+
+    Juple tables = new JupleBuilder().setTabularCollections().create();
+    List<WideRecord> records = new ArrayList<WideRecord>(COLLECTION_SIZE);
+    for (int i = 0; i < COLLECTION_SIZE; ++i) {
+      records.add(new WideRecord(i));
+    }
+    Type type = new TMLTypeToken<ArrayList<WideRecord>>() {}.getType();
+    String tml = juple.toTML(records, type);
+    String table = tables.toTML(records, type);
+    System.out.printf("Tabular collection size: %d chars, was %d\n",
+        table.length(), tml.length());
+
+    long t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      tables.toTML(records, type);
+    }
+    long t2 = System.currentTimeMillis();
+    long avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Tabular collection serialization avg time: %d ms\n",
+        avg);
+
+    t1 = System.currentTimeMillis();
+    for (int i = 0; i < NUM_ITERATIONS; ++i) {
+      List<WideRecord> list = tables.fromTML(table, type);
+      assertEquals(COLLECTION_SIZE, list.size());
+    }
+    t2 = System.currentTimeMillis();
+    avg = (t2 - t1) / NUM_ITERATIONS;
+    System.out.printf("Tabular collection deserialization avg time: %d ms\n",
+        avg);
+  }
+
+  private static void recursiveToString(TMLNode node, StringBuilder sb) {
+    if (!node.isList()) {
+      sb.append(node.getValue());
+      return;
+    }
+    sb.append('[');
+    for (int i = 0, len = node.getListSize(); i < len; i++) {
+      if (i > 0) sb.append(' ');
+      recursiveToString(node.getNode(i), sb);
+    }
+    sb.append(']');
+  }
+
+  private static TMLNode recursiveClone(TMLNode node) {
+    if (!node.isList()) {
+      return new TMLNode(node.getValue());
+    }
+    TMLNode copy = new TMLNode();
+    for (int i = 0, len = node.getListSize(); i < len; i++) {
+      copy.add(recursiveClone(node.getNode(i)));
+    }
+    return copy;
+  }
+
+  private static boolean recursiveEquals(TMLNode a, TMLNode b) {
+    if (a.isList() != b.isList() || a.getListSize() != b.getListSize()) {
+      return false;
+    }
+    if (!a.isList()) {
+      return a.getValue().equals(b.getValue());
+    }
+    for (int i = 0, len = a.getListSize(); i < len; i++) {
+      if (!recursiveEquals(a.getNode(i), b.getNode(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void recursiveFindAll(TMLNode node, TMLNode pattern,
+      List<TMLNode> results) {
+    if (pattern.equals(node)) {
+      results.add(node);
+    }
+    for (int i = 0, len = node.getListSize(); i < len; i++) {
+      recursiveFindAll(node.getNode(i), pattern, results);
+    }
+  }
+
   @SuppressWarnings("unused")
   private static class CollectionEntry {
     final String name;
@@ -338,6 +680,28 @@ public class PerformanceTest {
     }
   }
 
+  @SuppressWarnings("unused")
+  private static final class WideRecord {
+    int id;
+    String firstName = "first";
+    String lastName = "last";
+    String email = "name@example.com";
+    int age = 42;
+    long created = 1315806903103L;
+    long modified = 1315806903104L;
+    boolean active = true;
+    double balance = 12.5;
+    String street = "street";
+    String city = "city";
+    String country = "country";
+
+    WideRecord() {}
+
+    WideRecord(int id) {
+      this.id = id;
+    }
+  }
+
   @SuppressWarnings("unused")
   private static final class ClassWithField {
     final String field;
@@ -0,0 +1,354 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+@SuppressWarnings("resource")
+public class TMLBinaryTest {
+
+  private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+  private TMLBinaryReader reader() {
+    return new TMLBinaryReader(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullOutputStream_NullPointerException() {
+    new TMLBinaryWriter(null);
+  }
+
+  @Test
+  public void testTokens() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList();
+    writer.name("a").value("b c");
+    writer.divider();
+    writer.nullValue();
+    writer.nullArrayValue();
+    writer.beginList().endList();
+    writer.value("x  y");
+    writer.value("");
+    writer.endList();
+    assertEquals(TMLToken.EOF, writer.getLastToken());
+
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    assertEquals("a", reader.nextName());
+    assertTrue(reader.isImmediateFieldChild());
+    assertEquals("b", reader.nextString());
+    assertEquals("c", reader.nextString());
+    reader.consumeDivider();
+    reader.nextNull();
+    reader.nextNullArray();
+    reader.beginList();
+    assertFalse(reader.hasNextInScope(2));
+    reader.endList();
+    assertEquals("x  y", reader.nextString());
+    assertEquals("", reader.nextString());
+    assertEquals(TMLToken.END_LIST, reader.peek());
+    reader.endList();
+    assertEquals(TMLToken.EOF, reader.peek());
+    reader.assertFullConsumption();
+  }
+
+  @Test
+  public void testTypedValues() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList();
+    writer.value(true).value(false);
+    writer.value(Long.MIN_VALUE).value(Long.MAX_VALUE).value(-1);
+    writer.value(0.1).value(1.0E7).value(0.1f);
+    writer.value((Number) Integer.valueOf(7)).value(new java.math.BigDecimal(
+        "1.50"));
+    writer.endList();
+
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    assertEquals("true", reader.nextString());
+    assertEquals("false", reader.nextString());
+    assertEquals(Long.MIN_VALUE, reader.nextLong());
+    assertEquals(Long.toString(Long.MAX_VALUE), reader.nextString());
+    assertEquals(-1, reader.nextInt());
+    assertEquals("0.1", reader.nextString());
+    assertEquals(1.0E7, reader.nextDouble(), 0);
+    assertEquals("0.1", reader.nextString());
+    assertEquals(7, reader.nextInt());
+    assertEquals(1.5, reader.nextDouble(), 0);
+    reader.endList();
+  }
+
+  @Test
+  public void testNextIntOutOfRange() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList().value(1L << 40).endList();
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    try {
+      reader.nextInt();
+      fail();
+    } catch (NumberFormatException expected) {}
+  }
+
+  @Test
+  public void testNameDictionary() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList();
+    for (int i = 0; i < 3; i++) {
+      writer.beginField(new TMLEncodedName("longFieldName"));
+      writer.value(i);
+      writer.endList();
+    }
+    writer.endList();
+    byte[] bytes = out.toByteArray();
+    // the name is written once, then referenced
+    assertEquals(1, count(bytes, "longFieldName".getBytes("UTF-8")));
+
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    for (int i = 0; i < 3; i++) {
+      reader.beginList();
+      assertFalse(reader.nextNameIfEquals("other"));
+      assertTrue(reader.nextNameIfEquals("longFieldName"));
+      assertEquals(i, reader.nextInt());
+      reader.endList();
+    }
+    reader.endList();
+  }
+
+  @Test
+  public void testSkip() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList();
+    writer.beginList().name("skipped").value("a").beginList().value(1.5)
+        .endList().endList();
+    writer.beginList().name("skipped").value(2).endList();
+    writer.beginList().value("x").nullValue().value(3).endList();
+    writer.value("last");
+    writer.endList();
+
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    reader.skipNext();
+    reader.beginList();
+    // the dictionary is still built while skipping
+    assertEquals("skipped", reader.nextName());
+    reader.skipRemaining();
+    reader.beginList();
+    assertEquals("x", reader.nextString());
+    assertEquals(TMLToken.NULL, reader.peek());
+    reader.skipRemaining();
+    assertEquals("last", reader.nextString());
+    reader.endList();
+    reader.assertFullConsumption();
+  }
+
+  @Test
+  public void testLongStrings() throws IOException {
+    char[] chars = new char[20000];
+    Arrays.fill(chars, 'é');
+    chars[10] = '\uD83D';
+    chars[11] = '\uDE00';
+    chars[500] = '\uD83D'; // unpaired
+    String value = new String(chars);
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList().value(value).value(value).endList();
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    String expected = value.substring(0, 500) + "?" + value.substring(501);
+    assertEquals(expected, reader.nextString());
+    reader.skipNext();
+    reader.endList();
+    assertEquals(out.size(), reader.getPosition());
+  }
+
+  @Test
+  public void testEmptyStream() throws IOException {
+    TMLBinaryReader reader = reader();
+    assertFalse(reader.hasNext());
+    assertEquals(TMLToken.EOF, reader.peek());
+  }
+
+  @Test
+  public void testBadMagic() throws IOException {
+    TMLBinaryReader reader = new TMLBinaryReader(new ByteArrayInputStream(
+        "[a]".getBytes("UTF-8")));
+    try {
+      reader.peek();
+      fail();
+    } catch (EOFException expected) {}
+    reader = new TMLBinaryReader(new ByteArrayInputStream(
+        "[a b c]".getBytes("UTF-8")));
+    try {
+      reader.peek();
+      fail();
+    } catch (IOException expected) {
+      assertEquals("Not a binary TML document", expected.getMessage());
+    }
+  }
+
+  @Test
+  public void testUnknownTag() throws IOException {
+    new TMLBinaryWriter(out).beginList().endList();
+    byte[] bytes = out.toByteArray();
+    bytes[bytes.length - 1] = 99;
+    TMLBinaryReader reader = new TMLBinaryReader(new ByteArrayInputStream(
+        bytes));
+    reader.beginList();
+    try {
+      reader.peek();
+      fail();
+    } catch (IOException expected) {}
+  }
+
+  @Test
+  public void testTruncated() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList().value("truncated").value(0.5).endList();
+    byte[] bytes = out.toByteArray();
+    TMLBinaryReader reader = new TMLBinaryReader(new ByteArrayInputStream(
+        Arrays.copyOf(bytes, 10)));
+    reader.beginList();
+    try {
+      reader.nextString();
+      fail();
+    } catch (EOFException expected) {}
+  }
+
+  @Test
+  public void testTruncatedHugeString() throws IOException {
+    new TMLBinaryWriter(out).beginList().flush();
+    out.write(TMLBinaryTag.STRING);
+    // a length of Integer.MAX_VALUE followed by only a few bytes
+    out.write(new byte[] { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF,
+        0x07, 'a', 'b', 'c' });
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    try {
+      reader.nextString();
+      fail();
+    } catch (EOFException expected) {}
+  }
+
+  @Test
+  public void testDataAfterDocument() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList().endList();
+    out.write(TMLBinaryTag.BEGIN_LIST);
+    TMLBinaryReader reader = reader();
+    reader.beginList();
+    try {
+      reader.endList();
+      fail();
+    } catch (IOException expected) {}
+  }
+
+  @Test
+  public void testDocumentClosed() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.beginList().endList();
+    try {
+      writer.beginList();
+      fail();
+    } catch (IllegalStateException expected) {}
+  }
+
+  @Test
+  public void testNonFiniteEnforced() throws IOException {
+    TMLBinaryWriter writer = new TMLBinaryWriter(out);
+    writer.setEnforceFiniteFloatingPointValues(true);
+    writer.beginList();
+    try {
+      writer.value(Double.NaN);
+      fail();
+    } catch (IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testConvertText() throws IOException {
+    String tml = "[[a|1 1.0 01 1e3 true]\\ \\1 [] \\0 [|] -0]";
+    ByteArrayOutputStream binary = new ByteArrayOutputStream();
+    TMLBinaryConverter.textToBinary(new StringReader(tml), binary);
+
+    TMLReader text = new TMLReader(new StringReader(tml));
+    TMLBinaryReader reader = new TMLBinaryReader(new ByteArrayInputStream(
+        binary.toByteArray()));
+    while (text.peek() != TMLToken.EOF) {
+      TMLToken token = text.peek();
+      assertEquals(token, reader.peek());
+      if (token == TMLToken.DATA) {
+        assertEquals(text.nextString(), reader.nextString());
+      } else {
+        text.skipNext();
+        reader.skipNext();
+      }
+    }
+    assertEquals(TMLToken.EOF, reader.peek());
+  }
+
+  private static int count(byte[] bytes, byte[] pattern) {
+    int count = 0;
+    outer: for (int i = 0; i + pattern.length <= bytes.length; i++) {
+      for (int j = 0; j < pattern.length; j++) {
+        if (bytes[i + j] != pattern[j]) continue outer;
+      }
+      count++;
+    }
+    return count;
+  }
+
+}
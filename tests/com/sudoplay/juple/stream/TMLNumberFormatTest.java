@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TMLNumberFormatTest {
+
+  private static final int SAMPLES = 200000;
+
+  private final char[] buffer = new char[TMLNumberFormat.MAX_CHARS];
+
+  @Test
+  public void testLongs() {
+    long[] values = { 0, 1, -1, 9, 10, 99, 100, Integer.MAX_VALUE,
+        Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+        Long.MIN_VALUE + 1, 999999999999999999L, 1000000000000000000L };
+    for (long value : values) {
+      assertEquals(Long.toString(value), formatLong(value));
+    }
+    Random random = new Random(1);
+    for (int i = 0; i < SAMPLES; i++) {
+      long value = random.nextLong() >> random.nextInt(64);
+      assertEquals(Long.toString(value), formatLong(value));
+    }
+  }
+
+  @Test
+  public void testDoubleNotation() {
+    assertEquals("0.0", formatDouble(0.0));
+    assertEquals("-0.0", formatDouble(-0.0));
+    assertEquals("NaN", formatDouble(Double.NaN));
+    assertEquals("Infinity", formatDouble(Double.POSITIVE_INFINITY));
+    assertEquals("-Infinity", formatDouble(Double.NEGATIVE_INFINITY));
+    assertEquals("1.0", formatDouble(1.0));
+    assertEquals("100.0", formatDouble(100.0));
+    assertEquals("-0.5", formatDouble(-0.5));
+    assertEquals("0.001", formatDouble(0.001));
+    assertEquals("9.9E-4", formatDouble(0.00099));
+    assertEquals("9999999.0", formatDouble(9999999.0));
+    assertEquals("1.0E7", formatDouble(1.0E7));
+    assertEquals("1234567.125", formatDouble(1234567.125));
+    assertEquals("0.1", formatDouble(0.1));
+    assertEquals("1.7976931348623157E308", formatDouble(Double.MAX_VALUE));
+    assertEquals("4.9E-324", formatDouble(Double.MIN_VALUE));
+    assertEquals("2.2250738585072014E-308", formatDouble(Double.MIN_NORMAL));
+    // Double.toString prints 9.999999999999999E22 before Java 19
+    assertEquals("1.0E23", formatDouble(1.0E23));
+  }
+
+  @Test
+  public void testFloatNotation() {
+    assertEquals("0.0", formatFloat(0.0f));
+    assertEquals("-0.0", formatFloat(-0.0f));
+    assertEquals("NaN", formatFloat(Float.NaN));
+    assertEquals("1.0", formatFloat(1.0f));
+    assertEquals("0.1", formatFloat(0.1f));
+    assertEquals("1.0E10", formatFloat(1.0E10f));
+    assertEquals("3.4028235E38", formatFloat(Float.MAX_VALUE));
+    assertEquals("1.4E-45", formatFloat(Float.MIN_VALUE));
+    assertEquals("1.1754944E-38", formatFloat(Float.MIN_NORMAL));
+  }
+
+  @Test
+  public void testDoublesParseBackExactly() {
+    Random random = new Random(1);
+    for (int i = 0; i < SAMPLES; i++) {
+      double value = Double.longBitsToDouble(random.nextLong());
+      if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+        assertDoubleRoundTrip(value);
+      }
+      assertDoubleRoundTrip(random.nextDouble());
+      assertDoubleRoundTrip(random.nextInt() / 1000.0);
+    }
+    for (long bits = 0; bits < 1000; bits++) {
+      assertDoubleRoundTrip(Double.longBitsToDouble(bits));
+    }
+    for (long exponent = 1; exponent < 2047; exponent++) {
+      // the bottom of each binade, where the rounding interval is uneven
+      assertDoubleRoundTrip(Double.longBitsToDouble(exponent << 52));
+    }
+  }
+
+  @Test
+  public void testFloatsParseBackExactly() {
+    Random random = new Random(1);
+    for (int i = 0; i < SAMPLES; i++) {
+      float value = Float.intBitsToFloat(random.nextInt());
+      if (!Float.isNaN(value) && !Float.isInfinite(value)) {
+        assertFloatRoundTrip(value);
+      }
+      assertFloatRoundTrip(random.nextFloat());
+    }
+    for (int bits = 0; bits < 1000; bits++) {
+      assertFloatRoundTrip(Float.intBitsToFloat(bits));
+    }
+    for (int exponent = 1; exponent < 255; exponent++) {
+      assertFloatRoundTrip(Float.intBitsToFloat(exponent << 23));
+    }
+  }
+
+  /**
+   * Asserts that the formatted value parses back to the same double, that no
+   * decimal with one fewer digit does and that the neighbours with the same
+   * number of digits are no closer.
+   */
+  private void assertDoubleRoundTrip(double value) {
+    String string = formatDouble(value);
+    assertEquals(string, Double.doubleToLongBits(value),
+        Double.doubleToLongBits(Double.parseDouble(string)));
+    BigDecimal decimal = new BigDecimal(string).stripTrailingZeros();
+    int precision = decimal.precision();
+    if (precision > 2) {
+      BigDecimal down = decimal.setScale(decimal.scale() - 1,
+          RoundingMode.DOWN);
+      BigDecimal up = decimal.setScale(decimal.scale() - 1, RoundingMode.UP);
+      assertTrue(string, Double.parseDouble(down.toString()) != value
+          && Double.parseDouble(up.toString()) != value);
+    }
+    assertClosest(string, new BigDecimal(value), decimal, false);
+  }
+
+  private void assertFloatRoundTrip(float value) {
+    String string = formatFloat(value);
+    assertEquals(string, Float.floatToIntBits(value),
+        Float.floatToIntBits(Float.parseFloat(string)));
+    BigDecimal decimal = new BigDecimal(string).stripTrailingZeros();
+    int precision = decimal.precision();
+    if (precision > 2) {
+      BigDecimal down = decimal.setScale(decimal.scale() - 1,
+          RoundingMode.DOWN);
+      BigDecimal up = decimal.setScale(decimal.scale() - 1, RoundingMode.UP);
+      assertTrue(string, Float.parseFloat(down.toString()) != value
+          && Float.parseFloat(up.toString()) != value);
+    }
+    assertClosest(string, new BigDecimal(value), decimal, true);
+  }
+
+  /**
+   * Asserts that neither neighbour of {@code decimal} with the same number of
+   * digits both parses back to the value and is closer to it.
+   */
+  private static void assertClosest(String string, BigDecimal exact,
+      BigDecimal decimal, boolean isFloat) {
+    if (exact.signum() == 0) {
+      return;
+    }
+    BigDecimal distance = decimal.subtract(exact).abs();
+    for (BigDecimal neighbour : new BigDecimal[] {
+        decimal.add(decimal.ulp()), decimal.subtract(decimal.ulp()) }) {
+      boolean parsesBack = isFloat
+          ? Float.parseFloat(neighbour.toString()) == exact.floatValue()
+          : Double.parseDouble(neighbour.toString()) == exact.doubleValue();
+      assertTrue(string, !parsesBack
+          || neighbour.subtract(exact).abs().compareTo(distance) >= 0);
+    }
+  }
+
+  private String formatLong(long value) {
+    return new String(buffer, 0, TMLNumberFormat.formatLong(value, buffer, 0));
+  }
+
+  private String formatDouble(double value) {
+    return new String(buffer, 0,
+        TMLNumberFormat.formatDouble(value, buffer, 0));
+  }
+
+  private String formatFloat(float value) {
+    return new String(buffer, 0, TMLNumberFormat.formatFloat(value, buffer, 0));
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TMLPooledOutputStreamTest {
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testZeroSegmentSize_IllegalArgumentException() {
+    new TMLBufferPool(0, 1);
+  }
+
+  @Test
+  public void testGatheringWrite() throws IOException {
+    TMLBufferPool pool = new TMLBufferPool(16, 4);
+    TMLPooledOutputStream out = new TMLPooledOutputStream(pool);
+    byte[] expected = randomBytes(100);
+    out.write(expected, 0, 40);
+    out.write(expected[40]);
+    out.write(expected, 41, 59);
+    assertEquals(100, out.size());
+    assertEquals(7, out.getSegmentCount());
+
+    RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+    assertEquals(100, out.writeTo(channel));
+    assertEquals(1, channel.gatheringWrites);
+    assertArrayEquals(expected, channel.bytes.toByteArray());
+    out.close();
+  }
+
+  @Test
+  public void testPartialGatheringWrites() throws IOException {
+    TMLPooledOutputStream out = new TMLPooledOutputStream(new TMLBufferPool(
+        16, 4));
+    byte[] expected = randomBytes(100);
+    out.write(expected);
+    RecordingChannel channel = new RecordingChannel(30);
+    out.writeTo(channel);
+    assertEquals(4, channel.gatheringWrites);
+    assertArrayEquals(expected, channel.bytes.toByteArray());
+    out.close();
+  }
+
+  @Test
+  public void testWritableByteChannel() throws IOException {
+    TMLPooledOutputStream out = new TMLPooledOutputStream(new TMLBufferPool(
+        16, 4));
+    byte[] expected = randomBytes(50);
+    out.write(expected);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    out.writeTo(Channels.newChannel(bytes));
+    assertArrayEquals(expected, bytes.toByteArray());
+    out.close();
+  }
+
+  @Test
+  public void testSegmentsReturnedToPool() throws IOException {
+    TMLBufferPool pool = new TMLBufferPool(16, 2);
+    TMLPooledOutputStream out = new TMLPooledOutputStream(pool);
+    out.write(new byte[40]);
+    assertEquals(3, pool.getInUseCount());
+    assertEquals(0, pool.getPooledCount());
+    out.close();
+    out.close();
+    assertEquals(0, pool.getInUseCount());
+    assertEquals(2, pool.getPooledCount());
+    assertEquals(3, pool.getPeakInUseCount());
+
+    out = new TMLPooledOutputStream(pool);
+    out.write(new byte[20]);
+    out.close();
+    assertEquals(5, pool.getAcquireCount());
+    assertEquals(3, pool.getAllocationCount());
+    try {
+      out.write(1);
+      fail();
+    } catch (IOException expected) {}
+  }
+
+  @Test
+  public void testUtf8Writer() throws IOException {
+    TMLBufferPool pool = new TMLBufferPool(64, 8);
+    TMLPooledOutputStream out = new TMLPooledOutputStream(pool);
+    TMLWriter writer = new TMLUtf8Writer(out);
+    StringBuilder expected = new StringBuilder("[");
+    writer.beginList();
+    for (int i = 0; i < 100; i++) {
+      writer.value("café" + i);
+      expected.append(i == 0 ? "" : " ").append("café").append(i);
+    }
+    writer.endList();
+    expected.append(']');
+    RecordingChannel channel = new RecordingChannel(Integer.MAX_VALUE);
+    out.writeTo(channel);
+    out.close();
+    assertEquals(expected.toString(),
+        new String(channel.bytes.toByteArray(), "UTF-8"));
+    assertTrue(pool.getPooledCount() > 0);
+  }
+
+  private static byte[] randomBytes(int length) {
+    byte[] bytes = new byte[length];
+    new Random(1).nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Collects what is written to it, accepting at most {@code limit} bytes per
+   * write.
+   */
+  private static class RecordingChannel implements GatheringByteChannel {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final int limit;
+    int gatheringWrites = 0;
+
+    RecordingChannel(int limit) {
+      this.limit = limit;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) {
+      gatheringWrites++;
+      int budget = limit;
+      long written = 0;
+      for (int i = offset; i < offset + length && budget > 0; i++) {
+        while (srcs[i].hasRemaining() && budget > 0) {
+          bytes.write(srcs[i].get());
+          budget--;
+          written++;
+        }
+      }
+      return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs) {
+      return write(srcs, 0, srcs.length);
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      return (int) write(new ByteBuffer[] { src });
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+}
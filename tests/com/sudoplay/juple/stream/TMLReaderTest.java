@@ -624,6 +624,169 @@ public class TMLReaderTest {
     assertEquals(EOF, reader.peek());
   }
 
+  @Test
+  public void testSkipEscapedDelimiters() throws IOException {
+    String tml = "[[a \\] b\\\\] [c]]";
+    TMLReader reader = new TMLReader(reader(tml));
+    reader.beginList();
+    reader.skipNext();
+    reader.beginList();
+    assertEquals("c", reader.nextString());
+    reader.endList();
+    reader.endList();
+  }
+
+  @Test
+  public void testSkipAcrossBufferBoundary() throws IOException {
+    // the delimiters fall at the start of each refilled buffer
+    for (int length = 1018; length < 1030; length++) {
+      String tml = "[[a " + repeat('b', length) + "[c]] [d]]";
+      TMLReader reader = new TMLReader(reader(tml));
+      reader.beginList();
+      reader.skipNext();
+      reader.beginList();
+      assertEquals("d", reader.nextString());
+      reader.endList();
+      reader.endList();
+    }
+  }
+
+  @Test
+  public void testSkipCountsLines() throws IOException {
+    String tml = "[[a\nb\n[c\nd]\n]\n[e]]";
+    TMLReader reader = new TMLReader(reader(tml));
+    reader.beginList();
+    reader.skipNext();
+    try {
+      reader.nextString();
+      fail();
+    } catch (IllegalStateException expected) {
+      assertTrue(expected.getMessage(), expected.getMessage().contains(
+          "at line 6 column"));
+    }
+  }
+
+  @Test
+  public void testSkipIgnoresDelimitersInComments() throws IOException {
+    String tml = "[[a || ] [ ]\n b] c || [\n]";
+    TMLReader reader = new TMLReader(reader(tml));
+    reader.beginList();
+    reader.skipNext();
+    assertEquals("c", reader.nextString());
+    reader.endList();
+    assertEquals(EOF, reader.peek());
+  }
+
+  @Test
+  public void testSkipStringAcrossBufferBoundary() throws IOException {
+    for (int length = 1018; length < 1030; length++) {
+      String tml = "[" + repeat('a', length) + "\\s\\\\ b]";
+      TMLReader reader = new TMLReader(reader(tml));
+      reader.beginList();
+      reader.skipNext();
+      assertEquals("b", reader.nextString());
+      reader.endList();
+    }
+  }
+
+  @Test
+  public void testSkipRemainingAfterPeek() throws IOException {
+    String tml = "[[a [b] c] [[d] e] [] [\\0 f] [| g] [h]]";
+    TMLReader reader = new TMLReader(reader(tml));
+    reader.beginList();
+    for (TMLToken expected : new TMLToken[] { DATA, BEGIN_LIST, END_LIST,
+        NULL, DIVIDER }) {
+      reader.beginList();
+      assertEquals(expected, reader.peek());
+      reader.skipRemaining();
+    }
+    reader.beginList();
+    assertEquals("h", reader.nextString());
+    reader.endList();
+    reader.endList();
+    assertEquals(EOF, reader.peek());
+  }
+
+  @Test
+  public void testSkipCommentAcrossBufferBoundary() throws IOException {
+    // the second char of the comment falls at the start of a refilled buffer
+    for (int length = 1018; length < 1030; length++) {
+      String tml = "[[" + repeat('a', length) + "|| ]\n b] [c]]";
+      TMLReader reader = new TMLReader(reader(tml));
+      reader.beginList();
+      reader.skipNext();
+      reader.beginList();
+      assertEquals("c", reader.nextString());
+      reader.endList();
+      reader.endList();
+    }
+  }
+
+  @Test
+  public void testSkipUnterminatedList() throws IOException {
+    TMLReader reader = new TMLReader(reader("[[a [b] \\"));
+    reader.beginList();
+    try {
+      reader.skipNext();
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void testNextNameIfEquals() throws IOException {
+    TMLReader reader = new TMLReader(reader("[[abc|1][ab|2][a\\sb|3][c d|4]]"));
+    reader.beginList();
+    reader.beginList();
+    assertFalse(reader.nextNameIfEquals("ab"));
+    assertFalse(reader.nextNameIfEquals("abcd"));
+    assertTrue(reader.nextNameIfEquals("abc"));
+    assertTrue(reader.getAndClearImmediateFieldChild());
+    assertEquals("1", reader.nextString());
+    reader.endList();
+    reader.beginList();
+    assertFalse(reader.nextNameIfEquals("abc"));
+    assertTrue(reader.nextNameIfEquals("ab"));
+    assertEquals("2", reader.nextString());
+    reader.endList();
+    reader.beginList();
+    // escaped names are left to nextName
+    assertFalse(reader.nextNameIfEquals("a b"));
+    assertEquals("a b", reader.nextName());
+    assertEquals("3", reader.nextString());
+    reader.endList();
+    reader.beginList();
+    try {
+      reader.nextNameIfEquals("c");
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void testNextNameIfEqualsNotData() throws IOException {
+    TMLReader reader = new TMLReader(reader("[[[a]|1]]"));
+    reader.beginList();
+    reader.beginList();
+    assertFalse(reader.nextNameIfEquals("a"));
+    assertEquals(BEGIN_LIST, reader.peek());
+  }
+
+  @Test
+  public void testNextNameIfEqualsAcrossBufferBoundary() throws IOException {
+    for (int length = 1010; length < 1030; length++) {
+      String tml = "[[" + repeat('a', length) + "] [name|value]]";
+      TMLReader reader = new TMLReader(reader(tml));
+      reader.beginList();
+      reader.skipNext();
+      reader.beginList();
+      assertTrue(reader.nextNameIfEquals("name"));
+      assertEquals("value", reader.nextString());
+      reader.endList();
+      reader.endList();
+    }
+  }
+
   @Test
   public void testHeaderIgnored() throws IOException {
     String tml = "this is a header[]";
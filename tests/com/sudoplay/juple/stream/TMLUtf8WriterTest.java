@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+@SuppressWarnings("resource")
+public class TMLUtf8WriterTest {
+
+  @Test(expected = NullPointerException.class)
+  public void testNullOutputStream_NullPointerException() {
+    new TMLUtf8Writer((ByteArrayOutputStream) null);
+  }
+
+  @Test
+  public void testMatchesTMLWriter() throws IOException {
+    String[] values = { "plain", "café", "€100", "😀",
+        "a  b", "[x|y]", " ", "" };
+    for (String indent : new String[] { "", "    " }) {
+      for (SpaceEscapePolicy policy : SpaceEscapePolicy.values()) {
+        StringWriter stringWriter = new StringWriter();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new TMLWriter(stringWriter), indent, policy, values);
+        write(new TMLUtf8Writer(out), indent, policy, values);
+        assertArrayEquals(stringWriter.toString().getBytes("UTF-8"),
+            out.toByteArray());
+      }
+    }
+  }
+
+  @Test
+  public void testRandomText() throws IOException {
+    Random random = new Random(1);
+    char[] chars = new char[20000];
+    for (int i = 0; i < chars.length; i++) {
+      // mostly ASCII, some two and three byte chars and surrogate pairs
+      int kind = random.nextInt(10);
+      if (kind < 6) {
+        chars[i] = (char) ('a' + random.nextInt(26));
+      } else if (kind < 7) {
+        chars[i] = (char) (0x80 + random.nextInt(0x780));
+      } else if (kind < 8 || i == chars.length - 1) {
+        chars[i] = (char) (0x800 + random.nextInt(0xd000 - 0x800));
+      } else {
+        chars[i++] = (char) (0xd800 + random.nextInt(0x400));
+        chars[i] = (char) (0xdc00 + random.nextInt(0x400));
+      }
+    }
+    String value = new String(chars);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TMLWriter writer = new TMLUtf8Writer(out);
+    writer.beginList();
+    writer.value(value);
+    writer.endList();
+    writer.close();
+    assertArrayEquals(("[" + value + "]").getBytes("UTF-8"),
+        out.toByteArray());
+  }
+
+  @Test
+  public void testSurrogatePairSplitAcrossBuffer() throws IOException {
+    // the pair straddles the writer's 1024 char buffer
+    char[] chars = new char[1022];
+    Arrays.fill(chars, 'x');
+    String value = new String(chars) + "😀";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TMLWriter writer = new TMLUtf8Writer(out);
+    writer.beginList();
+    writer.value(value);
+    writer.endList();
+    writer.close();
+    assertArrayEquals(("[" + value + "]").getBytes("UTF-8"),
+        out.toByteArray());
+  }
+
+  @Test
+  public void testUnpairedSurrogates() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    TMLWriter writer = new TMLUtf8Writer(out);
+    writer.beginList();
+    writer.value("a\ud83db");
+    writer.value("\ude00");
+    writer.value("\ud83d");
+    writer.endList();
+    writer.close();
+    assertEquals("[a?b ? ?]", new String(out.toByteArray(), "UTF-8"));
+  }
+
+  @Test
+  public void testByteBuffer() throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(64);
+    TMLWriter writer = new TMLUtf8Writer(buffer);
+    writer.beginList();
+    writer.value("café");
+    writer.value(1.5);
+    writer.endList();
+    buffer.flip();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertEquals("[café 1.5]", new String(bytes, "UTF-8"));
+  }
+
+  private static void write(TMLWriter writer, String indent,
+      SpaceEscapePolicy policy, String[] values) throws IOException {
+    writer.setIndent(indent);
+    writer.beginList();
+    for (String value : values) {
+      writer.beginList();
+      writer.name("näme");
+      writer.value(value, policy);
+      writer.endList();
+    }
+    writer.beginList();
+    writer.value(42);
+    writer.value(0.25);
+    writer.nullValue();
+    writer.endList();
+    writer.endList();
+    writer.close();
+  }
+
+}
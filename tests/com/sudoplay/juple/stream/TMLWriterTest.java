@@ -45,12 +45,14 @@
 package com.sudoplay.juple.stream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Arrays;
 
 import org.junit.Test;
 
@@ -110,6 +112,80 @@ public class TMLWriterTest {
     assertEquals("[name|]", stringWriter.toString());
   }
 
+  @Test
+  public void testBeginFieldWritesAsName() throws IOException {
+    for (String indent : new String[] { "", "  " }) {
+      assertEquals(writeFields(indent, false), writeFields(indent, true));
+    }
+    assertEquals("[[a|1][b\\[\\]|\\0][\\1|[x]][c|]]", writeFields("", true));
+  }
+
+  @Test
+  public void testFlushWritesBufferedOutput() throws IOException {
+    StringWriter stringWriter = new StringWriter();
+    TMLWriter writer = new TMLWriter(stringWriter);
+    writer.beginList();
+    writer.value("a");
+    writer.flush();
+    assertEquals("[a", stringWriter.toString());
+    writer.endList();
+    assertEquals("[a]", stringWriter.toString());
+  }
+
+  @Test
+  public void testOutputLargerThanBuffer() throws IOException {
+    StringBuilder expected = new StringBuilder("[");
+    StringWriter stringWriter = new StringWriter();
+    TMLWriter writer = new TMLWriter(stringWriter);
+    writer.beginList();
+    for (int i = 0; i < 1000; i++) {
+      writer.value(i);
+      expected.append(i == 0 ? "" : " ").append(i);
+    }
+    char[] chars = new char[3000];
+    Arrays.fill(chars, 'x');
+    String longValue = new String(chars);
+    writer.value(longValue);
+    expected.append(' ').append(longValue).append(']');
+    writer.endList();
+    assertEquals(expected.toString(), stringWriter.toString());
+  }
+
+  private static String writeFields(String indent, boolean encoded)
+      throws IOException {
+    StringWriter stringWriter = new StringWriter();
+    TMLWriter writer = new TMLWriter(stringWriter);
+    writer.setIndent(indent);
+    writer.beginList();
+    String[] names = { "a", "b[]", "", "c" };
+    for (int i = 0; i < names.length; i++) {
+      if (encoded) {
+        writer.beginField(new TMLEncodedName(names[i]));
+      } else {
+        writer.beginList();
+        writer.name(names[i]);
+      }
+      assertTrue(writer.getAndClearImmediateFieldChild());
+      if (i == 0) {
+        writer.value(1);
+      } else if (i == 1) {
+        writer.nullValue();
+      } else if (i == 2) {
+        writer.beginList();
+        writer.value("x");
+        writer.endList();
+      }
+      writer.endList();
+    }
+    writer.endList();
+    return stringWriter.toString();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEncodedNameWithSpaces() {
+    new TMLEncodedName("a b");
+  }
+
   @Test
   public void testNameWithNullValue() throws IOException {
     StringWriter stringWriter = new StringWriter();
@@ -459,6 +535,23 @@ public class TMLWriterTest {
     assertEquals("[This is  a  test.]", stringWriter.toString());
   }
 
+  @Test
+  public void testEscapesAfterPlainPrefix() throws IOException {
+    StringWriter stringWriter = new StringWriter();
+    TMLWriter writer = new TMLWriter(stringWriter);
+    writer.beginList();
+    writer.value("plain");
+    writer.value("end  ", SpaceEscapePolicy.AUTO);
+    writer.value("a b", SpaceEscapePolicy.AUTO);
+    writer.value("a b", SpaceEscapePolicy.FORCE_ESCAPE);
+    writer.value("x\u00e9]");
+    writer.value("\u00e9\t");
+    writer.endList();
+    writer.close();
+    assertEquals("[plain end\\s\\s a b a\\sb x\u00e9\\] \u00e9\\t]",
+        stringWriter.toString());
+  }
+
   @Test
   public void testUnicodeLineBreaksEscaped() throws IOException {
     StringWriter stringWriter = new StringWriter();
@@ -663,7 +756,8 @@ public class TMLWriterTest {
     writer.divider();
     writer.endList();
     writer.close();
-    assertEquals("[|||]", stringWriter.toString());
+    // "||" would start a comment
+    assertEquals("[| | |]", stringWriter.toString());
   }
 
   /**
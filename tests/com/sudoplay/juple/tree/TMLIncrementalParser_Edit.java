@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.error.TMLIOException;
+
+public class TMLIncrementalParser_Edit {
+
+  private static final String INPUT = "[[server [host localhost] [port 80]]\n"
+      + " [client [host remote] [port 8080]]]";
+
+  private static String write(TMLNode node) {
+    StringWriter out = new StringWriter();
+    node.writeTo(out);
+    return out.toString();
+  }
+
+  private static void assertParsed(TMLIncrementalParser parser,
+      boolean ignoreDividers) {
+    TMLNode expected = new TMLNodeTreeParser(ignoreDividers).parse(parser
+        .getText());
+    assertEquals(write(expected), write(parser.getRoot()));
+  }
+
+  @Test
+  public void testEditReusesUnchangedLists() {
+    TMLIncrementalParser parser = new TMLIncrementalParser(INPUT);
+    TMLNode root = parser.getRoot();
+    TMLNode server = root.getNode(0);
+    TMLNode host = server.getNode(1);
+    TMLNode port = server.getNode(2);
+    TMLNode client = root.getNode(1);
+
+    int offset = INPUT.indexOf("80]");
+    assertSame(root, parser.edit(offset, 2, "8000"));
+    assertParsed(parser, false);
+    assertSame(client, root.getNode(1));
+    assertSame(server, root.getNode(0));
+    assertSame(host, root.getNode(0).getNode(1));
+    assertNotSame(port, root.getNode(0).getNode(2));
+    assertEquals("8000", root.getNode(0).getNode(2).getNode(1).getValue());
+  }
+
+  @Test
+  public void testSpans() {
+    TMLIncrementalParser parser = new TMLIncrementalParser(INPUT);
+    TMLNode root = parser.getRoot();
+    TMLNode client = root.getNode(1);
+    assertEquals(INPUT.indexOf("[client"), parser.getStart(client));
+    assertEquals(INPUT.length() - 1, parser.getEnd(client));
+    assertEquals(0, parser.getStart(root));
+    assertEquals(-1, parser.getStart(client.getNode(0)));
+
+    parser.edit(INPUT.indexOf("localhost"), 0, "my");
+    assertSame(client, parser.getRoot().getNode(1));
+    assertEquals(INPUT.indexOf("[client") + 2, parser.getStart(client));
+    assertEquals(INPUT.length() + 2, parser.getEnd(parser.getRoot()));
+  }
+
+  @Test
+  public void testEditChangingStructure() {
+    TMLIncrementalParser parser = new TMLIncrementalParser(INPUT);
+    TMLNode client = parser.getRoot().getNode(1);
+    // closes the first list early, so its parent is parsed again
+    parser.edit(INPUT.indexOf("[port 80]"), 9, "port 80] [q");
+    assertParsed(parser, false);
+    assertEquals(3, parser.getRoot().getListSize());
+    assertSame(client, parser.getRoot().getNode(2));
+  }
+
+  @Test
+  public void testInvalidEditRecovers() {
+    TMLIncrementalParser parser = new TMLIncrementalParser(INPUT);
+    try {
+      parser.edit(0, 1, "");
+      fail("Expected TMLIOException");
+    } catch (TMLIOException e) {
+      // expected
+    }
+    try {
+      parser.getRoot();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    parser.edit(0, 0, "[");
+    assertParsed(parser, false);
+  }
+
+  @Test
+  public void testCommentedPlaceholderFallsBack() {
+    String input = "[a\n [b] c [d]\n]";
+    TMLIncrementalParser parser = new TMLIncrementalParser(input);
+    parser.edit(input.indexOf("[d]"), 0, "|| ");
+    assertParsed(parser, false);
+    assertEquals(3, parser.getRoot().getListSize());
+  }
+
+  @Test
+  public void testEditChangingComments() {
+    // the comment swallows the rest of the line, past the edited list
+    TMLIncrementalParser parser = new TMLIncrementalParser("[[g [h i]]\n [j]]");
+    try {
+      parser.edit(7, 1, "]||");
+      fail();
+    } catch (RuntimeException expected) {
+    }
+    // removing the newline that ends a comment
+    String input = "[[a || b\n [c]] [d]]";
+    parser = new TMLIncrementalParser(input);
+    try {
+      parser.edit(input.indexOf('\n'), 1, "");
+      fail();
+    } catch (RuntimeException expected) {
+    }
+    // breaking up a comment inside a list brings its text back
+    input = "[[a |||| b\n [c]] [d]]";
+    parser = new TMLIncrementalParser(input);
+    parser.edit(input.indexOf("||"), 1, "x");
+    assertParsed(parser, false);
+    parser.edit(input.indexOf("||") + 1, 0, "\\");
+    assertParsed(parser, false);
+  }
+
+  @Test
+  public void testRandomEdits() {
+    String[] fragments = { "[", "]", " ", "a", "|", "[x]", "\\", "[y | z]",
+        "\n", "|| c\n", "||", "]||" };
+    Random random = new Random(36);
+    for (boolean ignoreDividers : new boolean[] { false, true }) {
+      for (int n = 0; n < 200; n++) {
+        TMLIncrementalParser parser = new TMLIncrementalParser(
+            "[[a [b c] | [d]] [e [f [g h]]] [i | j | [k]]]", ignoreDividers);
+        for (int e = 0; e < 20; e++) {
+          String text = parser.getText();
+          int offset = random.nextInt(text.length() + 1);
+          int length = random.nextInt(Math.min(3, text.length() - offset) + 1);
+          String replacement = fragments[random.nextInt(fragments.length)];
+          String edited = text.substring(0, offset) + replacement
+              + text.substring(offset + length);
+          TMLNode expected;
+          try {
+            expected = new TMLNodeTreeParser(ignoreDividers).parse(edited);
+          } catch (RuntimeException ex) {
+            expected = null;
+          }
+          try {
+            parser.edit(offset, length, replacement);
+          } catch (RuntimeException ex) {
+            if (expected != null) {
+              throw ex;
+            }
+            // undo, so the next edit starts from a valid document
+            parser.edit(offset, replacement.length(),
+                text.substring(offset, offset + length));
+            continue;
+          }
+          if (expected == null) {
+            fail("Expected a failure for " + edited);
+          }
+          assertEquals(edited, write(expected), write(parser.getRoot()));
+          assertSpans(parser, ignoreDividers);
+        }
+      }
+    }
+  }
+
+  private static void assertSpans(TMLIncrementalParser parser,
+      boolean ignoreDividers) {
+    TMLNodeWalker walker = new TMLNodeWalker(parser.getRoot(), -1);
+    TMLNode node;
+    while ((node = walker.next()) != null) {
+      int start = parser.getStart(node);
+      if (start >= 0) {
+        String text = parser.getText().substring(start, parser.getEnd(node));
+        TMLNode parsed = new TMLNodeTreeParser(ignoreDividers).parse(text);
+        assertEquals(text, write(parsed), write(node));
+      }
+    }
+  }
+
+}
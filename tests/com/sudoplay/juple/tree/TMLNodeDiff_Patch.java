@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TMLNodeDiff_Patch {
+
+  private static final TMLNodeTreeParser PARSER = new TMLNodeTreeParser(true);
+
+  private static String write(TMLNode node) {
+    StringWriter out = new StringWriter();
+    node.writeTo(out);
+    return out.toString();
+  }
+
+  private static void assertPatches(String from, String to) {
+    TMLNode a = PARSER.parse(from);
+    TMLNode b = PARSER.parse(to);
+    TMLNodePatch patch = TMLNodeDiff.diff(a, b);
+    assertEquals(write(b), write(patch.apply(a.clone())));
+    assertEquals(write(b), write(patch.apply(a.clone().freeze())));
+  }
+
+  @Test
+  public void testEqualTrees() {
+    TMLNode a = PARSER.parse("[[a | 1] [b | [c d]]]");
+    assertTrue(TMLNodeDiff.diff(a, a.clone()).isEmpty());
+  }
+
+  @Test
+  public void testPositional() {
+    assertPatches("[a b c]", "[a x c]");
+    assertPatches("[a b c]", "[c b a]");
+    assertPatches("[a b c d e]", "[b d f]");
+    assertPatches("[]", "[a [b] c]");
+    assertPatches("[a [b] c]", "[]");
+    assertPatches("[a [b c] d]", "[a [b x c] d]");
+    assertPatches("[a b]", "[[a] [b]]");
+    assertPatches("[a \\? c]", "[a b c]");
+  }
+
+  @Test
+  public void testKeyed() {
+    assertPatches("[[a | 1] [b | 2] [c | 3]]", "[[c | 3] [a | 1] [b | 4]]");
+    assertPatches("[[a | 1] [b | 2]]", "[[b | 2] [d | [x y]] [a | 1]]");
+
+    TMLNode a = PARSER.parse("[[host | localhost] [port | 80] [debug | true]]");
+    TMLNode b = PARSER.parse("[[host | localhost] [port | 8080] [debug | true]]");
+    TMLNodePatch patch = TMLNodeDiff.diff(a, b);
+    assertEquals(1, patch.size());
+    TMLNodePatch.Operation operation = patch.getOperations().get(0);
+    assertEquals(TMLNodePatch.Type.REPLACE, operation.getType());
+    assertArrayEquals(new int[] { 1, 2 }, operation.getPath());
+    assertEquals("8080", operation.getNode().getValue());
+  }
+
+  @Test
+  public void testKeyedInsertIsSingleOperation() {
+    StringBuilder from = new StringBuilder("[");
+    StringBuilder to = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      from.append("[key").append(i).append(" | ").append(i).append("]");
+      to.append("[key").append(i).append(" | ").append(i).append("]");
+      if (i == 500) {
+        to.append("[extra | [1 2 3]]");
+      }
+    }
+    TMLNode a = PARSER.parse(from.append("]").toString());
+    TMLNode b = PARSER.parse(to.append("]").toString());
+    TMLNodePatch patch = TMLNodeDiff.diff(a, b);
+    assertEquals(1, patch.size());
+    assertEquals(TMLNodePatch.Type.INSERT, patch.getOperations().get(0)
+        .getType());
+    assertEquals(write(b), write(patch.apply(a)));
+  }
+
+  @Test
+  public void testReplaceRoot() {
+    TMLNode a = new TMLNode("a");
+    TMLNode b = PARSER.parse("[b]");
+    assertEquals(write(b), write(TMLNodeDiff.diff(a, b).apply(a)));
+  }
+
+  @Test
+  public void testFrozenCopyOnWrite() {
+    TMLNode a = PARSER.parse("[[a | [1 2]] [b | [3 4]] [c | 5]]").freeze();
+    TMLNode b = PARSER.parse("[[a | [1 2]] [b | [3 x]] [c | 5]]");
+    String original = write(a);
+    TMLNode patched = TMLNodeDiff.diff(a, b).apply(a);
+    assertNotSame(a, patched);
+    assertTrue(patched.isFrozen());
+    assertEquals(original, write(a));
+    assertEquals(write(b), write(patched));
+    assertSame(a.getNode(0), patched.getNode(0));
+    assertSame(a.getNode(2), patched.getNode(2));
+  }
+
+  @Test
+  public void testMutableWithFrozenSubtree() {
+    TMLNode a = PARSER.parse("[[a | 1] [b | [2 3]]]");
+    TMLNode frozen = a.getNode(1).freeze();
+    TMLNode b = PARSER.parse("[[a | 1] [b | [2 4]]]");
+    TMLNode patched = TMLNodeDiff.diff(a, b).apply(a);
+    assertSame(a, patched);
+    assertEquals(write(b), write(patched));
+    assertEquals("[b|[2 3]]", write(frozen));
+    assertTrue(patched.getNode(1).isFrozen());
+  }
+
+  @Test
+  public void testPatchInvalidatesIndex() {
+    TMLNode a = PARSER.parse("[[a | 1] [b | 2]]");
+    TMLNodeIndex index = new TMLNodeIndexBuilder().create(a);
+    TMLNodeDiff.diff(a, PARSER.parse("[[a | 1] [c | 2]]")).apply(a);
+    assertTrue(index.isStale());
+    assertEquals(a.getNode(1), index.findByKey("c"));
+  }
+
+  @Test
+  public void testListEdits() {
+    TMLNode node = PARSER.parse("[a c]");
+    node.add(1, new TMLNode("b"));
+    node.add(3, new TMLNode("d"));
+    assertEquals("[a b c d]", node.toString());
+    assertEquals("d", node.remove(3).getValue());
+    assertEquals("a", node.set(0, new TMLNode("x")).getValue());
+    assertEquals("[x b c]", node.toString());
+    node.freeze();
+    assertEquals("[x y b c]", node.withAdded(1, new TMLNode("y")).toString());
+    assertEquals("[x c]", node.withRemoved(1).toString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRemoveFromFrozen() {
+    PARSER.parse("[a b]").freeze().remove(0);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testSetOutOfBounds() {
+    PARSER.parse("[a b]").set(2, new TMLNode("c"));
+  }
+
+  @Test
+  public void testRandomEdits() {
+    Random random = new Random(35);
+    for (int n = 0; n < 500; n++) {
+      TMLNode a = randomTree(random, 3);
+      TMLNode b = a.clone();
+      for (int e = random.nextInt(6); e >= 0; e--) {
+        randomEdit(random, b);
+      }
+      TMLNodePatch patch = TMLNodeDiff.diff(a, b);
+      assertEquals(write(b), write(patch.apply(a.clone())));
+      assertEquals(write(b), write(patch.apply(a.clone().freeze())));
+    }
+  }
+
+  private static TMLNode randomTree(Random random, int depth) {
+    TMLNode node = new TMLNode();
+    boolean keyed = random.nextBoolean();
+    for (int i = random.nextInt(6); i > 0; i--) {
+      if (keyed) {
+        TMLNode tuple = new TMLNode();
+        tuple.add(new TMLNode("k" + random.nextInt(8)));
+        tuple.add(new TMLNode("|"));
+        tuple.add(depth > 0 && random.nextBoolean() ? randomTree(random,
+            depth - 1) : new TMLNode(random.nextInt(3)));
+        node.add(tuple);
+      } else if (depth > 0 && random.nextInt(3) == 0) {
+        node.add(randomTree(random, depth - 1));
+      } else {
+        node.add(new TMLNode("v" + random.nextInt(4)));
+      }
+    }
+    return node;
+  }
+
+  private static void randomEdit(Random random, TMLNode root) {
+    TMLNode node = root;
+    while (node.getListSize() > 0 && random.nextBoolean()) {
+      TMLNode child = node.getNode(random.nextInt(node.getListSize()));
+      if (!child.isList()) {
+        break;
+      }
+      node = child;
+    }
+    int size = node.getListSize();
+    switch (random.nextInt(3)) {
+    case 0:
+      node.add(random.nextInt(size + 1), random.nextBoolean() ? new TMLNode(
+          "v" + random.nextInt(4)) : randomTree(random, 1));
+      break;
+    case 1:
+      if (size > 0) {
+        node.remove(random.nextInt(size));
+      }
+      break;
+    default:
+      if (size > 0) {
+        node.set(random.nextInt(size), new TMLNode("w" + random.nextInt(4)));
+      }
+      break;
+    }
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TMLNodeIndex_Find {
+
+  private static final String INPUT = "[config [server [host localhost] "
+      + "[port 80]] [client [host remote] [port 8080] [retry [port 1]]] "
+      + "[port] [] [[a b] [c d]] [bold | hello, [italic | this] is 80 again]]";
+
+  private static final String[] PATTERNS = { "[port \\?]", "[host \\*]",
+      "[\\? \\?]", "[port]", "[\\*]", "[]", "[[a b] \\*]", "[italic|\\*]",
+      "[nothing here]", "[\\? [host \\?] \\*]" };
+
+  private static TMLNodeIndex createIndex(TMLNode root) {
+    return new TMLNodeIndexBuilder().setIndexPaths().setIndexValues()
+        .create(root);
+  }
+
+  private static void assertSameNodes(List<TMLNode> expected,
+      List<TMLNode> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSame(expected.get(i), actual.get(i));
+    }
+  }
+
+  @Test
+  public void testMatchesFindAll() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNodeIndex index = createIndex(root);
+    for (String pattern : PATTERNS) {
+      assertSameNodes(root.findAll(pattern, -1), index.findAllGreedy(pattern));
+      assertSame(root.findGreedy(pattern),
+          index.findGreedy(TMLPattern.compile(pattern)));
+    }
+  }
+
+  @Test
+  public void testFindByKey() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNodeIndex index = createIndex(root);
+    TMLNode server = root.getNode(1);
+    TMLNode client = root.getNode(2);
+
+    List<TMLNode> ports = index.findAllByKey("port");
+    assertEquals(4, ports.size());
+    assertSame(server.getNode(2), ports.get(0));
+    assertSame(client.getNode(2), ports.get(1));
+    assertSame(client.getNode(3).getNode(1), ports.get(2));
+    assertSame(root.getNode(3), ports.get(3));
+
+    assertSame(server.getNode(2), index.findByKey("port"));
+    assertSame(root, index.findByKey("config"));
+    assertNull(index.findByKey("missing"));
+    assertEquals(0, index.findAllByKey("missing").size());
+    assertEquals(2, index.findAllByValue("80").size());
+    TMLPattern literal = TMLPattern.compile(new TMLNode("80"));
+    assertSameNodes(literal.findAll(root, -1), index.findAllGreedy(literal));
+  }
+
+  @Test
+  public void testFindByPath() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNodeIndex index = createIndex(root);
+    TMLNode server = root.getNode(1);
+    TMLNode client = root.getNode(2);
+
+    List<TMLNode> ports = index.findAllByPath("config", "client", "port");
+    assertEquals(1, ports.size());
+    assertSame(client.getNode(2), ports.get(0));
+    assertEquals(0, index.findAllByPath("config", "port", "client").size());
+    assertEquals(0, index.findAllByPath("client").size());
+
+    List<TMLNode> prefixed = index.findAllByPathPrefix("config", "client");
+    assertEquals(5, prefixed.size());
+    assertSame(client, prefixed.get(0));
+    assertSame(client.getNode(1), prefixed.get(1));
+    assertSame(client.getNode(2), prefixed.get(2));
+    assertSame(client.getNode(3), prefixed.get(3));
+    assertSame(client.getNode(3).getNode(1), prefixed.get(4));
+
+    // prefixes match whole keys only
+    assertEquals(0, index.findAllByPathPrefix("config", "cli").size());
+
+    prefixed = index.findAllByPathPrefix("config", "server");
+    assertEquals(3, prefixed.size());
+    assertSame(server, prefixed.get(0));
+  }
+
+  @Test
+  public void testInvalidatedByAdd() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNodeIndex index = createIndex(root);
+    assertEquals(4, index.findAllByKey("port").size());
+    assertFalse(index.isStale());
+
+    TMLNode port = new TMLNode();
+    port.add(new TMLNode("port"));
+    port.add(new TMLNode("443"));
+    root.getNode(2).getNode(3).add(port);
+    assertTrue(index.isStale());
+
+    List<TMLNode> ports = index.findAllByKey("port");
+    assertFalse(index.isStale());
+    assertEquals(5, ports.size());
+    assertSame(port, ports.get(3));
+    assertEquals(2, index.findAllByPath("config", "client", "retry", "port")
+        .size());
+
+    // nodes added after the rebuild belong to the index too
+    port.add(new TMLNode("8443"));
+    assertTrue(index.isStale());
+    assertSameNodes(root.findAll("[port \\?]", -1),
+        index.findAllGreedy("[port \\?]"));
+  }
+
+  @Test
+  public void testReindexSharesNodes() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNodeIndex first = new TMLNodeIndexBuilder().create(root);
+    TMLNodeIndex second = new TMLNodeIndexBuilder().create(root);
+    assertFalse(first.isStale());
+    assertFalse(second.isStale());
+    assertEquals(4, first.findAllByKey("port").size());
+
+    root.getNode(2).add(new TMLNode("x"));
+    assertTrue(first.isStale());
+    assertTrue(second.isStale());
+  }
+
+  @Test
+  public void testOverlappingIndexes() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLNode client = root.getNode(2);
+    TMLNodeIndex whole = new TMLNodeIndexBuilder().create(root);
+    TMLNodeIndex part = new TMLNodeIndexBuilder().create(client);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(4, whole.findAllByKey("port").size());
+      assertFalse(part.isStale());
+      assertEquals(2, part.findAllByKey("port").size());
+      assertFalse(whole.isStale());
+    }
+
+    // a change inside both trees invalidates both, a change outside the
+    // subtree only the index of the whole tree
+    client.getNode(3).add(new TMLNode("x"));
+    assertTrue(whole.isStale());
+    assertTrue(part.isStale());
+    assertEquals(4, whole.findAllByKey("port").size());
+    assertEquals(2, part.findAllByKey("port").size());
+    root.add(new TMLNode("y"));
+    assertTrue(whole.isStale());
+    assertFalse(part.isStale());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testPathsNotIndexed() {
+    new TMLNodeIndexBuilder().create(new TMLNodeTreeParser().parse(INPUT))
+        .findAllByPath("config");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testValuesNotIndexed() {
+    new TMLNodeIndexBuilder().create(new TMLNodeTreeParser().parse(INPUT))
+        .findAllByValue("80");
+  }
+
+}
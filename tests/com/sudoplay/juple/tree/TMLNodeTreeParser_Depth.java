@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.error.TMLSyntaxException;
+
+public class TMLNodeTreeParser_Depth {
+
+  private static final int DEPTH = 100000;
+
+  private static String deep(int depth) {
+    StringBuilder sb = new StringBuilder(depth * 4);
+    for (int i = 0; i < depth; i++) {
+      sb.append("[a ");
+    }
+    sb.append("end");
+    for (int i = 0; i < depth; i++) {
+      sb.append(']');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testDeepDocument() {
+    String input = deep(DEPTH);
+    TMLNode root = new TMLNodeTreeParser().parse(input);
+    assertEquals(input, root.toString());
+
+    StringWriter out = new StringWriter();
+    root.writeTo(out);
+    assertEquals(root, new TMLNodeTreeParser().parse(out.toString()));
+
+    TMLNode copy = root.clone();
+    assertEquals(root, copy);
+    assertEquals(root.hashCode(), copy.hashCode());
+
+    TMLNode found = root.findGreedy("[a end]");
+    assertNotNull(found);
+    assertEquals(2, found.getListSize());
+    assertEquals(DEPTH, root.findAllGreedy("[a \\*]").size());
+
+    root.freeze();
+    assertTrue(found.isFrozen());
+    assertEquals(copy.hashCode(), root.hashCode());
+
+    TMLOffHeapDocument document = TMLOffHeapDocument.create(root, false);
+    try {
+      assertNotNull(document.getRoot().findGreedy("[a end]"));
+      assertEquals(root, document.getRoot().toTMLNode());
+    } finally {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testDividersMatchRecursiveParser() {
+    TMLNodeTreeParser parser = new TMLNodeTreeParser();
+    assertEquals("[[a] [b] [[[c] [d]]]]", parser.parse("[a | b | [c | d]]")
+        .toString());
+    assertEquals("[[a b] [[c]] []]", parser.parse("[a b | [c] |]")
+        .toString());
+    assertEquals("[a | b | [c | d]]",
+        new TMLNodeTreeParser(true).parse("[a | b | [c | d]]").toString());
+  }
+
+  @Test
+  public void testMaxDepth() {
+    TMLNodeTreeParser parser = new TMLNodeTreeParserBuilder().setMaxDepth(3)
+        .create();
+    assertEquals("[a [a [a end]]]", parser.parse(deep(3)).toString());
+    try {
+      parser.parse(deep(4));
+      throw new AssertionError("Expected TMLSyntaxException");
+    } catch (TMLSyntaxException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = TMLSyntaxException.class)
+  public void testMaxDepthOuterList() {
+    new TMLNodeTreeParser(false, 0).parse("[a]");
+  }
+
+}
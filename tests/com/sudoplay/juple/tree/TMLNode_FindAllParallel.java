@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class TMLNode_FindAllParallel {
+
+  private static final String[] PATTERNS = { "[key \\?]", "[key \\*]",
+      "[\\? \\?]", "[\\*]", "[]", "[[key \\*] \\*]", "[missing]" };
+
+  private static TMLNode createTree(Random random, int depth) {
+    TMLNode node = new TMLNode();
+    node.add(new TMLNode(random.nextBoolean() ? "key" : "other"));
+    int len = random.nextInt(depth > 0 ? 24 : 4);
+    for (int i = 0; i < len; i++) {
+      if (depth > 0 && random.nextInt(3) == 0) {
+        node.add(createTree(random, depth - 1));
+      } else {
+        node.add(new TMLNode(String.valueOf(random.nextInt(4))));
+      }
+    }
+    return node;
+  }
+
+  private static void assertSameNodes(List<TMLNode> expected,
+      List<TMLNode> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSame(expected.get(i), actual.get(i));
+    }
+  }
+
+  @Test
+  public void testMatchesFindAll() {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      Random random = new Random(1234);
+      for (int n = 0; n < 5; n++) {
+        TMLNode root = createTree(random, 5);
+        for (String source : PATTERNS) {
+          TMLPattern pattern = TMLPattern.compile(source);
+          for (int depth = -1; depth < 4; depth++) {
+            List<TMLNode> expected = root.findAll(source, depth);
+            assertSameNodes(expected, root.findAllParallel(source, depth));
+            assertSameNodes(expected,
+                pattern.findAllParallel(root, depth, pool));
+          }
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testSharedAccumulator() {
+    TMLNode root = new TMLNodeTreeParser()
+        .parse("[[key a] [other [key b] [key c]] [key d]]");
+    TMLPattern pattern = TMLPattern.compile("[key \\?]");
+    List<TMLNode> results = new LinkedList<TMLNode>();
+    assertSame(results, root.findAll(pattern, -1, results));
+    assertSame(results, root.getNode(1).findAll(pattern, -1, results));
+    assertEquals(6, results.size());
+    assertSameNodes(root.findAll(pattern, -1),
+        new ArrayList<TMLNode>(results.subList(0, 4)));
+    assertSame(root.getNode(1).getNode(1), results.get(4));
+  }
+
+}
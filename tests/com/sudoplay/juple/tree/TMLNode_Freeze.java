@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.junit.Test;
+
+public class TMLNode_Freeze {
+
+  private static final String INPUT = "[[server [host localhost] [port 80]] "
+      + "[client [host remote] [port 8080]]]";
+
+  @Test
+  public void testFreeze() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    assertFalse(root.isFrozen());
+    assertSame(root, root.freeze());
+    assertTrue(root.isFrozen());
+    assertTrue(root.getNode(0).getNode(1).isFrozen());
+    assertTrue(root.getNode(0).getNode(1).getNode(0).isFrozen());
+    assertEquals(root.hashCode(), root.hashCode());
+    assertEquals(new TMLNodeTreeParser().parse(INPUT).hashCode(),
+        root.hashCode());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddToFrozen() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    root.getNode(1).add(new TMLNode("a"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIteratorRemoveOnFrozen() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    Iterator<TMLNode> it = root.iterator();
+    it.next();
+    it.remove();
+  }
+
+  @Test
+  public void testLeafHashCode() {
+    assertEquals(new TMLNode("a").hashCode(), new TMLNode("a").hashCode());
+  }
+
+  @Test
+  public void testClone() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    assertSame(root, root.clone());
+
+    TMLNode parent = new TMLNode();
+    parent.add(root);
+    parent.add(new TMLNode("a"));
+    TMLNode clone = parent.clone();
+    assertNotSame(parent, clone);
+    assertFalse(clone.isFrozen());
+    assertSame(root, clone.getNode(0));
+    assertNotSame(parent.getNode(1), clone.getNode(1));
+    assertTrue(clone.getNode(1).isString());
+    assertEquals(parent.toString(), clone.toString());
+  }
+
+  @Test
+  public void testWithNodeAt() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    String before = root.toString();
+    TMLNode edited = root.withNodeAt(new int[] { 1, 2, 1 }, new TMLNode(
+        "443"));
+
+    assertEquals(before, root.toString());
+    assertEquals("[[server [host localhost] [port 80]] "
+        + "[client [host remote] [port 443]]]", edited.toString());
+    assertTrue(edited.isFrozen());
+
+    // only the path to the change is copied
+    assertNotSame(root, edited);
+    assertNotSame(root.getNode(1), edited.getNode(1));
+    assertNotSame(root.getNode(1).getNode(2), edited.getNode(1).getNode(2));
+    assertSame(root.getNode(0), edited.getNode(0));
+    assertSame(root.getNode(1).getNode(0), edited.getNode(1).getNode(0));
+    assertSame(root.getNode(1).getNode(1), edited.getNode(1).getNode(1));
+    assertSame(root.getNode(1).getNode(2).getNode(0), edited.getNode(1)
+        .getNode(2).getNode(0));
+  }
+
+  @Test
+  public void testWithAdded() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    TMLNode added = new TMLNode("a");
+    TMLNode edited = root.withAdded(added);
+    assertEquals(2, root.getListSize());
+    assertEquals(3, edited.getListSize());
+    assertSame(added, edited.getNode(2));
+    assertTrue(added.isFrozen());
+    assertSame(root.getNode(0), edited.getNode(0));
+    assertTrue(edited.withNode(2, new TMLNode("b")).getNode(2).isString());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testWithNodeOnUnfrozen() {
+    new TMLNodeTreeParser().parse(INPUT).withNode(0, new TMLNode("a"));
+  }
+
+  @Test
+  public void testIndexOnFrozenTree() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT).freeze();
+    TMLNodeIndex first = new TMLNodeIndexBuilder().create(root);
+    TMLNodeIndex second = new TMLNodeIndexBuilder().create(root);
+    assertFalse(first.isStale());
+    assertFalse(second.isStale());
+    assertEquals(2, first.findAllByKey("port").size());
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.stream.TMLWriter;
+
+public class TMLNode_WriteTo {
+
+  private static final String[] INPUTS = { "[]", "[a]", "[a b c]",
+      "[[a] b [c [d [e]]] []]", "[\\[ open \\] close \\| divider]",
+      "[\\n new line \\r return \\ttab]", "[\\s space a\\sb]",
+      "[\\\\ backslash]", "[\\? [\\*] [a \\?]]", "[null \\0 [\\0]]",
+      "[a | b | [c | d]]", "[bold | hello, [italic | this] is a test!]",
+      "[\\u2028 \\u00e9]", "[[s|\\|]]", "[[s | |]]", "[a | \\| | b]" };
+
+  private static void assertSameTree(TMLNode expected, TMLNode actual) {
+    assertEquals(expected.getListSize(), actual.getListSize());
+    assertEquals(expected.getValue(), actual.getValue());
+    assertEquals(expected.isNull(), actual.isNull());
+    assertEquals(expected.isDivider(), actual.isDivider());
+    for (int i = 0; i < expected.getListSize(); i++) {
+      assertSameTree(expected.getNode(i), actual.getNode(i));
+    }
+  }
+
+  private static String write(TMLNode node) {
+    StringWriter out = new StringWriter();
+    node.writeTo(out);
+    return out.toString();
+  }
+
+  @Test
+  public void testRoundTrip() {
+    for (boolean ignoreDividers : new boolean[] { false, true }) {
+      TMLNodeTreeParser parser = new TMLNodeTreeParser(ignoreDividers);
+      for (String input : INPUTS) {
+        TMLNode expected = parser.parse(input);
+        TMLNode actual = parser.parse(write(expected));
+        assertSameTree(expected, actual);
+        assertEquals(expected.toString(), actual.toString());
+      }
+    }
+  }
+
+  @Test
+  public void testEscapes() {
+    TMLNode node = new TMLNode();
+    node.add(new TMLNode("a b"));
+    node.add(new TMLNode("[|]"));
+    node.add(new TMLNode((String) null));
+    node.add(new TMLNode(new TMLNode("c")));
+    assertEquals("[a\\sb \\[\\|\\] \\0[c]]", write(node));
+    assertEquals("[a b [|] \\0 [c]]", node.toString());
+  }
+
+  @Test
+  public void testDividers() {
+    assertEquals("[a|b]",
+        write(new TMLNodeTreeParser(true).parse("[a | b]")));
+    assertEquals("[[a][b]]", write(new TMLNodeTreeParser().parse("[a | b]")));
+  }
+
+  @Test
+  public void testAdjacentDividers() {
+    TMLNodeTreeParser parser = new TMLNodeTreeParser(true);
+    assertEquals("[[s|\\|]]", write(parser.parse("[[s|\\|]]")));
+    assertEquals("[[s| |]]", write(parser.parse("[[s | |]]")));
+    TMLNode node = parser.parse("[[s|\\|]]").getNode(0);
+    assertTrue(node.getNode(1).isDivider());
+    assertTrue(node.getNode(2).isString());
+  }
+
+  @Test
+  public void testTMLWriterIndent() throws IOException {
+    StringWriter out = new StringWriter();
+    TMLWriter writer = new TMLWriter(out);
+    writer.setIndent("  ");
+    new TMLNodeTreeParser(true).parse("[[a | 1] [b | [c]]]").writeTo(writer);
+    writer.close();
+    assertEquals("[\n  [a | 1]\n  [b | \n    [c]\n  ]\n]", out.toString());
+  }
+
+  @Test
+  public void testDeepTree() {
+    TMLNode root = new TMLNode();
+    TMLNode node = root;
+    for (int i = 0; i < 500; i++) {
+      TMLNode child = new TMLNode();
+      child.add(new TMLNode(i));
+      node.add(child);
+      node = child;
+    }
+    TMLNode parsed = new TMLNodeTreeParser().parse(write(root));
+    assertEquals(root.toString(), parsed.toString());
+  }
+
+}
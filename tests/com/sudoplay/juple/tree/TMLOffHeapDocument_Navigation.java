@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TMLOffHeapDocument_Navigation {
+
+  @Test
+  public void testNavigationAndAccessors() {
+    TMLOffHeapDocument document = TMLOffHeapDocument
+        .parse("[name [life 22] [pi 3.14] [alive true] [tags [a b]]]");
+    try {
+      TMLOffHeapNode root = document.getRoot();
+      assertTrue(root.isList());
+      assertEquals(5, root.getListSize());
+      assertTrue(root.getNode(0).isString());
+      assertEquals("name", root.getNode(0).getAsString());
+      assertEquals(22, root.getNode(1).getNode(1).getAsInt());
+      assertEquals(22L, root.getNode(1).getNode(1).getAsLong());
+      assertEquals(3.14, root.getNode(2).getNode(1).getAsDouble(), 0);
+      assertTrue(root.getNode(3).getNode(1).getAsBoolean());
+      assertEquals(2, root.getNode(4).getNode(1).getListSize());
+      assertEquals("[a b]", root.getNode(4).getNode(1).toString());
+    } finally {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testTypedAccessorOnWrongType() {
+    TMLOffHeapDocument document = TMLOffHeapDocument.parse("[name]");
+    try {
+      document.getRoot().getNode(0).getAsInt();
+      fail();
+    } catch (IllegalStateException expected) {
+    } finally {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testFindMatchesHeapTree() {
+    String input = "[[a b] [c d] [e f [c d]] [bold | hello, [italic | this] is a test!]]";
+    String[] patterns = { "[c d]", "[\\? \\?]", "[\\? f \\*]", "[italic|\\*]",
+        "[\\*]", "[x y]" };
+    TMLNode heap = new TMLNodeTreeParser().parse(input);
+    TMLOffHeapDocument document = TMLOffHeapDocument.parse(input);
+    try {
+      for (String pattern : patterns) {
+        List<TMLNode> expected = heap.findAllGreedy(pattern);
+        List<TMLOffHeapNode> actual = document.getRoot().findAllGreedy(pattern);
+        assertEquals(pattern, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.get(i).toString(), actual.get(i).toString());
+        }
+        TMLNode first = heap.find(pattern, 1);
+        TMLOffHeapNode offHeapFirst = document.getRoot().find(pattern, 1);
+        if (first == null) {
+          assertNull(offHeapFirst);
+        } else {
+          assertEquals(first.toString(), offHeapFirst.toString());
+        }
+      }
+    } finally {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testToTMLNode() {
+    String input = "[[a b] [c [d e]] \\? f]";
+    TMLOffHeapDocument document = TMLOffHeapDocument.parse(input);
+    try {
+      assertEquals(new TMLNodeTreeParser().parse(input).toString(), document
+          .getRoot().toTMLNode().toString());
+    } finally {
+      document.close();
+    }
+  }
+
+  @Test
+  public void testStringsAreShared() {
+    TMLOffHeapDocument one = TMLOffHeapDocument.parse("[abcdef]");
+    TMLOffHeapDocument many = TMLOffHeapDocument
+        .parse("[abcdef abcdef abcdef abcdef]");
+    try {
+      assertEquals(2 * TMLOffHeapDocument.NODE_SIZE + 12, one.getByteSize());
+      assertEquals(5 * TMLOffHeapDocument.NODE_SIZE + 12, many.getByteSize());
+    } finally {
+      one.close();
+      many.close();
+    }
+  }
+
+  @Test
+  public void testClose() {
+    TMLOffHeapDocument document = TMLOffHeapDocument.parse("[a b c]");
+    TMLOffHeapNode root = document.getRoot();
+    assertFalse(document.isClosed());
+    document.close();
+    assertTrue(document.isClosed());
+    assertEquals(0, document.getByteSize());
+    document.close();
+    try {
+      root.getListSize();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      document.getRoot();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void testCloseWhileReading() throws Exception {
+    StringBuilder tml = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      tml.append("[key").append(i).append(" value").append(i).append(']');
+    }
+    tml.append(']');
+    for (int round = 0; round < 20; round++) {
+      final TMLOffHeapDocument document = TMLOffHeapDocument.parse(tml
+          .toString());
+      final TMLOffHeapNode root = document.getRoot();
+      final AtomicInteger closedReads = new AtomicInteger();
+      Thread[] readers = new Thread[4];
+      for (int t = 0; t < readers.length; t++) {
+        readers[t] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              while (true) {
+                for (int i = 0, len = root.getListSize(); i < len; i++) {
+                  root.getNode(i).getNode(1).getAsString();
+                }
+              }
+            } catch (IllegalStateException e) {
+              closedReads.incrementAndGet();
+            }
+          }
+        };
+        readers[t].start();
+      }
+      Thread.sleep(1);
+      document.close();
+      for (Thread reader : readers) {
+        reader.join();
+      }
+      assertEquals(readers.length, closedReads.get());
+    }
+  }
+
+}
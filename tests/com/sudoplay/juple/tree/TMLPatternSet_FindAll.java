@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class TMLPatternSet_FindAll {
+
+  private static final String INPUT = "[[server [host localhost] [port 80]] "
+      + "[client [host remote] [port 8080] [retry [port 1]]] [port] [] "
+      + "[[a b] [c d]] [bold | hello, [italic | this] is a test!]]";
+
+  private static final String[] PATTERNS = { "[port \\?]", "[host \\*]",
+      "[\\? \\?]", "[port]", "[\\*]", "[]", "[[a b] \\*]", "[italic|\\*]",
+      "[port \\?]", "[nothing here]", "[\\? [host \\?] \\*]" };
+
+  @Test
+  public void testMatchesIndividualFindAll() {
+    TMLNode root = new TMLNodeTreeParser().parse(INPUT);
+    TMLPatternSet set = TMLPatternSet.compile(false, PATTERNS);
+    assertEquals(PATTERNS.length, set.size());
+    for (int depth = -1; depth < 3; depth++) {
+      List<List<TMLNode>> results = set.findAll(root, depth);
+      assertEquals(PATTERNS.length, results.size());
+      for (int i = 0; i < PATTERNS.length; i++) {
+        List<TMLNode> expected = root.findAll(PATTERNS[i], depth);
+        List<TMLNode> actual = results.get(i);
+        assertEquals(PATTERNS[i], expected.size(), actual.size());
+        for (int j = 0; j < expected.size(); j++) {
+          assertSame(expected.get(j), actual.get(j));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testIgnoreDividers() {
+    TMLNode root = new TMLNodeTreeParser(true)
+        .parse("[[name | a] [value | 1] [name | b]]");
+    TMLPatternSet set = TMLPatternSet.compile(true, "[name | \\?]",
+        "[value | \\?]", "[\\? | b]");
+    List<List<TMLNode>> results = set.findAllGreedy(root);
+    assertEquals(2, results.get(0).size());
+    assertEquals(1, results.get(1).size());
+    assertEquals(1, results.get(2).size());
+    assertSame(root.getNode(2), results.get(2).get(0));
+  }
+
+  @Test
+  public void testEmpty() {
+    TMLPatternSet set = new TMLPatternSet();
+    assertEquals(0, set.findAllGreedy(new TMLNodeTreeParser().parse("[a]"))
+        .size());
+  }
+
+}
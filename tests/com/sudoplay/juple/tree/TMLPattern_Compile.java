@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TMLPattern_Compile {
+
+  private static final String[] INPUTS = { "[a]", "[a b]", "[[a b] [c d]]",
+      "[[a b] [c d] [e f [g h]]]", "[bold | hello, [italic | this] is a test!]",
+      "[[] [a []] [[]]]", "[a [b [c [d]]]]" };
+
+  private static final String[] PATTERNS = { "[a]", "[a b]", "[\\?]",
+      "[\\*]", "[\\? \\?]", "[a \\*]", "[\\? b]", "[[a b] \\*]",
+      "[\\? \\? \\*]", "[[\\?] [\\*]]", "[italic|\\*]", "[]", "[[]]",
+      "[a [b \\*]]", "[e f [\\? h]]" };
+
+  @Test
+  public void testMatchesLikeEquals() {
+    TMLNodeTreeParser parser = new TMLNodeTreeParser();
+    for (String input : INPUTS) {
+      List<TMLNode> nodes = new ArrayList<TMLNode>();
+      collect(parser.parse(input), nodes);
+      for (String patternString : PATTERNS) {
+        TMLNode patternNode = parser.parse(patternString);
+        TMLPattern pattern = TMLPattern.compile(patternString);
+        for (TMLNode node : nodes) {
+          assertEquals(input + " " + patternString + " " + node,
+              node.equals(patternNode), pattern.matches(node));
+        }
+      }
+    }
+  }
+
+  private void collect(TMLNode node, List<TMLNode> nodes) {
+    nodes.add(node);
+    for (int i = 0; i < node.getListSize(); i++) {
+      collect(node.getNode(i), nodes);
+    }
+  }
+
+  @Test
+  public void testFind() {
+    TMLNode node = new TMLNodeTreeParser().parse("[[a b] [c d] [e f [c d]]]");
+    TMLPattern pattern = TMLPattern.compile("[c d]");
+    assertEquals(2, node.findAllGreedy(pattern).size());
+    assertEquals(1, node.findAll(pattern, 1).size());
+    assertSame(node.getNode(1), node.findGreedy(pattern));
+    assertNull(node.find(pattern, 0));
+    assertNull(node.findGreedy(TMLPattern.compile("[x]")));
+  }
+
+  @Test
+  public void testStringPatternsAreCached() {
+    assertSame(TMLPattern.compile("[a \\? c]"), TMLPattern.compile("[a \\? c]"));
+    assertNotSame(TMLPattern.compile("[a \\? c]"),
+        TMLPattern.compile("[a \\? c]", true));
+    TMLNode node = new TMLNodeTreeParser().parse("[a \\? c]");
+    assertNotSame(TMLPattern.compile(node), TMLPattern.compile(node));
+  }
+
+  @Test
+  public void testCompiledFromNodeIsDetached() {
+    TMLNode node = new TMLNodeTreeParser().parse("[a]");
+    TMLPattern pattern = TMLPattern.compile(node);
+    node.add(new TMLNode("b"));
+    assertTrue(pattern.matches(new TMLNodeTreeParser().parse("[a]")));
+    assertFalse(pattern.matches(new TMLNodeTreeParser().parse("[a b]")));
+  }
+
+  @Test
+  public void testDiscriminator() {
+    assertEquals("key", TMLPattern.compile("[key \\*]").getDiscriminator());
+    assertEquals("key", TMLPattern.compile("[key|\\?]", true)
+        .getDiscriminator());
+    assertNull(TMLPattern.compile("[\\? key]").getDiscriminator());
+    assertNull(TMLPattern.compile("[\\*]").getDiscriminator());
+    assertNull(TMLPattern.compile("[[key] value]").getDiscriminator());
+  }
+
+  @Test
+  public void testToString() {
+    assertEquals("[a \\?]", TMLPattern.compile("[a \\?]").toString());
+    assertEquals("[a [b \\?] \\*]",
+        TMLPattern.compile(new TMLNodeTreeParser().parse("[a [b \\?] \\* c]"))
+            .toString());
+  }
+
+}
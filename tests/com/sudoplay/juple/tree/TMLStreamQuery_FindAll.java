@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2013 Jason Taylor.
+ * Released as open-source under the Apache License, Version 2.0.
+ * 
+ * ============================================================================
+ * | Juple
+ * ============================================================================
+ * 
+ * Copyright (C) 2013 Jason Taylor
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ * ============================================================================
+ * | Gson
+ * | --------------------------------------------------------------------------
+ * | Juple is a derivative work based on Google's Gson library:
+ * | https://code.google.com/p/google-gson/
+ * ============================================================================
+ * 
+ * Copyright (C) 2008 Google Inc.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.sudoplay.juple.tree;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.sudoplay.juple.stream.TMLReader;
+
+public class TMLStreamQuery_FindAll {
+
+  private static final String INPUT = "[config [server [host localhost] "
+      + "[port 80]] [client [host remote] [port 8080] [retry [port 1]]] "
+      + "[port] [] [[a b] [c d]] [bold | hello, [italic | this] is 80 again]]";
+
+  private static final String[][] PATHS = { { "config", "server", "port" },
+      { "config", "client", "port" }, { "config", "port" },
+      { "config", "\\?", "port" }, { "\\*", "port" }, { "\\*" },
+      { "config", "\\*", "host" }, { "\\?", "\\?", "\\?", "port" },
+      { "config", "bold", "italic" }, { "config", "a" }, { "nothing" } };
+
+  private static String toString(List<TMLNode> nodes) {
+    StringBuilder sb = new StringBuilder();
+    for (TMLNode node : nodes) {
+      sb.append(node).append(';');
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testFindAll() {
+    assertEquals("[port 80];", toString(TMLStreamQuery.compile("config",
+        "server", "port").findAll(INPUT)));
+    assertEquals("[port 80];[port 8080];", toString(TMLStreamQuery.compile(
+        "config", "\\?", "port").findAll(INPUT)));
+    assertEquals("[port 80];[port 8080];[port 1];[port];",
+        toString(TMLStreamQuery.compile("\\*", "port").findAll(INPUT)));
+    assertEquals("[c d];", toString(TMLStreamQuery.compile("config", "c")
+        .findAll(INPUT)));
+    assertEquals("", toString(TMLStreamQuery.compile("server").findAll(INPUT)));
+  }
+
+  @Test
+  public void testMatchesIndexPaths() {
+    TMLNode root = new TMLNodeTreeParser(true).parse(INPUT);
+    TMLNodeIndex index = new TMLNodeIndexBuilder().setIndexPaths().create(
+        root);
+    for (String[] path : PATHS) {
+      if (path[0].startsWith("\\")) {
+        continue;
+      }
+      boolean wildcard = false;
+      for (String step : path) {
+        wildcard |= step.startsWith("\\");
+      }
+      if (!wildcard) {
+        assertEquals(toString(index.findAllByPath(path)), toString(TMLStreamQuery
+            .compile(true, path).findAll(INPUT)));
+      }
+    }
+  }
+
+  @Test
+  public void testDividers() {
+    // each section is a list of its own, keyed by its first element
+    assertEquals("[italic];", toString(TMLStreamQuery.compile("config",
+        "hello,", "italic").findAll(INPUT)));
+    assertEquals("", toString(TMLStreamQuery.compile("config", "bold",
+        "italic").findAll(INPUT)));
+    assertEquals("[italic | this];", toString(TMLStreamQuery.compile(true,
+        "config", "bold", "italic").findAll(INPUT)));
+    assertEquals("[port];", toString(TMLStreamQuery.compile("server", "port")
+        .findAll("[[server [port | 80]]]")));
+    assertEquals("[80];", toString(TMLStreamQuery.compile("server", "80")
+        .findAll("[[server [port | 80]]]")));
+    // an empty first section keys the divided list by ""
+    assertEquals("[[] [a 1]];", toString(TMLStreamQuery.compile("").findAll(
+        "[| a 1]")));
+    assertEquals("[a 1];", toString(TMLStreamQuery.compile("", "a").findAll(
+        "[| a 1]")));
+    // with dividers ignored, a leading divider is the key
+    assertEquals("", toString(TMLStreamQuery.compile(true, "a").findAll(
+        "[| [a 1]]")));
+    assertEquals("[a 1];", toString(TMLStreamQuery.compile(true, "|", "a")
+        .findAll("[| [a 1]]")));
+  }
+
+  @Test
+  public void testKeysAreFirstElements() {
+    // empty data is dropped by the parser, an empty list keys its list by ""
+    assertEquals("[b c];", toString(TMLStreamQuery.compile("b").findAll(
+        "[\\1 b c]")));
+    assertEquals("[a 1];", toString(TMLStreamQuery.compile("", "a").findAll(
+        "[[] [\\1] [a 1]]")));
+    assertEquals("[[] x];", toString(TMLStreamQuery.compile(true, "")
+        .findAll("[[\\1] x]")));
+    assertEquals("[\\0 x];", toString(TMLStreamQuery.compile("\\0").findAll(
+        "[\\0 x]")));
+  }
+
+  @Test
+  public void testRandomDocumentsMatchIndex() {
+    String[] elements = { "a", "b", "\\1", "\\0", "\\2", "\\|", "|", "[", "[",
+        "]", "]" };
+    String[] steps = { "a", "b", "", "|", "\\0", "\\2", "\\?" };
+    Random random = new Random(5);
+    for (int n = 0; n < 3000; n++) {
+      StringBuilder sb = new StringBuilder("[");
+      int depth = 1;
+      for (int i = random.nextInt(20); i > 0 || depth > 0; i--) {
+        String element = i > 0 ? elements[random.nextInt(elements.length)]
+            : "]";
+        if (element.equals("[")) {
+          depth++;
+        } else if (element.equals("]")) {
+          if (depth == 1 && i > 0) {
+            continue;
+          }
+          depth--;
+        }
+        sb.append(element).append(' ');
+      }
+      String tml = sb.toString();
+      String[] path = new String[1 + random.nextInt(3)];
+      for (int i = 0; i < path.length; i++) {
+        path[i] = steps[random.nextInt(steps.length)];
+      }
+      for (boolean ignoreDividers : new boolean[] { false, true }) {
+        TMLNode root = new TMLNodeTreeParser(ignoreDividers).parse(tml);
+        TMLNodeIndex index = new TMLNodeIndexBuilder().setIndexPaths()
+            .create(root);
+        String expected = toString(findAllByPath(index, path));
+        assertEquals(tml + " " + Arrays.toString(path) + " " + ignoreDividers,
+            expected, toString(TMLStreamQuery.compile(ignoreDividers, path)
+                .findAll(tml)));
+      }
+    }
+  }
+
+  /**
+   * Expands the {@link TMLNode#MATCH_ONE} steps of a path over the keys in
+   * the index and returns the matches in document order.
+   */
+  private static List<TMLNode> findAllByPath(TMLNodeIndex index, String[] path) {
+    List<String[]> paths = new ArrayList<String[]>();
+    paths.add(path);
+    for (int i = 0; i < path.length; i++) {
+      if (path[i].equals(TMLNode.MATCH_ONE)) {
+        List<String[]> expanded = new ArrayList<String[]>();
+        for (String[] p : paths) {
+          for (String key : KEYS) {
+            String[] copy = p.clone();
+            copy[i] = key;
+            expanded.add(copy);
+          }
+        }
+        paths = expanded;
+      }
+    }
+    final List<TMLNode> order = new ArrayList<TMLNode>();
+    TMLNode root = index.getRoot();
+    List<TMLNode> stack = new ArrayList<TMLNode>();
+    stack.add(root);
+    while (!stack.isEmpty()) {
+      TMLNode node = stack.remove(stack.size() - 1);
+      order.add(node);
+      for (int i = node.getListSize() - 1; i >= 0; i--) {
+        stack.add(node.getNode(i));
+      }
+    }
+    Set<TMLNode> found = Collections
+        .newSetFromMap(new IdentityHashMap<TMLNode, Boolean>());
+    for (String[] p : paths) {
+      found.addAll(index.findAllByPath(p));
+    }
+    List<TMLNode> result = new ArrayList<TMLNode>();
+    for (TMLNode node : order) {
+      if (found.contains(node)) {
+        result.add(node);
+      }
+    }
+    return result;
+  }
+
+  private static final String[] KEYS = { "a", "b", "", "|", "\\0", "\\2" };
+
+  @Test
+  public void testFindStopsReading() {
+    TMLStreamQuery query = TMLStreamQuery.compile("\\*", "host");
+    assertEquals("[host localhost]", query.find(new StringReader(INPUT))
+        .toString());
+    // the document is malformed past the first match
+    assertEquals("[host localhost]", query.find(
+        new StringReader("[[host localhost] ]]]")).toString());
+    assertNull(TMLStreamQuery.compile("none").find(new StringReader(INPUT)));
+  }
+
+  @Test
+  public void testSkipsNonMatchingLists() throws IOException {
+    final int[] strings = new int[1];
+    TMLReader reader = new TMLReader(new StringReader(INPUT)) {
+      @Override
+      public String nextString() throws IOException {
+        strings[0]++;
+        return super.nextString();
+      }
+    };
+    final List<TMLNode> found = new java.util.ArrayList<TMLNode>();
+    TMLStreamQuery.compile("config", "client", "host").findAll(reader,
+        new TMLStreamQuery.Handler() {
+          @Override
+          public boolean onMatch(TMLNode node) {
+            found.add(node);
+            return true;
+          }
+        });
+    assertEquals("[host remote];", toString(found));
+    // the keys config, server, client, host, port, retry, port, a, c, bold
+    // and hello, and the data of the match; the unkeyed [[a b] [c d]] is
+    // entered, and the section after bold is keyed on its own
+    assertEquals(12, strings[0]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyPath() {
+    TMLStreamQuery.compile();
+  }
+
+}